@@ -0,0 +1,453 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * BatchSimulator plays a whole range of numbered games with no GUI, on
+ * every core, and reports how they went: games per second, how many were
+ * won and lost, how many moves they took, and whether the bombs land evenly
+ * across the board.
+ *
+ * Game numbers are just seeds, so ranges well past kMaxGameNumber work too.
+ * The range is split up in a fork-join pool; each task plays its share on
+ * its own engine with its own strategy, and the tallies get added up on the
+ * way back.
+ *
+ * Usage: java BatchSimulator [strategy] [noguess] [width height bombs [firstGame lastGame [threads]]]
+ * The strategy is "random" (the default) or "solver"; "noguess" plays
+ * boards from NoGuessGenerator.  With no arguments, plays games
+ * 1 - kMaxGameNumber on the classic 10x10 board.
+ */
+public class BatchSimulator
+{
+    /** Makes the strategies; every task gets a fresh one. */
+    public interface StrategyFactory
+    {
+        MoveStrategy create();
+    }
+
+    // Ranges of games get split until they're about this small.
+    private static final int kGamesPerTask = 64;
+    // Counting where the bombs land takes a counter per spot per task, so
+    // only do it for boards up to this size.
+    private static final int kMaxTrackedCells = 1 << 16;
+
+    private final int width;
+    private final int height;
+    private final int bombs;
+    private final StrategyFactory strategies;
+    private final ForkJoinPool pool;
+    private boolean noGuess = false;
+
+    /** A simulator that uses every core. */
+    public BatchSimulator(int width, int height, int bombs, StrategyFactory strategies)
+    {
+        this(width, height, bombs, strategies, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchSimulator(int width, int height, int bombs, StrategyFactory strategies, int threads)
+    {
+        // Let the engine complain about silly boards now, not in every task.
+        new KaboomEngine(width, height, bombs);
+        this.width = width;
+        this.height = height;
+        this.bombs = bombs;
+        this.strategies = strategies;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    /** Play boards that never need a guess (see NoGuessGenerator), or plain random ones. */
+    public void setNoGuess(boolean noGuess)
+    {
+        this.noGuess = noGuess;
+    }
+
+    public int getThreads()
+    {
+        return this.pool.getParallelism();
+    }
+
+    /** Play every game from <code>firstGame</code> to <code>lastGame</code>
+     * (inclusive), and add up how it went.
+     */
+    public Results run(int firstGame, int lastGame)
+    {
+        if (lastGame < firstGame)
+        {
+            throw new IllegalArgumentException("The last game can't come before the first.");
+        }
+        long start = System.nanoTime();
+        Results results = this.pool.invoke(new Batch(firstGame, lastGame));
+        results.nanos = System.nanoTime() - start;
+        return results;
+    }
+
+    /** Some games, split in two until there aren't many. */
+    private class Batch extends RecursiveTask<Results>
+    {
+        private final int firstGame;
+        private final int lastGame;
+
+        Batch(int firstGame, int lastGame)
+        {
+            this.firstGame = firstGame;
+            this.lastGame = lastGame;
+        }
+
+        protected Results compute()
+        {
+            if ((long)this.lastGame - this.firstGame < kGamesPerTask)
+            {
+                return playAll(this.firstGame, this.lastGame);
+            }
+            int middle = this.firstGame + (int)(((long)this.lastGame - this.firstGame) / 2);
+            Batch firstHalf = new Batch(this.firstGame, middle);
+            firstHalf.fork();
+            Results results = new Batch(middle + 1, this.lastGame).compute();
+            results.add(firstHalf.join());
+            return results;
+        }
+    }
+
+    private Results playAll(int firstGame, int lastGame)
+    {
+        KaboomEngine engine = new KaboomEngine(this.width, this.height, this.bombs);
+        if (this.noGuess)
+        {
+            // We're already on every core.
+            NoGuessGenerator generator = new NoGuessGenerator(this.width, this.height, this.bombs);
+            generator.setParallel(false);
+            engine.setNoGuess(generator);
+        }
+        MoveStrategy strategy = this.strategies.create();
+        Results results = new Results(this.width * this.height);
+        for (long game = firstGame; game <= lastGame; game++)
+        {
+            engine.setGameNumber((int)game);
+            play(engine, strategy, results);
+        }
+        return results;
+    }
+
+    /** Play one game to the end, and tally it up. */
+    private static void play(KaboomEngine engine, MoveStrategy strategy, Results results)
+    {
+        engine.restartGame();
+        results.countBombs(engine);
+        strategy.startGame(engine);
+
+        int width = engine.getWidth();
+        // Nobody needs more clicks than there are spots; a strategy that
+        // does is stuck clicking the same ones.
+        int maxMoves = width * engine.getHeight();
+        while (true)
+        {
+            int move = strategy.nextMove(engine);
+            if (move < 0 || engine.getMoves() >= maxMoves)
+            {
+                results.gaveUp++;
+                return;
+            }
+
+            KaboomEngine.ClickResult result = engine.clickTile(move / width, move % width);
+            if (result == KaboomEngine.ClickResult.won)
+            {
+                results.wins++;
+                results.winningMoves.add(engine.getMoves());
+                return;
+            }
+            if (result == KaboomEngine.ClickResult.lost)
+            {
+                results.losses++;
+                if (engine.getMoves() == 1)
+                {
+                    results.firstClickLosses++;
+                }
+                results.losingMoves.add(engine.getMoves());
+                return;
+            }
+        }
+    }
+
+    /** How a batch of games went. */
+    public static final class Results
+    {
+        public long wins = 0;
+        public long losses = 0;
+        /** Lost on the very first click, before the player knew anything. */
+        public long firstClickLosses = 0;
+        public long gaveUp = 0;
+        public final Histogram winningMoves = new Histogram();
+        public final Histogram losingMoves = new Histogram();
+        /** How many games had a bomb on each spot, or null for big boards. */
+        public final long[] bombsAt;
+        /** How long the run took. */
+        public long nanos = 0;
+
+        Results(int cells)
+        {
+            this.bombsAt = cells <= kMaxTrackedCells ? new long[cells] : null;
+        }
+
+        public long getGames()
+        {
+            return this.wins + this.losses + this.gaveUp;
+        }
+
+        public double getGamesPerSecond()
+        {
+            return getGames() / (this.nanos / 1e9);
+        }
+
+        public double getWinRate()
+        {
+            return getGames() == 0 ? 0.0 : (double)this.wins / getGames();
+        }
+
+        /**
+         * How evenly the bombs were spread: Pearson's chi-squared statistic
+         * for the per-spot bomb counts, divided by its degrees of freedom.
+         * A fair board comes out near <code>1 - bombs / spots</code> (the
+         * counts vary a little less than independent coin flips would, since
+         * every board has exactly the same number of bombs); much bigger
+         * means some spots get more than their share.
+         * @return the ratio, or NaN if bombs weren't counted
+         */
+        public double getBombSpread()
+        {
+            if (this.bombsAt == null || this.bombsAt.length < 2)
+            {
+                return Double.NaN;
+            }
+            long total = 0;
+            for (long count : this.bombsAt)
+            {
+                total += count;
+            }
+            double expected = (double)total / this.bombsAt.length;
+            if (expected == 0.0)
+            {
+                return Double.NaN;
+            }
+            double chiSquared = 0.0;
+            for (long count : this.bombsAt)
+            {
+                chiSquared += (count - expected) * (count - expected) / expected;
+            }
+            return chiSquared / (this.bombsAt.length - 1);
+        }
+
+        void countBombs(KaboomEngine engine)
+        {
+            if (this.bombsAt == null)
+            {
+                return;
+            }
+            int width = engine.getWidth();
+            for (int index = 0; index < this.bombsAt.length; index++)
+            {
+                if (engine.isBomb(index / width, index % width))
+                {
+                    this.bombsAt[index]++;
+                }
+            }
+        }
+
+        /** Add in another batch's tallies. */
+        void add(Results other)
+        {
+            this.wins += other.wins;
+            this.losses += other.losses;
+            this.firstClickLosses += other.firstClickLosses;
+            this.gaveUp += other.gaveUp;
+            this.winningMoves.add(other.winningMoves);
+            this.losingMoves.add(other.losingMoves);
+            if (this.bombsAt != null)
+            {
+                for (int index = 0; index < this.bombsAt.length; index++)
+                {
+                    this.bombsAt[index] += other.bombsAt[index];
+                }
+            }
+        }
+
+        public String toString()
+        {
+            long games = getGames();
+            StringBuilder report = new StringBuilder();
+            report.append(String.format("games:          %d in %.0f ms (%.0f games/sec)%n",
+                                        games, this.nanos / 1e6, getGamesPerSecond()));
+            report.append(String.format("won:            %d (%.2f%%)%n", this.wins, 100.0 * getWinRate()));
+            report.append(String.format("lost:           %d (%.2f%%), %d on the first click%n",
+                                        this.losses, percent(this.losses, games), this.firstClickLosses));
+            report.append(String.format("gave up:        %d (%.2f%%)%n", this.gaveUp, percent(this.gaveUp, games)));
+            report.append("moves to win:   ").append(this.winningMoves).append(String.format("%n"));
+            report.append("moves to lose:  ").append(this.losingMoves).append(String.format("%n"));
+            if (this.bombsAt != null)
+            {
+                long fewest = Long.MAX_VALUE;
+                long most = 0;
+                for (long count : this.bombsAt)
+                {
+                    fewest = Math.min(fewest, count);
+                    most = Math.max(most, count);
+                }
+                report.append(String.format("bombs per spot: %d - %d, spread %.3f%n", fewest, most, getBombSpread()));
+            }
+            return report.toString();
+        }
+
+        private static double percent(long part, long whole)
+        {
+            return whole == 0 ? 0.0 : 100.0 * part / whole;
+        }
+    }
+
+    /** A count of how many games took each number of moves. */
+    public static final class Histogram
+    {
+        private long[] counts = new long[64];
+        private long total = 0;
+        private long sum = 0;
+
+        public void add(int moves)
+        {
+            if (moves >= this.counts.length)
+            {
+                this.counts = java.util.Arrays.copyOf(this.counts, Math.max(moves + 1, this.counts.length * 2));
+            }
+            this.counts[moves]++;
+            this.total++;
+            this.sum += moves;
+        }
+
+        void add(Histogram other)
+        {
+            if (other.counts.length > this.counts.length)
+            {
+                this.counts = java.util.Arrays.copyOf(this.counts, other.counts.length);
+            }
+            for (int moves = 0; moves < other.counts.length; moves++)
+            {
+                this.counts[moves] += other.counts[moves];
+            }
+            this.total += other.total;
+            this.sum += other.sum;
+        }
+
+        public long getCount(int moves)
+        {
+            return moves < this.counts.length ? this.counts[moves] : 0;
+        }
+
+        public long getTotal()
+        {
+            return this.total;
+        }
+
+        public double getMean()
+        {
+            return this.total == 0 ? 0.0 : (double)this.sum / this.total;
+        }
+
+        /** The fewest moves that at least this fraction of games took no more than.
+         * @param fraction 0.5 for the median, and so on
+         * @return the number of moves, or -1 if there were no games
+         */
+        public int getPercentile(double fraction)
+        {
+            long needed = Math.max(1, (long)Math.ceil(fraction * this.total));
+            long seen = 0;
+            for (int moves = 0; moves < this.counts.length; moves++)
+            {
+                seen += this.counts[moves];
+                if (seen >= needed)
+                {
+                    return moves;
+                }
+            }
+            return -1;
+        }
+
+        public String toString()
+        {
+            if (this.total == 0)
+            {
+                return "none";
+            }
+            return String.format("min %d, median %d, 90%% %d, max %d, mean %.1f",
+                                 getPercentile(0.0), getPercentile(0.5), getPercentile(0.9),
+                                 getPercentile(1.0), getMean());
+        }
+    }
+
+    /** Turn a strategy name into something that makes them. */
+    public static StrategyFactory strategyNamed(String name)
+    {
+        if (name.equals("random"))
+        {
+            return new StrategyFactory()
+            {
+                public MoveStrategy create()
+                {
+                    return new RandomMoveStrategy();
+                }
+            };
+        }
+        if (name.equals("solver"))
+        {
+            return new StrategyFactory()
+            {
+                public MoveStrategy create()
+                {
+                    return new SolverMoveStrategy();
+                }
+            };
+        }
+        throw new IllegalArgumentException("There's no strategy called \"" + name + "\".");
+    }
+
+    public static void main(String[] args)
+    {
+        String strategy = "random";
+        boolean noGuess = false;
+        int next = 0;
+        if (args.length > next && !Character.isDigit(args[next].charAt(0)) && !args[next].equals("noguess"))
+        {
+            strategy = args[next++];
+        }
+        if (args.length > next && args[next].equals("noguess"))
+        {
+            noGuess = true;
+            next++;
+        }
+
+        int width = KaboomEngine.kDefaultWidth;
+        int height = KaboomEngine.kDefaultHeight;
+        int bombs = KaboomEngine.kDefaultBombs;
+        int firstGame = 1;
+        int lastGame = KaboomEngine.kMaxGameNumber;
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length >= next + 3)
+        {
+            width = Integer.parseInt(args[next++]);
+            height = Integer.parseInt(args[next++]);
+            bombs = Integer.parseInt(args[next++]);
+        }
+        if (args.length >= next + 2)
+        {
+            firstGame = Integer.parseInt(args[next++]);
+            lastGame = Integer.parseInt(args[next++]);
+        }
+        if (args.length >= next + 1)
+        {
+            threads = Integer.parseInt(args[next++]);
+        }
+
+        BatchSimulator simulator = new BatchSimulator(width, height, bombs, strategyNamed(strategy), threads);
+        simulator.setNoGuess(noGuess);
+        System.out.println(width + "x" + height + ", " + bombs + " bombs, games " + firstGame + " - " + lastGame
+                           + ", " + strategy + " strategy, " + (noGuess ? "no-guess boards, " : "")
+                           + simulator.getThreads() + " threads");
+        System.out.print(simulator.run(firstGame, lastGame));
+    }
+}
@@ -0,0 +1,559 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * BitBoard plays the same game as KaboomEngine, with the whole board kept
+ * as bitboards: one bit per spot for bombs, revealed and flagged, and four
+ * more bits per spot (as four bit planes) for the number of bombs around
+ * it.  Each row takes <code>(width + 63) / 64</code> words of each plane,
+ * so a column is a bit within a word, and the spots either side of a whole
+ * word of spots are just that word shifted one bit either way.
+ *
+ * That lets the expensive parts work 64 spots at a time:
+ * <ul>
+ * <li>Neighbour counts are eight shifted copies of the bomb rows above,
+ *     beside and below, added up bit-sliced with a handful of full
+ *     adders.</li>
+ * <li>Showing the whole board is filling a plane with ones.</li>
+ * <li>Openings fill a row at a time.  A run of hidden zeros containing a
+ *     seed is found with one big-number addition (the carry runs through
+ *     the run and stops at its end), once forwards and once on the row
+ *     reversed.  The run and its edges get revealed, and the hidden zeros
+ *     touching it in the rows above and below become seeds there.</li>
+ * </ul>
+ * The inner loops are plain loops over long arrays, which the JIT can
+ * unroll and vectorize on its own.
+ *
+ * For the same game number it deals exactly the same bombs as
+ * KaboomEngine, and clicks, flags and cheats come out the same (see
+ * BitBoardTest).  It doesn't do no-guess boards, record moves or keep
+ * track of what changed; it's the game and nothing else, for simulations
+ * and solvers that want a lot of boards.
+ *
+ * Not thread-safe.
+ */
+public class BitBoard
+{
+    private final int width;
+    private final int height;
+    private final int maxBombs;
+    // Words per row in every plane.
+    private final int words;
+    // The bits of a row's last word that are on the board.
+    private final long lastWordMask;
+
+    /* The game board, a row of words after another */
+    // As KaboomEngine deals them: one long bitset for the whole board.
+    private final long[] dealt;
+    private final long[] bombs;
+    private final long[] revealed;
+    private final long[] flagged;
+    // Bit i of spot's count is in counts[i].
+    private final long[][] counts = new long[4][];
+    // Hidden or not, the safe spots with no bombs around them.
+    private final long[] zeros;
+
+    /* Scratch space for revealing openings */
+    private final long[] seeds;
+    private final boolean[] rowQueued;
+    private int[] rowStack = new int[64];
+    private int rowCount = 0;
+    private final long[] hiddenZeros;
+    private final long[] reversedZeros;
+    private final long[] reversedSeeds;
+    private final long[] run;
+
+    private int gameNumber = 1;
+    private int moves = 0;
+    private int flagsPlaced = 0;
+    private int hiddenSafeCells = 0;
+    private boolean justCheated = false;
+    // Where the losing click was, or -1.
+    private int exploded = -1;
+
+    /** Create a board of the given size.
+     * The board is empty until <code>restartGame</code> is called.
+     * @param width number of columns, 1 - KaboomEngine.kMaxDimension
+     * @param height number of rows, 1 - KaboomEngine.kMaxDimension
+     * @param maxBombs number of bombs to place, at most one per cell
+     */
+    public BitBoard(int width, int height, int maxBombs)
+    {
+        if (width <= 0 || height <= 0 || width > KaboomEngine.kMaxDimension || height > KaboomEngine.kMaxDimension)
+        {
+            throw new IllegalArgumentException("Board dimensions must be between 1 and " + KaboomEngine.kMaxDimension + ".");
+        }
+        if (maxBombs < 0 || maxBombs > width * height)
+        {
+            throw new IllegalArgumentException("Can't fit " + maxBombs + " bombs on a " + width + "x" + height + " board.");
+        }
+
+        this.width = width;
+        this.height = height;
+        this.maxBombs = maxBombs;
+        this.words = (width + 63) >>> 6;
+        this.lastWordMask = (width & 63) == 0 ? -1L : (1L << width) - 1;
+
+        this.dealt = new long[(width * height + 63) >>> 6];
+        int planeSize = this.words * height;
+        this.bombs = new long[planeSize];
+        this.revealed = new long[planeSize];
+        this.flagged = new long[planeSize];
+        for (int bit = 0; bit < 4; bit++)
+        {
+            this.counts[bit] = new long[planeSize];
+        }
+        this.zeros = new long[planeSize];
+        this.seeds = new long[planeSize];
+        this.rowQueued = new boolean[height];
+        this.hiddenZeros = new long[this.words];
+        this.reversedZeros = new long[this.words];
+        this.reversedSeeds = new long[this.words];
+        this.run = new long[this.words];
+    }
+
+    public int getWidth()
+    {
+        return this.width;
+    }
+
+    public int getHeight()
+    {
+        return this.height;
+    }
+
+    public int getGameNumber()
+    {
+        return this.gameNumber;
+    }
+
+    /** Pick the game to play.  Doesn't take effect until the next restart. */
+    public void setGameNumber(int gameNumber)
+    {
+        this.gameNumber = gameNumber;
+    }
+
+    public int getMoves()
+    {
+        return this.moves;
+    }
+
+    public int getFlagsPlaced()
+    {
+        return this.flagsPlaced;
+    }
+
+    public int getNumBombs()
+    {
+        return this.maxBombs;
+    }
+
+    /** Start the current game number over from scratch. */
+    public void restartGame()
+    {
+        // Deal the bombs just as KaboomEngine does, then cut them into rows.
+        int cells = this.width * this.height;
+        long[] dealt = this.dealt;
+        KaboomEngine.placeBombs(dealt, cells, this.maxBombs, new SplittableRandom(this.gameNumber));
+        for (int row = 0; row < this.height; row++)
+        {
+            int rowStart = row * this.width;
+            for (int word = 0; word < this.words; word++)
+            {
+                int start = rowStart + (word << 6);
+                long bits = dealt[start >>> 6] >>> start;
+                if ((start & 63) != 0 && (start >>> 6) + 1 < dealt.length)
+                {
+                    bits |= dealt[(start >>> 6) + 1] << -start;
+                }
+                this.bombs[row * this.words + word] = word == this.words - 1 ? bits & this.lastWordMask : bits;
+            }
+        }
+
+        // The bombs never move, so we only ever need to count them once.
+        countSurroundingBombs();
+
+        Arrays.fill(this.revealed, 0L);
+        Arrays.fill(this.flagged, 0L);
+        this.hiddenSafeCells = cells - this.maxBombs;
+        this.moves = 0;
+        this.flagsPlaced = 0;
+        this.justCheated = false;
+        this.exploded = -1;
+    }
+
+    /**
+     * Work out every spot's count, a row of words at a time.  The eight
+     * neighbours of a word's spots are eight words (the rows above and
+     * below, and each of the three rows shifted a spot left and right);
+     * adding eight one-bit numbers in each bit position takes four full
+     * adders and a few half adders, leaving the count's four bits.
+     */
+    private void countSurroundingBombs()
+    {
+        long[] count0 = this.counts[0];
+        long[] count1 = this.counts[1];
+        long[] count2 = this.counts[2];
+        long[] count3 = this.counts[3];
+        for (int row = 0; row < this.height; row++)
+        {
+            int here = row * this.words;
+            int above = row > 0 ? here - this.words : -1;
+            int below = row < this.height - 1 ? here + this.words : -1;
+            for (int word = 0; word < this.words; word++)
+            {
+                long n = wordAt(above, word);
+                long nw = westOf(above, word);
+                long ne = eastOf(above, word);
+                long w = westOf(here, word);
+                long e = eastOf(here, word);
+                long s = wordAt(below, word);
+                long sw = westOf(below, word);
+                long se = eastOf(below, word);
+
+                // Ones from each group of three (and a pair), with carries.
+                long onesA = n ^ nw ^ ne;
+                long twosA = (n & nw) | (ne & (n ^ nw));
+                long onesB = w ^ e ^ s;
+                long twosB = (w & e) | (s & (w ^ e));
+                long onesC = sw ^ se;
+                long twosC = sw & se;
+                // Add up the ones.
+                long bit0 = onesA ^ onesB ^ onesC;
+                long twosD = (onesA & onesB) | (onesC & (onesA ^ onesB));
+                // Add up the four twos.
+                long twosE = twosA ^ twosB ^ twosC;
+                long foursE = (twosA & twosB) | (twosC & (twosA ^ twosB));
+                long bit1 = twosE ^ twosD;
+                long foursF = twosE & twosD;
+                long bit2 = foursE ^ foursF;
+                long bit3 = foursE & foursF;
+
+                int index = here + word;
+                count0[index] = bit0;
+                count1[index] = bit1;
+                count2[index] = bit2;
+                count3[index] = bit3;
+                long mask = word == this.words - 1 ? this.lastWordMask : -1L;
+                this.zeros[index] = ~(bit0 | bit1 | bit2 | bit3) & ~this.bombs[index] & mask;
+            }
+        }
+    }
+
+    private long wordAt(int rowStart, int word)
+    {
+        return rowStart < 0 ? 0L : this.bombs[rowStart + word];
+    }
+
+    /** For each spot in a word, whether the spot to its left is a bomb. */
+    private long westOf(int rowStart, int word)
+    {
+        if (rowStart < 0)
+        {
+            return 0L;
+        }
+        long bits = this.bombs[rowStart + word] << 1;
+        return word > 0 ? bits | this.bombs[rowStart + word - 1] >>> 63 : bits;
+    }
+
+    /** For each spot in a word, whether the spot to its right is a bomb. */
+    private long eastOf(int rowStart, int word)
+    {
+        if (rowStart < 0)
+        {
+            return 0L;
+        }
+        long bits = this.bombs[rowStart + word] >>> 1;
+        return word < this.words - 1 ? bits | this.bombs[rowStart + word + 1] << 63 : bits;
+    }
+
+    /** Is there a bomb at this spot? */
+    public boolean isBomb(int row, int column)
+    {
+        return bit(this.bombs, row, column);
+    }
+
+    private boolean bit(long[] plane, int row, int column)
+    {
+        return (plane[row * this.words + (column >>> 6)] & (1L << column)) != 0;
+    }
+
+    /** What the player currently sees at this spot. */
+    public Piece getStatus(int row, int column)
+    {
+        if (bit(this.revealed, row, column))
+        {
+            if (!isBomb(row, column))
+            {
+                return Piece.empty;
+            }
+            return row * this.width + column == this.exploded ? Piece.exploded : Piece.bomb;
+        }
+        return bit(this.flagged, row, column) ? Piece.flagged : Piece.hidden;
+    }
+
+    /**
+     * How many bombs are adjacent to a spot.
+     *
+     * Don't call this on a spot that has a bomb.
+     */
+    public int calculateSurroundingBombs(int row, int column)
+    {
+        if (isBomb(row, column))
+        {
+            throw new IllegalArgumentException("You should never be calculating nearby bombs for a bomb spot!");
+        }
+        int index = row * this.words + (column >>> 6);
+        int count = 0;
+        for (int bit = 3; bit >= 0; bit--)
+        {
+            count = count << 1 | (int)(this.counts[bit][index] >>> column) & 1;
+        }
+        return count;
+    }
+
+    /** Handle a left click on a spot, exactly as KaboomEngine does.
+     * @return whether the click lost or won the game
+     */
+    public KaboomEngine.ClickResult clickTile(int row, int column)
+    {
+        checkBounds(row, column);
+        if (!bit(this.revealed, row, column) || this.justCheated)
+        {
+            this.moves++;
+            this.justCheated = false;
+            if (isBomb(row, column))
+            {
+                revealBoard();
+                this.exploded = row * this.width + column;
+                return KaboomEngine.ClickResult.lost;
+            }
+
+            revealEmptyCells(row, column);
+            if (isBoardWon())
+            {
+                return KaboomEngine.ClickResult.won;
+            }
+        }
+        else if (!isBomb(row, column))
+        {
+            this.moves++;
+        }
+        return KaboomEngine.ClickResult.played;
+    }
+
+    /** Handle a right click on a spot, toggling its flag. */
+    public void rightClickTile(int row, int column)
+    {
+        checkBounds(row, column);
+        if (!bit(this.revealed, row, column))
+        {
+            int index = row * this.words + (column >>> 6);
+            this.flagged[index] ^= 1L << column;
+            this.flagsPlaced += (this.flagged[index] & (1L << column)) != 0 ? 1 : -1;
+        }
+    }
+
+    /** Show every spot on the board (used when cheating and when losing). */
+    public void revealBoard()
+    {
+        for (int row = 0; row < this.height; row++)
+        {
+            int rowStart = row * this.words;
+            Arrays.fill(this.revealed, rowStart, rowStart + this.words - 1, -1L);
+            this.revealed[rowStart + this.words - 1] = this.lastWordMask;
+        }
+        Arrays.fill(this.flagged, 0L);
+        this.hiddenSafeCells = 0;
+        // Every bomb shows as a plain bomb, as KaboomEngine does; a losing
+        // click marks its own spot after this.
+        this.exploded = -1;
+    }
+
+    /** Reveal the whole board; the next click on any spot counts as a move. */
+    public void cheat()
+    {
+        revealBoard();
+        this.justCheated = true;
+    }
+
+    /** The board is won if all non-bomb pieces have been revealed. */
+    public boolean isBoardWon()
+    {
+        return this.hiddenSafeCells == 0;
+    }
+
+    /**
+     * Reveal a spot and, if it has no bombs around it, everything connected
+     * to it up to (and including) the numbered spots that border the opening.
+     *
+     * Rows with seeds waiting (hidden zeros we've reached) go on a stack.
+     * Taking a row off, we fill out the runs of hidden zeros its seeds are
+     * in, reveal them and the spot either side, and do the same stretch of
+     * the rows above and below: numbered spots there are revealed straight
+     * away, and hidden zeros become that row's seeds.
+     */
+    private void revealEmptyCells(int row, int column)
+    {
+        int index = row * this.words + (column >>> 6);
+        long spot = 1L << column;
+        if ((this.zeros[index] & spot) == 0)
+        {
+            reveal(index, spot);
+            return;
+        }
+
+        this.seeds[index] |= spot;
+        queueRow(row);
+        while (this.rowCount > 0)
+        {
+            int seedRow = this.rowStack[--this.rowCount];
+            this.rowQueued[seedRow] = false;
+            if (!fillRuns(seedRow))
+            {
+                continue;
+            }
+
+            // The runs plus a spot either side.
+            long[] run = this.run;
+            int rowStart = seedRow * this.words;
+            long carryLeft = 0L;
+            for (int word = 0; word < this.words; word++)
+            {
+                long bits = run[word];
+                long next = word + 1 < this.words ? run[word + 1] : 0L;
+                long wide = bits | bits << 1 | carryLeft | bits >>> 1 | next << 63;
+                carryLeft = bits >>> 63;
+                run[word] = word == this.words - 1 ? wide & this.lastWordMask : wide;
+                reveal(rowStart + word, run[word]);
+            }
+            if (seedRow > 0)
+            {
+                revealAlongRow(seedRow - 1);
+            }
+            if (seedRow < this.height - 1)
+            {
+                revealAlongRow(seedRow + 1);
+            }
+        }
+    }
+
+    /**
+     * Fill the row's seeds out along the runs of hidden zeros they're in,
+     * into <code>run</code>, and clear them.
+     *
+     * Adding a seed to the run it's in carries all the way to the end of
+     * the run (towards higher columns), clearing it, so XOR-ing the sum
+     * with the runs picks out the seed and every run spot after it.  Doing
+     * the same on the row reversed gets the spots before it.  Carries go
+     * from word to word as in any big-number addition.
+     * @return whether there were any runs to fill
+     */
+    private boolean fillRuns(int row)
+    {
+        int rowStart = row * this.words;
+        boolean any = false;
+        for (int word = 0; word < this.words; word++)
+        {
+            int index = rowStart + word;
+            long hidden = this.zeros[index] & ~this.revealed[index];
+            this.hiddenZeros[word] = hidden;
+            long seeds = this.seeds[index] & hidden;
+            this.seeds[index] = 0L;
+            this.run[word] = seeds;
+            any |= seeds != 0;
+        }
+        if (!any)
+        {
+            return false;
+        }
+
+        for (int word = 0; word < this.words; word++)
+        {
+            this.reversedZeros[this.words - 1 - word] = Long.reverse(this.hiddenZeros[word]);
+            this.reversedSeeds[this.words - 1 - word] = Long.reverse(this.run[word]);
+        }
+        fillForwards(this.hiddenZeros, this.run);
+        fillForwards(this.reversedZeros, this.reversedSeeds);
+        for (int word = 0; word < this.words; word++)
+        {
+            this.run[word] |= Long.reverse(this.reversedSeeds[this.words - 1 - word]);
+        }
+        return true;
+    }
+
+    /** Replace the seeds with the seeds and the rest of their runs after them. */
+    private void fillForwards(long[] runs, long[] seeds)
+    {
+        long carry = 0L;
+        for (int word = 0; word < this.words; word++)
+        {
+            long sum = runs[word] + seeds[word];
+            long total = sum + carry;
+            // Did either addition wrap around?
+            long carryOut = (Long.compareUnsigned(sum, runs[word]) < 0 || Long.compareUnsigned(total, sum) < 0) ? 1L : 0L;
+            // A seed that the carry from an earlier seed runs into gets
+            // added twice, and stays set; it's in the run all the same.
+            seeds[word] = ((total ^ runs[word]) & runs[word]) | seeds[word];
+            carry = carryOut;
+        }
+    }
+
+    /**
+     * Reveal the hidden numbered spots of a row under <code>run</code>, and
+     * make its hidden zeros seeds.  None of these can be bombs, since they
+     * all touch a zero.
+     */
+    private void revealAlongRow(int row)
+    {
+        int rowStart = row * this.words;
+        boolean seeded = false;
+        for (int word = 0; word < this.words; word++)
+        {
+            int index = rowStart + word;
+            long touched = this.run[word] & ~this.revealed[index];
+            long newSeeds = touched & this.zeros[index];
+            reveal(index, touched & ~newSeeds);
+            if (newSeeds != 0)
+            {
+                this.seeds[index] |= newSeeds;
+                seeded = true;
+            }
+        }
+        if (seeded)
+        {
+            queueRow(row);
+        }
+    }
+
+    /** Reveal the spots in a word that aren't already. */
+    private void reveal(int index, long spots)
+    {
+        long newlyRevealed = spots & ~this.revealed[index];
+        this.revealed[index] |= newlyRevealed;
+        this.flagged[index] &= ~newlyRevealed;
+        this.hiddenSafeCells -= Long.bitCount(newlyRevealed);
+    }
+
+    private void queueRow(int row)
+    {
+        if (this.rowQueued[row])
+        {
+            return;
+        }
+        if (this.rowCount == this.rowStack.length)
+        {
+            this.rowStack = Arrays.copyOf(this.rowStack, this.rowStack.length * 2);
+        }
+        this.rowStack[this.rowCount++] = row;
+        this.rowQueued[row] = true;
+    }
+
+    private void checkBounds(int row, int column)
+    {
+        if (row < 0 || row >= this.height || column < 0 || column >= this.width)
+        {
+            throw new IllegalArgumentException("Tile must be on the board.");
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import junit.framework.TestCase;
+import java.util.Random;
+
+/**
+ * Tests for BitBoard: it should play exactly the same game as KaboomEngine.
+ */
+public class BitBoardTest extends TestCase
+{
+    private static void assertSame(KaboomEngine engine, BitBoard bitBoard, String after)
+    {
+        for (int row = 0; row < engine.getHeight(); row++)
+        {
+            for (int column = 0; column < engine.getWidth(); column++)
+            {
+                assertEquals(after + " at " + row + ", " + column,
+                             engine.getStatus(row, column), bitBoard.getStatus(row, column));
+            }
+        }
+        assertEquals(after, engine.getMoves(), bitBoard.getMoves());
+        assertEquals(after, engine.getFlagsPlaced(), bitBoard.getFlagsPlaced());
+        assertEquals(after, engine.isBoardWon(), bitBoard.isBoardWon());
+    }
+
+    /** Random clicks, flags and cheats on both, checking after every move. */
+    private static void compare(int width, int height, int bombs, int games, long seed)
+    {
+        Random random = new Random(seed);
+        KaboomEngine engine = new KaboomEngine(width, height, bombs);
+        BitBoard bitBoard = new BitBoard(width, height, bombs);
+        for (int game = 1; game <= games; game++)
+        {
+            engine.setGameNumber(game);
+            engine.restartGame();
+            bitBoard.setGameNumber(game);
+            bitBoard.restartGame();
+            assertSame(engine, bitBoard, "game " + game + " restart");
+            for (int move = 0; move < 3 * width * height; move++)
+            {
+                int row = random.nextInt(height);
+                int column = random.nextInt(width);
+                int kind = random.nextInt(10);
+                String after = "game " + game + " move " + move;
+                if (kind < 3)
+                {
+                    engine.rightClickTile(row, column);
+                    bitBoard.rightClickTile(row, column);
+                }
+                else if (kind < 4)
+                {
+                    engine.cheat();
+                    bitBoard.cheat();
+                }
+                else
+                {
+                    assertEquals(after, engine.clickTile(row, column), bitBoard.clickTile(row, column));
+                }
+                assertSame(engine, bitBoard, after);
+            }
+        }
+    }
+
+    public void testSmallBoards()
+    {
+        compare(10, 10, 9, 50, 1);
+        compare(9, 9, 10, 50, 2);
+    }
+
+    // Rows more than a word wide, and a last word that's only partly used.
+    public void testWideBoards()
+    {
+        compare(130, 7, 60, 5, 3);
+        compare(64, 5, 30, 5, 4);
+    }
+
+    public void testDenseBoards()
+    {
+        compare(16, 16, 200, 20, 5);
+    }
+
+    // Showing the board after a loss shows every bomb as a plain bomb.
+    public void testCheatAfterLoss()
+    {
+        KaboomEngine engine = new KaboomEngine(10, 10, 9);
+        BitBoard bitBoard = new BitBoard(10, 10, 9);
+        engine.setGameNumber(1);
+        engine.restartGame();
+        bitBoard.setGameNumber(1);
+        bitBoard.restartGame();
+        int bomb = 0;
+        while (!engine.isBomb(bomb / 10, bomb % 10))
+        {
+            bomb++;
+        }
+        assertEquals(KaboomEngine.ClickResult.lost, engine.clickTile(bomb / 10, bomb % 10));
+        assertEquals(KaboomEngine.ClickResult.lost, bitBoard.clickTile(bomb / 10, bomb % 10));
+        assertSame(engine, bitBoard, "loss");
+        engine.cheat();
+        bitBoard.cheat();
+        assertSame(engine, bitBoard, "cheat");
+        assertEquals(Piece.bomb, bitBoard.getStatus(bomb / 10, bomb % 10));
+    }
+}
@@ -0,0 +1,382 @@
+import java.util.Arrays;
+
+/**
+ * BoardStream turns a game into a stream of frames that a remote client can
+ * replay to keep its own copy of the board (a Mirror) up to date.
+ *
+ * There are two kinds of frame:
+ * <ul>
+ * <li>a keyframe, the whole board, which a client can start from;</li>
+ * <li>a delta, just the runs of spots the last move changed (see
+ *     <code>KaboomEngine.getChangedRunCount</code>), which a client applies
+ *     to the board it already has.</li>
+ * </ul>
+ * So a click that opens up a big area costs about as much as the area it
+ * opens, and a flag costs a handful of bytes, however big the board.  A
+ * keyframe goes out every kKeyframeInterval frames so clients that join late
+ * or fall behind can catch up.
+ *
+ * Every frame starts with its kind and its number, then spots are written
+ * as runs of the same value: one variable-length number (seven bits a byte,
+ * as in MoveLog) holding how many spots, shifted left four bits to make
+ * room for what they show (kHidden, kFlagged, kBomb, kExploded, or 0 - 8
+ * for a revealed spot and how many bombs are around it).  Hidden boards and
+ * openings are mostly long runs, so even a keyframe of a 10000x10000 board
+ * is small until it's been played a lot.
+ * <pre>
+ * keyframe: 'K' number width height runs...
+ * delta:    'D' number changedRuns (gap length runs...)...
+ * </pre>
+ * where each gap is how far a changed run starts past the end of the last.
+ * The engine lists changed runs in whatever order its flood fill found
+ * them, and they can overlap, so they're sorted and merged first; gaps are
+ * never negative.
+ *
+ * Not thread-safe.
+ */
+public final class BoardStream
+{
+    /** Values a spot can show, besides 0 - 8 for revealed spots. */
+    public static final int kHidden = 9;
+    public static final int kFlagged = 10;
+    public static final int kBomb = 11;
+    public static final int kExploded = 12;
+
+    /** How often, in frames, a keyframe is sent instead of a delta. */
+    public static final int kKeyframeInterval = 1024;
+
+    static final byte kKeyframe = 'K';
+    static final byte kDelta = 'D';
+
+    private final KaboomEngine engine;
+    private long frames = 0;
+    private byte[] bytes = new byte[64];
+    private int length = 0;
+    // The engine's changed runs, as start << 32 | end, sorted and merged.
+    private long[] runs = new long[16];
+
+    /** Stream a game.  The first frame will be a keyframe. */
+    public BoardStream(KaboomEngine engine)
+    {
+        this.engine = engine;
+    }
+
+    /** How many frames have been made so far. */
+    public long getFrameCount()
+    {
+        return this.frames;
+    }
+
+    /**
+     * The frame for the move just made: a delta, or a keyframe if it's time
+     * for one.  Call this after every move (click, flag, cheat or restart),
+     * or clients' boards will drift.
+     */
+    public byte[] nextFrame()
+    {
+        if (this.frames % kKeyframeInterval == 0)
+        {
+            return keyframe();
+        }
+        this.length = 0;
+        this.bytes[this.length++] = kDelta;
+        putVarint(this.frames++);
+        int runs = mergeChangedRuns();
+        putVarint(runs);
+        int width = this.engine.getWidth();
+        int lastEnd = 0;
+        for (int run = 0; run < runs; run++)
+        {
+            int start = (int)(this.runs[run] >>> 32);
+            int runLength = (int)this.runs[run] - start;
+            putVarint(start - lastEnd);
+            putVarint(runLength);
+            putSpots(start / width, start % width, runLength);
+            lastEnd = start + runLength;
+        }
+        return Arrays.copyOf(this.bytes, this.length);
+    }
+
+    /** Put the engine's changed runs in order, joining any that overlap or
+     * touch.
+     * @return how many runs are left
+     */
+    private int mergeChangedRuns()
+    {
+        int count = this.engine.getChangedRunCount();
+        if (count > this.runs.length)
+        {
+            this.runs = new long[Math.max(count, this.runs.length * 2)];
+        }
+        for (int run = 0; run < count; run++)
+        {
+            long start = this.engine.getChangedRunStart(run);
+            this.runs[run] = start << 32 | (start + this.engine.getChangedRunLength(run));
+        }
+        Arrays.sort(this.runs, 0, count);
+        int merged = 0;
+        for (int run = 0; run < count; run++)
+        {
+            long start = this.runs[run] >>> 32;
+            long end = this.runs[run] & 0xFFFFFFFFL;
+            long lastEnd = merged > 0 ? this.runs[merged - 1] & 0xFFFFFFFFL : -1;
+            if (start <= lastEnd)
+            {
+                if (end > lastEnd)
+                {
+                    this.runs[merged - 1] = (this.runs[merged - 1] & ~0xFFFFFFFFL) | end;
+                }
+            }
+            else
+            {
+                this.runs[merged++] = this.runs[run];
+            }
+        }
+        return merged;
+    }
+
+    /** The whole board as it stands, as the next frame. */
+    public byte[] keyframe()
+    {
+        this.length = 0;
+        this.bytes[this.length++] = kKeyframe;
+        putVarint(this.frames++);
+        putVarint(this.engine.getWidth());
+        putVarint(this.engine.getHeight());
+        putSpots(0, 0, this.engine.getWidth() * this.engine.getHeight());
+        return Arrays.copyOf(this.bytes, this.length);
+    }
+
+    /** Is this frame a keyframe? */
+    public static boolean isKeyframe(byte[] frame)
+    {
+        return frame.length > 0 && frame[0] == kKeyframe;
+    }
+
+    /** What a spot shows: kHidden, kFlagged, kBomb, kExploded or 0 - 8. */
+    public static int spotValue(KaboomEngine engine, int row, int column)
+    {
+        switch (engine.getStatus(row, column))
+        {
+        case hidden:
+            return kHidden;
+        case flagged:
+            return kFlagged;
+        case bomb:
+            return kBomb;
+        case exploded:
+            return kExploded;
+        default:
+            return engine.isBomb(row, column) ? 0 : engine.calculateSurroundingBombs(row, column);
+        }
+    }
+
+    /** Write <code>count</code> spots from (row, column) on, as runs. */
+    private void putSpots(int row, int column, int count)
+    {
+        int width = this.engine.getWidth();
+        int value = -1;
+        int runLength = 0;
+        for (int spot = 0; spot < count; spot++)
+        {
+            int next = spotValue(this.engine, row, column);
+            if (next != value && runLength > 0)
+            {
+                putVarint((long)runLength << 4 | value);
+                runLength = 0;
+            }
+            value = next;
+            runLength++;
+            if (++column == width)
+            {
+                column = 0;
+                row++;
+            }
+        }
+        if (runLength > 0)
+        {
+            putVarint((long)runLength << 4 | value);
+        }
+    }
+
+    private void putVarint(long value)
+    {
+        // Ten bytes is as long as a long gets.
+        if (this.length + 10 > this.bytes.length)
+        {
+            this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+        }
+        while ((value & ~0x7FL) != 0)
+        {
+            this.bytes[this.length++] = (byte)(value | 0x80);
+            value >>>= 7;
+        }
+        this.bytes[this.length++] = (byte)value;
+    }
+
+    /**
+     * A copy of a board built up from frames.  It starts empty and takes
+     * its size from the first keyframe; deltas before that are refused.
+     *
+     * Not thread-safe.
+     */
+    public static final class Mirror
+    {
+        private int width = 0;
+        private int height = 0;
+        private byte[] spots = new byte[0];
+        private long frame = -1;
+
+        private byte[] bytes;
+        private int position;
+        private int end;
+
+        /** The number of the last frame applied, or -1 if none has been. */
+        public long getFrame()
+        {
+            return this.frame;
+        }
+
+        public int getWidth()
+        {
+            return this.width;
+        }
+
+        public int getHeight()
+        {
+            return this.height;
+        }
+
+        /** What a spot shows: kHidden, kFlagged, kBomb, kExploded or 0 - 8. */
+        public int getSpot(int row, int column)
+        {
+            return this.spots[row * this.width + column];
+        }
+
+        /** Does this copy show exactly what the engine's board shows? */
+        public boolean matches(KaboomEngine engine)
+        {
+            if (engine.getWidth() != this.width || engine.getHeight() != this.height)
+            {
+                return false;
+            }
+            for (int row = 0; row < this.height; row++)
+            {
+                for (int column = 0; column < this.width; column++)
+                {
+                    if (getSpot(row, column) != spotValue(engine, row, column))
+                    {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Apply a whole frame. */
+        public void apply(byte[] frame)
+        {
+            apply(frame, 0, frame.length);
+        }
+
+        /**
+         * Apply a frame.  A keyframe replaces the board; a delta has to be
+         * the frame right after the last one applied.
+         * @throws IllegalStateException if a delta is missing frames before it
+         * @throws IllegalArgumentException if the frame is cut short or garbled
+         */
+        public void apply(byte[] frame, int offset, int length)
+        {
+            this.bytes = frame;
+            this.position = offset + 1;
+            this.end = offset + length;
+            if (length == 0)
+            {
+                throw new IllegalArgumentException("The frame is empty.");
+            }
+            long number = getVarint();
+            if (frame[offset] == kKeyframe)
+            {
+                int width = (int)getVarint();
+                int height = (int)getVarint();
+                if (width <= 0 || height <= 0 || width > KaboomEngine.kMaxDimension || height > KaboomEngine.kMaxDimension)
+                {
+                    throw new IllegalArgumentException("The keyframe's board size is garbled.");
+                }
+                if (width != this.width || height != this.height)
+                {
+                    this.spots = new byte[width * height];
+                    this.width = width;
+                    this.height = height;
+                }
+                getSpots(0, this.spots.length);
+            }
+            else if (frame[offset] == kDelta)
+            {
+                if (this.frame < 0 || number != this.frame + 1)
+                {
+                    throw new IllegalStateException("Frame " + number + " can't follow frame " + this.frame + ".");
+                }
+                long runs = getVarint();
+                int lastEnd = 0;
+                for (long run = 0; run < runs; run++)
+                {
+                    long start = lastEnd + getVarint();
+                    long runLength = getVarint();
+                    // Gaps are never negative, so runs never go backwards.
+                    if (start < lastEnd || runLength < 0 || runLength > this.spots.length - start)
+                    {
+                        throw new IllegalArgumentException("The frame runs off the board.");
+                    }
+                    getSpots((int)start, (int)runLength);
+                    lastEnd = (int)(start + runLength);
+                }
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown kind of frame " + frame[offset] + ".");
+            }
+            if (this.position != this.end)
+            {
+                throw new IllegalArgumentException("The frame has extra bytes on the end.");
+            }
+            this.frame = number;
+        }
+
+        private void getSpots(int start, int count)
+        {
+            int end = start + count;
+            while (start < end)
+            {
+                long run = getVarint();
+                int value = (int)(run & 0xF);
+                long runLength = run >>> 4;
+                if (value > kExploded || runLength == 0 || runLength > end - start)
+                {
+                    throw new IllegalArgumentException("The frame's spots are garbled.");
+                }
+                Arrays.fill(this.spots, start, start + (int)runLength, (byte)value);
+                start += (int)runLength;
+            }
+        }
+
+        private long getVarint()
+        {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7)
+            {
+                if (this.position >= this.end)
+                {
+                    throw new IllegalArgumentException("The frame is cut short.");
+                }
+                byte b = this.bytes[this.position++];
+                value |= (long)(b & 0x7F) << shift;
+                if (b >= 0)
+                {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("The frame is garbled.");
+        }
+    }
+}
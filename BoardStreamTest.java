@@ -0,0 +1,223 @@
+import junit.framework.TestCase;
+import java.util.Random;
+
+/**
+ * Tests for BoardStream: playing games and replaying the frames onto a
+ * Mirror should always give back the same board.
+ */
+public class BoardStreamTest extends TestCase
+{
+    /** Make a random click or flag, and return whether the game's over. */
+    private static boolean play(KaboomEngine engine, Random random)
+    {
+        int row = random.nextInt(engine.getHeight());
+        int column = random.nextInt(engine.getWidth());
+        if (random.nextInt(4) == 0)
+        {
+            engine.rightClickTile(row, column);
+            return false;
+        }
+        return engine.clickTile(row, column) != KaboomEngine.ClickResult.played;
+    }
+
+    public void testRoundTrip()
+    {
+        Random random = new Random(7);
+        KaboomEngine engine = new KaboomEngine(30, 20, 60);
+        BoardStream stream = new BoardStream(engine);
+        BoardStream.Mirror mirror = new BoardStream.Mirror();
+        // Play until the stream's been through a few keyframes.
+        while (stream.getFrameCount() < 3 * BoardStream.kKeyframeInterval)
+        {
+            engine.newGame();
+            mirror.apply(stream.nextFrame());
+            assertTrue(mirror.matches(engine));
+            boolean over = false;
+            while (!over)
+            {
+                over = play(engine, random);
+                mirror.apply(stream.nextFrame());
+                assertTrue(mirror.matches(engine));
+            }
+        }
+    }
+
+    public void testLateJoin()
+    {
+        Random random = new Random(11);
+        KaboomEngine engine = new KaboomEngine(16, 16, 40);
+        engine.restartGame();
+        BoardStream stream = new BoardStream(engine);
+        stream.nextFrame();
+        engine.rightClickTile(3, 4);
+        byte[] delta = stream.nextFrame();
+
+        BoardStream.Mirror mirror = new BoardStream.Mirror();
+        try
+        {
+            mirror.apply(delta);
+            fail("A delta was applied with no keyframe first.");
+        }
+        catch (IllegalStateException e)
+        {
+        }
+        mirror.apply(stream.keyframe());
+        assertTrue(mirror.matches(engine));
+        for (int move = 0; move < 20 && !play(engine, random); move++)
+        {
+            mirror.apply(stream.nextFrame());
+            assertTrue(mirror.matches(engine));
+        }
+    }
+
+    public void testMissedFrame()
+    {
+        KaboomEngine engine = new KaboomEngine(16, 16, 40);
+        engine.restartGame();
+        BoardStream stream = new BoardStream(engine);
+        BoardStream.Mirror mirror = new BoardStream.Mirror();
+        mirror.apply(stream.nextFrame());
+        engine.rightClickTile(0, 0);
+        stream.nextFrame();
+        engine.rightClickTile(0, 0);
+        try
+        {
+            mirror.apply(stream.nextFrame());
+            fail("A delta was applied after a missing one.");
+        }
+        catch (IllegalStateException e)
+        {
+        }
+        assertEquals(0, mirror.getFrame());
+    }
+
+    public void testDeltasAreSmall()
+    {
+        KaboomEngine engine = new KaboomEngine(2000, 2000, 0);
+        engine.restartGame();
+        BoardStream stream = new BoardStream(engine);
+        BoardStream.Mirror mirror = new BoardStream.Mirror();
+        // An untouched board is one long run of hidden spots.
+        byte[] keyframe = stream.nextFrame();
+        assertTrue(keyframe.length < 16);
+        mirror.apply(keyframe);
+        engine.rightClickTile(1000, 1000);
+        byte[] flag = stream.nextFrame();
+        assertTrue(flag.length < 16);
+        mirror.apply(flag);
+        // With no bombs, one click opens everything but the flag.
+        engine.clickTile(0, 0);
+        byte[] opening = stream.nextFrame();
+        assertTrue(opening.length < 32);
+        mirror.apply(opening);
+        assertTrue(mirror.matches(engine));
+    }
+
+    /** Read a varint out of a frame, starting at position[0]. */
+    private static long getVarint(byte[] frame, int[] position)
+    {
+        long value = 0;
+        for (int shift = 0; ; shift += 7)
+        {
+            byte b = frame[position[0]++];
+            value |= (long)(b & 0x7F) << shift;
+            if (b >= 0)
+            {
+                return value;
+            }
+        }
+    }
+
+    /** Check a delta's runs come in order, without overlapping or touching. */
+    private static void assertRunsInOrder(byte[] frame)
+    {
+        assertEquals(BoardStream.kDelta, frame[0]);
+        int[] position = { 1 };
+        getVarint(frame, position);
+        long runs = getVarint(frame, position);
+        long lastEnd = -1;
+        for (long run = 0; run < runs; run++)
+        {
+            long gap = getVarint(frame, position);
+            long runLength = getVarint(frame, position);
+            assertTrue("Gap of " + gap, gap >= 0 && (run == 0 || gap > 0));
+            long start = Math.max(lastEnd, 0) + gap;
+            lastEnd = start + runLength;
+            for (long spots = 0; spots < runLength; spots += getVarint(frame, position) >>> 4)
+            {
+            }
+        }
+        assertEquals(frame.length, position[0]);
+    }
+
+    // Openings flood-fill in no particular order, but the frame lists the
+    // runs they changed in order.
+    public void testOpeningsInOrder()
+    {
+        Random random = new Random(13);
+        KaboomEngine engine = new KaboomEngine(30, 16, 99);
+        BoardStream stream = new BoardStream(engine);
+        BoardStream.Mirror mirror = new BoardStream.Mirror();
+        for (int game = 1; game <= 200; game++)
+        {
+            engine.setGameNumber(game);
+            engine.restartGame();
+            mirror.apply(stream.keyframe());
+            boolean over = false;
+            while (!over)
+            {
+                over = play(engine, random);
+                byte[] frame = stream.nextFrame();
+                if (!BoardStream.isKeyframe(frame))
+                {
+                    assertRunsInOrder(frame);
+                }
+                mirror.apply(frame);
+                assertTrue(mirror.matches(engine));
+            }
+        }
+    }
+
+    public void testParallelOpeningInOrder()
+    {
+        KaboomEngine engine = new KaboomEngine(1500, 1500, 0);
+        engine.setRevealPool(new java.util.concurrent.ForkJoinPool(4));
+        engine.restartGame();
+        BoardStream stream = new BoardStream(engine);
+        BoardStream.Mirror mirror = new BoardStream.Mirror();
+        mirror.apply(stream.nextFrame());
+        engine.rightClickTile(700, 700);
+        mirror.apply(stream.nextFrame());
+        engine.clickTile(0, 0);
+        byte[] opening = stream.nextFrame();
+        assertRunsInOrder(opening);
+        mirror.apply(opening);
+        assertTrue(mirror.matches(engine));
+    }
+
+    // A delta whose run starts before the last one ended is refused, not
+    // written off the front of the board.
+    public void testRunGoingBackwards()
+    {
+        KaboomEngine engine = new KaboomEngine(16, 16, 40);
+        engine.restartGame();
+        BoardStream.Mirror mirror = new BoardStream.Mirror();
+        mirror.apply(new BoardStream(engine).keyframe());
+        byte[] delta = new byte[] {
+            BoardStream.kDelta, 1, 1,
+            // A gap of -1, as ten bytes.
+            (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF,
+            (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x01,
+            1, (byte)(1 << 4 | BoardStream.kHidden)
+        };
+        try
+        {
+            mirror.apply(delta);
+            fail("A run starting off the front of the board was applied.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+        assertEquals(0, mirror.getFrame());
+    }
+}
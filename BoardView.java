@@ -0,0 +1,323 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import javax.swing.ImageIcon;
+import javax.swing.JComponent;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+
+/**
+ * BoardView draws a KaboomEngine's board straight from the engine's state.
+ *
+ * Only the spots inside the clip (at most, what's visible in the scroll
+ * pane) get painted, so a 10000x10000 board paints just as fast as a 10x10
+ * one.  Put it in a JScrollPane to scroll around; hold Control and use the
+ * mouse wheel (or call <code>setZoom</code>) to zoom.
+ */
+public class BoardView extends JComponent implements Scrollable
+{
+    public static final double kMinZoom = 0.25;
+    public static final double kMaxZoom = 4.0;
+    // How much one click of the mouse wheel zooms by.
+    private static final double kZoomStep = 1.25;
+    // Big boards shouldn't ask for a window bigger than the screen.
+    private static final int kMaxVisibleColumns = 20;
+    private static final int kMaxVisibleRows = 15;
+
+    private final KaboomEngine engine;
+    private final ImageIcon[] pieceImages = new ImageIcon[Piece.values().length];
+    private final Image background;
+    private final int pieceWidth;
+    private final int pieceHeight;
+
+    private double zoom = 1.0;
+    private int tileWidth;
+    private int tileHeight;
+    private Font numberFont;
+    // The spot the last hint pointed at, or -1.
+    private int hintRow = -1;
+    private int hintColumn = -1;
+
+    public BoardView(KaboomEngine engine, GridImages images)
+    {
+        this.engine = engine;
+        for (Piece piece : Piece.values())
+        {
+            this.pieceImages[piece.ordinal()] = images.getPiece(piece.name());
+        }
+        ImageIcon bkgd = images.getBkgd("bkgd");
+        this.background = bkgd == null ? null : bkgd.getImage();
+        this.pieceWidth = images.getPieceWidth();
+        this.pieceHeight = images.getPieceHeight();
+        // Numbers are drawn in (bold) label text, like they used to be.
+        Font font = UIManager.getFont("Label.font");
+        setFont(font != null ? font : new Font(Font.DIALOG, Font.PLAIN, 12));
+        setOpaque(true);
+        setZoom(1.0);
+
+        addMouseWheelListener(new MouseWheelListener()
+        {
+            public void mouseWheelMoved(MouseWheelEvent e)
+            {
+                if (e.isControlDown())
+                {
+                    setZoom(BoardView.this.zoom * Math.pow(kZoomStep, -e.getWheelRotation()));
+                }
+                else if (getParent() != null)
+                {
+                    // Let the scroll pane have it.
+                    getParent().dispatchEvent(SwingUtilities.convertMouseEvent(BoardView.this, e, getParent()));
+                }
+            }
+        });
+    }
+
+    public double getZoom()
+    {
+        return this.zoom;
+    }
+
+    /** Change how big the spots are drawn.
+     * @param zoom 1.0 is actual size; clamped to kMinZoom - kMaxZoom
+     */
+    public void setZoom(double zoom)
+    {
+        this.zoom = Math.max(kMinZoom, Math.min(kMaxZoom, zoom));
+        this.tileWidth = Math.max(1, (int)Math.round(this.pieceWidth * this.zoom));
+        this.tileHeight = Math.max(1, (int)Math.round(this.pieceHeight * this.zoom));
+        this.numberFont = null;
+        revalidate();
+        repaint();
+    }
+
+    public Dimension getPreferredSize()
+    {
+        return new Dimension(this.engine.getWidth() * this.tileWidth,
+                             this.engine.getHeight() * this.tileHeight);
+    }
+
+    /** Which row of the board a point is on.
+     * @return the row, or -1 if the point is off the board
+     */
+    public int rowAtPoint(Point point)
+    {
+        int row = point.y / this.tileHeight;
+        return (point.y < 0 || row >= this.engine.getHeight()) ? -1 : row;
+    }
+
+    /** Which column of the board a point is on.
+     * @return the column, or -1 if the point is off the board
+     */
+    public int columnAtPoint(Point point)
+    {
+        int column = point.x / this.tileWidth;
+        return (point.x < 0 || column >= this.engine.getWidth()) ? -1 : column;
+    }
+
+    /** Where a spot is drawn. */
+    public Rectangle getTileRect(int row, int column)
+    {
+        return new Rectangle(column * this.tileWidth, row * this.tileHeight, this.tileWidth, this.tileHeight);
+    }
+
+    /** Point out a spot (scrolling to it), or stop pointing with -1, -1. */
+    public void setHint(int row, int column)
+    {
+        if (row == this.hintRow && column == this.hintColumn)
+        {
+            return;
+        }
+        if (this.hintRow >= 0)
+        {
+            repaint(getTileRect(this.hintRow, this.hintColumn));
+        }
+        this.hintRow = row;
+        this.hintColumn = column;
+        if (row >= 0)
+        {
+            Rectangle rect = getTileRect(row, column);
+            scrollRectToVisible(rect);
+            repaint(rect);
+        }
+    }
+
+    protected void paintComponent(Graphics g)
+    {
+        long start = KaboomMetrics.now();
+        Rectangle clip = g.getClipBounds();
+        if (clip == null)
+        {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+
+        // Only bother with the spots that overlap the clip.
+        int firstRow = Math.max(0, clip.y / this.tileHeight);
+        int lastRow = Math.min(this.engine.getHeight() - 1, (clip.y + clip.height - 1) / this.tileHeight);
+        int firstColumn = Math.max(0, clip.x / this.tileWidth);
+        int lastColumn = Math.min(this.engine.getWidth() - 1, (clip.x + clip.width - 1) / this.tileWidth);
+
+        paintBackground(g, clip);
+
+        if (this.numberFont == null)
+        {
+            this.numberFont = getFont().deriveFont(Font.BOLD, (float)(getFont().getSize2D() * this.zoom));
+        }
+        g.setFont(this.numberFont);
+        g.setColor(Color.WHITE);
+        FontMetrics metrics = g.getFontMetrics();
+
+        for (int row = firstRow; row <= lastRow; row++)
+        {
+            int y = row * this.tileHeight;
+            for (int column = firstColumn; column <= lastColumn; column++)
+            {
+                int x = column * this.tileWidth;
+                Piece status = this.engine.getStatus(row, column);
+                // Only revealed spots show their number.
+                int numSurroundingBombs = 0;
+                if (status == Piece.empty)
+                {
+                    numSurroundingBombs = this.engine.calculateSurroundingBombs(row, column);
+                }
+
+                RenderDescriptor descriptor = Tile.valueOf(status, numSurroundingBombs).getRenderDescriptor();
+                if (descriptor.isImage)
+                {
+                    ImageIcon image = this.pieceImages[status.ordinal()];
+                    if (image != null)
+                    {
+                        g.drawImage(image.getImage(), x, y, this.tileWidth, this.tileHeight, null);
+                    }
+                }
+                else if (descriptor.text.length() > 0)
+                {
+                    g.drawString(descriptor.text,
+                                 x + (this.tileWidth - metrics.stringWidth(descriptor.text)) / 2,
+                                 y + (this.tileHeight - metrics.getHeight()) / 2 + metrics.getAscent());
+                }
+            }
+        }
+
+        if (this.hintRow >= firstRow && this.hintRow <= lastRow
+            && this.hintColumn >= firstColumn && this.hintColumn <= lastColumn)
+        {
+            g.setColor(Color.YELLOW);
+            Rectangle rect = getTileRect(this.hintRow, this.hintColumn);
+            g.drawRect(rect.x, rect.y, rect.width - 1, rect.height - 1);
+            g.drawRect(rect.x + 1, rect.y + 1, rect.width - 3, rect.height - 3);
+        }
+        KaboomMetrics.painted(start, (lastRow - firstRow + 1) * (lastColumn - firstColumn + 1));
+    }
+
+    /** Tile the background image over the clip, so revealed spots show it. */
+    private void paintBackground(Graphics g, Rectangle clip)
+    {
+        if (this.background == null)
+        {
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+            return;
+        }
+
+        int imageWidth = Math.max(1, (int)Math.round(this.background.getWidth(null) * this.zoom));
+        int imageHeight = Math.max(1, (int)Math.round(this.background.getHeight(null) * this.zoom));
+        for (int y = clip.y - clip.y % imageHeight; y < clip.y + clip.height; y += imageHeight)
+        {
+            for (int x = clip.x - clip.x % imageWidth; x < clip.x + clip.width; x += imageWidth)
+            {
+                g.drawImage(this.background, x, y, imageWidth, imageHeight, null);
+            }
+        }
+    }
+
+    /** The smallest rectangle covering every spot the last move changed.
+     * @return the rectangle, or an empty one if nothing changed
+     */
+    public Rectangle getChangedBounds()
+    {
+        int width = this.engine.getWidth();
+        int top = Integer.MAX_VALUE;
+        int bottom = -1;
+        int left = Integer.MAX_VALUE;
+        int right = -1;
+        for (int run = 0; run < this.engine.getChangedRunCount(); run++)
+        {
+            int first = this.engine.getChangedRunStart(run);
+            int last = first + this.engine.getChangedRunLength(run) - 1;
+            top = Math.min(top, first / width);
+            bottom = Math.max(bottom, last / width);
+            if (first / width == last / width)
+            {
+                left = Math.min(left, first % width);
+                right = Math.max(right, last % width);
+            }
+            else
+            {
+                // Runs that wrap onto another row cover the full width.
+                left = 0;
+                right = width - 1;
+            }
+        }
+
+        if (bottom < 0)
+        {
+            return new Rectangle();
+        }
+        return new Rectangle(left * this.tileWidth, top * this.tileHeight,
+                             (right - left + 1) * this.tileWidth, (bottom - top + 1) * this.tileHeight);
+    }
+
+    /** Repaint just the spots the engine says changed on the last move.
+     * A big flood fill can change thousands of runs, so they're all lumped
+     * into one rectangle rather than repainted one at a time.  Anything
+     * that's scrolled out of view doesn't get painted at all.
+     */
+    public void repaintChanges()
+    {
+        Rectangle bounds = getChangedBounds();
+        if (!bounds.isEmpty())
+        {
+            repaint(bounds);
+        }
+    }
+
+    public Dimension getPreferredScrollableViewportSize()
+    {
+        return new Dimension(Math.min(this.engine.getWidth(), kMaxVisibleColumns) * this.tileWidth,
+                             Math.min(this.engine.getHeight(), kMaxVisibleRows) * this.tileHeight);
+    }
+
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction)
+    {
+        return orientation == SwingConstants.HORIZONTAL ? this.tileWidth : this.tileHeight;
+    }
+
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction)
+    {
+        // A page at a time, keeping one spot of overlap.
+        if (orientation == SwingConstants.HORIZONTAL)
+        {
+            return Math.max(this.tileWidth, visibleRect.width - this.tileWidth);
+        }
+        return Math.max(this.tileHeight, visibleRect.height - this.tileHeight);
+    }
+
+    public boolean getScrollableTracksViewportWidth()
+    {
+        return false;
+    }
+
+    public boolean getScrollableTracksViewportHeight()
+    {
+        return false;
+    }
+}
@@ -0,0 +1,649 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.SplittableRandom;
+
+/**
+ * EndlessBoard is a board with no edges: it goes on as far as the player
+ * cares to explore, in every direction.
+ *
+ * The board is cut into 64x64 chunks, and a chunk only exists once
+ * somebody looks at it.  Its bombs are dealt from the game number and the
+ * chunk's coordinates alone, so the same game always has the same bombs in
+ * the same places, whatever order the chunks get made in.  Each chunk keeps
+ * its bombs as one long per row, plus a byte per spot of neighbouring-bomb
+ * counts and a byte per spot of status, like KaboomEngine does.
+ *
+ * Only the most recently used <code>maxChunks</code> chunks are kept in
+ * memory.  When another one is needed, the least recently used chunk is
+ * dropped; if the player has changed anything in it, its statuses are
+ * written to a file in the spill directory first, and read back when the
+ * chunk comes back.  Bombs and counts are never written, since they can
+ * always be dealt again.  So memory stays the same however far the player
+ * goes; only the spill directory grows, by 4K for every chunk played in.
+ *
+ * Openings are revealed with the same scanline fill as KaboomEngine, on
+ * board coordinates rather than chunk coordinates, so they run across
+ * chunk edges as if they weren't there.  With fewer than about one bomb in
+ * ten spots, an opening could go on forever, so that's as sparse as the
+ * board is allowed to be.
+ *
+ * Not thread-safe.
+ */
+public final class EndlessBoard
+{
+    public static final int kChunkShift = 6;
+    /** Chunks are this many spots on a side. */
+    public static final int kChunkSize = 1 << kChunkShift;
+    public static final int kChunkCells = kChunkSize * kChunkSize;
+    /** Fewest bombs a chunk can have, so openings always end. */
+    public static final int kMinBombsPerChunk = kChunkCells / 10;
+    /** Expert density, a bit over 20%. */
+    public static final int kDefaultBombsPerChunk = kChunkCells * 206 / 1000;
+    /** About 2.2M worth of chunks. */
+    public static final int kDefaultMaxChunks = 256;
+
+    private static final long kSeedSalt = 0xBB67AE8584CAA73BL;
+    private static final int kChunkMask = kChunkSize - 1;
+
+    private static final Piece[] kPieces = Piece.values();
+    private static final byte kEmpty = (byte)Piece.empty.ordinal();
+    private static final byte kExploded = (byte)Piece.exploded.ordinal();
+    private static final byte kHidden = (byte)Piece.hidden.ordinal();
+    private static final byte kFlagged = (byte)Piece.flagged.ordinal();
+
+    private final int bombsPerChunk;
+    private final int maxChunks;
+    private final File spillDirectory;
+
+    /* The chunks in memory, least recently used first */
+    private final LinkedHashMap<Long, Chunk> chunks;
+    // The last chunk looked up, since neighbouring spots are usually in it.
+    private Chunk lastChunk = null;
+
+    /* Scratch space for counting bombs at chunk edges */
+    private final long[][] nearbyBombs = new long[9][kChunkSize];
+    private final byte[][] unpacked = new byte[kChunkSize + 2][kChunkSize + 2];
+    private final byte[][] sums = new byte[kChunkSize + 2][kChunkSize];
+
+    /* Scratch space for revealEmptyCells, as (row, column) pairs */
+    private int[] seeds = new int[128];
+    private int seedCount = 0;
+
+    private int gameNumber = 1;
+    private int moves = 0;
+    private int flagsPlaced = 0;
+    private long revealedCells = 0;
+    private boolean lost = false;
+
+    private long chunksDealt = 0;
+    private long chunksSpilled = 0;
+    private long chunksLoaded = 0;
+
+    /** One 64x64 piece of the board. */
+    private static final class Chunk
+    {
+        final int chunkRow;
+        final int chunkColumn;
+        final long[] bombs = new long[kChunkSize];
+        final byte[] surroundingBombs = new byte[kChunkCells];
+        final byte[] status = new byte[kChunkCells];
+        // Changed since it was dealt or last spilled?
+        boolean modified = false;
+
+        Chunk(int chunkRow, int chunkColumn)
+        {
+            this.chunkRow = chunkRow;
+            this.chunkColumn = chunkColumn;
+        }
+    }
+
+    /** An endless board at expert density, keeping up to kDefaultMaxChunks
+     * chunks in memory.
+     * @param spillDirectory where to keep chunks that don't fit in memory
+     */
+    public EndlessBoard(File spillDirectory)
+    {
+        this(kDefaultBombsPerChunk, kDefaultMaxChunks, spillDirectory);
+    }
+
+    /**
+     * @param bombsPerChunk exact number of bombs in each 64x64 chunk,
+     *        kMinBombsPerChunk - kChunkCells
+     * @param maxChunks how many chunks to keep in memory, at least one
+     * @param spillDirectory where to keep chunks that don't fit in memory;
+     *        made if it isn't there
+     * Call <code>restartGame</code> before playing, to clear out anything
+     * spilled by an earlier game.
+     */
+    public EndlessBoard(int bombsPerChunk, int maxChunks, File spillDirectory)
+    {
+        if (bombsPerChunk < kMinBombsPerChunk || bombsPerChunk > kChunkCells)
+        {
+            throw new IllegalArgumentException("A chunk needs between " + kMinBombsPerChunk + " and " + kChunkCells
+                                               + " bombs.");
+        }
+        if (maxChunks < 1)
+        {
+            throw new IllegalArgumentException("There has to be room for at least one chunk.");
+        }
+        if (!spillDirectory.isDirectory() && !spillDirectory.mkdirs())
+        {
+            throw new IllegalArgumentException("Can't make the spill directory " + spillDirectory + ".");
+        }
+        this.bombsPerChunk = bombsPerChunk;
+        this.maxChunks = maxChunks;
+        this.spillDirectory = spillDirectory;
+        this.chunks = new LinkedHashMap<Long, Chunk>(Math.min(maxChunks, 1 << 16) * 4 / 3 + 1, 0.75f, true);
+    }
+
+    public int getGameNumber()
+    {
+        return this.gameNumber;
+    }
+
+    /** Pick the game to play.  Doesn't take effect until the next restart.
+     * @param gameNumber the seed for bomb placement; any number will do
+     */
+    public void setGameNumber(int gameNumber)
+    {
+        this.gameNumber = gameNumber;
+    }
+
+    public int getBombsPerChunk()
+    {
+        return this.bombsPerChunk;
+    }
+
+    public int getMaxChunks()
+    {
+        return this.maxChunks;
+    }
+
+    public int getMoves()
+    {
+        return this.moves;
+    }
+
+    public int getFlagsPlaced()
+    {
+        return this.flagsPlaced;
+    }
+
+    /** How many safe spots have been revealed; the endless game's score. */
+    public long getRevealedCells()
+    {
+        return this.revealedCells;
+    }
+
+    /** Has the player clicked on a bomb?  Nothing changes after that. */
+    public boolean isLost()
+    {
+        return this.lost;
+    }
+
+    /** How many chunks are in memory right now. */
+    public int getCachedChunks()
+    {
+        return this.chunks.size();
+    }
+
+    /** How many chunks have been dealt since the restart (including dealt again). */
+    public long getChunksDealt()
+    {
+        return this.chunksDealt;
+    }
+
+    /** How many chunks have been written to the spill directory. */
+    public long getChunksSpilled()
+    {
+        return this.chunksSpilled;
+    }
+
+    /** How many chunks have been read back from the spill directory. */
+    public long getChunksLoaded()
+    {
+        return this.chunksLoaded;
+    }
+
+    /** Start the current game number over, forgetting every chunk. */
+    public void restartGame() throws IOException
+    {
+        this.chunks.clear();
+        this.lastChunk = null;
+        File[] spilled = this.spillDirectory.listFiles();
+        if (spilled != null)
+        {
+            for (File file : spilled)
+            {
+                if (file.getName().endsWith(".chunk") && !file.delete())
+                {
+                    throw new IOException("Can't delete " + file + ".");
+                }
+            }
+        }
+        this.moves = 0;
+        this.flagsPlaced = 0;
+        this.revealedCells = 0;
+        this.lost = false;
+        this.chunksDealt = 0;
+        this.chunksSpilled = 0;
+        this.chunksLoaded = 0;
+    }
+
+    /** Is there a bomb at this spot? */
+    public boolean isBomb(int row, int column) throws IOException
+    {
+        Chunk chunk = chunkAt(row, column);
+        return (chunk.bombs[row & kChunkMask] & (1L << column)) != 0;
+    }
+
+    /** What the player currently sees at this spot. */
+    public Piece getStatus(int row, int column) throws IOException
+    {
+        return kPieces[chunkAt(row, column).status[cellIndex(row, column)]];
+    }
+
+    /**
+     * How many bombs are adjacent to a spot.
+     *
+     * Don't call this on a spot that has a bomb.
+     */
+    public int calculateSurroundingBombs(int row, int column) throws IOException
+    {
+        if (isBomb(row, column))
+        {
+            throw new IllegalArgumentException("You should never be calculating nearby bombs for a bomb spot!");
+        }
+        return chunkAt(row, column).surroundingBombs[cellIndex(row, column)];
+    }
+
+    /** Handle a left click on a spot.
+     * @return lost if the click (or an earlier one) hit a bomb; the board
+     *         is never won
+     */
+    public KaboomEngine.ClickResult clickTile(int row, int column) throws IOException
+    {
+        if (this.lost)
+        {
+            return KaboomEngine.ClickResult.lost;
+        }
+        this.moves++;
+        if (isBomb(row, column))
+        {
+            setStatus(row, column, kExploded);
+            this.lost = true;
+            return KaboomEngine.ClickResult.lost;
+        }
+        revealEmptyCells(row, column);
+        return KaboomEngine.ClickResult.played;
+    }
+
+    /** Handle a right click on a spot, toggling its flag. */
+    public void rightClickTile(int row, int column) throws IOException
+    {
+        if (this.lost)
+        {
+            return;
+        }
+        byte status = statusAt(row, column);
+        if (status == kHidden)
+        {
+            setStatus(row, column, kFlagged);
+            this.flagsPlaced++;
+        }
+        else if (status == kFlagged)
+        {
+            setStatus(row, column, kHidden);
+            this.flagsPlaced--;
+        }
+    }
+
+    /**
+     * Reveal a spot and, if it has no bombs around it, everything connected
+     * to it up to (and including) the numbered spots that border the opening.
+     * The same scanline fill as KaboomEngine's, except that rows have no
+     * ends: runs stop only at numbered or already-revealed spots.
+     */
+    private void revealEmptyCells(int row, int column) throws IOException
+    {
+        if (countAt(row, column) != 0)
+        {
+            revealCell(row, column);
+            return;
+        }
+
+        this.seedCount = 0;
+        pushSeed(row, column);
+        while (this.seedCount > 0)
+        {
+            this.seedCount--;
+            int seedRow = this.seeds[2 * this.seedCount];
+            int seedColumn = this.seeds[2 * this.seedCount + 1];
+            // Somebody else's run may have swallowed this one already.
+            if (!isHidden(seedRow, seedColumn))
+            {
+                continue;
+            }
+
+            int left = seedColumn;
+            while (isHidden(seedRow, left - 1) && countAt(seedRow, left - 1) == 0)
+            {
+                left--;
+            }
+            int right = seedColumn;
+            while (isHidden(seedRow, right + 1) && countAt(seedRow, right + 1) == 0)
+            {
+                right++;
+            }
+            for (int spot = left; spot <= right; spot++)
+            {
+                revealCell(seedRow, spot);
+            }
+
+            // Everything touching the run gets revealed too, including the
+            // spots at either end of it.
+            revealCell(seedRow, left - 1);
+            revealCell(seedRow, right + 1);
+            revealAlongRow(seedRow - 1, left - 1, right + 1);
+            revealAlongRow(seedRow + 1, left - 1, right + 1);
+        }
+    }
+
+    /**
+     * Reveal the hidden numbered spots between two columns of a row, and
+     * push a seed for each run of hidden zeros.  None of these can be
+     * bombs, since they all touch a zero.
+     */
+    private void revealAlongRow(int row, int from, int to) throws IOException
+    {
+        boolean inRun = false;
+        for (int column = from; column <= to; column++)
+        {
+            if (!isHidden(row, column))
+            {
+                inRun = false;
+            }
+            else if (countAt(row, column) != 0)
+            {
+                revealCell(row, column);
+                inRun = false;
+            }
+            else if (!inRun)
+            {
+                pushSeed(row, column);
+                inRun = true;
+            }
+        }
+    }
+
+    /** Reveal a safe spot, if it isn't already. */
+    private void revealCell(int row, int column) throws IOException
+    {
+        if (isHidden(row, column))
+        {
+            setStatus(row, column, kEmpty);
+            this.revealedCells++;
+        }
+    }
+
+    /** Hidden as far as revealing goes, that is; flags get revealed too. */
+    private boolean isHidden(int row, int column) throws IOException
+    {
+        byte status = statusAt(row, column);
+        return status == kHidden || status == kFlagged;
+    }
+
+    private void pushSeed(int row, int column)
+    {
+        if (2 * this.seedCount == this.seeds.length)
+        {
+            this.seeds = Arrays.copyOf(this.seeds, this.seeds.length * 2);
+        }
+        this.seeds[2 * this.seedCount] = row;
+        this.seeds[2 * this.seedCount + 1] = column;
+        this.seedCount++;
+    }
+
+    // Every lookup goes through chunkAt, rather than hanging on to a chunk,
+    // since any lookup can push an older chunk out of memory.
+
+    private byte statusAt(int row, int column) throws IOException
+    {
+        return chunkAt(row, column).status[cellIndex(row, column)];
+    }
+
+    private byte countAt(int row, int column) throws IOException
+    {
+        return chunkAt(row, column).surroundingBombs[cellIndex(row, column)];
+    }
+
+    private void setStatus(int row, int column, byte status) throws IOException
+    {
+        Chunk chunk = chunkAt(row, column);
+        chunk.status[cellIndex(row, column)] = status;
+        chunk.modified = true;
+    }
+
+    private static int cellIndex(int row, int column)
+    {
+        return (row & kChunkMask) << kChunkShift | (column & kChunkMask);
+    }
+
+    private static long chunkKey(int chunkRow, int chunkColumn)
+    {
+        return (long)chunkRow << 32 | (chunkColumn & 0xFFFFFFFFL);
+    }
+
+    /** The chunk a spot is in, dealing it or reading it back if need be. */
+    private Chunk chunkAt(int row, int column) throws IOException
+    {
+        int chunkRow = row >> kChunkShift;
+        int chunkColumn = column >> kChunkShift;
+        Chunk chunk = this.lastChunk;
+        if (chunk != null && chunk.chunkRow == chunkRow && chunk.chunkColumn == chunkColumn)
+        {
+            return chunk;
+        }
+
+        Long key = chunkKey(chunkRow, chunkColumn);
+        chunk = this.chunks.get(key);
+        if (chunk == null)
+        {
+            // Make room first, so there are never more than maxChunks.
+            if (this.chunks.size() >= this.maxChunks)
+            {
+                evictEldest();
+            }
+            chunk = dealChunk(chunkRow, chunkColumn);
+            readSpilled(chunk);
+            this.chunks.put(key, chunk);
+        }
+        this.lastChunk = chunk;
+        return chunk;
+    }
+
+    private void evictEldest() throws IOException
+    {
+        Iterator<Chunk> eldest = this.chunks.values().iterator();
+        Chunk chunk = eldest.next();
+        if (chunk.modified)
+        {
+            spill(chunk);
+        }
+        eldest.remove();
+        if (chunk == this.lastChunk)
+        {
+            this.lastChunk = null;
+        }
+    }
+
+    private File spillFile(int chunkRow, int chunkColumn)
+    {
+        return new File(this.spillDirectory, chunkRow + "_" + chunkColumn + ".chunk");
+    }
+
+    private void spill(Chunk chunk) throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(spillFile(chunk.chunkRow, chunk.chunkColumn));
+        try
+        {
+            out.write(chunk.status);
+        }
+        finally
+        {
+            out.close();
+        }
+        chunk.modified = false;
+        this.chunksSpilled++;
+    }
+
+    /** Bring back a chunk's statuses, if it was ever spilled. */
+    private void readSpilled(Chunk chunk) throws IOException
+    {
+        File file = spillFile(chunk.chunkRow, chunk.chunkColumn);
+        if (!file.exists())
+        {
+            return;
+        }
+        FileInputStream in = new FileInputStream(file);
+        try
+        {
+            int read = 0;
+            while (read < kChunkCells)
+            {
+                int got = in.read(chunk.status, read, kChunkCells - read);
+                if (got < 0)
+                {
+                    throw new IOException(file + " is cut short.");
+                }
+                read += got;
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        this.chunksLoaded++;
+    }
+
+    /** Make a fresh chunk: bombs, counts, and every spot hidden. */
+    private Chunk dealChunk(int chunkRow, int chunkColumn)
+    {
+        Chunk chunk = new Chunk(chunkRow, chunkColumn);
+        dealBombs(chunkRow, chunkColumn, chunk.bombs);
+        Arrays.fill(chunk.status, kHidden);
+
+        // The counts along the edges need the bombs in the chunks around
+        // this one.  Those are quick to deal again if they're not in memory.
+        for (int i = 0; i < 9; i++)
+        {
+            int aroundRow = chunkRow + i / 3 - 1;
+            int aroundColumn = chunkColumn + i % 3 - 1;
+            if (i == 4)
+            {
+                System.arraycopy(chunk.bombs, 0, this.nearbyBombs[i], 0, kChunkSize);
+                continue;
+            }
+            Chunk around = peekChunk(aroundRow, aroundColumn);
+            if (around != null)
+            {
+                System.arraycopy(around.bombs, 0, this.nearbyBombs[i], 0, kChunkSize);
+            }
+            else
+            {
+                dealBombs(aroundRow, aroundColumn, this.nearbyBombs[i]);
+            }
+        }
+        countSurroundingBombs(chunk.surroundingBombs);
+        this.chunksDealt++;
+        return chunk;
+    }
+
+    private Chunk peekChunk(int chunkRow, int chunkColumn)
+    {
+        // This counts as using the chunk, but it's right next to where the
+        // player is, so it ought to stay in memory anyway.
+        return this.chunks.get(chunkKey(chunkRow, chunkColumn));
+    }
+
+    /**
+     * Deal one chunk's bombs, exactly <code>bombsPerChunk</code> of them,
+     * from the game number and the chunk's coordinates.  Past half full,
+     * the safe spots get dealt instead and flipped.
+     */
+    private void dealBombs(int chunkRow, int chunkColumn, long[] bombs)
+    {
+        SplittableRandom random = new SplittableRandom(
+            ((long)this.gameNumber * 0x9E3779B97F4A7C15L + chunkKey(chunkRow, chunkColumn)) ^ kSeedSalt);
+        boolean dealSafeCells = this.bombsPerChunk > kChunkCells / 2;
+        int wanted = dealSafeCells ? kChunkCells - this.bombsPerChunk : this.bombsPerChunk;
+        Arrays.fill(bombs, 0L);
+        int picked = 0;
+        while (picked < wanted)
+        {
+            int cell = random.nextInt(kChunkCells);
+            long bit = 1L << cell;
+            if ((bombs[cell >>> kChunkShift] & bit) == 0)
+            {
+                bombs[cell >>> kChunkShift] |= bit;
+                picked++;
+            }
+        }
+        if (dealSafeCells)
+        {
+            for (int row = 0; row < kChunkSize; row++)
+            {
+                bombs[row] = ~bombs[row];
+            }
+        }
+    }
+
+    /**
+     * Count the bombs around every spot in the middle chunk of
+     * <code>nearbyBombs</code>, with the same sliding sums as KaboomEngine:
+     * unpack the chunk and a one-spot border into bytes, sum each row with
+     * its left and right neighbours, then add up three row sums.
+     */
+    private void countSurroundingBombs(byte[] counts)
+    {
+        long[][] around = this.nearbyBombs;
+        for (int row = -1; row <= kChunkSize; row++)
+        {
+            // Which row of chunks, and which row within it.
+            int band = row < 0 ? 0 : row < kChunkSize ? 1 : 2;
+            int chunkRow = row & kChunkMask;
+            byte[] unpackedRow = this.unpacked[row + 1];
+            long word = around[3 * band + 1][chunkRow];
+            for (int column = 0; column < kChunkSize; column++)
+            {
+                unpackedRow[column + 1] = (byte)((word >>> column) & 1);
+            }
+            unpackedRow[0] = (byte)(around[3 * band][chunkRow] >>> (kChunkSize - 1));
+            unpackedRow[kChunkSize + 1] = (byte)(around[3 * band + 2][chunkRow] & 1);
+
+            byte[] sumRow = this.sums[row + 1];
+            for (int column = 0; column < kChunkSize; column++)
+            {
+                sumRow[column] = (byte)(unpackedRow[column] + unpackedRow[column + 1] + unpackedRow[column + 2]);
+            }
+        }
+
+        for (int row = 0; row < kChunkSize; row++)
+        {
+            byte[] above = this.sums[row];
+            byte[] here = this.sums[row + 1];
+            byte[] below = this.sums[row + 2];
+            byte[] self = this.unpacked[row + 1];
+            int rowStart = row << kChunkShift;
+            for (int column = 0; column < kChunkSize; column++)
+            {
+                counts[rowStart + column] = (byte)(above[column] + here[column] + below[column] - self[column + 1]);
+            }
+        }
+    }
+}
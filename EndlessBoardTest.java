@@ -0,0 +1,167 @@
+import junit.framework.TestCase;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Tests for EndlessBoard: chunks dropped from memory and read back should
+ * play exactly as if they'd been kept, and the bombs should be the same
+ * whichever order the chunks get dealt in.
+ */
+public class EndlessBoardTest extends TestCase
+{
+    private static final File kSpillA = new File("Mines/EndlessBoardTest.a");
+    private static final File kSpillB = new File("Mines/EndlessBoardTest.b");
+    // Play in a square this far from the middle, over several chunks each way.
+    private static final int kReach = 150;
+
+    private static void delete(File directory) throws IOException
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    // Counts run across chunk edges as if they weren't there.
+    public void testCountsAcrossChunks() throws IOException
+    {
+        EndlessBoard board = new EndlessBoard(kSpillA);
+        board.setGameNumber(3);
+        board.restartGame();
+        for (int row = -70; row <= 70; row++)
+        {
+            for (int column = -70; column <= 70; column++)
+            {
+                if (board.isBomb(row, column))
+                {
+                    continue;
+                }
+                int count = 0;
+                for (int r = row - 1; r <= row + 1; r++)
+                {
+                    for (int c = column - 1; c <= column + 1; c++)
+                    {
+                        count += board.isBomb(r, c) ? 1 : 0;
+                    }
+                }
+                assertEquals(row + ", " + column, count, board.calculateSurroundingBombs(row, column));
+            }
+        }
+        delete(kSpillA);
+    }
+
+    public void testSameBombsInAnyOrder() throws IOException
+    {
+        EndlessBoard forwards = new EndlessBoard(EndlessBoard.kDefaultBombsPerChunk, 1, kSpillA);
+        EndlessBoard backwards = new EndlessBoard(EndlessBoard.kDefaultBombsPerChunk, 1000, kSpillB);
+        forwards.setGameNumber(9);
+        forwards.restartGame();
+        backwards.setGameNumber(9);
+        backwards.restartGame();
+        // Deal the chunks in opposite orders, one with only one chunk kept
+        // at a time, so every chunk is dealt many times over.
+        for (int row = -kReach; row <= kReach; row += 7)
+        {
+            for (int column = -kReach; column <= kReach; column += 3)
+            {
+                forwards.isBomb(row, column);
+            }
+        }
+        for (int row = kReach; row >= -kReach; row--)
+        {
+            for (int column = kReach; column >= -kReach; column -= 5)
+            {
+                backwards.isBomb(row, column);
+            }
+        }
+        int bombs = 0;
+        for (int row = -kReach; row <= kReach; row++)
+        {
+            for (int column = -kReach; column <= kReach; column++)
+            {
+                assertEquals(row + ", " + column, backwards.isBomb(row, column), forwards.isBomb(row, column));
+                bombs += forwards.isBomb(row, column) ? 1 : 0;
+            }
+        }
+        // Expert density, give or take the part chunks at the edges.
+        double density = (double)bombs / ((2 * kReach + 1) * (2 * kReach + 1));
+        assertTrue("Density " + density, density > 0.18 && density < 0.23);
+        delete(kSpillA);
+        delete(kSpillB);
+    }
+
+    // A board that keeps two chunks in memory, spilling the rest, should
+    // play exactly like one that keeps them all.
+    public void testSpilledChunksComeBack() throws IOException
+    {
+        EndlessBoard small = new EndlessBoard(EndlessBoard.kDefaultBombsPerChunk, 2, kSpillA);
+        EndlessBoard large = new EndlessBoard(EndlessBoard.kDefaultBombsPerChunk, 1000, kSpillB);
+        Random random = new Random(17);
+        for (int game = 1; game <= 3; game++)
+        {
+            small.setGameNumber(game);
+            small.restartGame();
+            large.setGameNumber(game);
+            large.restartGame();
+            for (int move = 0; move < 2000; move++)
+            {
+                int row = random.nextInt(2 * kReach + 1) - kReach;
+                int column = random.nextInt(2 * kReach + 1) - kReach;
+                if (random.nextInt(4) == 0)
+                {
+                    small.rightClickTile(row, column);
+                    large.rightClickTile(row, column);
+                }
+                // Steer clear of the bombs, so the game goes on.
+                else if (!large.isBomb(row, column))
+                {
+                    assertEquals(large.clickTile(row, column), small.clickTile(row, column));
+                }
+            }
+            assertTrue(small.getChunksSpilled() > 0);
+            assertTrue(small.getChunksLoaded() > 0);
+            assertTrue(small.getCachedChunks() <= 2);
+            assertEquals(large.getMoves(), small.getMoves());
+            assertEquals(large.getFlagsPlaced(), small.getFlagsPlaced());
+            assertEquals(large.getRevealedCells(), small.getRevealedCells());
+            assertFalse(small.isLost());
+            for (int row = -kReach; row <= kReach; row++)
+            {
+                for (int column = -kReach; column <= kReach; column++)
+                {
+                    assertEquals("game " + game + " at " + row + ", " + column, large.getStatus(row, column),
+                                 small.getStatus(row, column));
+                }
+            }
+        }
+        delete(kSpillA);
+        delete(kSpillB);
+    }
+
+    public void testNothingChangesAfterALoss() throws IOException
+    {
+        EndlessBoard board = new EndlessBoard(kSpillA);
+        board.setGameNumber(4);
+        board.restartGame();
+        int column = 0;
+        while (!board.isBomb(0, column))
+        {
+            column++;
+        }
+        assertEquals(KaboomEngine.ClickResult.lost, board.clickTile(0, column));
+        assertEquals(Piece.exploded, board.getStatus(0, column));
+        int moves = board.getMoves();
+        assertEquals(KaboomEngine.ClickResult.lost, board.clickTile(5, 5));
+        board.rightClickTile(6, 6);
+        assertEquals(moves, board.getMoves());
+        assertEquals(0, board.getFlagsPlaced());
+        assertEquals(Piece.hidden, board.getStatus(6, 6));
+        delete(kSpillA);
+    }
+}
@@ -0,0 +1,244 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * GameFeed lets any number of spectators watch one game without slowing
+ * down the player.
+ *
+ * Whoever plays the game (one thread at a time, such as Swing's) tells the
+ * feed about each move, restart and clock tick, and it puts an Event for
+ * each into a ring of the last <code>capacity</code> events.  Publishing
+ * never waits on spectators: it writes the slot and bumps a volatile count,
+ * nothing more.
+ *
+ * Each Spectator reads the ring at its own pace and keeps its own copy of
+ * the board up to date from the events' BoardStream frames.  A spectator
+ * that falls a whole ring behind has missed events it can't get back, so
+ * it skips ahead to the latest keyframe instead.  The feed sends a keyframe
+ * at least every half a ring of events, so there's always one newer than
+ * anything a lapped spectator missed.
+ */
+public final class GameFeed
+{
+    /** A move: a click, flag or cheat, with the frame of what it changed. */
+    public static final int kMove = 0;
+    /** A new or restarted game, with a keyframe of the whole board. */
+    public static final int kStart = 1;
+    /** The clock ticked over another second. */
+    public static final int kTick = 2;
+    /** The last move won the game. */
+    public static final int kWon = 3;
+    /** The last move lost the game. */
+    public static final int kLost = 4;
+
+    public static final int kDefaultCapacity = 1024;
+
+    /** Something that happened in the game.  Events never change. */
+    public static final class Event
+    {
+        private final long number;
+        private final int kind;
+        private final int seconds;
+        private final byte[] frame;
+
+        Event(long number, int kind, int seconds, byte[] frame)
+        {
+            this.number = number;
+            this.kind = kind;
+            this.seconds = seconds;
+            this.frame = frame;
+        }
+
+        /** Where this event comes in the feed, counting from 0. */
+        public long getNumber()
+        {
+            return this.number;
+        }
+
+        /** kMove, kStart, kTick, kWon or kLost. */
+        public int getKind()
+        {
+            return this.kind;
+        }
+
+        /** The game's clock when this happened. */
+        public int getSeconds()
+        {
+            return this.seconds;
+        }
+
+        /** The BoardStream frame for this event, or null if the board
+         * didn't change.  Don't modify it; every spectator shares it.
+         */
+        public byte[] getFrame()
+        {
+            return this.frame;
+        }
+
+        public boolean isKeyframe()
+        {
+            return this.frame != null && BoardStream.isKeyframe(this.frame);
+        }
+    }
+
+    private final KaboomEngine engine;
+    private final BoardStream stream;
+    private final AtomicReferenceArray<Event> ring;
+    private final int mask;
+
+    // The last event published, and the last keyframe; written only by the
+    // player's thread, read by any number of spectators.
+    private volatile long published = -1;
+    private volatile Event keyframe;
+
+    /** Start a feed of a game with room for kDefaultCapacity events. */
+    public GameFeed(KaboomEngine engine)
+    {
+        this(engine, kDefaultCapacity);
+    }
+
+    /**
+     * Start a feed of a game, beginning with a keyframe of its board.
+     * @param capacity how many events spectators can fall behind before
+     *        they skip, a power of two, at least 2
+     */
+    public GameFeed(KaboomEngine engine, int capacity)
+    {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1)
+        {
+            throw new IllegalArgumentException("The capacity must be a power of two, at least 2.");
+        }
+        this.engine = engine;
+        this.stream = new BoardStream(engine);
+        this.ring = new AtomicReferenceArray<Event>(capacity);
+        this.mask = capacity - 1;
+        publish(kStart, this.stream.keyframe());
+    }
+
+    /** How many events have been published. */
+    public long getEventCount()
+    {
+        return this.published + 1;
+    }
+
+    /** Publish a click, flag or cheat, and the win or loss if it ended the game. */
+    public void moved(KaboomEngine.ClickResult result)
+    {
+        // Make sure a lapped spectator always has a keyframe to skip to.
+        if (this.published + 1 - this.keyframe.getNumber() >= (this.mask + 1) / 2)
+        {
+            publish(kMove, this.stream.keyframe());
+        }
+        else
+        {
+            publish(kMove, this.stream.nextFrame());
+        }
+        if (result == KaboomEngine.ClickResult.won)
+        {
+            publish(kWon, null);
+        }
+        else if (result == KaboomEngine.ClickResult.lost)
+        {
+            publish(kLost, null);
+        }
+    }
+
+    /** Publish a new, restarted or loaded game. */
+    public void started()
+    {
+        publish(kStart, this.stream.keyframe());
+    }
+
+    /** Publish a tick of the clock. */
+    public void ticked()
+    {
+        publish(kTick, null);
+    }
+
+    private void publish(int kind, byte[] frame)
+    {
+        long number = this.published + 1;
+        Event event = new Event(number, kind, this.engine.getSecondsElapsed(), frame);
+        this.ring.set((int)(number & this.mask), event);
+        if (event.isKeyframe())
+        {
+            this.keyframe = event;
+        }
+        this.published = number;
+    }
+
+    /** A new spectator, starting from the latest keyframe. */
+    public Spectator watch()
+    {
+        return new Spectator();
+    }
+
+    /**
+     * One viewer's place in the feed, and its copy of the board.  Each
+     * spectator should be read by one thread at a time, but different
+     * spectators can be read by different threads.
+     */
+    public final class Spectator
+    {
+        private final BoardStream.Mirror board = new BoardStream.Mirror();
+        private long next;
+        private long skipped = 0;
+
+        Spectator()
+        {
+            Event start = GameFeed.this.keyframe;
+            this.board.apply(start.getFrame());
+            this.next = start.getNumber() + 1;
+        }
+
+        /** The board as of the last event read. */
+        public BoardStream.Mirror getBoard()
+        {
+            return this.board;
+        }
+
+        /** The number of the next event to read. */
+        public long getNext()
+        {
+            return this.next;
+        }
+
+        /** How many events were skipped over by falling behind. */
+        public long getSkipped()
+        {
+            return this.skipped;
+        }
+
+        /** How many events are waiting to be read. */
+        public long getBacklog()
+        {
+            return GameFeed.this.published + 1 - this.next;
+        }
+
+        /**
+         * Read the next event and bring the board up to date with it.  If
+         * the feed has lapped this spectator, the next event is the latest
+         * keyframe, and everything before it is skipped.
+         * @return the event, or null if there's nothing new yet
+         */
+        public Event poll()
+        {
+            if (this.next > GameFeed.this.published)
+            {
+                return null;
+            }
+            Event event = GameFeed.this.ring.get((int)(this.next & GameFeed.this.mask));
+            // Overwritten by something newer, so what we wanted is gone.
+            if (event.getNumber() != this.next)
+            {
+                event = GameFeed.this.keyframe;
+                this.skipped += event.getNumber() - this.next;
+            }
+            if (event.getFrame() != null)
+            {
+                this.board.apply(event.getFrame());
+            }
+            this.next = event.getNumber() + 1;
+            return event;
+        }
+    }
+}
@@ -0,0 +1,578 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * GameServer hosts any number of independent games behind a small HTTP API
+ * on the local machine, so games can be played (or driven by bots) without
+ * the Swing frame.  Every request but /metrics answers in JSON:
+ * <pre>
+ * POST   /games?width=&amp;height=&amp;bombs=&amp;game=   start a game (all optional; at most kMaxCells spots)
+ * GET    /games/{id}                               the whole board
+ * POST   /games/{id}/click?row=&amp;column=           left click
+ * POST   /games/{id}/flag?row=&amp;column=            right click
+ * POST   /games/{id}/restart                       same game over again
+ * POST   /games/{id}/new                           next game number
+ * POST   /games/{id}/score?name=                   save a won game's time (classic board only)
+ * DELETE /games/{id}                               done with it
+ * GET    /scores?width=&amp;height=&amp;bombs=&amp;count=  best times (on one size of board)
+ * GET    /metrics                                  KaboomMetrics, as text
+ * </pre>
+ * A board is one character per spot, a row after another: '#' hidden,
+ * 'F' flagged, '0' - '8' revealed, '*' a bomb and 'X' the one that went
+ * off.  Clicks and flags answer with just what changed, as runs of spots
+ * (see KaboomEngine.getChangedRunCount) and their new characters.
+ *
+ * Each game is a Session with its own KaboomEngine and its own lock, so
+ * moves on one game happen one at a time and in order, while moves on
+ * different games never wait for each other; the sessions themselves are
+ * in a ConcurrentHashMap, and there's no lock over all of them.  Requests
+ * run on virtual threads when the JVM has them (Java 21 on), and on a
+ * fixed pool of platform threads otherwise.  Sessions nobody has touched
+ * for kIdleMinutes are dropped.
+ *
+ * Usage: java GameServer [port [scoresDirectory]]
+ * (see GameServerLoad for a load generator).
+ */
+public class GameServer
+{
+    public static final int kDefaultPort = 8305;
+    /** Sessions left alone this long are dropped. */
+    public static final int kIdleMinutes = 30;
+    // Platform threads per core, when there are no virtual threads.
+    private static final int kThreadsPerCore = 8;
+    /** The biggest board a client can ask for, in spots. */
+    public static final int kMaxCells = 1000 * 1000;
+    // Roughly what a spot costs: the engine's arrays, plus the board's
+    // characters while describing it.
+    private static final int kBytesPerCell = 8;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService reaper;
+    private final String scoresDirectory;
+    private final ConcurrentHashMap<Long, Session> sessions = new ConcurrentHashMap<Long, Session>();
+    private final AtomicLong nextSession = new AtomicLong(1);
+    // Spots on all the live boards, held to a share of the heap so lots
+    // of big boards can't run us out of memory.
+    private final AtomicLong cellsInUse = new AtomicLong();
+    private final long maxCellsInUse = Runtime.getRuntime().maxMemory() / 2 / kBytesPerCell;
+
+    /** One game, and the lock that keeps its moves in order. */
+    static final class Session
+    {
+        final long id;
+        final KaboomEngine engine;
+        final ReentrantLock lock = new ReentrantLock();
+        volatile long lastUsed = System.nanoTime();
+        // Set once a click wins or loses, until the next restart.
+        boolean over = false;
+        // Set only when a click wins; a loss reveals the board too, so
+        // isBoardWon can't tell the two apart.
+        boolean won = false;
+        boolean saved = false;
+
+        Session(long id, KaboomEngine engine)
+        {
+            this.id = id;
+            this.engine = engine;
+        }
+    }
+
+    /** A request that can't be served, and the status to answer it with. */
+    static final class RequestException extends Exception
+    {
+        final int status;
+
+        RequestException(int status, String message)
+        {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Start serving on the loopback address.
+     * @param port where to listen, or 0 for any free port
+     * @param scoresDirectory where HighScores.txt and friends are
+     */
+    public GameServer(int port, String scoresDirectory) throws IOException
+    {
+        this.scoresDirectory = scoresDirectory;
+        // The JDK server writes headers and body separately, so with Nagle
+        // on every answer waits ~40ms for the client's delayed ACK.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+        {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4096);
+        this.executor = newExecutor();
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                GameServer.this.handle(exchange);
+            }
+        });
+        this.reaper = Executors.newSingleThreadScheduledExecutor();
+        this.reaper.scheduleWithFixedDelay(new Runnable()
+        {
+            public void run()
+            {
+                dropIdleSessions(TimeUnit.MINUTES.toNanos(kIdleMinutes));
+            }
+        }, 1, 1, TimeUnit.MINUTES);
+        this.server.start();
+    }
+
+    /** Virtual threads if we can have them, platform threads if not. */
+    private static ExecutorService newExecutor()
+    {
+        try
+        {
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            return Executors.newFixedThreadPool(kThreadsPerCore * Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    public int getPort()
+    {
+        return this.server.getAddress().getPort();
+    }
+
+    public int getSessionCount()
+    {
+        return this.sessions.size();
+    }
+
+    /** Stop listening, and wait up to a second for requests in progress. */
+    public void stop()
+    {
+        this.server.stop(1);
+        this.reaper.shutdownNow();
+        this.executor.shutdown();
+    }
+
+    void dropIdleSessions(long idleNanos)
+    {
+        long now = System.nanoTime();
+        for (Iterator<Session> it = this.sessions.values().iterator(); it.hasNext(); )
+        {
+            Session session = it.next();
+            if (now - session.lastUsed > idleNanos)
+            {
+                it.remove();
+                release(session);
+            }
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        int status = 200;
+        String body;
+        try
+        {
+            body = route(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+                         parseQuery(exchange.getRequestURI().getRawQuery()));
+        }
+        catch (RequestException e)
+        {
+            status = e.status;
+            body = error(e.getMessage());
+        }
+        catch (IllegalArgumentException e)
+        {
+            status = 400;
+            body = error(e.getMessage());
+        }
+        catch (IOException e)
+        {
+            status = 500;
+            body = error(e.toString());
+        }
+        catch (RuntimeException e)
+        {
+            status = 500;
+            body = error(e.toString());
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        boolean text = status == 200 && exchange.getRequestURI().getPath().equals("/metrics");
+        exchange.getResponseHeaders().set("Content-Type", text ? "text/plain; charset=utf-8" : "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private String route(String method, String path, Map<String, String> query) throws RequestException, IOException
+    {
+        String[] parts = path.split("/");
+        // parts[0] is the empty string before the first slash.
+        if (parts.length == 2 && parts[1].equals("games"))
+        {
+            requireMethod(method, "POST");
+            return createSession(query);
+        }
+        if (parts.length == 2 && parts[1].equals("scores"))
+        {
+            requireMethod(method, "GET");
+            return scores(query);
+        }
+        if (parts.length == 2 && parts[1].equals("metrics"))
+        {
+            requireMethod(method, "GET");
+            return KaboomMetrics.get().dump();
+        }
+        if ((parts.length == 3 || parts.length == 4) && parts[1].equals("games"))
+        {
+            Session session = findSession(parts[2]);
+            String action = parts.length == 4 ? parts[3] : "";
+            if (action.isEmpty() && method.equals("DELETE"))
+            {
+                if (this.sessions.remove(session.id) != null)
+                {
+                    release(session);
+                }
+                return "{\"session\": " + session.id + ", \"deleted\": true}";
+            }
+            requireMethod(method, action.isEmpty() ? "GET" : "POST");
+            session.lock.lock();
+            try
+            {
+                session.lastUsed = System.nanoTime();
+                return act(session, action, query);
+            }
+            finally
+            {
+                session.lock.unlock();
+            }
+        }
+        throw new RequestException(404, "No such thing as " + path + ".");
+    }
+
+    private static void requireMethod(String method, String wanted) throws RequestException
+    {
+        if (!method.equals(wanted))
+        {
+            throw new RequestException(405, "That wants a " + wanted + ".");
+        }
+    }
+
+    private Session findSession(String id) throws RequestException
+    {
+        Session session = null;
+        try
+        {
+            session = this.sessions.get(Long.parseLong(id));
+        }
+        catch (NumberFormatException e)
+        {
+            // Falls through to not found.
+        }
+        if (session == null)
+        {
+            throw new RequestException(404, "No game " + id + ".");
+        }
+        return session;
+    }
+
+    private String createSession(Map<String, String> query) throws RequestException
+    {
+        int width = intParameter(query, "width", KaboomEngine.kDefaultWidth);
+        int height = intParameter(query, "height", KaboomEngine.kDefaultHeight);
+        int bombs = intParameter(query, "bombs", KaboomEngine.kDefaultBombs);
+        if ((long)width * height > kMaxCells)
+        {
+            throw new IllegalArgumentException("Boards can have at most " + kMaxCells + " spots.");
+        }
+        if (this.cellsInUse.addAndGet((long)width * height) > this.maxCellsInUse)
+        {
+            this.cellsInUse.addAndGet(-(long)width * height);
+            throw new RequestException(503, "There's no room for another board that big; try again later.");
+        }
+        KaboomEngine engine;
+        try
+        {
+            engine = new KaboomEngine(width, height, bombs);
+        }
+        catch (IllegalArgumentException e)
+        {
+            this.cellsInUse.addAndGet(-(long)width * height);
+            throw e;
+        }
+        int game = intParameter(query, "game", 0);
+        engine.setGameNumber(game > 0 ? game : 1 + java.util.concurrent.ThreadLocalRandom.current().nextInt(KaboomEngine.kMaxGameNumber));
+        engine.restartGame();
+
+        Session session = new Session(this.nextSession.getAndIncrement(), engine);
+        this.sessions.put(session.id, session);
+        return describe(session);
+    }
+
+    private void release(Session session)
+    {
+        this.cellsInUse.addAndGet(-(long)session.engine.getWidth() * session.engine.getHeight());
+    }
+
+    /** Do something to one session, holding its lock. */
+    private String act(Session session, String action, Map<String, String> query) throws RequestException, IOException
+    {
+        KaboomEngine engine = session.engine;
+        if (action.isEmpty())
+        {
+            return describe(session);
+        }
+        if (action.equals("restart") || action.equals("new"))
+        {
+            if (action.equals("new"))
+            {
+                engine.newGame();
+            }
+            else
+            {
+                engine.restartGame();
+            }
+            session.over = false;
+            session.won = false;
+            session.saved = false;
+            return describe(session);
+        }
+        if (action.equals("click") || action.equals("flag"))
+        {
+            if (session.over)
+            {
+                throw new RequestException(409, "That game is over; restart it or start a new one.");
+            }
+            int row = intParameter(query, "row", -1);
+            int column = intParameter(query, "column", -1);
+            String result = "played";
+            if (action.equals("click"))
+            {
+                KaboomEngine.ClickResult click = engine.clickTile(row, column);
+                session.over = click != KaboomEngine.ClickResult.played;
+                session.won = click == KaboomEngine.ClickResult.won;
+                result = click.name();
+            }
+            else
+            {
+                engine.rightClickTile(row, column);
+            }
+            StringBuilder json = new StringBuilder(128);
+            json.append("{\"session\": ").append(session.id)
+                .append(", \"result\": \"").append(result).append('"');
+            appendCounters(json, session);
+            json.append(", \"changes\": [");
+            for (int run = 0; run < engine.getChangedRunCount(); run++)
+            {
+                int start = engine.getChangedRunStart(run);
+                int length = engine.getChangedRunLength(run);
+                json.append(run == 0 ? "" : ", ").append("{\"start\": ").append(start).append(", \"cells\": \"");
+                appendCells(json, engine, start, length);
+                json.append("\"}");
+            }
+            return json.append("]}").toString();
+        }
+        if (action.equals("score"))
+        {
+            if (!session.won)
+            {
+                throw new RequestException(409, "Only won games get scores.");
+            }
+            if (session.saved)
+            {
+                throw new RequestException(409, "That score's already saved.");
+            }
+            // Every saved score goes in the one Hall of Fame, so a game on a
+            // tiny board with no bombs would beat every real one.
+            if (engine.getWidth() != KaboomEngine.kDefaultWidth || engine.getHeight() != KaboomEngine.kDefaultHeight
+                || engine.getNumBombs() != KaboomEngine.kDefaultBombs)
+            {
+                throw new RequestException(409, "Only games on the classic " + KaboomEngine.kDefaultWidth + "x"
+                                           + KaboomEngine.kDefaultHeight + " board with " + KaboomEngine.kDefaultBombs
+                                           + " bombs get scores.");
+            }
+            // The recording says when the winning click was, and that's what
+            // ScoreVerifier holds the time to.
+            int seconds = (int)((engine.getMoveLog().getLastMillis() + 999) / 1000);
+            String time = seconds / 60 + ":" + String.format("%02d", seconds % 60);
+            HighScores.createInstance(this.scoresDirectory).saveScore(
+                time, query.get("name"), engine.getGameNumber(), engine.getWidth(), engine.getHeight(),
+                engine.getNumBombs(), engine.getMoves(), Replay.record(engine));
+            session.saved = true;
+            return "{\"session\": " + session.id + ", \"time\": \"" + time + "\"}";
+        }
+        throw new RequestException(404, "Games can't " + action + ".");
+    }
+
+    private String scores(Map<String, String> query) throws IOException
+    {
+        HighScores highScores = HighScores.createInstance(this.scoresDirectory);
+        int count = Math.max(1, Math.min(1000, intParameter(query, "count", 10)));
+        List<ScoreRecord> records;
+        if (query.containsKey("width"))
+        {
+            records = highScores.getTopScoresForBoard(intParameter(query, "width", 0), intParameter(query, "height", 0),
+                                                      intParameter(query, "bombs", 0), count);
+        }
+        else
+        {
+            records = highScores.getTopScores(count);
+        }
+        StringBuilder json = new StringBuilder("{\"scores\": [");
+        for (int i = 0; i < records.size(); i++)
+        {
+            ScoreRecord record = records.get(i);
+            json.append(i == 0 ? "" : ", ").append("{\"time\": \"").append(record.formatTime())
+                .append("\", \"seconds\": ").append(record.seconds)
+                .append(", \"name\": \"").append(escape(record.name))
+                .append("\", \"game\": ").append(record.gameNumber)
+                .append(", \"moves\": ").append(record.moves).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String describe(Session session)
+    {
+        KaboomEngine engine = session.engine;
+        StringBuilder json = new StringBuilder(64 + engine.getWidth() * engine.getHeight());
+        json.append("{\"session\": ").append(session.id)
+            .append(", \"game\": ").append(engine.getGameNumber())
+            .append(", \"width\": ").append(engine.getWidth())
+            .append(", \"height\": ").append(engine.getHeight())
+            .append(", \"bombs\": ").append(engine.getNumBombs());
+        appendCounters(json, session);
+        json.append(", \"board\": \"");
+        appendCells(json, engine, 0, engine.getWidth() * engine.getHeight());
+        return json.append("\"}").toString();
+    }
+
+    private static void appendCounters(StringBuilder json, Session session)
+    {
+        KaboomEngine engine = session.engine;
+        json.append(", \"moves\": ").append(engine.getMoves())
+            .append(", \"flags\": ").append(engine.getFlagsPlaced())
+            .append(", \"won\": ").append(session.won)
+            .append(", \"over\": ").append(session.over);
+    }
+
+    /** A character per spot, for a run of spots. */
+    static void appendCells(StringBuilder json, KaboomEngine engine, int start, int length)
+    {
+        int width = engine.getWidth();
+        for (int index = start; index < start + length; index++)
+        {
+            json.append(cellChar(engine, index / width, index % width));
+        }
+    }
+
+    static char cellChar(KaboomEngine engine, int row, int column)
+    {
+        switch (engine.getStatus(row, column))
+        {
+        case hidden:
+            return '#';
+        case flagged:
+            return 'F';
+        case bomb:
+            return '*';
+        case exploded:
+            return 'X';
+        default:
+            return (char)('0' + (engine.isBomb(row, column) ? 0 : engine.calculateSurroundingBombs(row, column)));
+        }
+    }
+
+    private static String error(String message)
+    {
+        return "{\"error\": \"" + escape(String.valueOf(message)) + "\"}";
+    }
+
+    private static String escape(String text)
+    {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\')
+            {
+                escaped.append('\\').append(c);
+            }
+            else if (c < ' ')
+            {
+                escaped.append(String.format("\\u%04x", (int)c));
+            }
+            else
+            {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    static Map<String, String> parseQuery(String query)
+    {
+        Map<String, String> parameters = new HashMap<String, String>();
+        if (query == null)
+        {
+            return parameters;
+        }
+        for (String pair : query.split("&"))
+        {
+            int equals = pair.indexOf('=');
+            if (equals > 0)
+            {
+                parameters.put(java.net.URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                               java.net.URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static int intParameter(Map<String, String> query, String name, int otherwise)
+    {
+        String value = query.get(name);
+        if (value == null)
+        {
+            return otherwise;
+        }
+        try
+        {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException(name + " should be a number, not \"" + value + "\".");
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length >= 1 ? Integer.parseInt(args[0]) : kDefaultPort;
+        String scoresDirectory = args.length >= 2 ? args[1] : ".";
+        GameServer server = new GameServer(port, scoresDirectory);
+        KaboomMetrics.register();
+        System.out.println("Serving games on http://localhost:" + server.getPort() + "/");
+    }
+}
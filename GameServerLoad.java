@@ -0,0 +1,206 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GameServerLoad plays lots of games on a GameServer at once and reports
+ * how long moves took.
+ *
+ * It starts <code>sessions</code> games, then keeps <code>concurrency</code>
+ * requests in flight for <code>seconds</code>: each one a click (or, one
+ * time in eight, a flag) on a random spot of a random game, with a restart
+ * whenever a game ends.  Move latencies, from sending the request to
+ * having the whole answer, go into a LatencyHistogram.  With "local", the
+ * server runs in this JVM, which is handy but means the two share cores.
+ *
+ * Usage: java GameServerLoad [host:port|local [sessions [concurrency [seconds]]]]
+ * The defaults are local, 50000 sessions, 256 requests in flight and 30
+ * seconds.
+ */
+public class GameServerLoad
+{
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final String base;
+    private final LatencyHistogram moves = new LatencyHistogram();
+    private final LatencyHistogram restarts = new LatencyHistogram();
+    private final AtomicLong failures = new AtomicLong();
+    private long[] sessions;
+
+    public GameServerLoad(String base)
+    {
+        this.base = base;
+    }
+
+    public LatencyHistogram getMoves()
+    {
+        return this.moves;
+    }
+
+    public long getFailures()
+    {
+        return this.failures.get();
+    }
+
+    private CompletableFuture<HttpResponse<String>> post(String path)
+    {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(this.base + path))
+            .POST(HttpRequest.BodyPublishers.noBody()).build();
+        return this.client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /** Start the games, <code>concurrency</code> at a time. */
+    public void startSessions(int count, int concurrency) throws InterruptedException
+    {
+        this.sessions = new long[count];
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(Math.min(count, concurrency));
+        for (int chain = 0; chain < Math.min(count, concurrency); chain++)
+        {
+            startNextSession(next, count, done);
+        }
+        done.await();
+    }
+
+    private void startNextSession(final AtomicInteger next, final int count, final CountDownLatch done)
+    {
+        final int session = next.getAndIncrement();
+        if (session >= count)
+        {
+            done.countDown();
+            return;
+        }
+        post("/games").whenComplete((response, error) ->
+        {
+            if (error != null || response.statusCode() != 200)
+            {
+                throw new IllegalStateException("Couldn't start a game: " + (error != null ? error : response.body()));
+            }
+            this.sessions[session] = jsonNumber(response.body(), "session");
+            startNextSession(next, count, done);
+        }).exceptionally(error ->
+        {
+            this.failures.incrementAndGet();
+            done.countDown();
+            return null;
+        });
+    }
+
+    /** Make moves for a while, keeping <code>concurrency</code> in flight. */
+    public long play(int concurrency, long nanos) throws InterruptedException
+    {
+        final long end = System.nanoTime() + nanos;
+        final AtomicLong made = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(concurrency);
+        for (int chain = 0; chain < concurrency; chain++)
+        {
+            move(end, made, done);
+        }
+        done.await();
+        return made.get();
+    }
+
+    private void move(final long end, final AtomicLong made, final CountDownLatch done)
+    {
+        if (System.nanoTime() >= end)
+        {
+            done.countDown();
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        final long session = this.sessions[random.nextInt(this.sessions.length)];
+        String action = random.nextInt(8) == 0 ? "flag" : "click";
+        String path = "/games/" + session + "/" + action + "?row=" + random.nextInt(KaboomEngine.kDefaultHeight)
+            + "&column=" + random.nextInt(KaboomEngine.kDefaultWidth);
+        final long start = System.nanoTime();
+        post(path).whenComplete((response, error) ->
+        {
+            if (error != null)
+            {
+                this.failures.incrementAndGet();
+                move(end, made, done);
+                return;
+            }
+            // 409 means another request just ended the same game.
+            if (response.statusCode() == 200)
+            {
+                this.moves.record(System.nanoTime() - start);
+                made.incrementAndGet();
+            }
+            else if (response.statusCode() != 409)
+            {
+                this.failures.incrementAndGet();
+            }
+            if (response.statusCode() == 409 || response.body().contains("\"over\": true"))
+            {
+                final long restartStart = System.nanoTime();
+                post("/games/" + session + "/new").whenComplete((restarted, restartError) ->
+                {
+                    this.restarts.record(System.nanoTime() - restartStart);
+                    move(end, made, done);
+                });
+            }
+            else
+            {
+                move(end, made, done);
+            }
+        });
+    }
+
+    private static long jsonNumber(String json, String name)
+    {
+        String key = "\"" + name + "\": ";
+        int start = json.indexOf(key) + key.length();
+        int stop = start;
+        while (stop < json.length() && Character.isDigit(json.charAt(stop)))
+        {
+            stop++;
+        }
+        return Long.parseLong(json.substring(start, stop));
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        String target = args.length >= 1 ? args[0] : "local";
+        int sessions = args.length >= 2 ? Integer.parseInt(args[1]) : 50000;
+        int concurrency = args.length >= 3 ? Integer.parseInt(args[2]) : 256;
+        int seconds = args.length >= 4 ? Integer.parseInt(args[3]) : 30;
+
+        GameServer server = null;
+        if (target.equals("local"))
+        {
+            java.io.File scores = java.nio.file.Files.createTempDirectory("scores").toFile();
+            server = new GameServer(0, scores.getPath());
+            target = "localhost:" + server.getPort();
+        }
+        GameServerLoad load = new GameServerLoad("http://" + target);
+
+        long start = System.nanoTime();
+        load.startSessions(sessions, concurrency);
+        System.out.println(String.format("started %d sessions in %.1f s", sessions, (System.nanoTime() - start) / 1e9));
+
+        // Warm up for a bit, then measure from scratch.
+        load.play(concurrency, Math.min(5, seconds) * 1000000000L);
+        load.moves.reset();
+        load.restarts.reset();
+        start = System.nanoTime();
+        long made = load.play(concurrency, seconds * 1000000000L);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format("%d moves in %.1f s, %.0f moves/sec, %d failures",
+                                         made, elapsed, made / elapsed, load.getFailures()));
+        System.out.println("moves:    " + load.moves);
+        System.out.println("restarts: " + load.restarts);
+        if (server != null)
+        {
+            System.out.println(server.getSessionCount() + " sessions on the server");
+            server.stop();
+        }
+        System.exit(load.getFailures() == 0 ? 0 : 1);
+    }
+}
@@ -1,4 +1,11 @@
-import java.awt.Toolkit;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 
 /**
@@ -16,6 +23,10 @@ public final class GridImages
     
     private static GridImages instance;
     
+    // Images are loaded once, up front, and handed out over and over again.
+    private final Map<Piece, ImageIcon> pieces = new EnumMap<Piece, ImageIcon>(Piece.class);
+    private final ImageIcon background;
+    
     /** Initialize and return the one allowed instance of this class.
      * The instance contains images loaded from <code>kImageDir</code>, one for 
      * each Piece enum value and one named "bkgd".
@@ -34,13 +45,28 @@ public final class GridImages
     }
     
     /** Retrieve an image for a piece.
+     * The same image is returned every time, already scaled to
+     * <code>getPieceWidth</code> x <code>getPieceHeight</code>.
      * @param name the name of the desired image (usually the <code>name()</code> of a piece enum)
      * @return ImageIcon the image associated with the specified name
      */
     public ImageIcon getPiece(String name)
+    {
+        return this.pieces.get(Piece.valueOf(name));
+    }
+
+    /** Retrieve a background image.
+     * @param name the name of the desired image (usually corresponds to a background)
+     * @return ImageIcon the image associated with the background
+     */
+    public ImageIcon getBkgd(String name)
+    {
+        return this.background;
+    }
+
+    private static String getFilename(Piece piece)
     {
         String filename = "";
-        Piece piece = Piece.valueOf(name);
         switch (piece) {
             case bomb:
                 filename = "bomb.jpg";
@@ -59,16 +85,51 @@ public final class GridImages
                 break;
         }
         
-        return new ImageIcon(Toolkit.getDefaultToolkit().getImage(Kaboom.class.getResource(this.kImageDir + "/" + filename)));
+        return filename;
     }
 
-    /** Retrieve a background image.
-     * @param name the name of the desired image (usually corresponds to a background)
-     * @return ImageIcon the image associated with the background
+    /** Load an image and copy it into one that's cheap to draw on this screen.
+     * @param filename the file in <code>kImageDir</code>
+     * @param width the width to scale to, or 0 to keep the original size
+     * @param height the height to scale to, or 0 to keep the original size
+     * @return the image, or null if it couldn't be read
      */
-    public ImageIcon getBkgd(String name)
+    private static ImageIcon loadImage(String filename, int width, int height)
     {
-        return new ImageIcon(Toolkit.getDefaultToolkit().getImage(Kaboom.class.getResource(this.kImageDir + "/bkgd.jpg")));
+        BufferedImage original;
+        try
+        {
+            original = ImageIO.read(Kaboom.class.getResource(kImageDir + "/" + filename));
+        }
+        catch (IOException e)
+        {
+            System.err.println(e);
+            return null;
+        }
+        
+        if (width == 0 || height == 0)
+        {
+            width = original.getWidth();
+            height = original.getHeight();
+        }
+        
+        BufferedImage image;
+        if (GraphicsEnvironment.isHeadless())
+        {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        else
+        {
+            image = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                                       .getDefaultScreenDevice()
+                                       .getDefaultConfiguration()
+                                       .createCompatibleImage(width, height);
+        }
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(original, 0, 0, width, height, null);
+        graphics.dispose();
+        return new ImageIcon(image);
     }
 
     /** Accessor to the piece height. 
@@ -92,6 +153,11 @@ public final class GridImages
     /** Constructor is private to defeat instantiation */
     private GridImages(String gamePrefix)
     {
+        for (Piece piece : Piece.values())
+        {
+            this.pieces.put(piece, loadImage(getFilename(piece), getPieceWidth(), getPieceHeight()));
+        }
+        this.background = loadImage("bkgd.jpg", 0, 0);
     }
 }
 
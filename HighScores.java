@@ -1,11 +1,6 @@
+import java.io.File;
 import java.io.IOException;
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.PrintWriter;
-import java.io.FileWriter;
-import java.util.Collections;
 import java.util.List;
-import java.util.ArrayList;
 
 /**
  * HighScores represents the top players and their scores.
@@ -14,7 +9,10 @@ import java.util.ArrayList;
 public final class HighScores
 {
     public final static String kScoresFile = "HighScores.txt";
+    public final static String kStoreFile = "HighScores.dat";
+    public final static String kReplayFile = "HighScores.replays";
     private final String gamePrefix;
+    private ScoreStore store;
     
     // Use a factory to ensure we only ever have one instance of the class.
     private static HighScores instance = null;
@@ -28,7 +26,7 @@ public final class HighScores
      * all the game configuration files and image folders.
      * @return an instance of this class. 
      */
-    public static HighScores createInstance(String gamePrefix)
+    public static synchronized HighScores createInstance(String gamePrefix)
     {
         if (HighScores.instance == null)
         {
@@ -38,7 +36,10 @@ public final class HighScores
         return HighScores.instance;
     }
 
-    /** Read the HighScores.txt file, sort it, and return the first 10 items. 
+    /** Return the top 10 scores.
+     * Scores come from an indexed store (see ScoreStore), so this only
+     * reads the ten records it returns, plus anything appended to
+     * HighScores.txt since the last call.
      * @param ascending true if the items should be sorted in ascending order, 
      *                  false if descending order is desired.  For example, 
      *                  times are usually sorted with fastest first which would be
@@ -51,66 +52,133 @@ public final class HighScores
 152  James
 121  Sally
 </pre>
-Scores are sorted lexicographically (like Strings), not numerically.
+Scores are sorted numerically, so "10:00" comes after "9:59".  Ties are
+sorted by name.
      */
     public String getHighScores(boolean ascending) throws IOException
     {
-        List<String> highScores = new ArrayList<String>();
-        
-        // Ugh.  Java I/O is so *verbose*.
-        BufferedReader in;
-        try
-        {
-            in = new BufferedReader(new FileReader(this.gamePrefix + "/" + this.kScoresFile));
-        }
-        catch (java.io.FileNotFoundException e)
-        {
-            // If the file hasn't been created, we have no scores.
-            return "";
-        }
+        return toBlob(getStore().getTopScores(ascending, 10));
+    }
 
-        while (in.ready())
-        {
-            highScores.add(in.readLine());
-        }
-        // Be a lazy programmer and sort the whole thing, even if we only need
-        // the top (or bottom) 10.
-        Collections.sort(highScores);
-        
-        if (!ascending)
-        {
-            Collections.reverse(highScores);
-        }
-        
-        // Strings are immutable in Java, so appending a bunch of them is
-        // generally a Bad Thing.  With only 10 items, it's probably not a big
-        // deal, but still.
-        // Returning a blob of text is generally also a Bad Thing, but the
+    /** Return the top 10 scores, read straight from HighScores.txt.
+     * This doesn't touch (or need to write) the store: it streams through
+     * the whole text file keeping only the ten best so far (see
+     * ScoreScanner), so it runs in constant memory however big the file
+     * gets.  It gives the same answer as <code>getHighScores</code>.
+     * @param ascending true for the fastest times, false for the slowest
+     */
+    public String scanHighScores(boolean ascending) throws IOException
+    {
+        return toBlob(ScoreScanner.topScores(new File(this.gamePrefix, kScoresFile), ascending, 10));
+    }
+
+    private static String toBlob(List<ScoreRecord> records)
+    {
+        // Returning a blob of text is generally a Bad Thing, but the
         // spec's the spec and I'm not allowed to make this prettier.
         StringBuilder blob = new StringBuilder();
-        for (int i = 0; i < 10 && i < highScores.size(); i++)
+        for (ScoreRecord record : records)
         {
-            blob.append(highScores.get(i)).append("\n");
+            blob.append(record).append("\n");
         }
         return blob.toString();
     }
     
+    /** Save a score.  Any number of threads (or games in other processes)
+     * can save at once; this returns once the score is safely on disk.
+     * @param valueToSave the time, either in seconds ("75") or m:ss ("1:15")
+     * @param playerName who got it; truncated to 20 characters
+     * @throws IllegalArgumentException if the time isn't in either form
+     */
     public void saveScore(String valueToSave, String playerName) throws IOException
     {
-        if (playerName == null)
-        {
-            playerName = "";
-        }
-        
-        // Truncate names to 20 characters.
-        if (playerName.length() > 20)
+        getStore().add(valueToSave, playerName);
+    }
+    
+    /** Save a score for a particular game, so it shows up on that game's
+     * leaderboards as well as the overall one.
+     * @param valueToSave the time, either in seconds ("75") or m:ss ("1:15")
+     * @param playerName who got it; truncated to 20 characters
+     * @param gameNumber which numbered game it was
+     * @param moves how many clicks it took
+     * @throws IllegalArgumentException if the time isn't in either form
+     */
+    public void saveScore(String valueToSave, String playerName,
+                          int gameNumber, int width, int height, int bombs, int moves) throws IOException
+    {
+        getStore().add(valueToSave, playerName, gameNumber, width, height, bombs, moves);
+    }
+
+    /** Save a score along with a recording of the game (see Replay), so
+     * ScoreVerifier can check it later by playing it back.
+     * @param recording the game, from <code>Replay.record</code>
+     * @throws IllegalArgumentException if the recording isn't of that game
+     */
+    public void saveScore(String valueToSave, String playerName, int gameNumber, int width, int height,
+                          int bombs, int moves, byte[] recording) throws IOException
+    {
+        getStore().add(valueToSave, playerName, gameNumber, width, height, bombs, moves, recording);
+    }
+
+    /** The fastest scores on any game, fastest first, as records rather
+     * than a blob of text.
+     */
+    public List<ScoreRecord> getTopScores(int count) throws IOException
+    {
+        return getStore().getFastestScores(count);
+    }
+
+    /** The fastest scores on one numbered game, fastest first.
+     * This and the other leaderboard queries take O(log n) time, or
+     * O(log n + count) for lists, once the first one has loaded the scores.
+     */
+    public List<ScoreRecord> getTopScoresForGame(int gameNumber, int count) throws IOException
+    {
+        return getStore().getTopScoresForGame(gameNumber, count);
+    }
+
+    /** The fastest scores on any game with this size of board, fastest first. */
+    public List<ScoreRecord> getTopScoresForBoard(int width, int height, int bombs, int count) throws IOException
+    {
+        return getStore().getTopScoresForBoard(width, height, bombs, count);
+    }
+
+    /** Where a player's best score ranks overall: 1 for first place, or 0
+     * if they have no scores.
+     */
+    public int getRank(String playerName) throws IOException
+    {
+        return getStore().getRank(playerName);
+    }
+
+    /** Where a player's best score on one numbered game ranks, or 0. */
+    public int getRankForGame(int gameNumber, String playerName) throws IOException
+    {
+        return getStore().getRankForGame(gameNumber, playerName);
+    }
+
+    /** Where a player's best score on this size of board ranks, or 0. */
+    public int getRankForBoard(int width, int height, int bombs, String playerName) throws IOException
+    {
+        return getStore().getRankForBoard(width, height, bombs, playerName);
+    }
+
+    /** Every score saved between two times (in milliseconds since 1970,
+     * the end not included), oldest first.
+     */
+    public List<ScoreRecord> getScoresBetween(long from, long to) throws IOException
+    {
+        return getStore().getScoresBetween(from, to);
+    }
+
+    private synchronized ScoreStore getStore() throws IOException
+    {
+        if (this.store == null)
         {
-            playerName = playerName.substring(0, 20);
+            this.store = new ScoreStore(new File(this.gamePrefix, kStoreFile),
+                                        new File(this.gamePrefix, kScoresFile),
+                                        new File(this.gamePrefix, kReplayFile));
         }
-        
-        PrintWriter out = new PrintWriter(new FileWriter(this.gamePrefix + "/" + this.kScoresFile, true));
-        out.println(valueToSave + "  " + playerName);
-        out.close();
+        return this.store;
     }
 }
-
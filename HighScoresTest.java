@@ -0,0 +1,246 @@
+import junit.framework.TestCase;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Tests for HighScores.  Expects a Mines directory to write scores into.
+ */
+public class HighScoresTest extends TestCase
+{
+    public void setUp()
+    {
+        new File("Mines/HighScores.txt").delete();
+        new File("Mines/HighScores.replays").delete();
+    }
+
+    public void testSave()
+    {
+        HighScores highScores = HighScores.createInstance("Mines");
+        try
+        {
+            highScores.saveScore("32", "Joe");
+            highScores.saveScore("20", "Ruth");
+            assertEquals("20  Ruth\n32  Joe\n", highScores.getHighScores(true));
+            highScores.saveScore("44", "Sam");
+            assertEquals("20  Ruth\n32  Joe\n44  Sam\n", highScores.getHighScores(true));
+            highScores.saveScore("40", "Joe9");
+            highScores.saveScore("33", "Joe2");
+            highScores.saveScore("34", "Joe3");
+            highScores.saveScore("35", "Joe4");
+            highScores.saveScore("36", "Joe5");
+            highScores.saveScore("37", "Joe6");
+            highScores.saveScore("38", "Joe7");
+            highScores.saveScore("39", "Joe8");
+            assertEquals("20  Ruth\n32  Joe\n33  Joe2\n34  Joe3\n35  Joe4\n36  Joe5\n37  Joe6\n38  Joe7\n39  Joe8\n40  Joe9\n",
+                         highScores.getHighScores(true));
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    public void testLongName()
+    {
+        try
+        {
+            HighScores highScores = HighScores.createInstance("Mines");
+            highScores.saveScore("32", "12345678901234567890");
+            highScores.saveScore("20", "123456789012345678901");
+            assertEquals("20  12345678901234567890\n32  12345678901234567890\n", highScores.getHighScores(true));
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    public void testSingleton()
+    {
+        HighScores highScores = HighScores.createInstance("Mines");
+        assertTrue("Not a singleton", highScores == HighScores.createInstance("Mines"));
+    }
+
+    // Times are compared as times, so 25 minutes comes after 2.
+    public void testOrdering()
+    {
+        try
+        {
+            HighScores highScores = HighScores.createInstance("Mines");
+            highScores.saveScore("2:32", "Sue Smart");
+            highScores.saveScore("25:32", "Jeff");
+            highScores.saveScore("2:11", "Brad");
+            assertEquals("2:11  Brad\n2:32  Sue Smart\n25:32  Jeff\n", highScores.getHighScores(true));
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    // Streaming straight from the text file gives the same answer.
+    public void testScan()
+    {
+        try
+        {
+            HighScores highScores = HighScores.createInstance("Mines");
+            highScores.saveScore("2:32", "Sue Smart");
+            highScores.saveScore("25:32", "Jeff");
+            highScores.saveScore("2:11", "Brad");
+            highScores.saveScore("151", "Al");
+            assertEquals("2:11  Brad\n151  Al\n2:32  Sue Smart\n25:32  Jeff\n",
+                         highScores.scanHighScores(true));
+            assertEquals(highScores.getHighScores(true), highScores.scanHighScores(true));
+            assertEquals(highScores.getHighScores(false), highScores.scanHighScores(false));
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    // Lots of games saving at once mustn't lose or mangle any scores.
+    public void testConcurrentSaves() throws InterruptedException, IOException
+    {
+        final HighScores highScores = HighScores.createInstance("Mines");
+        final int kThreads = 8;
+        final int kSaves = 25;
+        final int[] failures = new int[1];
+        Thread[] threads = new Thread[kThreads];
+        for (int t = 0; t < kThreads; t++)
+        {
+            final int first = 100 + t * kSaves;
+            threads[t] = new Thread()
+            {
+                public void run()
+                {
+                    for (int i = 0; i < kSaves; i++)
+                    {
+                        try
+                        {
+                            highScores.saveScore(Integer.toString(first + i), "Player " + first);
+                        }
+                        catch (IOException e)
+                        {
+                            e.printStackTrace();
+                            synchronized (failures)
+                            {
+                                failures[0]++;
+                            }
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        assertEquals(0, failures[0]);
+
+        // Every line made it, and every line is whole.
+        java.util.List<ScoreRecord> all = ScoreScanner.topScores(new File("Mines/HighScores.txt"), true, 1000);
+        assertEquals(kThreads * kSaves, all.size());
+        for (int i = 0; i < all.size(); i++)
+        {
+            assertEquals(100 + i, all.get(i).seconds);
+            assertEquals("Player " + (100 + i / kSaves * kSaves), all.get(i).name);
+        }
+        assertEquals("100  Player 100\n101  Player 100\n102  Player 100\n103  Player 100\n104  Player 100\n"
+                     + "105  Player 100\n106  Player 100\n107  Player 100\n108  Player 100\n109  Player 100\n",
+                     highScores.getHighScores(true));
+    }
+
+    public void testLeaderboards() throws IOException
+    {
+        HighScores highScores = HighScores.createInstance("Mines");
+        long start = System.currentTimeMillis();
+        highScores.saveScore("40", "Ann", 7, 10, 10, 9, 20);
+        highScores.saveScore("30", "Bob", 7, 10, 10, 9, 15);
+        highScores.saveScore("35", "Ann", 8, 10, 10, 9, 18);
+        highScores.saveScore("20", "Cy", 8, 16, 16, 40, 30);
+        highScores.saveScore("25", "Bob");
+        long end = System.currentTimeMillis() + 1;
+
+        assertEquals("[30  Bob, 40  Ann]", highScores.getTopScoresForGame(7, 10).toString());
+        assertEquals("[30  Bob]", highScores.getTopScoresForGame(7, 1).toString());
+        assertEquals("[]", highScores.getTopScoresForGame(9, 10).toString());
+        assertEquals("[30  Bob, 35  Ann, 40  Ann]", highScores.getTopScoresForBoard(10, 10, 9, 10).toString());
+        assertEquals(15, highScores.getTopScoresForGame(7, 1).get(0).moves);
+
+        assertEquals(1, highScores.getRank("Cy"));
+        assertEquals(2, highScores.getRank("Bob"));
+        assertEquals(4, highScores.getRank("Ann"));
+        assertEquals(0, highScores.getRank("Nobody"));
+        assertEquals(2, highScores.getRankForGame(7, "Ann"));
+        assertEquals(1, highScores.getRankForGame(8, "Cy"));
+        assertEquals(0, highScores.getRankForGame(9, "Ann"));
+        assertEquals(1, highScores.getRankForBoard(16, 16, 40, "Cy"));
+
+        assertEquals(5, highScores.getScoresBetween(start, end).size());
+        assertEquals(0, highScores.getScoresBetween(0, start).size());
+
+        // Scores saved after the leaderboards are loaded show up too.
+        highScores.saveScore("10", "Dee", 7, 10, 10, 9, 5);
+        assertEquals("[10  Dee, 30  Bob, 40  Ann]", highScores.getTopScoresForGame(7, 10).toString());
+        assertEquals(3, highScores.getRank("Bob"));
+    }
+
+    public void testReverse() throws IOException
+    {
+        HighScores highScores = HighScores.createInstance("Mines");
+        highScores.saveScore("32", "Joe");
+        highScores.saveScore("20", "Ruth");
+        highScores.saveScore("44", "Sam");
+        assertEquals("44  Sam\n32  Joe\n20  Ruth\n", highScores.getHighScores(false));
+    }
+
+    // A recording of the game is filed under where its score's line starts.
+    public void testRecordings() throws IOException
+    {
+        HighScores highScores = HighScores.createInstance("Mines");
+        highScores.saveScore("32", "Joe");
+        byte[] recording = wonGame(7);
+        highScores.saveScore("20", "Ruth", 7, 3, 3, 0, 1, recording);
+        ScoreReplays.Reader recordings = new ScoreReplays.Reader(new File("Mines/HighScores.replays"));
+        assertTrue(recordings.next());
+        assertEquals(("32  Joe" + System.getProperty("line.separator")).length(), recordings.getLineOffset());
+        byte[] line = "20  Ruth".getBytes("UTF-8");
+        assertTrue(recordings.lineMatches(line, 0, line.length));
+        assertEquals(recording.length, recordings.getRecordingLength());
+        assertEquals(recording[2], recordings.getRecording()[2]);
+        assertFalse(recordings.next());
+        recordings.close();
+    }
+
+    // A recording of some other game doesn't get saved as proof of a score.
+    public void testMismatchedRecording() throws IOException
+    {
+        HighScores highScores = HighScores.createInstance("Mines");
+        KaboomEngine engine = new KaboomEngine(1, 1, 0);
+        engine.setGameNumber(42);
+        engine.restartGame();
+        engine.clickTile(0, 0);
+        try
+        {
+            highScores.saveScore("0:01", "cheater", 42, 10, 10, 9, 10, Replay.record(engine));
+            fail("A 1x1 recording was saved for a 10x10 score.");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Expected.
+        }
+        assertEquals("", highScores.getHighScores(true));
+    }
+
+    /** A recording of a 3x3 game with no bombs, won in one click. */
+    static byte[] wonGame(int gameNumber)
+    {
+        KaboomEngine engine = new KaboomEngine(3, 3, 0);
+        engine.setGameNumber(gameNumber);
+        engine.restartGame();
+        engine.clickTile(1, 1);
+        return Replay.record(engine);
+    }
+}
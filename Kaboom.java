@@ -1,12 +1,6 @@
 import javax.swing.*;
-import javax.swing.table.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.Set;
-import java.util.TreeSet;
-import java.text.*;
 
 /**  Skeleton for Kaboom. 
  *   GUI has a menu bar, a status area, and a 2d playing area.
@@ -18,38 +12,45 @@ public class Kaboom extends JFrame implements ActionListener
 {
     /* Main components of the GUI */
     // DO NOT CHANGE ANY OF THE GUI COMPONENT DECLARATIONS IN THIS SECTION
-    private String[] columns = {"", "", "", "", "", "", "", "", "", "", };
-    private JTable table;
+    private BoardView board;
     private JMenuBar menuBar;
     private JMenu mnuGame;
     private JMenuItem[] mnuItems;
     private JLabel lblStatus = new JLabel();
-    private ImageIcon background;
+    private GridImages images;
     
-    /* The game board */
-    private Renderable[][] myBoard; 
-    private static final int kBoardWidth = 10;
-    private static final int kBoardHeight = 10;
-    private static final int kMaxBombs = 9;
-    private static final int kMaxGameNumber = 5000;
-    private static int gameNumber = 0;
-    private int moves = 0;
-    private int flagsPlaced = 0;
-    private int numBombs = 0;
-    private int secondsElapsed = 0;
-    private boolean justCheated = false;
+    /* Where an unfinished game is kept between runs. */
+    public static final String kSaveFile = "SavedGame.dat";
     
-    /* Square dimensions in pixels */
-    private static final int kTileWidth = 65;
-    private static final int kTileHeight = 43;
+    /* The game itself; everything in here is just a view onto it. */
+    private final KaboomEngine engine;
+    /* Works out hints; made the first time someone asks for one. */
+    private KaboomSolver solver;
+    /* What the last hint said, until the next move. */
+    private String hintText = "";
+    /* Every move and tick, for anyone watching. */
+    private final GameFeed feed;
     
     
-    /** Create a GUI.
+    /** Create a GUI for the classic 10x10 board.
      * Will use the System Look and Feel when possible.
      */
     public Kaboom()
+    {
+        this(KaboomEngine.kDefaultWidth, KaboomEngine.kDefaultHeight, KaboomEngine.kDefaultBombs);
+    }
+    
+    /** Create a GUI for a board of any size.
+     * Will use the System Look and Feel when possible.
+     * @param width number of columns
+     * @param height number of rows
+     * @param bombs exact number of bombs on the board
+     */
+    public Kaboom(int width, int height, int bombs)
     {
         super();
+        this.engine = new KaboomEngine(width, height, bombs);
+        this.feed = new GameFeed(this.engine);
         try
         {
             UIManager.setLookAndFeel(
@@ -67,63 +68,11 @@ public class Kaboom extends JFrame implements ActionListener
     public void layoutGUI()
     {
         loadImages();
-        this.gameNumber = (new java.util.Random()).nextInt(this.kMaxGameNumber);
+        this.engine.setGameNumber((new java.util.Random()).nextInt(KaboomEngine.kMaxGameNumber));
         newGame();
+        resumeGame();
         startTimer();
-        table = new JTable(this.myBoard, this.columns)
-        {
-            public Component prepareRenderer(TableCellRenderer renderer, int row, int column)
-            {
-                Component c = super.prepareRenderer( renderer, row, column);
-                // We want renderer component to be
-                // transparent so background image is visible
-                if ( c instanceof JComponent)
-                    ((JComponent)c).setOpaque(false);
-                return c;
-            }
-            
-            public TableCellRenderer getCellRenderer(int row, int column)
-            {
-                return new PieceRenderer(GridImages.createInstance(""));
-            }
-            
-            // Override paint so as to show the table background
-            public void paint( Graphics g )
-            {
-                // paint an image in the table background
-                if (background != null)
-                {
-                    g.drawImage( background.getImage(), 0, 0, null, null );
-                }
-                // Now let the paint do its usual work
-                super.paint(g);
-            }
-            
-            // Make the table cells not editable
-            public boolean isCellEditable(int row,int column)
-            {  
-                return false;  
-            }              
-            
-            public Class getColumnClass(int c)
-            {
-                return Tile.class;
-            }
-        }
-        ; // end table def
-        
-        TableColumn column = null;
-        // Does the board exist?
-        if (this.myBoard != null)
-        {
-            // Set the dimensions for each column in the board to match the image */
-            for (int index = 0; index < kBoardWidth; index++)
-            {
-                column = table.getColumnModel().getColumn(index);
-                column.setMaxWidth(kTileWidth);
-                column.setMinWidth(kTileWidth);
-            }
-        }
+        board = new BoardView(this.engine, this.images);
         
         // Define the layout manager that will control order of components
         getContentPane().setLayout(new BoxLayout(getContentPane(), BoxLayout.Y_AXIS));
@@ -138,23 +87,20 @@ public class Kaboom extends JFrame implements ActionListener
         statusPane.setAlignmentX(Component.CENTER_ALIGNMENT);
         getContentPane().add(statusPane);
         
-        // Define the characteristics of the table that shows the game board        
-        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        table.setCellSelectionEnabled(false);
-        table.setRowHeight(kTileHeight);
-        table.setOpaque(false);
-        table.setShowGrid(false);
-        table.setAlignmentX(Component.CENTER_ALIGNMENT);
-        getContentPane().add(table);
+        // The board scrolls, in case it's bigger than the window.
+        JScrollPane boardPane = new JScrollPane(board);
+        boardPane.setAlignmentX(Component.CENTER_ALIGNMENT);
+        getContentPane().add(boardPane);
         
         // Define the mouse listener that will handle player's clicks.
-        table.addMouseListener(myMouseListener);
+        board.addMouseListener(myMouseListener);
         
         // And handle window closing events
         addWindowListener(new WindowAdapter()
         {
             public void windowClosing(WindowEvent e)
             {
+                saveGame();
                 System.exit(0);
             }
         }
@@ -195,142 +141,135 @@ public class Kaboom extends JFrame implements ActionListener
         mnuItems[4].addActionListener(this);
         mnuGame.add(mnuItems[4]);
         
-        mnuItems[5] = new JMenuItem("Quit");
-        mnuItems[5].setAccelerator(KeyStroke.getKeyStroke('Q', ActionEvent.ALT_MASK));
+        mnuItems[5] = new JMenuItem("Hint");
+        mnuItems[5].setAccelerator(KeyStroke.getKeyStroke('H', ActionEvent.ALT_MASK));
         mnuItems[5].addActionListener(this);
         mnuGame.add(mnuItems[5]);
+        
+        mnuItems[6] = new JMenuItem("Zoom In");
+        mnuItems[6].setAccelerator(KeyStroke.getKeyStroke('=', ActionEvent.ALT_MASK));
+        mnuItems[6].addActionListener(this);
+        mnuGame.add(mnuItems[6]);
+        
+        mnuItems[7] = new JMenuItem("Zoom Out");
+        mnuItems[7].setAccelerator(KeyStroke.getKeyStroke('-', ActionEvent.ALT_MASK));
+        mnuItems[7].addActionListener(this);
+        mnuGame.add(mnuItems[7]);
+        
+        mnuItems[8] = new JMenuItem("Quit");
+        mnuItems[8].setAccelerator(KeyStroke.getKeyStroke('Q', ActionEvent.ALT_MASK));
+        mnuItems[8].addActionListener(this);
+        mnuGame.add(mnuItems[8]);
 
         setJMenuBar(menuBar);   // tell the frame which menu bar to use
     }
     
-    /* Listener to respond to mouse clicks on the table */
+    /* Listener to respond to mouse clicks on the board */
     private MouseAdapter myMouseListener = new MouseAdapter()
     {
         public void mouseReleased(MouseEvent ev)
         {
+            int col = board.columnAtPoint(ev.getPoint());
+            int row = board.rowAtPoint(ev.getPoint());
+            // Off the edge of the board?
+            if (row < 0 || col < 0)
+            {
+                return;
+            }
+            
             // call methods to handle player's click
             // Left-click?
             if (ev.getButton() == MouseEvent.BUTTON1)
             {
-                int col = table.getSelectedColumn();
-                int row = table.getSelectedRow();
                 clickTile(row, col);
             }
             // Right-click?
             else if (ev.getButton() == MouseEvent.BUTTON3)
             {
-                int col = table.columnAtPoint(ev.getPoint());
-                int row = table.rowAtPoint(ev.getPoint());
                 rightClickTile(row, col);
             }
-            repaint();
         }
     };
     
     protected void loadImages()
     {
-        // load background image
-        background = new ImageIcon( 
-                    Toolkit.getDefaultToolkit().getImage(
-                        this.getClass().getResource("PieceImages/bkgd.jpg")));
-        // Load tile images here
+        // GridImages loads (and keeps) all the images for us.
+        images = GridImages.createInstance("");
     }
     
     protected void newGame()
     {
-        this.gameNumber++;
-        if (this.gameNumber > this.kMaxGameNumber)
-        {
-            this.gameNumber = 1;
-        }
-        restartGame();
+        this.engine.newGame();
+        gameStarted();
     }
 
     protected void restartGame()
     {
-        if (this.myBoard == null)
-        {
-            this.myBoard = new Tile[this.kBoardHeight][this.kBoardWidth];
-        }
-        else
+        this.engine.restartGame();
+        gameStarted();
+    }
+    
+    /** Pick up where the last run left off, if it left a game unfinished
+     * on this size of board.
+     */
+    protected void resumeGame()
+    {
+        java.io.File file = new java.io.File(kSaveFile);
+        if (!file.exists())
         {
-            clearBoard();
+            return;
         }
-        
-        // Fill the board with normal (non-bomb) pieces.
-        for (int line = 0; line < this.kBoardHeight; line++)
+        try
         {
-            for (int column = 0; column < this.kBoardWidth; column++)
+            if (this.engine.load(file))
             {
-                this.myBoard[line][column] = new Tile();
+                gameStarted();
             }
         }
-        
-        // Figure out (deterministically) where we want the bombs.
-        // Storing them in a Set allows us to avoid duplicates.  Unfortunately,
-        // between Java's lack of type inference, the necessary type-specifying
-        // required by a statically-typed language using a system like
-        // generics, and the fact that you can't genericize primitives like
-        // int, the logic here gets muddled a bit by syntax.
-        Set<Pair<Integer, Integer>> bombSet = new TreeSet<Pair<Integer, Integer>>();
-        java.util.Random generator = new java.util.Random(this.gameNumber);
-        for (int bombNumber = 0; bombNumber < this.kMaxBombs; bombNumber++)
-        {
-            int row = generator.nextInt(this.kBoardHeight);
-            int column = generator.nextInt(this.kBoardWidth);
-            bombSet.add(new Pair<Integer, Integer>(row, column));
-        }
-        this.numBombs = bombSet.size();
-        for (Pair<Integer, Integer> bombCoordinates : bombSet)
+        catch (java.io.IOException e)
         {
-            Tile tile = (Tile)this.myBoard[bombCoordinates.first][bombCoordinates.second];
-            tile.isBomb = true;
+            System.err.println(e);
         }
-
-        this.secondsElapsed = 0;
-        this.moves = 0;
-        this.flagsPlaced = 0;
-        updateStatusBar();
-        setTitle("Mines - board " + this.gameNumber);
     }
     
-    /**
-     * Calculate how many bombs are adjacent to a spot.
-     *
-     * Don't call this on a spot that has a bomb.
+    /** Keep an unfinished game for next time, or forget the last one if
+     * this one's over (or hasn't started).
      */
-    protected int calculateSurroundingBombs(int row, int column)
+    protected void saveGame()
     {
-        if (((Tile)this.myBoard[row][column]).isBomb)
+        java.io.File file = new java.io.File(kSaveFile);
+        if (this.engine.isBoardWon() || this.engine.getMoves() == 0)
         {
-            throw new IllegalArgumentException("You should never be calculating nearby bombs for a bomb spot!");
+            file.delete();
+            return;
         }
-        
-        int nearbyBombs = 0;
-        // We don't care about including the actual tile in this list because
-        // the above assertion guarantees it's not a bomb.
-        int[] offsets = {-1, 0, 1};
-        for (int offsetRow : offsets)
+        try
         {
-            for (int offsetColumn : offsets)
-            {
-                // Easier than doing bounds-checking.
-                try {
-                    Tile adjacentTile = (Tile)this.myBoard[row+offsetRow][column+offsetColumn];
-                    if (adjacentTile.isBomb)
-                    {
-                        nearbyBombs++;
-                    }
-                }
-                catch (ArrayIndexOutOfBoundsException e)
-                {
-                    // Do nothing, because we don't care about tiles that are
-                    // off the board.
-                }
-            }
+            this.engine.save(file);
         }
-        
-        return nearbyBombs;
+        catch (java.io.IOException e)
+        {
+            System.err.println(e);
+        }
+    }
+    
+    /** Where spectators can follow this game from. */
+    public GameFeed getFeed()
+    {
+        return this.feed;
+    }
+    
+    private void gameStarted()
+    {
+        this.feed.started();
+        clearHint();
+        // The first game starts before there's a board to show it on.
+        if (this.board != null)
+        {
+            this.board.repaintChanges();
+        }
+        updateStatusBar();
+        setTitle("Mines - board " + this.engine.getGameNumber());
     }
     
     protected void startTimer()
@@ -340,7 +279,8 @@ public class Kaboom extends JFrame implements ActionListener
         {
             public void actionPerformed(ActionEvent e)
             {
-                Kaboom.this.secondsElapsed++;
+                Kaboom.this.engine.tick();
+                Kaboom.this.feed.ticked();
                 Kaboom.this.updateStatusBar();
             }
         });
@@ -353,14 +293,60 @@ public class Kaboom extends JFrame implements ActionListener
     {
        // I don't really want to do printf in Java.
        String optionalSpace = " ";
-       if (this.flagsPlaced > 9)
+       if (this.engine.getFlagsPlaced() > 9)
        {
           optionalSpace = "";
        }
        
-       this.lblStatus.setText("Moves: " + this.moves + "   "
-                            + "Flags:  " + optionalSpace + this.flagsPlaced + "/" + this.numBombs + " "
-                            + this.secondsElapsed / 60 + ":" + String.format("%02d", this.secondsElapsed % 60));
+       int secondsElapsed = this.engine.getSecondsElapsed();
+       this.lblStatus.setText("Moves: " + this.engine.getMoves() + "   "
+                            + "Flags:  " + optionalSpace + this.engine.getFlagsPlaced() + "/" + this.engine.getNumBombs() + " "
+                            + secondsElapsed / 60 + ":" + String.format("%02d", secondsElapsed % 60)
+                            + this.hintText);
+    }
+    
+    /** Ask the solver for the best spot to click, and point it out. */
+    protected void showHint()
+    {
+        // Nothing left to find (losing reveals the board too).
+        if (this.engine.isBoardWon())
+        {
+            return;
+        }
+        if (this.solver == null)
+        {
+            this.solver = new KaboomSolver();
+        }
+        this.solver.solve(this.engine);
+        int move = this.solver.getBestMove();
+        if (move < 0)
+        {
+            clearHint();
+            return;
+        }
+        int row = move / this.engine.getWidth();
+        int column = move % this.engine.getWidth();
+        this.board.setHint(row, column);
+        if (this.solver.isBestMoveSafe())
+        {
+            this.hintText = "   Hint: safe";
+        }
+        else
+        {
+            double chance = 1.0 - this.solver.getBombProbability(row, column);
+            this.hintText = "   Hint: " + Math.round(100.0 * chance) + "% safe";
+        }
+        updateStatusBar();
+    }
+    
+    private void clearHint()
+    {
+        this.hintText = "";
+        // The first game starts before there's a board to show it on.
+        if (this.board != null)
+        {
+            this.board.setHint(-1, -1);
+        }
     }
     
     /** Handle button clicks
@@ -383,9 +369,9 @@ public class Kaboom extends JFrame implements ActionListener
             if (gameNumber != null)
             {
                 int parsedGameNumber = Integer.parseInt(gameNumber);
-                if (parsedGameNumber > 0 && parsedGameNumber <= this.kMaxGameNumber)
+                if (parsedGameNumber > 0 && parsedGameNumber <= KaboomEngine.kMaxGameNumber)
                 {
-                    this.gameNumber = parsedGameNumber;
+                    this.engine.setGameNumber(parsedGameNumber);
                     this.restartGame();
                 }
             }
@@ -403,280 +389,105 @@ public class Kaboom extends JFrame implements ActionListener
         }
         else if ("Cheat".equals(e.getActionCommand()))
         {
-            this.revealBoard();
-            this.justCheated = true;
+            this.engine.cheat();
+            this.feed.moved(KaboomEngine.ClickResult.played);
+            this.board.repaintChanges();
             updateStatusBar();
         }
-        else if ("Quit".equals(e.getActionCommand()))
-        {
-            System.exit(0);
-        }
-        repaint();
-    }
-
-    protected void clearBoard()
-    {
-        for (int row = 0; row < this.kBoardHeight; row++)
+        else if ("Hint".equals(e.getActionCommand()))
         {
-            for (int column = 0; column < this.kBoardWidth; column++)
-            {
-                this.myBoard[row][column] = null;
-            }
+            showHint();
         }
-    }
-    
-    protected void clickTile(final int row, final int column)
-    {
-        // Basic sanity check.
-        if (row < 0 || row >= this.kBoardHeight || column < 0 || column >= this.kBoardWidth)
+        else if ("Zoom In".equals(e.getActionCommand()))
         {
-            throw new IllegalArgumentException("Tile must be on the board.");
+            this.board.setZoom(this.board.getZoom() * 1.25);
         }
-        
-        Tile tile = (Tile)this.myBoard[row][column];
-        if (tile.status == Piece.hidden || tile.status == Piece.flagged || this.justCheated)
+        else if ("Zoom Out".equals(e.getActionCommand()))
         {
-            this.moves++;
-            this.justCheated = false;
-            this.updateStatusBar();
-            if (tile.isBomb)
-            {
-                this.revealBoard();
-                tile.status = Piece.exploded;
-                // TODO: This should be shown *after* the pieces are rendered revealed.
-                JOptionPane.showMessageDialog(this, "You lost.");
-            }
-            else
-            {
-                this.revealEmptyCells(row, column);
-                if (this.isBoardWon())
-                {
-                    String time = this.secondsElapsed / 60 + ":" + String.format("%02d", this.secondsElapsed % 60);
-                    int choice = JOptionPane.showConfirmDialog(this, "Game "+this.gameNumber+" Cleared!\nSave your time of "+time+"?", "Win Dialog", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
-                    // Magic number for "Yes"
-                    if (choice == 0)
-                    {
-                        String name = (String)JOptionPane.showInputDialog(this, "Your score of "+time+" will be entered into the Hall of Fame.  Enter your name:", "Hall of Fame Entry", JOptionPane.QUESTION_MESSAGE, null, null, "");
-                        HighScores highScores = HighScores.createInstance(".");
-                        try
-                        {
-                            highScores.saveScore(time, name);
-                        }
-                        catch (java.io.IOException e)
-                        {
-                            e.printStackTrace();
-                        }
-                    }
-                }
-            }
+            this.board.setZoom(this.board.getZoom() / 1.25);
         }
-        // Already-clicked pieces are still supposed to increment the move
-        // counter.  It's easier to do that here, rather than earlier, because
-        // we'd have to make more logic exceptions.
-        else if (!tile.isBomb)
+        else if ("Quit".equals(e.getActionCommand()))
         {
-            this.moves++;
-            this.updateStatusBar();
+            saveGame();
+            System.exit(0);
         }
     }
-    
-    protected void revealEmptyCells(int row, int column)
-    {
-        Tile tile = (Tile)this.myBoard[row][column];
-        tile.numSurroundingBombs = this.calculateSurroundingBombs(row, column);
-
-        // We don't want to auto-reveal bombs.
-        if (tile.isBomb)
-        {
-            return;
-        }
-        // Tiles next to bombs should be counted as empty for the sake of
-        // calculations, but we want to stop recursing at them; they form a
-        // barrier to contiguous "truly empty" spaces.
-        if (tile.numSurroundingBombs != 0)
-        {
-            tile.status = Piece.empty;
-            return;
-        }
 
-        tile.status = Piece.empty; // [2]
-        
-        // We don't care about including the actual tile in this list because
-        // the condition at [1] will always be false for it due to [2].
-        int[] offsets = {-1, 0, 1};
-        for (int offsetRow : offsets)
+    protected void clickTile(final int row, final int column)
+    {
+        KaboomEngine.ClickResult result = this.engine.clickTile(row, column);
+        this.feed.moved(result);
+        clearHint();
+        this.board.repaintChanges();
+        this.updateStatusBar();
+        if (result == KaboomEngine.ClickResult.lost)
         {
-            for (int offsetColumn : offsets)
-            {
-                // Easier than doing bounds-checking.
-                try {
-                    Tile adjacentTile = (Tile)this.myBoard[row+offsetRow][column+offsetColumn];
-                    // Only recurse to tiles that haven't been revealed already.
-                    // Otherwise, we'd get infinite recursion back and forth.
-                    if (adjacentTile.status == Piece.hidden
-                     || adjacentTile.status == Piece.flagged) // [1]
-                    {
-                        this.revealEmptyCells(row+offsetRow, column+offsetColumn);
-                    }
-                }
-                catch (ArrayIndexOutOfBoundsException e)
-                {
-                    // Do nothing, because we don't care about tiles that are
-                    // off the board.
-                }
-            }
+            // Make sure the revealed board is on screen before the dialog.
+            this.board.paintImmediately(this.board.getChangedBounds());
+            JOptionPane.showMessageDialog(this, "You lost.");
         }
-    }
-    
-    protected void revealBoard()
-    {
-        for (int row = 0; row < this.kBoardHeight; row++)
+        else if (result == KaboomEngine.ClickResult.won)
         {
-            for (int column = 0; column < this.kBoardWidth; column++)
+            int secondsElapsed = this.engine.getSecondsElapsed();
+            String time = secondsElapsed / 60 + ":" + String.format("%02d", secondsElapsed % 60);
+            int choice = JOptionPane.showConfirmDialog(this, "Game "+this.engine.getGameNumber()+" Cleared!\nSave your time of "+time+"?", "Win Dialog", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
+            // Magic number for "Yes"
+            if (choice == 0)
             {
-                Tile tile = (Tile)this.myBoard[row][column];
-                if (tile.isBomb)
+                String name = (String)JOptionPane.showInputDialog(this, "Your score of "+time+" will be entered into the Hall of Fame.  Enter your name:", "Hall of Fame Entry", JOptionPane.QUESTION_MESSAGE, null, null, "");
+                HighScores highScores = HighScores.createInstance(".");
+                try
                 {
-                    tile.status = Piece.bomb;
+                    highScores.saveScore(time, name, this.engine.getGameNumber(), this.engine.getWidth(),
+                                         this.engine.getHeight(), this.engine.getNumBombs(), this.engine.getMoves(),
+                                         Replay.record(this.engine));
                 }
-                else
+                catch (java.io.IOException e)
                 {
-                    tile.status = Piece.empty;
-                    tile.numSurroundingBombs = this.calculateSurroundingBombs(row, column);
+                    e.printStackTrace();
                 }
             }
         }
     }
     
-    /**
-     * The board is won if all non-bomb pieces have been revealed.
-     */
-    protected boolean isBoardWon()
-    {
-        for (int row = 0; row < this.kBoardHeight; row++)
-        {
-            for (int column = 0; column < this.kBoardWidth; column++)
-            {
-                Tile tile = (Tile)this.myBoard[row][column];
-                if (!tile.isBomb && (tile.status == Piece.hidden || tile.status == Piece.flagged))
-                {
-                    return false;
-                }
-            }
-        }
-        
-        return true;
-    }
-
     protected void rightClickTile(final int row, final int column)
     {
-        // Basic sanity check.
-        if (row < 0 || row >= this.kBoardHeight || column < 0 || column >= this.kBoardWidth)
-        {
-            throw new IllegalArgumentException("Tile must be on the board.");
-        }
-        
-        Tile tile = (Tile)this.myBoard[row][column];
-        if (tile.status == Piece.hidden)
-        {
-            tile.status = Piece.flagged;
-            this.flagsPlaced++;
-        }
-        else if (tile.status == Piece.flagged)
-        {
-            tile.status = Piece.hidden;
-            this.flagsPlaced--;
-        }
+        this.engine.rightClickTile(row, column);
+        this.feed.moved(KaboomEngine.ClickResult.played);
+        clearHint();
+        this.board.repaintChanges();
         this.updateStatusBar();
     }
     
     // Local main to launch the GUI
+    // Usage: java Kaboom [width height bombs [noguess]]
     public static void main(String[] args)
     {
-        // Create the GUI 
-        Kaboom frame = new Kaboom();
-        
-        frame.layoutGUI();   // do the layout of widgets
-        
-        // Make the GUI visible and available for user interaction
-        frame.pack();
-        frame.setVisible(true);
-    }
-}  // end class
+        // Watchable in JConsole; switched on with -Dkaboom.metrics=true.
+        // People click slowly enough to time every move.
+        KaboomMetrics.register();
+        KaboomMetrics.get().setSampleEvery(1);
 
-class Tile extends ImageIcon implements Renderable
-{
-    public boolean isBomb = false;
-    public int numSurroundingBombs = 0;
-    public Piece status = Piece.hidden;
-    
-    public RenderDescriptor getRenderDescriptor()
-    {
-        RenderDescriptor renderDescriptor = new RenderDescriptor();
-        if (this.status == Piece.empty && numSurroundingBombs == 0)
-        {
-            renderDescriptor.text = "";
-        }
-        else if (numSurroundingBombs == 0)
+        // Create the GUI 
+        Kaboom frame;
+        if (args.length >= 3)
         {
-            renderDescriptor.isImage = true;
-            renderDescriptor.text = this.status.toString();
+            frame = new Kaboom(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            if (args.length == 4 && "noguess".equals(args[3]))
+            {
+                frame.engine.setNoGuess(new NoGuessGenerator(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                                                             Integer.parseInt(args[2])));
+            }
         }
         else
         {
-            renderDescriptor.isImage = false;
-            renderDescriptor.isInverse = true; // White so we can see it.
-            renderDescriptor.isStrong = true; // Be bold, be brave.
-            renderDescriptor.text = Integer.toString(this.numSurroundingBombs);
-        }
-        return renderDescriptor;
-    }
-
-    public String toString()
-    {
-        return this.getRenderDescriptor().text;
-    }
-}
-
-/** This is a silly little class, created because Java doesn't have 2-tuples
- * (or n-tuples of any sort, for that matter).
- */
-class Pair<E1 extends Comparable<?>, E2 extends Comparable<?>> implements Comparable<Pair<E1, E2>> {
-    public E1 first;
-    public E2 second;
-    
-    public Pair(E1 first, E2 second)
-    {
-        this.first = first;
-        this.second = second;
-    }
-    
-    public boolean equals(Object other)
-    {
-        if (other instanceof Pair)
-        {
-            Pair otherPair = (Pair)other;
-            return this.first.equals(otherPair.first) && this.second.equals(otherPair.second);
+            frame = new Kaboom();
         }
         
-        return false;
-    }
-    
-    public int compareTo(Pair<E1, E2> other)
-    {
-        if (this.equals(other))
-        {
-            return 0;
-        }
+        frame.layoutGUI();   // do the layout of widgets
         
-        if (this.first.equals(other.first))
-        {
-            return ((Comparable)this.second).compareTo(other.second);
-        }
-        else
-        {
-            return ((Comparable)this.first).compareTo(other.first);
-        }
+        // Make the GUI visible and available for user interaction
+        frame.pack();
+        frame.setVisible(true);
     }
-}
-
+}  // end class
@@ -0,0 +1,1509 @@
+/**
+ * Rough-and-ready timings for the expensive parts of the game.
+ *
+ * Usage: java KaboomBenchmark [-json file] [benchmark ...]
+ * With no benchmarks named, every benchmark is run.  Big boards need a big
+ * heap, e.g. <code>java -Xmx2g KaboomBenchmark reveal</code>.  The paint
+ * benchmark needs PieceImages on the classpath and works fine with
+ * <code>-Djava.awt.headless=true</code>.  With <code>-json</code>, the
+ * results are written to the file as well, along with the Java version and
+ * number of cores, so runs can be compared release over release (see
+ * bench.sh).
+ */
+public class KaboomBenchmark
+{
+    private static final int kWarmupRuns = 2;
+    private static final int kTimedRuns = 5;
+
+    /* Everything reported so far, for the JSON file */
+    private static final java.util.List<String> results = new java.util.ArrayList<String>();
+
+    /** Time a single click that opens up an entire bomb-free board. */
+    static void benchmarkReveal(int size)
+    {
+        KaboomEngine engine = new KaboomEngine(size, size, 0);
+        long cells = (long)size * size;
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < kWarmupRuns + kTimedRuns; run++)
+        {
+            engine.restartGame();
+            long start = System.nanoTime();
+            try
+            {
+                engine.clickTile(size / 2, size / 2);
+            }
+            catch (StackOverflowError e)
+            {
+                System.out.println("reveal " + size + "x" + size + ": stack overflow");
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+            if (run >= kWarmupRuns)
+            {
+                best = Math.min(best, elapsed);
+            }
+        }
+        report("reveal " + size + "x" + size, best, cells, "cells");
+    }
+
+    /**
+     * Time one click that opens up most of a sparse board, on the calling
+     * thread and then on pools of 1, 2, 4... threads up to the number of
+     * cores, checking each comes out the same as the sequential fill.
+     */
+    static void benchmarkParallelReveal(int size, int bombs)
+    {
+        KaboomEngine sequential = new KaboomEngine(size, size, bombs);
+        sequential.restartGame();
+        int row = size / 2;
+        int column = size / 2;
+        // Find a spot in the middle with no bombs around it.
+        while (sequential.isBomb(row, column) || sequential.calculateSurroundingBombs(row, column) != 0)
+        {
+            column++;
+        }
+        KaboomEngine engine = new KaboomEngine(size, size, bombs);
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 0; threads <= cores; threads = threads == 0 ? 1 : Math.min(cores, threads * 2))
+        {
+            java.util.concurrent.ForkJoinPool pool = threads == 0 ? null : new java.util.concurrent.ForkJoinPool(threads);
+            engine.setRevealPool(pool);
+            long best = Long.MAX_VALUE;
+            long cells = 0;
+            for (int run = 0; run < kWarmupRuns + kTimedRuns; run++)
+            {
+                engine.restartGame();
+                int hidden = countHidden(engine);
+                long start = System.nanoTime();
+                engine.clickTile(row, column);
+                long elapsed = System.nanoTime() - start;
+                if (run >= kWarmupRuns)
+                {
+                    best = Math.min(best, elapsed);
+                }
+                cells = hidden - countHidden(engine);
+            }
+            if (threads == 0)
+            {
+                sequential.clickTile(row, column);
+            }
+            else
+            {
+                pool.shutdown();
+                for (int r = 0; r < size; r++)
+                {
+                    for (int c = 0; c < size; c++)
+                    {
+                        if (engine.getStatus(r, c) != sequential.getStatus(r, c))
+                        {
+                            throw new IllegalStateException("The parallel fill disagrees at " + r + ", " + c + ".");
+                        }
+                    }
+                }
+            }
+            report("reveal " + size + "x" + size + " " + (threads == 0 ? "sequential" : threads + " threads"),
+                   best, cells, "cells");
+            if (threads == cores)
+            {
+                break;
+            }
+        }
+    }
+
+    private static int countHidden(KaboomEngine engine)
+    {
+        int hidden = 0;
+        for (int row = 0; row < engine.getHeight(); row++)
+        {
+            for (int column = 0; column < engine.getWidth(); column++)
+            {
+                if (engine.getStatus(row, column) == Piece.hidden)
+                {
+                    hidden++;
+                }
+            }
+        }
+        return hidden;
+    }
+
+    /** Time looking up the neighbouring-bomb count of every safe spot. */
+    static void benchmarkNeighbours(int size, int bombs)
+    {
+        KaboomEngine engine = new KaboomEngine(size, size, bombs);
+        engine.restartGame();
+        long best = Long.MAX_VALUE;
+        long spots = 0;
+        long total = 0;
+        for (int run = 0; run < kWarmupRuns + kTimedRuns; run++)
+        {
+            spots = 0;
+            long start = System.nanoTime();
+            for (int row = 0; row < size; row++)
+            {
+                for (int column = 0; column < size; column++)
+                {
+                    if (!engine.isBomb(row, column))
+                    {
+                        total += engine.calculateSurroundingBombs(row, column);
+                        spots++;
+                    }
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            if (run >= kWarmupRuns)
+            {
+                best = Math.min(best, elapsed);
+            }
+        }
+        // Use the total, so the JIT can't skip the lookups.
+        if (total < 0)
+        {
+            throw new IllegalStateException();
+        }
+        report("neighbours " + size + "x" + size, best, spots, "spots");
+    }
+
+    /** Time showing the whole board, as losing and cheating do. */
+    static void benchmarkRevealBoard(int size, int bombs)
+    {
+        KaboomEngine engine = new KaboomEngine(size, size, bombs);
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < kWarmupRuns + kTimedRuns; run++)
+        {
+            engine.restartGame();
+            long start = System.nanoTime();
+            engine.revealBoard();
+            long elapsed = System.nanoTime() - start;
+            if (run >= kWarmupRuns)
+            {
+                best = Math.min(best, elapsed);
+            }
+        }
+        report("reveal board " + size + "x" + size, best, (long)size * size, "cells");
+    }
+
+    /** Time checking for a win, round-robin over several games so the
+     * JIT can't hoist the check out of the loop.
+     */
+    static void benchmarkWon(int size, int bombs, int games, int checks)
+    {
+        KaboomEngine[] engines = new KaboomEngine[games];
+        for (int game = 0; game < games; game++)
+        {
+            engines[game] = new KaboomEngine(size, size, bombs);
+            engines[game].setGameNumber(game + 1);
+            engines[game].restartGame();
+            clickFirstOpening(engines[game]);
+        }
+        long best = Long.MAX_VALUE;
+        int won = 0;
+        for (int run = 0; run < kWarmupRuns + kTimedRuns; run++)
+        {
+            won = 0;
+            long start = System.nanoTime();
+            for (int check = 0; check < checks; check++)
+            {
+                if (engines[check % games].isBoardWon())
+                {
+                    won++;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            if (run >= kWarmupRuns)
+            {
+                best = Math.min(best, elapsed);
+            }
+        }
+        // Use the count, so the JIT can't skip the checks.
+        if (won < 0)
+        {
+            throw new IllegalStateException();
+        }
+        report("won " + size + "x" + size, best, checks, "checks");
+    }
+
+    /** Time looking up the render descriptor for every spot on a board
+     * partway through a game, the way BoardView does when it paints.
+     */
+    static void benchmarkDescriptors(int size, int bombs)
+    {
+        KaboomEngine engine = new KaboomEngine(size, size, bombs);
+        engine.restartGame();
+        clickFirstOpening(engine);
+        long best = Long.MAX_VALUE;
+        int text = 0;
+        for (int run = 0; run < kWarmupRuns + kTimedRuns; run++)
+        {
+            long start = System.nanoTime();
+            for (int row = 0; row < size; row++)
+            {
+                for (int column = 0; column < size; column++)
+                {
+                    Piece status = engine.getStatus(row, column);
+                    int numSurroundingBombs = engine.isBomb(row, column) ? 0 : engine.calculateSurroundingBombs(row, column);
+                    text += Tile.valueOf(status, numSurroundingBombs).getRenderDescriptor().text.length();
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            if (run >= kWarmupRuns)
+            {
+                best = Math.min(best, elapsed);
+            }
+        }
+        if (text < 0)
+        {
+            throw new IllegalStateException();
+        }
+        report("descriptors " + size + "x" + size, best, (long)size * size, "spots");
+    }
+
+    /**
+     * Race BitBoard against KaboomEngine on the same game: laying out the
+     * board, one click that opens most of it, showing the whole board, and
+     * clicking every safe spot one at a time.  Checks they agree on every
+     * spot (every 97th row on big boards) after each.
+     */
+    static void benchmarkBitBoard(int size, int bombs)
+    {
+        KaboomEngine engine = new KaboomEngine(size, size, bombs);
+        engine.setRecording(false);
+        BitBoard bitBoard = new BitBoard(size, size, bombs);
+        String name = size + "x" + size + (bombs == 0 ? "" : " " + (int)(100.0 * bombs / size / size) + "%");
+        long cells = (long)size * size;
+
+        long[] engineTimes = new long[4];
+        long[] bitBoardTimes = new long[4];
+        java.util.Arrays.fill(engineTimes, Long.MAX_VALUE);
+        java.util.Arrays.fill(bitBoardTimes, Long.MAX_VALUE);
+        long clicks = 0;
+        for (int run = 0; run < kWarmupRuns + kTimedRuns; run++)
+        {
+            long[] engineRun = new long[4];
+            long[] bitBoardRun = new long[4];
+
+            long start = System.nanoTime();
+            engine.restartGame();
+            engineRun[0] = System.nanoTime() - start;
+            start = System.nanoTime();
+            bitBoard.restartGame();
+            bitBoardRun[0] = System.nanoTime() - start;
+
+            int row = size / 2;
+            int column = size / 2;
+            while (column < size - 1 && (engine.isBomb(row, column) || engine.calculateSurroundingBombs(row, column) != 0))
+            {
+                column++;
+            }
+            start = System.nanoTime();
+            engine.clickTile(row, column);
+            engineRun[1] = System.nanoTime() - start;
+            start = System.nanoTime();
+            bitBoard.clickTile(row, column);
+            bitBoardRun[1] = System.nanoTime() - start;
+            compareBoards(engine, bitBoard, "opening");
+
+            start = System.nanoTime();
+            engine.revealBoard();
+            engineRun[2] = System.nanoTime() - start;
+            start = System.nanoTime();
+            bitBoard.revealBoard();
+            bitBoardRun[2] = System.nanoTime() - start;
+            compareBoards(engine, bitBoard, "revealed board");
+
+            // Clicking every spot on a big board takes a while, so stick to
+            // the top corner.
+            int corner = Math.min(size, 300);
+            engine.restartGame();
+            bitBoard.restartGame();
+            clicks = 0;
+            start = System.nanoTime();
+            for (int r = 0; r < corner; r++)
+            {
+                for (int c = 0; c < corner; c++)
+                {
+                    if (!engine.isBomb(r, c))
+                    {
+                        engine.clickTile(r, c);
+                        clicks++;
+                    }
+                }
+            }
+            engineRun[3] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int r = 0; r < corner; r++)
+            {
+                for (int c = 0; c < corner; c++)
+                {
+                    if (!bitBoard.isBomb(r, c))
+                    {
+                        bitBoard.clickTile(r, c);
+                    }
+                }
+            }
+            bitBoardRun[3] = System.nanoTime() - start;
+            compareBoards(engine, bitBoard, "clicks");
+
+            if (run >= kWarmupRuns)
+            {
+                for (int i = 0; i < 4; i++)
+                {
+                    engineTimes[i] = Math.min(engineTimes[i], engineRun[i]);
+                    bitBoardTimes[i] = Math.min(bitBoardTimes[i], bitBoardRun[i]);
+                }
+            }
+        }
+        String[] names = { "generate", "opening", "reveal board", "clicks" };
+        for (int i = 0; i < 4; i++)
+        {
+            long units = i == 3 ? clicks : cells;
+            String unit = i == 3 ? "clicks" : "cells";
+            report(names[i] + " engine " + name, engineTimes[i], units, unit);
+            report(names[i] + " bitboard " + name, bitBoardTimes[i], units, unit);
+        }
+    }
+
+    private static void compareBoards(KaboomEngine engine, BitBoard bitBoard, String after)
+    {
+        int size = engine.getHeight();
+        int step = size > 1000 ? 97 : 1;
+        for (int row = 0; row < size; row += step)
+        {
+            for (int column = 0; column < engine.getWidth(); column++)
+            {
+                if (engine.getStatus(row, column) != bitBoard.getStatus(row, column))
+                {
+                    throw new IllegalStateException("BitBoard disagrees at " + row + ", " + column + " after the " + after + ".");
+                }
+            }
+        }
+        if (engine.getMoves() != bitBoard.getMoves() || engine.isBoardWon() != bitBoard.isBoardWon())
+        {
+            throw new IllegalStateException("BitBoard's counters disagree after the " + after + ".");
+        }
+    }
+
+    /** Time clicking every safe spot on a board, one by one. */
+    static void benchmarkClicks(int size, int bombs)
+    {
+        KaboomEngine engine = new KaboomEngine(size, size, bombs);
+        long best = Long.MAX_VALUE;
+        long clicks = 0;
+        for (int run = 0; run < kWarmupRuns + kTimedRuns; run++)
+        {
+            engine.restartGame();
+            clicks = 0;
+            long start = System.nanoTime();
+            for (int row = 0; row < size; row++)
+            {
+                for (int column = 0; column < size; column++)
+                {
+                    if (!engine.isBomb(row, column))
+                    {
+                        engine.clickTile(row, column);
+                        clicks++;
+                    }
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            if (run >= kWarmupRuns)
+            {
+                best = Math.min(best, elapsed);
+            }
+        }
+        report("clicks " + size + "x" + size, best, clicks, "clicks");
+    }
+
+    /** Time laying out a fresh board: placing bombs and counting neighbours. */
+    static void benchmarkGenerate(int size, int bombs)
+    {
+        KaboomEngine engine = new KaboomEngine(size, size, bombs);
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < kWarmupRuns + kTimedRuns; run++)
+        {
+            engine.setGameNumber(run + 1);
+            long start = System.nanoTime();
+            engine.restartGame();
+            long elapsed = System.nanoTime() - start;
+            if (run >= kWarmupRuns)
+            {
+                best = Math.min(best, elapsed);
+            }
+        }
+        report("generate " + size + "x" + size, best, (long)size * size, "cells");
+    }
+
+    /**
+     * Time painting one screenful of the board after a restart, a flag and a
+     * flood fill: just the changed area that's on screen, versus the whole
+     * screenful.  Painting goes to an offscreen image, so this runs headless
+     * too.
+     */
+    static void benchmarkPaint(int size)
+    {
+        KaboomEngine engine = new KaboomEngine(size, size, (int)((long)size * size * 15 / 100));
+        BoardView view = new BoardView(engine, GridImages.createInstance(""));
+        view.setSize(view.getPreferredSize());
+        java.awt.Rectangle screen = new java.awt.Rectangle(new java.awt.Point(0, 0), view.getPreferredScrollableViewportSize());
+        java.awt.image.BufferedImage frame = new java.awt.image.BufferedImage(
+            screen.width, screen.height, java.awt.image.BufferedImage.TYPE_INT_RGB);
+
+        long bestFlag = Long.MAX_VALUE;
+        long bestFill = Long.MAX_VALUE;
+        long bestFull = Long.MAX_VALUE;
+        for (int run = 0; run < kWarmupRuns + kTimedRuns; run++)
+        {
+            engine.setGameNumber(run + 1);
+            engine.restartGame();
+            timePaint(view, frame, screen.intersection(view.getChangedBounds()));
+
+            clickFirstOpening(engine);
+            long fill = timePaint(view, frame, screen.intersection(view.getChangedBounds()));
+
+            engine.rightClickTile(0, 0);
+            long flag = timePaint(view, frame, screen.intersection(view.getChangedBounds()));
+
+            long full = timePaint(view, frame, screen);
+            if (run >= kWarmupRuns)
+            {
+                bestFlag = Math.min(bestFlag, flag);
+                bestFill = Math.min(bestFill, fill);
+                bestFull = Math.min(bestFull, full);
+            }
+        }
+        report("paint screen " + size + "x" + size, bestFull, 1, "frames");
+        report("paint flag " + size + "x" + size, bestFlag, 1, "frames");
+        report("paint fill " + size + "x" + size, bestFill, 1, "frames");
+    }
+
+    private static long timePaint(BoardView view, java.awt.image.BufferedImage frame, java.awt.Rectangle clip)
+    {
+        java.awt.Graphics2D graphics = frame.createGraphics();
+        graphics.setClip(clip);
+        long start = System.nanoTime();
+        view.paint(graphics);
+        long elapsed = System.nanoTime() - start;
+        graphics.dispose();
+        return elapsed;
+    }
+
+    /** Click the first spot with no bombs around it, to get a flood fill. */
+    private static void clickFirstOpening(KaboomEngine engine)
+    {
+        for (int row = 0; row < engine.getHeight(); row++)
+        {
+            for (int column = 0; column < engine.getWidth(); column++)
+            {
+                if (!engine.isBomb(row, column) && engine.calculateSurroundingBombs(row, column) == 0)
+                {
+                    engine.clickTile(row, column);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Time finding the ten best scores in a big HighScores.txt, by reading
+     * and sorting the whole file (the way HighScores used to) versus
+     * streaming through it with ScoreScanner.
+     */
+    static void benchmarkScores(int lines) throws java.io.IOException
+    {
+        java.io.File scoresFile = java.io.File.createTempFile("HighScores", ".txt");
+        scoresFile.deleteOnExit();
+        java.util.SplittableRandom random = new java.util.SplittableRandom(lines);
+        java.io.PrintWriter out = new java.io.PrintWriter(new java.io.BufferedWriter(new java.io.FileWriter(scoresFile)));
+        for (int i = 0; i < lines; i++)
+        {
+            int seconds = random.nextInt(3600);
+            String time = random.nextBoolean() ? Integer.toString(seconds) : seconds / 60 + ":" + String.format("%02d", seconds % 60);
+            out.println(time + "  Player " + random.nextInt(100000));
+        }
+        out.close();
+        long bytes = scoresFile.length();
+
+        long bestSort = Long.MAX_VALUE;
+        long bestScan = Long.MAX_VALUE;
+        for (int run = 0; run < kWarmupRuns + kTimedRuns; run++)
+        {
+            long start = System.nanoTime();
+            java.util.List<ScoreRecord> sorted = sortScores(scoresFile);
+            long sort = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            java.util.List<ScoreRecord> scanned = ScoreScanner.topScores(scoresFile, true, 10);
+            long scan = System.nanoTime() - start;
+
+            if (!sorted.toString().equals(scanned.toString()))
+            {
+                throw new IllegalStateException("Scan disagrees with sort: " + scanned + " vs " + sorted);
+            }
+            if (run >= kWarmupRuns)
+            {
+                bestSort = Math.min(bestSort, sort);
+                bestScan = Math.min(bestScan, scan);
+            }
+        }
+        report("scores sort " + lines / 1000 + "K", bestSort, bytes, "bytes");
+        report("scores scan " + lines / 1000 + "K", bestScan, bytes, "bytes");
+        scoresFile.delete();
+    }
+
+    /** Read every score, sort them all, and keep the first ten. */
+    private static java.util.List<ScoreRecord> sortScores(java.io.File scoresFile) throws java.io.IOException
+    {
+        java.util.List<ScoreRecord> scores = new java.util.ArrayList<ScoreRecord>();
+        java.io.BufferedReader in = new java.io.BufferedReader(new java.io.FileReader(scoresFile));
+        String line;
+        while ((line = in.readLine()) != null)
+        {
+            int split = line.indexOf("  ");
+            scores.add(ScoreRecord.parse(line.substring(0, split), line.substring(split + 2), scores.size()));
+        }
+        in.close();
+        java.util.Collections.sort(scores);
+        return scores.subList(0, Math.min(10, scores.size()));
+    }
+
+    /**
+     * Time HighScores.getHighScores and saveScore as HighScores.txt grows,
+     * through the one HighScores there can be.  Each size is reached by
+     * adding lines to the text file behind its back, the way an old file
+     * gets picked up; the first getHighScores after that catches up, and
+     * is timed separately.
+     */
+    static void benchmarkHighScores(int[] sizes) throws java.io.IOException
+    {
+        java.io.File dir = java.nio.file.Files.createTempDirectory("scores").toFile();
+        HighScores highScores = HighScores.createInstance(dir.getPath());
+        java.io.File scoresFile = new java.io.File(dir, HighScores.kScoresFile);
+        java.util.SplittableRandom random = new java.util.SplittableRandom(sizes.length);
+        int lines = 0;
+        for (int size : sizes)
+        {
+            java.io.PrintWriter out = new java.io.PrintWriter(new java.io.BufferedWriter(new java.io.FileWriter(scoresFile, true)));
+            for (; lines < size; lines++)
+            {
+                int seconds = random.nextInt(3600);
+                out.println(seconds / 60 + ":" + String.format("%02d", seconds % 60) + "  Player " + random.nextInt(100000));
+            }
+            out.close();
+            String name = "highscores " + (size >= 1000 ? size / 1000 + "K" : Integer.toString(size));
+
+            long start = System.nanoTime();
+            highScores.getHighScores(true);
+            report(name + " catch up", System.nanoTime() - start, size, "scores");
+
+            long bestRead = Long.MAX_VALUE;
+            long bestSave = Long.MAX_VALUE;
+            for (int run = 0; run < kWarmupRuns + kTimedRuns; run++)
+            {
+                start = System.nanoTime();
+                String top = highScores.getHighScores(run % 2 == 0);
+                long read = System.nanoTime() - start;
+                if (top.isEmpty())
+                {
+                    throw new IllegalStateException("No high scores came back.");
+                }
+
+                start = System.nanoTime();
+                highScores.saveScore(Integer.toString(random.nextInt(3600)), "Benchmark");
+                long save = System.nanoTime() - start;
+                lines++;
+                if (run >= kWarmupRuns)
+                {
+                    bestRead = Math.min(bestRead, read);
+                    bestSave = Math.min(bestSave, save);
+                }
+            }
+            report(name + " getHighScores", bestRead, 1, "calls");
+            report(name + " saveScore", bestSave, 1, "saves");
+        }
+        for (java.io.File file : dir.listFiles())
+        {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * Load test for saving scores: lots of threads (and then lots of
+     * processes) saving at once into the same directory.  Checks afterwards
+     * that every score made it into HighScores.txt exactly once and whole.
+     */
+    static void benchmarkSaves(int processes, int threads, int savesPerThread) throws java.io.IOException
+    {
+        java.io.File dir = java.nio.file.Files.createTempDirectory("scores").toFile();
+        long start = System.nanoTime();
+        if (processes == 1)
+        {
+            saveScores(dir, 0, threads, savesPerThread);
+        }
+        else
+        {
+            // Each child is another copy of us, running saveScores.
+            String java = new java.io.File(System.getProperty("java.home"), "bin/java").getPath();
+            Process[] children = new Process[processes];
+            for (int p = 0; p < processes; p++)
+            {
+                children[p] = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "KaboomBenchmark",
+                                                 "saves-child", dir.getPath(), Integer.toString(p),
+                                                 Integer.toString(threads), Integer.toString(savesPerThread))
+                    .inheritIO().start();
+            }
+            for (Process child : children)
+            {
+                try
+                {
+                    if (child.waitFor() != 0)
+                    {
+                        throw new IllegalStateException("A saving process failed.");
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // Score i is "i  t<thread>", so sorted they should count up from 0.
+        int total = processes * threads * savesPerThread;
+        java.io.File scoresFile = new java.io.File(dir, HighScores.kScoresFile);
+        java.util.List<ScoreRecord> saved = ScoreScanner.topScores(scoresFile, true, total + 1);
+        if (saved.size() != total)
+        {
+            throw new IllegalStateException("Expected " + total + " scores but found " + saved.size() + ".");
+        }
+        for (int i = 0; i < total; i++)
+        {
+            ScoreRecord record = saved.get(i);
+            if (record.seconds != i || !record.name.equals("t" + i / savesPerThread))
+            {
+                throw new IllegalStateException("Score " + i + " came back as \"" + record + "\".");
+            }
+        }
+        ScoreStore store = new ScoreStore(new java.io.File(dir, HighScores.kStoreFile), scoresFile,
+                                          new java.io.File(dir, HighScores.kReplayFile));
+        if (store.getTopScores(false, 1).get(0).seconds != total - 1)
+        {
+            throw new IllegalStateException("The store lost track of the slowest score.");
+        }
+
+        report("saves " + processes + "x" + threads + " threads", elapsed, total, "saves");
+        for (java.io.File file : dir.listFiles())
+        {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    /** Save scores from a bunch of threads at once, as fast as they'll go. */
+    private static void saveScores(java.io.File dir, int process, int threads, final int savesPerThread)
+    {
+        final java.io.File storeFile = new java.io.File(dir, HighScores.kStoreFile);
+        final java.io.File scoresFile = new java.io.File(dir, HighScores.kScoresFile);
+        final java.io.File replayFile = new java.io.File(dir, HighScores.kReplayFile);
+        final int firstThread = process * threads;
+        final boolean[] failed = new boolean[1];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++)
+        {
+            final int thread = firstThread + t;
+            workers[t] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        ScoreStore store = new ScoreStore(storeFile, scoresFile, replayFile);
+                        for (int i = 0; i < savesPerThread; i++)
+                        {
+                            store.add(Integer.toString(thread * savesPerThread + i), "t" + thread);
+                        }
+                    }
+                    catch (java.io.IOException e)
+                    {
+                        e.printStackTrace();
+                        failed[0] = true;
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        for (Thread worker : workers)
+        {
+            try
+            {
+                worker.join();
+            }
+            catch (InterruptedException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+        if (failed[0])
+        {
+            throw new IllegalStateException("Some scores couldn't be saved.");
+        }
+    }
+
+    /**
+     * Time the tournament-dashboard queries on a big pile of scores: the
+     * top ten on a game, a player's rank and the scores from one minute,
+     * versus re-sorting everything for each query like we used to.
+     */
+    static void benchmarkLeaderboard(int scores, int queries)
+    {
+        java.util.SplittableRandom random = new java.util.SplittableRandom(scores);
+        Leaderboard all = new Leaderboard();
+        Leaderboard byTimestamp = new Leaderboard(Leaderboard.kByTimestamp);
+        java.util.Map<Integer, Leaderboard> byGame = new java.util.HashMap<Integer, Leaderboard>();
+        java.util.List<ScoreRecord> records = new java.util.ArrayList<ScoreRecord>(scores);
+        long start = System.nanoTime();
+        for (int i = 0; i < scores; i++)
+        {
+            int game = 1 + random.nextInt(KaboomEngine.kMaxGameNumber);
+            ScoreRecord record = new ScoreRecord(random.nextInt(3600), ScoreRecord.kSeconds, "Player " + random.nextInt(100000), i,
+                                                 game, 10, 10, 9, 10 + random.nextInt(80), 1000L * i);
+            records.add(record);
+            all.add(record);
+            byTimestamp.add(record);
+            Leaderboard board = byGame.get(game);
+            if (board == null)
+            {
+                board = new Leaderboard();
+                byGame.put(game, board);
+            }
+            board.add(record);
+        }
+        report("leaderboard build " + scores / 1000 + "K", System.nanoTime() - start, scores, "scores");
+
+        int found = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++)
+        {
+            found += byGame.get(1 + random.nextInt(KaboomEngine.kMaxGameNumber)).first(10).size();
+        }
+        report("leaderboard top 10 of game", System.nanoTime() - start, queries, "queries");
+
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++)
+        {
+            found += all.rank("Player " + random.nextInt(100000));
+        }
+        report("leaderboard player rank", System.nanoTime() - start, queries, "queries");
+
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++)
+        {
+            long from = 1000L * random.nextInt(scores);
+            found += byTimestamp.range(new ScoreRecord(0, ScoreRecord.kSeconds, "", Long.MIN_VALUE, 0, 0, 0, 0, 0, from),
+                                       new ScoreRecord(0, ScoreRecord.kSeconds, "", Long.MIN_VALUE, 0, 0, 0, 0, 0, from + 60000)).size();
+        }
+        report("leaderboard 1 minute window", System.nanoTime() - start, queries, "queries");
+
+        // For comparison, one query the old way.
+        start = System.nanoTime();
+        java.util.List<ScoreRecord> sorted = new java.util.ArrayList<ScoreRecord>(records);
+        java.util.Collections.sort(sorted);
+        found += sorted.size();
+        report("leaderboard full re-sort", System.nanoTime() - start, 1, "queries");
+        if (found == 0)
+        {
+            System.out.println("(nothing found?)");
+        }
+    }
+
+    /**
+     * Time laying out no-guess boards: one at a time the way a player gets
+     * them (the slowest is what matters), then a whole library on every core.
+     */
+    static void benchmarkNoGuess(int width, int height, int bombs, int games)
+    {
+        NoGuessGenerator generator = new NoGuessGenerator(width, height, bombs);
+        long[] board = new long[(width * height + 63) >>> 6];
+        String name = "noguess " + width + "x" + height + "/" + bombs;
+        // Warm up on games we won't time.
+        for (int game = games + 1; game <= games + 200; game++)
+        {
+            generator.generate(game, board);
+        }
+
+        long before = generator.getLayoutsTried();
+        long worst = 0;
+        long total = 0;
+        int failed = 0;
+        for (int game = 1; game <= games; game++)
+        {
+            long start = System.nanoTime();
+            if (!generator.generate(game, board))
+            {
+                failed++;
+            }
+            long elapsed = System.nanoTime() - start;
+            worst = Math.max(worst, elapsed);
+            total += elapsed;
+        }
+        report(name + " worst", worst, 1, "boards");
+        report(name + " mean", total / games, 1, "boards");
+        report(name + " layouts", total, generator.getLayoutsTried() - before, "layouts");
+
+        long start = System.nanoTime();
+        NoGuessGenerator.Library library = generator.generateAll(1, games);
+        report(name + " library", System.nanoTime() - start, games, "boards");
+        if (failed > 0 || library.size() != games - failed)
+        {
+            System.out.println("(" + failed + " games had no board, library has " + library.size() + ")");
+        }
+    }
+
+    /**
+     * Time replaying recorded games, first straight from memory, then
+     * checking them against a score file with ScoreVerifier.  A few of the
+     * scores get tampered with, to make sure they're caught.
+     */
+    static void benchmarkReplay(int games) throws java.io.IOException
+    {
+        // Record some won games, played by the solver.
+        KaboomEngine engine = new KaboomEngine();
+        MoveStrategy strategy = new SolverMoveStrategy();
+        final java.util.List<byte[]> recordings = new java.util.ArrayList<byte[]>();
+        final java.util.List<Integer> moves = new java.util.ArrayList<Integer>();
+        long bytes = 0;
+        for (int game = 1; recordings.size() < games; game++)
+        {
+            engine.setGameNumber(game);
+            engine.restartGame();
+            strategy.startGame(engine);
+            KaboomEngine.ClickResult result = KaboomEngine.ClickResult.played;
+            while (result == KaboomEngine.ClickResult.played)
+            {
+                int move = strategy.nextMove(engine);
+                result = engine.clickTile(move / engine.getWidth(), move % engine.getWidth());
+            }
+            if (result == KaboomEngine.ClickResult.won)
+            {
+                byte[] recording = Replay.record(engine);
+                recordings.add(recording);
+                moves.add(engine.getMoves());
+                bytes += recording.length;
+            }
+        }
+
+        Replay replay = new Replay();
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < kWarmupRuns + kTimedRuns; run++)
+        {
+            long start = System.nanoTime();
+            for (byte[] recording : recordings)
+            {
+                if (replay.play(recording) != Replay.Outcome.won)
+                {
+                    throw new IllegalStateException("A won game didn't replay as won.");
+                }
+            }
+            if (run >= kWarmupRuns)
+            {
+                best = Math.min(best, System.nanoTime() - start);
+            }
+        }
+        report("replay " + games / 1000 + "K (" + bytes / games + " bytes)", best, games, "games");
+
+        // The same games as saved scores, saved from a lot of threads at
+        // once so they go in big group commits.
+        java.io.File dir = java.io.File.createTempFile("kaboom", "");
+        dir.delete();
+        dir.mkdir();
+        java.io.File scoresFile = new java.io.File(dir, HighScores.kScoresFile);
+        java.io.File storeFile = new java.io.File(dir, HighScores.kStoreFile);
+        java.io.File replayFile = new java.io.File(dir, HighScores.kReplayFile);
+        final ScoreStore store = new ScoreStore(storeFile, scoresFile, replayFile);
+        final java.util.concurrent.atomic.AtomicInteger nextGame = new java.util.concurrent.atomic.AtomicInteger();
+        final boolean[] failed = new boolean[1];
+        Thread[] savers = new Thread[64];
+        for (int t = 0; t < savers.length; t++)
+        {
+            savers[t] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for (int i = nextGame.getAndIncrement(); i < recordings.size(); i = nextGame.getAndIncrement())
+                        {
+                            byte[] recording = recordings.get(i);
+                            Replay.Header header = Replay.readHeader(recording, 0, recording.length);
+                            store.add("59", "player" + i % 100, header.gameNumber, header.width, header.height,
+                                      header.bombs, moves.get(i), recording);
+                        }
+                    }
+                    catch (java.io.IOException e)
+                    {
+                        e.printStackTrace();
+                        failed[0] = true;
+                    }
+                }
+            };
+            savers[t].start();
+        }
+        for (Thread saver : savers)
+        {
+            try
+            {
+                saver.join();
+            }
+            catch (InterruptedException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+        if (failed[0])
+        {
+            throw new IllegalStateException("A save failed.");
+        }
+
+        // Then every thousandth one edited, from 59 to 50 seconds.
+        byte[] text = java.nio.file.Files.readAllBytes(scoresFile.toPath());
+        int lines = 0;
+        int tampered = 0;
+        int lineStart = 0;
+        for (int i = 0; i < text.length; i++)
+        {
+            if (text[i] == '\n')
+            {
+                if (++lines % 1000 == 0)
+                {
+                    text[lineStart + 1] = '0';
+                    tampered++;
+                }
+                lineStart = i + 1;
+            }
+        }
+        java.nio.file.Files.write(scoresFile.toPath(), text);
+
+        ScoreVerifier verifier = new ScoreVerifier();
+        best = Long.MAX_VALUE;
+        for (int run = 0; run < kWarmupRuns + kTimedRuns; run++)
+        {
+            ScoreVerifier.Report checked = verifier.verify(scoresFile, storeFile, replayFile);
+            if (checked.verified != games - tampered || checked.failed != tampered)
+            {
+                throw new IllegalStateException("The verifier got it wrong:\n" + checked);
+            }
+            if (run >= kWarmupRuns)
+            {
+                best = Math.min(best, checked.nanos);
+            }
+        }
+        report("verify " + games / 1000 + "K", best, games, "scores");
+        for (java.io.File file : dir.listFiles())
+        {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * Time turning a game into BoardStream frames: a delta for each of
+     * <code>moves</code> clicks on safe spots, then a keyframe of the board
+     * they leave, checking a Mirror fed the frames ends up the same.
+     */
+    static void benchmarkStream(int size, int bombs, int moves)
+    {
+        KaboomEngine engine = new KaboomEngine(size, size, bombs);
+        engine.restartGame();
+        BoardStream stream = new BoardStream(engine);
+        BoardStream.Mirror mirror = new BoardStream.Mirror();
+        mirror.apply(stream.nextFrame());
+
+        java.util.SplittableRandom random = new java.util.SplittableRandom(size);
+        long encoding = 0;
+        long bytes = 0;
+        for (int move = 0; move < moves; move++)
+        {
+            int row;
+            int column;
+            do
+            {
+                row = random.nextInt(size);
+                column = random.nextInt(size);
+            }
+            while (engine.isBomb(row, column));
+            engine.clickTile(row, column);
+            long start = System.nanoTime();
+            byte[] frame = stream.nextFrame();
+            encoding += System.nanoTime() - start;
+            bytes += frame.length;
+            mirror.apply(frame);
+        }
+        report("stream deltas " + size + "x" + size, encoding, bytes, "bytes");
+
+        byte[] keyframe = null;
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < kWarmupRuns + kTimedRuns; run++)
+        {
+            long start = System.nanoTime();
+            keyframe = stream.keyframe();
+            long elapsed = System.nanoTime() - start;
+            if (run >= kWarmupRuns)
+            {
+                best = Math.min(best, elapsed);
+            }
+        }
+        mirror.apply(keyframe);
+        if (!mirror.matches(engine))
+        {
+            throw new IllegalStateException("The mirrored board came out different.");
+        }
+        report("stream keyframe " + size + "x" + size, best, keyframe.length, "bytes");
+        System.out.println(String.format("  %.1f bytes a move, against %d for a keyframe",
+                                         (double)bytes / moves, keyframe.length));
+    }
+
+    /** Play random moves on an expert board until the feed has had
+     * <code>events</code> more events, ticking the clock every few moves.
+     * @param movesPerSecond how fast to play, or 0 for as fast as we can
+     */
+    private static void playFeed(KaboomEngine engine, GameFeed feed, java.util.SplittableRandom random, long events,
+                                 int movesPerSecond)
+    {
+        long end = feed.getEventCount() + events;
+        int moves = 0;
+        long start = System.nanoTime();
+        while (feed.getEventCount() < end)
+        {
+            if (movesPerSecond > 0)
+            {
+                long due = start + moves * 1000000000L / movesPerSecond;
+                while (System.nanoTime() < due)
+                {
+                    java.util.concurrent.locks.LockSupport.parkNanos(due - System.nanoTime());
+                }
+            }
+            KaboomEngine.ClickResult result;
+            if (random.nextInt(4) == 0)
+            {
+                engine.rightClickTile(random.nextInt(engine.getHeight()), random.nextInt(engine.getWidth()));
+                result = KaboomEngine.ClickResult.played;
+            }
+            else
+            {
+                result = engine.clickTile(random.nextInt(engine.getHeight()), random.nextInt(engine.getWidth()));
+            }
+            feed.moved(result);
+            if (result != KaboomEngine.ClickResult.played)
+            {
+                engine.newGame();
+                feed.started();
+            }
+            if (++moves % 8 == 0)
+            {
+                engine.tick();
+                feed.ticked();
+            }
+        }
+    }
+
+    /**
+     * Time one player publishing to a GameFeed with lots of spectators
+     * reading it on other threads, against the player alone.  The player
+     * never waits, so spectators that can't keep up skip to keyframes; at
+     * the end they all catch up and are checked against the real board.
+     * @param movesPerSecond how fast the player goes, or 0 for flat out
+     */
+    static void benchmarkSpectators(int spectators, final long events, int movesPerSecond)
+    {
+        KaboomEngine engine = new KaboomEngine(30, 16, 99);
+        engine.restartGame();
+        GameFeed feed = new GameFeed(engine);
+        java.util.SplittableRandom random = new java.util.SplittableRandom(spectators);
+        playFeed(engine, feed, random, events, 0);
+        long start = System.nanoTime();
+        playFeed(engine, feed, random, events, movesPerSecond);
+        String name = "feed " + (movesPerSecond > 0 ? movesPerSecond + "/s " : "");
+        report(name + "alone", System.nanoTime() - start, events, "events");
+
+        final GameFeed.Spectator[] watching = new GameFeed.Spectator[spectators];
+        for (int spectator = 0; spectator < spectators; spectator++)
+        {
+            watching[spectator] = feed.watch();
+        }
+        final java.util.concurrent.atomic.AtomicBoolean playing = new java.util.concurrent.atomic.AtomicBoolean(true);
+        final java.util.concurrent.atomic.AtomicLong read = new java.util.concurrent.atomic.AtomicLong();
+        int threads = Runtime.getRuntime().availableProcessors();
+        Thread[] readers = new Thread[threads];
+        for (int t = 0; t < threads; t++)
+        {
+            final int first = t;
+            final int step = threads;
+            readers[t] = new Thread()
+            {
+                public void run()
+                {
+                    long count = 0;
+                    boolean more = true;
+                    while (more)
+                    {
+                        // Check before reading, so the last pass sees everything.
+                        more = playing.get();
+                        for (int spectator = first; spectator < watching.length; spectator += step)
+                        {
+                            while (watching[spectator].poll() != null)
+                            {
+                                count++;
+                            }
+                        }
+                    }
+                    read.addAndGet(count);
+                }
+            };
+            readers[t].start();
+        }
+        start = System.nanoTime();
+        playFeed(engine, feed, random, events, movesPerSecond);
+        long played = System.nanoTime() - start;
+        playing.set(false);
+        for (Thread reader : readers)
+        {
+            try
+            {
+                reader.join();
+            }
+            catch (InterruptedException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long skipped = 0;
+        for (GameFeed.Spectator spectator : watching)
+        {
+            skipped += spectator.getSkipped();
+            if (spectator.getBacklog() != 0 || !spectator.getBoard().matches(engine))
+            {
+                throw new IllegalStateException("A spectator's board came out different.");
+            }
+        }
+        report(name + "+ " + spectators + " spectators", played, events, "events");
+        report(name + spectators + " reads", elapsed, read.get(), "events");
+        System.out.println(String.format("  %.1f%% of events skipped by spectators falling behind",
+                                         100.0 * skipped / ((double)spectators * events)));
+    }
+
+    /**
+     * Time laying out a board and clicking every safe spot on it, with
+     * KaboomMetrics off and on, taking turns so both see the same JIT and
+     * the same machine, and report how much the metrics cost.
+     * @param rounds timed runs of each; small boards need more to settle
+     */
+    static void benchmarkMetrics(int size, int bombs, int rounds)
+    {
+        KaboomEngine engine = new KaboomEngine(size, size, bombs);
+        KaboomMetrics metrics = KaboomMetrics.get();
+        boolean wasEnabled = metrics.isEnabled();
+        long[] best = { Long.MAX_VALUE, Long.MAX_VALUE };
+        long clicks = 0;
+        for (int run = 0; run < 2 * (kWarmupRuns + rounds); run++)
+        {
+            int on = run % 2;
+            metrics.setEnabled(on == 1);
+            clicks = 0;
+            long start = System.nanoTime();
+            engine.restartGame();
+            for (int row = 0; row < size; row++)
+            {
+                for (int column = 0; column < size; column++)
+                {
+                    if (!engine.isBomb(row, column))
+                    {
+                        engine.clickTile(row, column);
+                        clicks++;
+                    }
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            if (run >= 2 * kWarmupRuns)
+            {
+                best[on] = Math.min(best[on], elapsed);
+            }
+        }
+        metrics.setEnabled(wasEnabled);
+        if (metrics.getCounts().get("move") == 0)
+        {
+            throw new IllegalStateException("The metrics didn't count any moves.");
+        }
+        report("metrics off " + size + "x" + size, best[0], clicks, "clicks");
+        report("metrics on " + size + "x" + size, best[1], clicks, "clicks");
+        System.out.println(String.format("  %.1f%% slower with metrics on", 100.0 * (best[1] - best[0]) / best[0]));
+    }
+
+    /** Time saving a game in progress and loading it back. */
+    static void benchmarkSnapshot(int size, int bombs) throws java.io.IOException
+    {
+        KaboomEngine engine = new KaboomEngine(size, size, bombs);
+        engine.restartGame();
+        clickFirstOpening(engine);
+        KaboomEngine loaded = new KaboomEngine(size, size, bombs);
+        java.io.File file = java.io.File.createTempFile("kaboom", ".sav");
+        long bestSave = Long.MAX_VALUE;
+        long bestLoad = Long.MAX_VALUE;
+        for (int run = 0; run < kWarmupRuns + kTimedRuns; run++)
+        {
+            long start = System.nanoTime();
+            engine.save(file);
+            long saved = System.nanoTime();
+            if (!loaded.load(file))
+            {
+                throw new IllegalStateException("The saved game didn't load.");
+            }
+            long end = System.nanoTime();
+            if (run >= kWarmupRuns)
+            {
+                bestSave = Math.min(bestSave, saved - start);
+                bestLoad = Math.min(bestLoad, end - saved);
+            }
+        }
+        for (int row = 0; row < size; row += 97)
+        {
+            for (int column = 0; column < size; column++)
+            {
+                if (loaded.getStatus(row, column) != engine.getStatus(row, column)
+                    || loaded.isBomb(row, column) != engine.isBomb(row, column))
+                {
+                    throw new IllegalStateException("The saved game came back different.");
+                }
+            }
+        }
+        long bytes = file.length();
+        report("snapshot save " + size + "x" + size, bestSave, bytes, "bytes");
+        report("snapshot load " + size + "x" + size, bestLoad, bytes, "bytes");
+        file.delete();
+    }
+
+    /** Time clicking safe spots along a long walk across an endless board,
+     * with too little room in memory for the chunks it passes through.
+     */
+    static void benchmarkEndless(int spots, int maxChunks) throws java.io.IOException
+    {
+        java.io.File dir = java.io.File.createTempFile("kaboom", ".endless");
+        dir.delete();
+        EndlessBoard board = new EndlessBoard(EndlessBoard.kDefaultBombsPerChunk, maxChunks, dir);
+        long best = Long.MAX_VALUE;
+        long revealed = 0;
+        for (int run = 0; run < kWarmupRuns + kTimedRuns; run++)
+        {
+            board.restartGame();
+            long start = System.nanoTime();
+            // Walk out diagonally, and back along the row a chunk below, so
+            // some of the chunks come back from the spill directory.
+            for (int spot = 0; spot < spots; spot++)
+            {
+                int row = spot < spots / 2 ? spot : spots - spot + EndlessBoard.kChunkSize;
+                int column = spot < spots / 2 ? spot : spots - spot;
+                if (!board.isBomb(row, column))
+                {
+                    board.clickTile(row, column);
+                }
+                if (board.getCachedChunks() > maxChunks)
+                {
+                    throw new IllegalStateException("The board kept " + board.getCachedChunks() + " chunks.");
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            if (run >= kWarmupRuns)
+            {
+                best = Math.min(best, elapsed);
+            }
+            revealed = board.getRevealedCells();
+        }
+        report("endless " + spots + " spots", best, spots, "spots");
+        System.out.println("    " + revealed + " revealed, " + board.getChunksDealt() + " chunks dealt, "
+                           + board.getChunksSpilled() + " spilled, " + board.getChunksLoaded() + " loaded");
+        board.restartGame();
+        dir.delete();
+    }
+
+    /** Print the best time for a run, and the rate it works out to. */
+    static void report(String name, long nanos, long units, String unitName)
+    {
+        System.out.println(String.format("%-28s %10.2f ms %14.0f %s/sec",
+                                         name, nanos / 1e6, units / (nanos / 1e9), unitName));
+        results.add(String.format(java.util.Locale.ROOT,
+                                  "{\"name\": \"%s\", \"nanos\": %d, \"units\": %d, \"unit\": \"%s\", \"perSecond\": %.1f}",
+                                  name, nanos, units, unitName, units / (nanos / 1e9)));
+    }
+
+    /** Write out everything reported, as JSON. */
+    static void writeResults(java.io.File file) throws java.io.IOException
+    {
+        java.io.PrintWriter out = new java.io.PrintWriter(new java.io.BufferedWriter(new java.io.FileWriter(file)));
+        out.println("{");
+        out.println("  \"date\": \"" + java.time.Instant.now() + "\",");
+        out.println("  \"java\": \"" + System.getProperty("java.version") + "\",");
+        out.println("  \"cores\": " + Runtime.getRuntime().availableProcessors() + ",");
+        out.println("  \"maxHeap\": " + Runtime.getRuntime().maxMemory() + ",");
+        out.println("  \"results\": [");
+        for (int i = 0; i < results.size(); i++)
+        {
+            out.println("    " + results.get(i) + (i + 1 < results.size() ? "," : ""));
+        }
+        out.println("  ]");
+        out.println("}");
+        out.close();
+        if (out.checkError())
+        {
+            throw new java.io.IOException("Couldn't write " + file + ".");
+        }
+    }
+
+    private static boolean wanted(String[] args, String name)
+    {
+        if (args.length == 0)
+        {
+            return true;
+        }
+        for (String arg : args)
+        {
+            if (arg.equals(name))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void main(String[] args) throws java.io.IOException
+    {
+        if (args.length == 5 && args[0].equals("saves-child"))
+        {
+            saveScores(new java.io.File(args[1]), Integer.parseInt(args[2]),
+                       Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+            return;
+        }
+        java.io.File json = null;
+        if (args.length >= 2 && args[0].equals("-json"))
+        {
+            json = new java.io.File(args[1]);
+            args = java.util.Arrays.copyOfRange(args, 2, args.length);
+        }
+        if (wanted(args, "generate"))
+        {
+            // Expert density, a bit over 20%.
+            benchmarkGenerate(1000, 206000);
+            benchmarkGenerate(10000, 20600000);
+        }
+        if (wanted(args, "neighbours"))
+        {
+            benchmarkNeighbours(1000, 206000);
+            benchmarkNeighbours(10000, 20600000);
+        }
+        if (wanted(args, "reveal"))
+        {
+            benchmarkReveal(1000);
+            benchmarkReveal(10000);
+        }
+        if (wanted(args, "revealboard"))
+        {
+            benchmarkRevealBoard(1000, 206000);
+            benchmarkRevealBoard(10000, 20600000);
+        }
+        if (wanted(args, "won"))
+        {
+            benchmarkWon(10, 9, 1000, 10000000);
+            benchmarkWon(10000, 20600000, 3, 10000000);
+        }
+        if (wanted(args, "descriptors"))
+        {
+            benchmarkDescriptors(1000, 206000);
+        }
+        if (wanted(args, "parallel"))
+        {
+            // An empty board, and one at 2% that's still mostly one opening.
+            benchmarkParallelReveal(10000, 0);
+            benchmarkParallelReveal(10000, 2000000);
+        }
+        if (wanted(args, "bitboard"))
+        {
+            benchmarkBitBoard(1000, 0);
+            benchmarkBitBoard(1000, 20000);
+            benchmarkBitBoard(1000, 206000);
+            benchmarkBitBoard(10000, 0);
+            benchmarkBitBoard(10000, 2000000);
+        }
+        if (wanted(args, "clicks"))
+        {
+            benchmarkClicks(100, 2060);
+            benchmarkClicks(300, 18540);
+        }
+        if (wanted(args, "paint"))
+        {
+            benchmarkPaint(40);
+            benchmarkPaint(1000);
+            benchmarkPaint(10000);
+        }
+        if (wanted(args, "noguess"))
+        {
+            // Beginner, intermediate and expert.
+            benchmarkNoGuess(9, 9, 10, 2000);
+            benchmarkNoGuess(16, 16, 40, 2000);
+            benchmarkNoGuess(30, 16, 99, 2000);
+        }
+        if (wanted(args, "scores"))
+        {
+            benchmarkScores(1000000);
+            benchmarkScores(10000000);
+        }
+        if (wanted(args, "leaderboard"))
+        {
+            benchmarkLeaderboard(1000000, 100000);
+        }
+        if (wanted(args, "replay"))
+        {
+            benchmarkReplay(100000);
+        }
+        if (wanted(args, "snapshot"))
+        {
+            benchmarkSnapshot(1000, 206000);
+            benchmarkSnapshot(10000, 20600000);
+        }
+        if (wanted(args, "stream"))
+        {
+            benchmarkStream(1000, 206000, 1000);
+            benchmarkStream(10000, 20600000, 1000);
+        }
+        if (wanted(args, "spectators"))
+        {
+            // Flat out, and at a brisk but human-ish pace.
+            benchmarkSpectators(10000, 200000, 0);
+            benchmarkSpectators(10000, 2000, 200);
+        }
+        if (wanted(args, "metrics"))
+        {
+            benchmarkMetrics(300, 18540, 50);
+            benchmarkMetrics(1000, 206000, kTimedRuns);
+        }
+        if (wanted(args, "endless"))
+        {
+            benchmarkEndless(100000, 64);
+            benchmarkEndless(100000, 4096);
+        }
+        if (wanted(args, "highscores"))
+        {
+            benchmarkHighScores(new int[] { 1000, 100000, 1000000 });
+        }
+        if (wanted(args, "saves"))
+        {
+            benchmarkSaves(1, 1, 2000);
+            benchmarkSaves(1, 16, 250);
+            benchmarkSaves(1, 64, 100);
+            benchmarkSaves(4, 16, 100);
+        }
+        if (json != null)
+        {
+            writeResults(json);
+        }
+    }
+}
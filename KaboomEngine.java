@@ -0,0 +1,1346 @@
+/**
+ * KaboomEngine holds the state of one game of Kaboom, with no Swing in sight.
+ *
+ * The board is packed into primitive arrays indexed by
+ * <code>row * width + column</code>: a bitset of bomb locations, a byte per
+ * cell of precomputed neighbouring-bomb counts, and a byte per cell holding the
+ * ordinal of the cell's current <code>Piece</code>.  That keeps a board down to
+ * a couple of bytes per cell, so we can keep lots of them around at once
+ * (solvers, replays, etc.) without dragging a JFrame along.
+ */
+public class KaboomEngine
+{
+    /** What happened as a result of a left click. */
+    public enum ClickResult
+    {
+        /** The click was counted (or ignored), but the game goes on. */
+        played,
+        /** The player clicked on a bomb. */
+        lost,
+        /** The click revealed the last safe cell. */
+        won
+    }
+
+    public static final int kDefaultWidth = 10;
+    public static final int kDefaultHeight = 10;
+    public static final int kDefaultBombs = 9;
+    /** Boards bigger than this on a side are more than anyone will ever need. */
+    public static final int kMaxDimension = 10000;
+    public static final int kMaxGameNumber = 5000;
+
+    // Piece is an enum, and we want to store one per cell without the
+    // reference overhead, so we store ordinals and map them back here.
+    private static final Piece[] kPieces = Piece.values();
+    private static final byte kEmpty = (byte)Piece.empty.ordinal();
+    private static final byte kBomb = (byte)Piece.bomb.ordinal();
+    private static final byte kExploded = (byte)Piece.exploded.ordinal();
+    private static final byte kHidden = (byte)Piece.hidden.ordinal();
+    private static final byte kFlagged = (byte)Piece.flagged.ordinal();
+
+    private final int width;
+    private final int height;
+    private final int maxBombs;
+
+    /* The game board */
+    private final long[] bombs;
+    private final byte[] surroundingBombs;
+    private final byte[] status;
+
+    /* What the last move changed, as (start index, length) pairs */
+    private int[] changedRuns = new int[16];
+    private int changedRunCount = 0;
+
+    /* Scratch space for revealEmptyCells */
+    private int[] seeds = new int[64];
+    private int seedCount = 0;
+    // Where big openings get revealed in parallel, or null to stay on the
+    // calling thread.
+    private java.util.concurrent.ForkJoinPool revealPool = null;
+
+    private int gameNumber = 1;
+    private int moves = 0;
+    private int flagsPlaced = 0;
+    private int numBombs = 0;
+    // Safe spots that are still hidden (or flagged); the game is won at zero.
+    private int hiddenSafeCells = 0;
+    private int secondsElapsed = 0;
+    private boolean justCheated = false;
+    // Lays out no-guess boards, or null for plain random ones.
+    private NoGuessGenerator noGuess = null;
+
+    /* Every move since the last restart, and when the restart was */
+    private final MoveLog moveLog = new MoveLog();
+    private boolean recording = true;
+    private long startNanos = 0;
+
+    /* Moves until KaboomMetrics times one, and whether this one is */
+    private int movesUntilSample = 1;
+    private boolean sampling = false;
+
+    /** Create an engine for the classic 10x10 board. */
+    public KaboomEngine()
+    {
+        this(kDefaultWidth, kDefaultHeight, kDefaultBombs);
+    }
+
+    /** Create an engine for a board of the given size.
+     * The board is empty until <code>restartGame</code> is called.
+     * @param width number of columns, 1 - kMaxDimension
+     * @param height number of rows, 1 - kMaxDimension
+     * @param maxBombs number of bombs to place, at most one per cell
+     */
+    public KaboomEngine(int width, int height, int maxBombs)
+    {
+        if (width <= 0 || height <= 0 || width > kMaxDimension || height > kMaxDimension)
+        {
+            throw new IllegalArgumentException("Board dimensions must be between 1 and " + kMaxDimension + ".");
+        }
+        if (maxBombs < 0 || maxBombs > width * height)
+        {
+            throw new IllegalArgumentException("Can't fit " + maxBombs + " bombs on a " + width + "x" + height + " board.");
+        }
+
+        this.width = width;
+        this.height = height;
+        this.maxBombs = maxBombs;
+
+        int cells = width * height;
+        this.bombs = new long[(cells + 63) >>> 6];
+        this.surroundingBombs = new byte[cells];
+        this.status = new byte[cells];
+    }
+
+    public int getWidth()
+    {
+        return this.width;
+    }
+
+    public int getHeight()
+    {
+        return this.height;
+    }
+
+    public int getGameNumber()
+    {
+        return this.gameNumber;
+    }
+
+    /** Lay out boards that never need a guess, or go back to plain random
+     * ones with null.  Doesn't take effect until the next restart.
+     * A no-guess game starts with its opening already revealed (that
+     * doesn't count as a move), since it's only solvable from there.
+     */
+    public void setNoGuess(NoGuessGenerator generator)
+    {
+        if (generator != null && (generator.getWidth() != this.width || generator.getHeight() != this.height
+                                  || generator.getNumBombs() != this.maxBombs))
+        {
+            throw new IllegalArgumentException("That generator is for a different board.");
+        }
+        this.noGuess = generator;
+    }
+
+    public NoGuessGenerator getNoGuess()
+    {
+        return this.noGuess;
+    }
+
+    /** Reveal big openings on this pool's threads, or only on the calling
+     * thread with null (the default).  Either way, the board comes out the
+     * same.
+     */
+    public void setRevealPool(java.util.concurrent.ForkJoinPool pool)
+    {
+        this.revealPool = pool;
+    }
+
+    public java.util.concurrent.ForkJoinPool getRevealPool()
+    {
+        return this.revealPool;
+    }
+
+    /** Every move since the last restart (see Replay). */
+    public MoveLog getMoveLog()
+    {
+        return this.moveLog;
+    }
+
+    /** Whether to keep the move log (the default).  Replays of games that
+     * are already recorded don't need to record them again.
+     */
+    public void setRecording(boolean recording)
+    {
+        this.recording = recording;
+        this.moveLog.clear();
+    }
+
+    private void record(int action, int index)
+    {
+        if (this.recording)
+        {
+            this.moveLog.add(action, index, (System.nanoTime() - this.startNanos) / 1000000);
+        }
+    }
+
+    /** Pick the game to play.  Doesn't take effect until the next restart.
+     * @param gameNumber the seed for bomb placement, 1 - kMaxGameNumber
+     */
+    public void setGameNumber(int gameNumber)
+    {
+        this.gameNumber = gameNumber;
+    }
+
+    public int getMoves()
+    {
+        return this.moves;
+    }
+
+    public int getFlagsPlaced()
+    {
+        return this.flagsPlaced;
+    }
+
+    public int getNumBombs()
+    {
+        return this.numBombs;
+    }
+
+    public int getSecondsElapsed()
+    {
+        return this.secondsElapsed;
+    }
+
+    /** Advance the game clock by one second. */
+    public void tick()
+    {
+        this.secondsElapsed++;
+    }
+
+    /** Move on to the next game number (wrapping around) and start it. */
+    public void newGame()
+    {
+        this.gameNumber++;
+        if (this.gameNumber > kMaxGameNumber)
+        {
+            this.gameNumber = 1;
+        }
+        restartGame();
+    }
+
+    /** Start the current game number over from scratch. */
+    public void restartGame()
+    {
+        long start = KaboomMetrics.now();
+        clearChanges();
+        java.util.Arrays.fill(this.status, kHidden);
+        recordChange(0, this.status.length);
+        // If the generator can't find a no-guess board (very dense boards),
+        // we fall back on a plain one rather than hang.
+        boolean noGuessBoard = this.noGuess != null && this.noGuess.generate(this.gameNumber, this.bombs);
+        if (!noGuessBoard)
+        {
+            placeBombs(this.bombs, this.status.length, this.maxBombs, new java.util.SplittableRandom(this.gameNumber));
+        }
+        this.numBombs = this.maxBombs;
+
+        // The bombs never move, so we only ever need to count them once.
+        countSurroundingBombs();
+
+        this.hiddenSafeCells = this.status.length - this.numBombs;
+        this.secondsElapsed = 0;
+        this.moves = 0;
+        this.flagsPlaced = 0;
+        this.justCheated = false;
+        this.moveLog.clear();
+        this.startNanos = System.nanoTime();
+        if (noGuessBoard)
+        {
+            int first = this.noGuess.getStartIndex();
+            revealEmptyCells(first / this.width, first % this.width);
+        }
+        KaboomMetrics.generated(start);
+    }
+
+    /**
+     * Figure out (deterministically) where we want the bombs.
+     *
+     * Picking bombs one random cell at a time means one cache miss per bomb,
+     * which is most of the cost on a big board.  Instead, we make one
+     * sequential sweep that gives every cell the same chance of being a bomb,
+     * aimed a little under the target so it almost never overshoots, then top
+     * up with random cells until the count is exact.  Every layout with
+     * exactly <code>maxBombs</code> bombs is equally likely that way.  When the
+     * board is more than half bombs, we lay out the safe cells and flip them.
+     *
+     * This is static, so BitBoard can deal exactly the same boards.
+     * @param bombs a bit per cell, indexed by <code>row * width + column</code>
+     */
+    static void placeBombs(long[] bombs, int cells, int maxBombs, java.util.SplittableRandom generator)
+    {
+        boolean sampleSafeCells = maxBombs > cells / 2;
+        int wanted = sampleSafeCells ? cells - maxBombs : maxBombs;
+
+        // Aim three standard deviations low, so overshooting is rare.
+        double sweepTarget = Math.max(0.0, wanted - 3.0 * Math.sqrt(wanted));
+        int picked;
+        do
+        {
+            java.util.Arrays.fill(bombs, 0L);
+            if (sweepTarget * kDenseSweepCutoff > cells)
+            {
+                picked = sweepDense(bombs, cells, generator, sweepTarget / cells);
+            }
+            else
+            {
+                picked = sweepSparse(bombs, cells, generator, sweepTarget / cells);
+            }
+        } while (picked > wanted);
+
+        // At most half the board is picked, so this takes two tries per cell
+        // at worst.
+        while (picked < wanted)
+        {
+            int index = generator.nextInt(cells);
+            if ((bombs[index >>> 6] & (1L << index)) == 0)
+            {
+                bombs[index >>> 6] |= 1L << index;
+                picked++;
+            }
+        }
+
+        if (sampleSafeCells)
+        {
+            for (int word = 0; word < bombs.length; word++)
+            {
+                bombs[word] = ~bombs[word];
+            }
+        }
+        // Don't leave bombs hanging off the end of the board.
+        if ((cells & 63) != 0)
+        {
+            bombs[bombs.length - 1] &= (1L << cells) - 1;
+        }
+    }
+
+    // Past about one bomb in this many cells, it's cheaper to sweep 64 cells
+    // at a time than to jump from bomb to bomb.
+    private static final int kDenseSweepCutoff = 48;
+
+    /**
+     * Sweep for sparse boards: jump straight from one bomb to the next, with
+     * geometrically distributed gaps.  Costs one log() per bomb.
+     */
+    private static int sweepSparse(long[] bombs, int cells, java.util.SplittableRandom generator, double chance)
+    {
+        if (chance <= 0.0)
+        {
+            return 0;
+        }
+
+        double logMiss = Math.log1p(-chance);
+        int picked = 0;
+        long index = -1;
+        while (true)
+        {
+            index += 1 + (long)(Math.log(1.0 - generator.nextDouble()) / logMiss);
+            if (index >= cells)
+            {
+                return picked;
+            }
+            bombs[(int)(index >>> 6)] |= 1L << index;
+            picked++;
+        }
+    }
+
+    /**
+     * Sweep for dense boards: build each word of 64 cells out of random words,
+     * one per binary digit of the chance.  OR-ing in a random word turns a
+     * chance of p into 1/2 + p/2, AND-ing turns it into p/2, so working up
+     * from the lowest digit lands on the chance rounded down to 16 digits.
+     */
+    private static int sweepDense(long[] bombs, int cells, java.util.SplittableRandom generator, double chance)
+    {
+        int digits = (int)(chance * 65536);
+        if (digits == 0)
+        {
+            return 0;
+        }
+
+        int lowestDigit = Integer.numberOfTrailingZeros(digits);
+        int picked = 0;
+        for (int word = 0; word < bombs.length; word++)
+        {
+            long bits = 0L;
+            for (int digit = lowestDigit; digit < 16; digit++)
+            {
+                if ((digits & (1 << digit)) != 0)
+                {
+                    bits |= generator.nextLong();
+                }
+                else
+                {
+                    bits &= generator.nextLong();
+                }
+            }
+            bombs[word] = bits;
+            picked += Long.bitCount(bits);
+        }
+
+        // The last word may run off the end of the board.
+        if ((cells & 63) != 0)
+        {
+            long overhang = bombs[bombs.length - 1] & -(1L << cells);
+            picked -= Long.bitCount(overhang);
+            bombs[bombs.length - 1] ^= overhang;
+        }
+        return picked;
+    }
+
+    private boolean isBombAt(int index)
+    {
+        return (this.bombs[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Fill in the neighbouring-bomb count for every spot in one pass.
+     *
+     * Rather than look at nine spots for every spot, we keep a sliding window:
+     * each row's bombs are unpacked into a byte per spot, summed with their
+     * left and right neighbours, and each spot's count is then the sum of
+     * three of those row sums (above, here, below) minus the spot itself.
+     * The inner loops are plain byte arithmetic over arrays, which the JIT
+     * can vectorize.
+     */
+    private void countSurroundingBombs()
+    {
+        int width = this.width;
+        // Unpacked rows have a zero on either end so nobody falls off.
+        byte[] bombsHere = new byte[width + 2];
+        byte[] bombsBelow = new byte[width + 2];
+        byte[] sumsAbove = new byte[width];
+        byte[] sumsHere = new byte[width];
+        byte[] sumsBelow = new byte[width];
+
+        unpackRow(0, bombsHere);
+        sumAcross(bombsHere, sumsHere);
+        for (int row = 0; row < this.height; row++)
+        {
+            if (row + 1 < this.height)
+            {
+                unpackRow(row + 1, bombsBelow);
+                sumAcross(bombsBelow, sumsBelow);
+            }
+            else
+            {
+                java.util.Arrays.fill(sumsBelow, (byte)0);
+            }
+
+            int rowStart = row * width;
+            for (int column = 0; column < width; column++)
+            {
+                this.surroundingBombs[rowStart + column] =
+                    (byte)(sumsAbove[column] + sumsHere[column] + sumsBelow[column] - bombsHere[column + 1]);
+            }
+
+            // Slide the window down a row.
+            byte[] swap = sumsAbove;
+            sumsAbove = sumsHere;
+            sumsHere = sumsBelow;
+            sumsBelow = swap;
+            swap = bombsHere;
+            bombsHere = bombsBelow;
+            bombsBelow = swap;
+        }
+    }
+
+    /** Copy one row of the bomb bitset into a byte per spot, offset by one. */
+    private void unpackRow(int row, byte[] unpacked)
+    {
+        int index = row * this.width;
+        int column = 0;
+        while (column < this.width)
+        {
+            // Work through the row a word at a time.
+            long word = this.bombs[index >>> 6] >>> index;
+            int stop = Math.min(this.width, column + 64 - (index & 63));
+            for (; column < stop; column++, index++, word >>>= 1)
+            {
+                unpacked[column + 1] = (byte)(word & 1);
+            }
+        }
+    }
+
+    /** Each spot plus its left and right neighbours, from an unpacked row. */
+    private static void sumAcross(byte[] unpacked, byte[] sums)
+    {
+        for (int column = 0; column < sums.length; column++)
+        {
+            sums[column] = (byte)(unpacked[column] + unpacked[column + 1] + unpacked[column + 2]);
+        }
+    }
+
+    /** Is there a bomb at this spot? */
+    public boolean isBomb(int row, int column)
+    {
+        return isBombAt(row * this.width + column);
+    }
+
+    /** What the player currently sees at this spot. */
+    public Piece getStatus(int row, int column)
+    {
+        return kPieces[this.status[row * this.width + column]];
+    }
+
+    /**
+     * How many bombs are adjacent to a spot.
+     *
+     * Don't call this on a spot that has a bomb.
+     */
+    public int calculateSurroundingBombs(int row, int column)
+    {
+        if (isBomb(row, column))
+        {
+            throw new IllegalArgumentException("You should never be calculating nearby bombs for a bomb spot!");
+        }
+
+        return this.surroundingBombs[row * this.width + column];
+    }
+
+    /** Handle a left click on a spot.
+     * @return whether the click lost or won the game
+     */
+    public ClickResult clickTile(final int row, final int column)
+    {
+        if (--this.movesUntilSample > 0)
+        {
+            return click(row, column);
+        }
+        this.movesUntilSample = KaboomMetrics.movesPerSample();
+        long start = KaboomMetrics.now();
+        int hidden = this.hiddenSafeCells;
+        this.sampling = true;
+        try
+        {
+            ClickResult result = click(row, column);
+            KaboomMetrics.clicked(start, result == ClickResult.lost ? 0 : hidden - this.hiddenSafeCells);
+            return result;
+        }
+        finally
+        {
+            this.sampling = false;
+        }
+    }
+
+    private ClickResult click(final int row, final int column)
+    {
+        checkBounds(row, column);
+        clearChanges();
+
+        int index = row * this.width + column;
+        record(MoveLog.kClick, index);
+        byte tileStatus = this.status[index];
+        if (tileStatus == kHidden || tileStatus == kFlagged || this.justCheated)
+        {
+            this.moves++;
+            this.justCheated = false;
+            if (isBombAt(index))
+            {
+                this.revealBoard();
+                this.status[index] = kExploded;
+                recordChange(index, 1);
+                return ClickResult.lost;
+            }
+
+            long start = this.sampling ? KaboomMetrics.now() : 0;
+            this.revealEmptyCells(row, column);
+            KaboomMetrics.revealed(start);
+            if (this.isBoardWon())
+            {
+                return ClickResult.won;
+            }
+        }
+        // Already-clicked pieces are still supposed to increment the move
+        // counter.  It's easier to do that here, rather than earlier, because
+        // we'd have to make more logic exceptions.
+        else if (!isBombAt(index))
+        {
+            this.moves++;
+        }
+        return ClickResult.played;
+    }
+
+    /**
+     * Reveal a spot and, if it has no bombs around it, everything connected
+     * to it up to (and including) the numbered spots that border the opening.
+     *
+     * This is a scanline fill rather than a recursive one, so big openings
+     * can't blow the stack: we pop a hidden zero spot, reveal the whole run of
+     * hidden zeros it sits in along its row, then look at the rows above and
+     * below that run.  Numbered spots there get revealed on the spot; each run
+     * of hidden zeros gets one seed pushed for later.  The seeds live in a
+     * plain int stack that's kept between calls, so once it has grown to fit
+     * the board, revealing allocates nothing.
+     *
+     * With a reveal pool, an opening that's still going after
+     * kParallelRevealCells spots gets handed over to revealInParallel.
+     */
+    protected void revealEmptyCells(int row, int column)
+    {
+        int index = row * this.width + column;
+
+        // We don't want to auto-reveal bombs.
+        if (isBombAt(index))
+        {
+            return;
+        }
+
+        // Tiles next to bombs should be counted as empty for the sake of
+        // calculations, but we want to stop there; they form a barrier to
+        // contiguous "truly empty" spaces.
+        if (this.surroundingBombs[index] != 0)
+        {
+            revealCell(index);
+            return;
+        }
+
+        this.seedCount = 0;
+        pushSeed(index);
+        int hiddenAtStart = this.hiddenSafeCells;
+        while (this.seedCount > 0)
+        {
+            if (this.revealPool != null && hiddenAtStart - this.hiddenSafeCells > kParallelRevealCells
+                && this.height >= 2 * kMinBandRows)
+            {
+                revealInParallel();
+                return;
+            }
+            int seed = this.seeds[--this.seedCount];
+            // Somebody else's run may have swallowed this one already.
+            if (!isHidden(seed))
+            {
+                continue;
+            }
+
+            int seedRow = seed / this.width;
+            int rowStart = seedRow * this.width;
+            int rowEnd = rowStart + this.width - 1;
+
+            // Open up the whole run of zeros this seed sits in.
+            int left = seed;
+            while (left > rowStart && isHidden(left - 1) && this.surroundingBombs[left - 1] == 0)
+            {
+                left--;
+            }
+            int right = seed;
+            while (right < rowEnd && isHidden(right + 1) && this.surroundingBombs[right + 1] == 0)
+            {
+                right++;
+            }
+            java.util.Arrays.fill(this.status, left, right + 1, kEmpty);
+            this.hiddenSafeCells -= right - left + 1;
+            recordChange(left, right - left + 1);
+
+            // Everything touching the run gets revealed too, including the
+            // spots at either end of it.
+            left = Math.max(left - 1, rowStart);
+            right = Math.min(right + 1, rowEnd);
+            revealCell(left);
+            revealCell(right);
+            if (seedRow > 0)
+            {
+                revealAlongRow(left - this.width, right - this.width);
+            }
+            if (seedRow < this.height - 1)
+            {
+                revealAlongRow(left + this.width, right + this.width);
+            }
+        }
+    }
+
+    /**
+     * Reveal the hidden numbered spots between two indices in the same row,
+     * and push a seed for each run of hidden zeros.  None of these can be
+     * bombs, since they all touch a zero.
+     */
+    private void revealAlongRow(int from, int to)
+    {
+        boolean inRun = false;
+        for (int index = from; index <= to; index++)
+        {
+            if (!isHidden(index))
+            {
+                inRun = false;
+            }
+            else if (this.surroundingBombs[index] != 0)
+            {
+                revealCell(index);
+                inRun = false;
+            }
+            else if (!inRun)
+            {
+                pushSeed(index);
+                inRun = true;
+            }
+        }
+    }
+
+    /** Reveal a safe spot, if it isn't already. */
+    private void revealCell(int index)
+    {
+        if (isHidden(index))
+        {
+            this.status[index] = kEmpty;
+            this.hiddenSafeCells--;
+            recordChange(index, 1);
+        }
+    }
+
+    /** Hidden as far as revealing goes, that is; flags get revealed too. */
+    private boolean isHidden(int index)
+    {
+        return this.status[index] == kHidden || this.status[index] == kFlagged;
+    }
+
+    private void pushSeed(int index)
+    {
+        if (this.seedCount == this.seeds.length)
+        {
+            this.seeds = java.util.Arrays.copyOf(this.seeds, this.seeds.length * 2);
+        }
+        this.seeds[this.seedCount++] = index;
+    }
+
+    // Most clicks open up a handful of spots; only farm out the big ones.
+    private static final int kParallelRevealCells = 1 << 16;
+    // Bands of rows any thinner than this spend more time talking than working.
+    private static final int kMinBandRows = 64;
+
+    /**
+     * Finish off the opening that revealEmptyCells started, with the board
+     * cut into bands of rows and each band filled by its own task.
+     *
+     * Every spot belongs to exactly one band, and only that band's task
+     * ever looks at or changes it, so the fill needs no locks.  When a run
+     * in one band touches a row in the next, the stretch of that row it
+     * touches goes into the next band's inbox (a lock-free queue), and
+     * that band gets a task if it hasn't one already.  A stretch handed
+     * over is treated exactly like the rows above and below a run are at
+     * home, so the opening comes out just as the sequential fill would
+     * leave it; only the order changes.  The seeds left over from the
+     * sequential start go out as one-spot stretches.
+     *
+     * Every stretch is counted when it's sent and again once it and
+     * everything it led to in its band are done, so the opening is finished
+     * when the count gets back to zero.  Each band keeps its own list of
+     * the runs it changed, and they're added to the engine's at the end, so
+     * the changed runs cover exactly what changed, as they do sequentially.
+     */
+    private void revealInParallel()
+    {
+        java.util.concurrent.ForkJoinPool pool = this.revealPool;
+        int rowsPerBand = Math.max(kMinBandRows, (this.height + 4 * pool.getParallelism() - 1) / (4 * pool.getParallelism()));
+        Opening opening = new Opening(pool, rowsPerBand);
+        while (this.seedCount > 0)
+        {
+            int seed = this.seeds[--this.seedCount];
+            opening.send(seed, seed);
+        }
+        // The opening started out counting one for us, so it couldn't finish
+        // before all the seeds went out.
+        opening.finished();
+        opening.await();
+
+        for (int bandNumber = 0; bandNumber < opening.bands.length(); bandNumber++)
+        {
+            Band band = opening.bands.get(bandNumber);
+            if (band != null)
+            {
+                this.hiddenSafeCells -= band.revealed;
+                for (int run = 0; run < band.runCount; run++)
+                {
+                    recordChange(band.runs[2 * run], band.runs[2 * run + 1]);
+                }
+            }
+        }
+    }
+
+    /** One opening being revealed in parallel. */
+    private final class Opening
+    {
+        final java.util.concurrent.ForkJoinPool pool;
+        final int rowsPerBand;
+        // Each made when it's first sent something.
+        final java.util.concurrent.atomic.AtomicReferenceArray<Band> bands;
+        // Stretches sent and not yet finished with, plus one for the sender.
+        final java.util.concurrent.atomic.AtomicLong pending = new java.util.concurrent.atomic.AtomicLong(1);
+        final java.util.concurrent.CountDownLatch done = new java.util.concurrent.CountDownLatch(1);
+        volatile Throwable failure = null;
+
+        Opening(java.util.concurrent.ForkJoinPool pool, int rowsPerBand)
+        {
+            this.pool = pool;
+            this.rowsPerBand = rowsPerBand;
+            int bandCount = (KaboomEngine.this.height + rowsPerBand - 1) / rowsPerBand;
+            this.bands = new java.util.concurrent.atomic.AtomicReferenceArray<Band>(bandCount);
+        }
+
+        /** Hand a stretch of a row (from and to are indices in it) to
+         * whichever band it's in.
+         */
+        void send(int from, int to)
+        {
+            int bandNumber = (from / KaboomEngine.this.width) / this.rowsPerBand;
+            Band band = this.bands.get(bandNumber);
+            if (band == null)
+            {
+                Band made = new Band(this, bandNumber);
+                band = this.bands.compareAndSet(bandNumber, null, made) ? made : this.bands.get(bandNumber);
+            }
+            // Count it before anyone can finish it.
+            this.pending.incrementAndGet();
+            band.inbox.add(((long)from << 32) | (to & 0xFFFFFFFFL));
+            band.schedule();
+        }
+
+        void finished()
+        {
+            if (this.pending.decrementAndGet() == 0)
+            {
+                this.done.countDown();
+            }
+        }
+
+        void await()
+        {
+            // The bands are half done and there's no stopping them, so an
+            // interrupt has to wait until they're through.
+            boolean interrupted = false;
+            while (true)
+            {
+                try
+                {
+                    this.done.await();
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+            if (this.failure != null)
+            {
+                throw new IllegalStateException("Revealing in parallel failed.", this.failure);
+            }
+        }
+    }
+
+    /** A band of rows, and the task (at most one at a time) that fills it. */
+    private final class Band implements Runnable
+    {
+        final Opening opening;
+        final int firstIndex;
+        final int endIndex;
+        final java.util.concurrent.ConcurrentLinkedQueue<Long> inbox = new java.util.concurrent.ConcurrentLinkedQueue<Long>();
+        final java.util.concurrent.atomic.AtomicBoolean scheduled = new java.util.concurrent.atomic.AtomicBoolean();
+
+        // Only ever touched by this band's task.
+        int[] seeds = new int[64];
+        int seedCount = 0;
+        int revealed = 0;
+        // What this band changed, as start and length pairs.
+        int[] runs = new int[16];
+        int runCount = 0;
+
+        Band(Opening opening, int bandNumber)
+        {
+            this.opening = opening;
+            int width = KaboomEngine.this.width;
+            this.firstIndex = bandNumber * opening.rowsPerBand * width;
+            this.endIndex = Math.min(KaboomEngine.this.status.length, this.firstIndex + opening.rowsPerBand * width);
+        }
+
+        void schedule()
+        {
+            if (this.scheduled.compareAndSet(false, true))
+            {
+                this.opening.pool.execute(this);
+            }
+        }
+
+        public void run()
+        {
+            try
+            {
+                do
+                {
+                    Long stretch;
+                    while ((stretch = this.inbox.poll()) != null)
+                    {
+                        fill((int)(stretch >>> 32), (int)(long)stretch);
+                        this.opening.finished();
+                    }
+                    this.scheduled.set(false);
+                    // Something may have come in after the last poll but
+                    // before we let go.
+                } while (!this.inbox.isEmpty() && this.scheduled.compareAndSet(false, true));
+            }
+            catch (Throwable e)
+            {
+                this.opening.failure = e;
+                this.opening.done.countDown();
+            }
+        }
+
+        /** Reveal along a stretch of a row and everything it leads to in this band. */
+        private void fill(int from, int to)
+        {
+            int width = KaboomEngine.this.width;
+            byte[] status = KaboomEngine.this.status;
+            revealAlongRow(from, to);
+            while (this.seedCount > 0)
+            {
+                int seed = this.seeds[--this.seedCount];
+                if (!isHidden(seed))
+                {
+                    continue;
+                }
+
+                int rowStart = seed - seed % width;
+                int rowEnd = rowStart + width - 1;
+                int left = seed;
+                while (left > rowStart && isHidden(left - 1) && KaboomEngine.this.surroundingBombs[left - 1] == 0)
+                {
+                    left--;
+                }
+                int right = seed;
+                while (right < rowEnd && isHidden(right + 1) && KaboomEngine.this.surroundingBombs[right + 1] == 0)
+                {
+                    right++;
+                }
+                java.util.Arrays.fill(status, left, right + 1, kEmpty);
+                this.revealed += right - left + 1;
+                changed(left, right);
+
+                left = Math.max(left - 1, rowStart);
+                right = Math.min(right + 1, rowEnd);
+                revealCell(left);
+                revealCell(right);
+                if (rowStart > 0)
+                {
+                    alongRow(left - width, right - width);
+                }
+                if (rowEnd < status.length - 1)
+                {
+                    alongRow(left + width, right + width);
+                }
+            }
+        }
+
+        /** Deal with the stretch here, or send it to the band it's in. */
+        private void alongRow(int from, int to)
+        {
+            if (from >= this.firstIndex && from < this.endIndex)
+            {
+                revealAlongRow(from, to);
+            }
+            else
+            {
+                this.opening.send(from, to);
+            }
+        }
+
+        /** As KaboomEngine.revealAlongRow, for this band. */
+        private void revealAlongRow(int from, int to)
+        {
+            boolean inRun = false;
+            for (int index = from; index <= to; index++)
+            {
+                if (!isHidden(index))
+                {
+                    inRun = false;
+                }
+                else if (KaboomEngine.this.surroundingBombs[index] != 0)
+                {
+                    revealCell(index);
+                    inRun = false;
+                }
+                else if (!inRun)
+                {
+                    if (this.seedCount == this.seeds.length)
+                    {
+                        this.seeds = java.util.Arrays.copyOf(this.seeds, this.seeds.length * 2);
+                    }
+                    this.seeds[this.seedCount++] = index;
+                    inRun = true;
+                }
+            }
+        }
+
+        private void revealCell(int index)
+        {
+            if (isHidden(index))
+            {
+                KaboomEngine.this.status[index] = kEmpty;
+                this.revealed++;
+                changed(index, index);
+            }
+        }
+
+        /** As KaboomEngine.recordChange, for this band.  Nothing is ever
+         * changed twice, so runs only need joining when one carries on
+         * where the last left off.
+         */
+        private void changed(int first, int last)
+        {
+            if (this.runCount > 0 && this.runs[2 * this.runCount - 2] + this.runs[2 * this.runCount - 1] == first)
+            {
+                this.runs[2 * this.runCount - 1] += last - first + 1;
+                return;
+            }
+            if (2 * this.runCount == this.runs.length)
+            {
+                this.runs = java.util.Arrays.copyOf(this.runs, this.runs.length * 2);
+            }
+            this.runs[2 * this.runCount] = first;
+            this.runs[2 * this.runCount + 1] = last - first + 1;
+            this.runCount++;
+        }
+    }
+
+    /** Show every spot on the board (used when cheating and when losing). */
+    public void revealBoard()
+    {
+        long start = KaboomMetrics.now();
+        for (int index = 0; index < this.status.length; index++)
+        {
+            this.status[index] = isBombAt(index) ? kBomb : kEmpty;
+        }
+        this.hiddenSafeCells = 0;
+        recordChange(0, this.status.length);
+        KaboomMetrics.revealedBoard(start);
+    }
+
+    /** Reveal the whole board; the next click on any spot counts as a move. */
+    public void cheat()
+    {
+        record(MoveLog.kCheat, 0);
+        clearChanges();
+        this.revealBoard();
+        this.justCheated = true;
+    }
+
+    /**
+     * The board is won if all non-bomb pieces have been revealed.
+     *
+     * Flagging a safe spot doesn't reveal it, so flags don't affect this.
+     */
+    public boolean isBoardWon()
+    {
+        return this.hiddenSafeCells == 0;
+    }
+
+    private static final int kSnapshotMagic = 0x4B425356;  // "KBSV"
+    private static final int kSnapshotVersion = 1;
+    private static final int kSnapshotHeaderSize = 64;
+    private static final int kSnapshotCheated = 1;
+    private static final int kSnapshotNoGuess = 2;
+
+    /**
+     * Save the game in progress, so it can be picked up again with
+     * <code>load</code>.  The file is the engine's own arrays, laid out as
+     * they are in memory and copied in through a memory-mapped buffer, so
+     * even a 100M-cell board saves in a fraction of a second:
+     * <pre>
+     * header (64 bytes): magic, version, width, height, max bombs, bombs,
+     *     game number, moves, flags placed, seconds elapsed, hidden safe
+     *     spots, flags (cheated, no-guess), move log length (ints),
+     *     milliseconds since the game started (long)
+     * bombs:  one bit per spot, as longs
+     * status: one byte per spot (a Piece's ordinal)
+     * counts: one byte per spot, the bombs around it
+     * moves:  the move log (see MoveLog)
+     * </pre>
+     * The counts could be worked out from the bombs, but on a big board
+     * reading them is several times quicker.  The magic number goes in
+     * last, after everything else is on disk, so a save that gets cut short
+     * won't load.  Everything is on disk by the time this returns.
+     */
+    public void save(java.io.File file) throws java.io.IOException
+    {
+        long size = snapshotSize(this.moveLog.length());
+        java.io.RandomAccessFile out = new java.io.RandomAccessFile(file, "rw");
+        try
+        {
+            java.nio.channels.FileChannel channel = out.getChannel();
+            out.setLength(0);
+            out.setLength(size);
+            java.nio.MappedByteBuffer buffer = channel.map(java.nio.channels.FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.position(4);
+            buffer.putInt(kSnapshotVersion);
+            buffer.putInt(this.width);
+            buffer.putInt(this.height);
+            buffer.putInt(this.maxBombs);
+            buffer.putInt(this.numBombs);
+            buffer.putInt(this.gameNumber);
+            buffer.putInt(this.moves);
+            buffer.putInt(this.flagsPlaced);
+            buffer.putInt(this.secondsElapsed);
+            buffer.putInt(this.hiddenSafeCells);
+            buffer.putInt((this.justCheated ? kSnapshotCheated : 0) | (this.noGuess != null ? kSnapshotNoGuess : 0));
+            buffer.putInt(this.moveLog.length());
+            buffer.putLong((System.nanoTime() - this.startNanos) / 1000000);
+
+            buffer.position(kSnapshotHeaderSize);
+            buffer.asLongBuffer().put(this.bombs);
+            buffer.position(kSnapshotHeaderSize + 8 * this.bombs.length);
+            buffer.put(this.status);
+            buffer.put(this.surroundingBombs);
+            this.moveLog.copyTo(buffer);
+            buffer.force();
+            buffer.putInt(0, kSnapshotMagic);
+            buffer.force();
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Pick up a game saved with <code>save</code>, just as it was.
+     * @return false if the file is for a different size of board, or isn't
+     *         a saved game at all, in which case nothing changes
+     * @throws java.io.IOException if the file is a saved game that's been
+     *         cut short (or has junk on the end), or garbled (a spot that isn't
+     *         any Piece, or counts that don't agree with the spots), in which
+     *         case nothing changes
+     */
+    public boolean load(java.io.File file) throws java.io.IOException
+    {
+        java.io.RandomAccessFile in = new java.io.RandomAccessFile(file, "r");
+        try
+        {
+            long size = in.length();
+            if (size < 4)
+            {
+                return false;
+            }
+            java.nio.MappedByteBuffer buffer = in.getChannel().map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != kSnapshotMagic)
+            {
+                return false;
+            }
+            if (size < kSnapshotHeaderSize)
+            {
+                throw new java.io.IOException(file + " is cut short: " + size + " bytes, not even the "
+                                              + kSnapshotHeaderSize + "-byte header.");
+            }
+            if (buffer.getInt() != kSnapshotVersion || buffer.getInt() != this.width || buffer.getInt() != this.height || buffer.getInt() != this.maxBombs)
+            {
+                return false;
+            }
+            int numBombs = buffer.getInt();
+            int gameNumber = buffer.getInt();
+            int moves = buffer.getInt();
+            int flagsPlaced = buffer.getInt();
+            int secondsElapsed = buffer.getInt();
+            int hiddenSafeCells = buffer.getInt();
+            int flags = buffer.getInt();
+            int moveLogLength = buffer.getInt();
+            long elapsedMillis = buffer.getLong();
+            if (moveLogLength < 0)
+            {
+                throw new java.io.IOException(file + " is garbled: its move log is " + moveLogLength + " bytes long.");
+            }
+            if (size != snapshotSize(moveLogLength))
+            {
+                throw new java.io.IOException(file + " is " + size + " bytes, but a saved game on this board with "
+                                              + moveLogLength + " bytes of moves should be "
+                                              + snapshotSize(moveLogLength) + ".");
+            }
+            checkSnapshot(file, buffer, numBombs, hiddenSafeCells);
+
+            buffer.position(kSnapshotHeaderSize);
+            buffer.asLongBuffer().get(this.bombs);
+            buffer.position(kSnapshotHeaderSize + 8 * this.bombs.length);
+            buffer.get(this.status);
+            buffer.get(this.surroundingBombs);
+            try
+            {
+                this.moveLog.load(buffer, moveLogLength);
+            }
+            catch (IllegalArgumentException e)
+            {
+                this.moveLog.clear();
+            }
+
+            this.numBombs = numBombs;
+            this.gameNumber = gameNumber;
+            this.moves = moves;
+            this.flagsPlaced = flagsPlaced;
+            this.secondsElapsed = secondsElapsed;
+            this.hiddenSafeCells = hiddenSafeCells;
+            this.justCheated = (flags & kSnapshotCheated) != 0;
+            this.startNanos = System.nanoTime() - elapsedMillis * 1000000;
+            // Keep dealing the same kind of board, so the recording (see
+            // Replay) says what it was.
+            if ((flags & kSnapshotNoGuess) == 0)
+            {
+                this.noGuess = null;
+            }
+            else if (this.noGuess == null)
+            {
+                this.noGuess = new NoGuessGenerator(this.width, this.height, this.maxBombs);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        clearChanges();
+        recordChange(0, this.status.length);
+        return true;
+    }
+
+    /**
+     * Make sure a saved game's spots make sense before any of it is loaded:
+     * every status has to be a Piece, and the bombs and hidden safe spots
+     * have to add up to what the header says, or the first click could
+     * index off the end of kPieces or never win.
+     */
+    private void checkSnapshot(java.io.File file, java.nio.ByteBuffer buffer, int numBombs, int hiddenSafeCells)
+        throws java.io.IOException
+    {
+        int statusStart = kSnapshotHeaderSize + 8 * this.bombs.length;
+        byte[] chunk = new byte[1 << 16];
+        int bombs = 0;
+        int hidden = 0;
+        for (int chunkStart = 0; chunkStart < this.status.length; chunkStart += chunk.length)
+        {
+            int chunkLength = Math.min(chunk.length, this.status.length - chunkStart);
+            buffer.position(statusStart + chunkStart);
+            buffer.get(chunk, 0, chunkLength);
+            for (int i = 0; i < chunkLength; i++)
+            {
+                int index = chunkStart + i;
+                byte status = chunk[i];
+                if (status < 0 || status >= kPieces.length)
+                {
+                    throw new java.io.IOException(file + " is garbled: spot " + index + " is " + status
+                                                  + ", which isn't a piece.");
+                }
+                boolean bomb = (buffer.getLong(kSnapshotHeaderSize + 8 * (index >>> 6)) & (1L << index)) != 0;
+                if (bomb)
+                {
+                    bombs++;
+                }
+                else if (status == kHidden || status == kFlagged)
+                {
+                    hidden++;
+                }
+            }
+        }
+        if (bombs != numBombs || hidden != hiddenSafeCells)
+        {
+            throw new java.io.IOException(file + " is garbled: it has " + bombs + " bombs and " + hidden
+                                          + " hidden safe spots, but says " + numBombs + " and " + hiddenSafeCells
+                                          + ".");
+        }
+    }
+
+    private long snapshotSize(int moveLogLength)
+    {
+        return kSnapshotHeaderSize + 8L * this.bombs.length + 2L * this.status.length + moveLogLength;
+    }
+
+    /** Handle a right click on a spot, toggling its flag. */
+    public void rightClickTile(final int row, final int column)
+    {
+        checkBounds(row, column);
+        clearChanges();
+
+        int index = row * this.width + column;
+        record(MoveLog.kFlag, index);
+        KaboomMetrics.flagged();
+        if (this.status[index] == kHidden)
+        {
+            this.status[index] = kFlagged;
+            this.flagsPlaced++;
+            recordChange(index, 1);
+        }
+        else if (this.status[index] == kFlagged)
+        {
+            this.status[index] = kHidden;
+            this.flagsPlaced--;
+            recordChange(index, 1);
+        }
+    }
+
+    /** How many runs of spots the last move (click, flag, cheat or restart)
+     * changed.  A run is a stretch of consecutive indices
+     * (<code>row * width + column</code>), so it can wrap onto later rows.
+     */
+    public int getChangedRunCount()
+    {
+        return this.changedRunCount;
+    }
+
+    /** Index of the first spot in a run changed by the last move. */
+    public int getChangedRunStart(int run)
+    {
+        return this.changedRuns[2 * run];
+    }
+
+    /** Number of spots in a run changed by the last move. */
+    public int getChangedRunLength(int run)
+    {
+        return this.changedRuns[2 * run + 1];
+    }
+
+    private void clearChanges()
+    {
+        this.changedRunCount = 0;
+    }
+
+    /** Note that some spots changed, merging with the previous run if we can. */
+    private void recordChange(int start, int length)
+    {
+        if (this.changedRunCount > 0)
+        {
+            int last = 2 * (this.changedRunCount - 1);
+            int lastEnd = this.changedRuns[last] + this.changedRuns[last + 1];
+            // Already covered?
+            if (start >= this.changedRuns[last] && start + length <= lastEnd)
+            {
+                return;
+            }
+            if (start == lastEnd)
+            {
+                this.changedRuns[last + 1] += length;
+                return;
+            }
+        }
+
+        if (2 * this.changedRunCount == this.changedRuns.length)
+        {
+            this.changedRuns = java.util.Arrays.copyOf(this.changedRuns, this.changedRuns.length * 2);
+        }
+        this.changedRuns[2 * this.changedRunCount] = start;
+        this.changedRuns[2 * this.changedRunCount + 1] = length;
+        this.changedRunCount++;
+    }
+
+    private void checkBounds(int row, int column)
+    {
+        // Basic sanity check.
+        if (row < 0 || row >= this.height || column < 0 || column >= this.width)
+        {
+            throw new IllegalArgumentException("Tile must be on the board.");
+        }
+    }
+}
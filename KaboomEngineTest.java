@@ -0,0 +1,518 @@
+import junit.framework.TestCase;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tests for KaboomEngine: it should play by the rules the game started out
+ * with (see Reference), however it reveals the board, and should save and
+ * load games without losing anything.
+ */
+public class KaboomEngineTest extends TestCase
+{
+    /**
+     * The rules as the original Kaboom frame played them, one Piece per
+     * spot and a recursive reveal, with the engine's bombs.  Slow, but
+     * plainly right.
+     */
+    private static final class Reference
+    {
+        final int width;
+        final int height;
+        final boolean[] bombs;
+        final Piece[] status;
+        int moves = 0;
+        int flagsPlaced = 0;
+        boolean justCheated = false;
+
+        Reference(KaboomEngine engine)
+        {
+            this.width = engine.getWidth();
+            this.height = engine.getHeight();
+            this.bombs = new boolean[this.width * this.height];
+            this.status = new Piece[this.width * this.height];
+            for (int index = 0; index < this.status.length; index++)
+            {
+                this.bombs[index] = engine.isBomb(index / this.width, index % this.width);
+                this.status[index] = Piece.hidden;
+            }
+        }
+
+        KaboomEngine.ClickResult click(int row, int column)
+        {
+            int index = row * this.width + column;
+            if (this.status[index] == Piece.hidden || this.status[index] == Piece.flagged || this.justCheated)
+            {
+                this.moves++;
+                this.justCheated = false;
+                if (this.bombs[index])
+                {
+                    revealBoard();
+                    this.status[index] = Piece.exploded;
+                    return KaboomEngine.ClickResult.lost;
+                }
+                revealEmptyCells(row, column);
+                return isBoardWon() ? KaboomEngine.ClickResult.won : KaboomEngine.ClickResult.played;
+            }
+            // Already-clicked spots still count as moves.
+            else if (!this.bombs[index])
+            {
+                this.moves++;
+            }
+            return KaboomEngine.ClickResult.played;
+        }
+
+        void revealEmptyCells(int row, int column)
+        {
+            int index = row * this.width + column;
+            if (this.bombs[index])
+            {
+                return;
+            }
+            this.status[index] = Piece.empty;
+            if (surroundingBombs(row, column) != 0)
+            {
+                return;
+            }
+            for (int r = row - 1; r <= row + 1; r++)
+            {
+                for (int c = column - 1; c <= column + 1; c++)
+                {
+                    if (r >= 0 && r < this.height && c >= 0 && c < this.width
+                        && (this.status[r * this.width + c] == Piece.hidden
+                            || this.status[r * this.width + c] == Piece.flagged))
+                    {
+                        revealEmptyCells(r, c);
+                    }
+                }
+            }
+        }
+
+        int surroundingBombs(int row, int column)
+        {
+            int count = 0;
+            for (int r = row - 1; r <= row + 1; r++)
+            {
+                for (int c = column - 1; c <= column + 1; c++)
+                {
+                    if (r >= 0 && r < this.height && c >= 0 && c < this.width && this.bombs[r * this.width + c])
+                    {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+
+        void revealBoard()
+        {
+            for (int index = 0; index < this.status.length; index++)
+            {
+                this.status[index] = this.bombs[index] ? Piece.bomb : Piece.empty;
+            }
+        }
+
+        void cheat()
+        {
+            revealBoard();
+            this.justCheated = true;
+        }
+
+        void rightClick(int row, int column)
+        {
+            int index = row * this.width + column;
+            if (this.status[index] == Piece.hidden)
+            {
+                this.status[index] = Piece.flagged;
+                this.flagsPlaced++;
+            }
+            else if (this.status[index] == Piece.flagged)
+            {
+                this.status[index] = Piece.hidden;
+                this.flagsPlaced--;
+            }
+        }
+
+        boolean isBoardWon()
+        {
+            for (int index = 0; index < this.status.length; index++)
+            {
+                if (!this.bombs[index] && (this.status[index] == Piece.hidden || this.status[index] == Piece.flagged))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static void assertSame(Reference reference, KaboomEngine engine, String after)
+    {
+        for (int index = 0; index < reference.status.length; index++)
+        {
+            int row = index / reference.width;
+            int column = index % reference.width;
+            assertEquals(after + " at " + row + ", " + column, reference.status[index], engine.getStatus(row, column));
+            if (!reference.bombs[index])
+            {
+                assertEquals(after, reference.surroundingBombs(row, column), engine.calculateSurroundingBombs(row, column));
+            }
+        }
+        assertEquals(after, reference.moves, engine.getMoves());
+        assertEquals(after, reference.flagsPlaced, engine.getFlagsPlaced());
+        assertEquals(after, reference.isBoardWon(), engine.isBoardWon());
+    }
+
+    /** Random clicks, flags and cheats on the engine and the reference,
+     * checking after every move. */
+    private static void compareWithReference(int width, int height, int bombs, int games, long seed)
+    {
+        Random random = new Random(seed);
+        KaboomEngine engine = new KaboomEngine(width, height, bombs);
+        for (int game = 1; game <= games; game++)
+        {
+            engine.setGameNumber(game);
+            engine.restartGame();
+            Reference reference = new Reference(engine);
+            int bombCount = 0;
+            for (boolean bomb : reference.bombs)
+            {
+                bombCount += bomb ? 1 : 0;
+            }
+            assertEquals(bombs, bombCount);
+            assertSame(reference, engine, "game " + game + " restart");
+            for (int move = 0; move < 2 * width * height; move++)
+            {
+                int row = random.nextInt(height);
+                int column = random.nextInt(width);
+                int kind = random.nextInt(20);
+                String after = "game " + game + " move " + move;
+                if (kind < 6)
+                {
+                    reference.rightClick(row, column);
+                    engine.rightClickTile(row, column);
+                }
+                else if (kind < 7)
+                {
+                    reference.cheat();
+                    engine.cheat();
+                }
+                else
+                {
+                    assertEquals(after, reference.click(row, column), engine.clickTile(row, column));
+                }
+                assertSame(reference, engine, after);
+            }
+        }
+    }
+
+    public void testMatchesOriginalRules()
+    {
+        compareWithReference(10, 10, 9, 100, 1);
+        compareWithReference(16, 16, 40, 30, 2);
+        compareWithReference(30, 16, 99, 20, 3);
+    }
+
+    public void testMatchesOriginalRulesOnOddBoards()
+    {
+        compareWithReference(1, 1, 0, 5, 4);
+        compareWithReference(1, 1, 1, 5, 5);
+        compareWithReference(1, 40, 5, 10, 6);
+        compareWithReference(70, 3, 20, 10, 7);
+        compareWithReference(12, 12, 0, 5, 8);
+        compareWithReference(8, 8, 63, 10, 9);
+    }
+
+    /** Find a spot with no bombs around it, so clicking it opens up the board. */
+    private static int findOpening(KaboomEngine engine)
+    {
+        for (int index = 0; index < engine.getWidth() * engine.getHeight(); index++)
+        {
+            int row = index / engine.getWidth();
+            int column = index % engine.getWidth();
+            if (!engine.isBomb(row, column) && engine.calculateSurroundingBombs(row, column) == 0)
+            {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static Piece[] statuses(KaboomEngine engine)
+    {
+        Piece[] statuses = new Piece[engine.getWidth() * engine.getHeight()];
+        for (int index = 0; index < statuses.length; index++)
+        {
+            statuses[index] = engine.getStatus(index / engine.getWidth(), index % engine.getWidth());
+        }
+        return statuses;
+    }
+
+    /**
+     * The changed runs should never overlap, and should take in every spot
+     * that changed since <code>before</code>; if <code>exact</code>, they
+     * should take in nothing else.
+     */
+    private static void checkRuns(KaboomEngine engine, Piece[] before, boolean exact, String after)
+    {
+        boolean[] covered = new boolean[before.length];
+        for (int run = 0; run < engine.getChangedRunCount(); run++)
+        {
+            int start = engine.getChangedRunStart(run);
+            for (int index = start; index < start + engine.getChangedRunLength(run); index++)
+            {
+                assertFalse(after + ": spot " + index + " is in two runs.", covered[index]);
+                covered[index] = true;
+            }
+        }
+        Piece[] now = statuses(engine);
+        for (int index = 0; index < before.length; index++)
+        {
+            if (now[index] != before[index])
+            {
+                assertTrue(after + ": spot " + index + " changed outside the runs.", covered[index]);
+            }
+            else if (exact)
+            {
+                assertFalse(after + ": spot " + index + " didn't change but is in a run.", covered[index]);
+            }
+        }
+    }
+
+    // A parallel opening should change the same spots a sequential one does,
+    // and its changed runs should cover exactly those spots, each once.
+    private static void checkParallelOpening(int width, int height, int bombs, int threads)
+    {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try
+        {
+            KaboomEngine parallel = new KaboomEngine(width, height, bombs);
+            parallel.setRevealPool(pool);
+            parallel.setGameNumber(3);
+            parallel.restartGame();
+            KaboomEngine sequential = new KaboomEngine(width, height, bombs);
+            sequential.setGameNumber(3);
+            sequential.restartGame();
+            int opening = findOpening(parallel);
+            assertTrue(opening >= 0);
+            Piece[] before = statuses(parallel);
+            parallel.clickTile(opening / width, opening % width);
+            sequential.clickTile(opening / width, opening % width);
+            checkRuns(parallel, before, true, "opening");
+            assertEquals(statuses(sequential), statuses(parallel));
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertEquals(Piece[] expected, Piece[] actual)
+    {
+        for (int index = 0; index < expected.length; index++)
+        {
+            assertEquals("Spot " + index, expected[index], actual[index]);
+        }
+    }
+
+    public void testParallelOpeningRuns()
+    {
+        checkParallelOpening(1500, 1500, 0, 4);
+    }
+
+    public void testParallelOpeningRunsWithBombs()
+    {
+        checkParallelOpening(1500, 1500, 20000, 4);
+        checkParallelOpening(1500, 1500, 20000, 3);
+    }
+
+    // Whole games, revealed in parallel and one spot at a time, should go
+    // exactly the same way, move for move.
+    public void testParallelMatchesSequential()
+    {
+        Random random = new Random(12);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            for (int game = 1; game <= 4; game++)
+            {
+                KaboomEngine parallel = new KaboomEngine(600, 500, 6000);
+                parallel.setRevealPool(pool);
+                parallel.setGameNumber(game);
+                parallel.restartGame();
+                KaboomEngine sequential = new KaboomEngine(600, 500, 6000);
+                sequential.setGameNumber(game);
+                sequential.restartGame();
+                for (int move = 0; move < 30; move++)
+                {
+                    String after = "game " + game + " move " + move;
+                    int row = random.nextInt(500);
+                    int column = random.nextInt(600);
+                    Piece[] before = statuses(parallel);
+                    if (random.nextInt(4) == 0)
+                    {
+                        parallel.rightClickTile(row, column);
+                        sequential.rightClickTile(row, column);
+                        checkRuns(parallel, before, true, after);
+                    }
+                    else
+                    {
+                        // Stay away from the bombs, so the game goes on.
+                        while (parallel.isBomb(row, column))
+                        {
+                            column = (column + 1) % 600;
+                        }
+                        assertEquals(after, sequential.clickTile(row, column), parallel.clickTile(row, column));
+                        checkRuns(parallel, before, true, after);
+                    }
+                    assertEquals(statuses(sequential), statuses(parallel));
+                    assertEquals(after, sequential.getMoves(), parallel.getMoves());
+                    assertEquals(after, sequential.isBoardWon(), parallel.isBoardWon());
+                }
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    private static final File kSnapshot = new File("Mines/KaboomEngineTest.sav");
+    // Where the hidden safe spots go in a saved game's header, and where
+    // the statuses start on a 16x16 board (after four longs of bombs).
+    private static final int kHiddenSafeCellsOffset = 40;
+    private static final int kStatusOffset = 64 + 4 * 8;
+
+    /** Save a game with a few spots revealed and flagged. */
+    private static KaboomEngine saveGame() throws IOException
+    {
+        KaboomEngine engine = new KaboomEngine(16, 16, 40);
+        engine.setGameNumber(5);
+        engine.restartGame();
+        int opening = findOpening(engine);
+        engine.clickTile(opening / 16, opening % 16);
+        engine.rightClickTile(15, 15);
+        engine.rightClickTile(0, 15);
+        engine.save(kSnapshot);
+        return engine;
+    }
+
+    /** Load a file that isn't a good saved game, which should fail with
+     * <code>problem</code> in the message and leave the engine as it was. */
+    private static void checkRefused(String problem) throws IOException
+    {
+        KaboomEngine engine = new KaboomEngine(16, 16, 40);
+        engine.setGameNumber(6);
+        engine.restartGame();
+        engine.rightClickTile(0, 0);
+        Piece[] before = statuses(engine);
+        try
+        {
+            engine.load(kSnapshot);
+            fail("A bad saved game loaded.");
+        }
+        catch (IOException e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().contains(problem));
+        }
+        assertEquals(6, engine.getGameNumber());
+        assertEquals(1, engine.getFlagsPlaced());
+        assertFalse(engine.isBoardWon());
+        assertEquals(before, statuses(engine));
+    }
+
+    private static void setLength(long length) throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(kSnapshot, "rw");
+        file.setLength(length);
+        file.close();
+    }
+
+    public void testSnapshotRoundTrip() throws IOException
+    {
+        KaboomEngine saved = saveGame();
+        KaboomEngine loaded = new KaboomEngine(16, 16, 40);
+        assertTrue(loaded.load(kSnapshot));
+        assertEquals(saved.getGameNumber(), loaded.getGameNumber());
+        assertEquals(saved.getMoves(), loaded.getMoves());
+        assertEquals(saved.getFlagsPlaced(), loaded.getFlagsPlaced());
+        assertEquals(statuses(saved), statuses(loaded));
+        for (int index = 0; index < 256; index++)
+        {
+            assertEquals(saved.isBomb(index / 16, index % 16), loaded.isBomb(index / 16, index % 16));
+        }
+        // Both should play on the same way from here.
+        Random random = new Random(13);
+        KaboomEngine.ClickResult result = KaboomEngine.ClickResult.played;
+        while (result == KaboomEngine.ClickResult.played)
+        {
+            int row = random.nextInt(16);
+            int column = random.nextInt(16);
+            result = saved.clickTile(row, column);
+            assertEquals(result, loaded.clickTile(row, column));
+            assertEquals(statuses(saved), statuses(loaded));
+            assertEquals(saved.getMoves(), loaded.getMoves());
+        }
+        kSnapshot.delete();
+    }
+
+    public void testGarbledStatus() throws IOException
+    {
+        saveGame();
+        RandomAccessFile file = new RandomAccessFile(kSnapshot, "rw");
+        file.seek(kStatusOffset + 100);
+        file.write(Piece.values().length);
+        file.close();
+        checkRefused("garbled");
+        kSnapshot.delete();
+    }
+
+    public void testGarbledHiddenSafeCells() throws IOException
+    {
+        saveGame();
+        RandomAccessFile file = new RandomAccessFile(kSnapshot, "rw");
+        file.seek(kHiddenSafeCellsOffset);
+        file.writeInt(0);
+        file.close();
+        checkRefused("garbled");
+        kSnapshot.delete();
+    }
+
+    public void testSnapshotCutShort() throws IOException
+    {
+        saveGame();
+        setLength(kSnapshot.length() - 1);
+        checkRefused("bytes");
+        setLength(20);
+        checkRefused("cut short");
+        kSnapshot.delete();
+    }
+
+    public void testSnapshotWithJunkOnTheEnd() throws IOException
+    {
+        saveGame();
+        setLength(kSnapshot.length() + 10);
+        checkRefused("bytes");
+        kSnapshot.delete();
+    }
+
+    // Files that aren't saved games, or are for another board, are turned
+    // down without complaint.
+    public void testNotASnapshot() throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(kSnapshot);
+        out.write("Not a saved game at all".getBytes("UTF-8"));
+        out.close();
+        KaboomEngine engine = new KaboomEngine(16, 16, 40);
+        engine.restartGame();
+        assertFalse(engine.load(kSnapshot));
+
+        saveGame();
+        assertFalse(new KaboomEngine(10, 10, 9).load(kSnapshot));
+        assertFalse(new KaboomEngine(16, 16, 41).load(kSnapshot));
+        kSnapshot.delete();
+    }
+}
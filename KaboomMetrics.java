@@ -0,0 +1,275 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * KaboomMetrics counts and times the busy parts of the game: moves, flood
+ * fills, revealing the board, laying out new boards, painting, and reading
+ * and writing high scores.
+ *
+ * It's off unless the kaboom.metrics system property is true or someone
+ * turns it on (here or over JMX).  While it's off, each measured spot costs
+ * one volatile read.  While it's on, each costs a couple of System.nanoTime
+ * calls and a few uncontended atomic adds into LatencyHistograms and
+ * LongAdders, so any number of games on any number of threads can be
+ * measured at once without locking.
+ *
+ * That's still a few times what a simple click costs, so each engine only
+ * times one move in every kaboom.metrics.sample (kDefaultSampleEvery
+ * unless set); the rest cost one decrement.  Moves, flood fills and spots
+ * per click are sampled; everything else is measured every time.
+ *
+ * The places being measured use it like this:
+ * <pre>
+ * long start = KaboomMetrics.now();
+ * ...
+ * KaboomMetrics.generated(start);
+ * </pre>
+ * where <code>now</code> gives 0 when metrics are off, and the second call
+ * ignores a 0 start.
+ */
+public final class KaboomMetrics implements KaboomMetricsMXBean
+{
+    /** Where register puts us on the platform MBean server. */
+    public static final String kObjectName = "Kaboom:type=Metrics";
+    /** Time one move in this many, unless kaboom.metrics.sample says otherwise. */
+    public static final int kDefaultSampleEvery = 64;
+
+    private static final KaboomMetrics instance = new KaboomMetrics();
+    private static volatile boolean enabled = Boolean.getBoolean("kaboom.metrics");
+    private static volatile int sampleEvery = Math.max(1, Integer.getInteger("kaboom.metrics.sample", kDefaultSampleEvery));
+    private static boolean registered = false;
+
+    private final LatencyHistogram moves = new LatencyHistogram();
+    private final LatencyHistogram reveals = new LatencyHistogram();
+    private final LatencyHistogram revealBoards = new LatencyHistogram();
+    private final LatencyHistogram generation = new LatencyHistogram();
+    private final LatencyHistogram paints = new LatencyHistogram();
+    private final LatencyHistogram scoreReads = new LatencyHistogram();
+    private final LatencyHistogram scoreWrites = new LatencyHistogram();
+    // Not a time, but bucketing it the same way works just as well.
+    private final LatencyHistogram cellsPerClick = new LatencyHistogram();
+    private final LongAdder flags = new LongAdder();
+    private final LongAdder cellsRevealed = new LongAdder();
+    private final LongAdder cellsPainted = new LongAdder();
+
+    private KaboomMetrics()
+    {
+    }
+
+    /** The one set of metrics. */
+    public static KaboomMetrics get()
+    {
+        return instance;
+    }
+
+    /** Make the metrics visible over JMX, if they aren't already. */
+    public static synchronized void register()
+    {
+        if (registered)
+        {
+            return;
+        }
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(kObjectName));
+            registered = true;
+        }
+        catch (JMException e)
+        {
+            throw new IllegalStateException("Couldn't register the metrics with JMX.", e);
+        }
+    }
+
+    /** The time to start measuring from, or 0 if metrics are off. */
+    public static long now()
+    {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /** How many moves an engine should make before it times another. */
+    public static int movesPerSample()
+    {
+        return sampleEvery;
+    }
+
+    /** A sampled click finished. */
+    public static void clicked(long start, int cellsRevealed)
+    {
+        if (start != 0)
+        {
+            instance.moves.record(System.nanoTime() - start);
+            instance.cellsPerClick.record(cellsRevealed);
+            instance.cellsRevealed.add(cellsRevealed);
+        }
+    }
+
+    /** A flag went up or came down. */
+    public static void flagged()
+    {
+        if (enabled)
+        {
+            instance.flags.increment();
+        }
+    }
+
+    /** A flood fill from a sampled click finished. */
+    public static void revealed(long start)
+    {
+        if (start != 0)
+        {
+            instance.reveals.record(System.nanoTime() - start);
+        }
+    }
+
+    /** The whole board was shown. */
+    public static void revealedBoard(long start)
+    {
+        if (start != 0)
+        {
+            instance.revealBoards.record(System.nanoTime() - start);
+        }
+    }
+
+    /** A new board was laid out. */
+    public static void generated(long start)
+    {
+        if (start != 0)
+        {
+            instance.generation.record(System.nanoTime() - start);
+        }
+    }
+
+    /** The board view painted a frame. */
+    public static void painted(long start, int cells)
+    {
+        if (start != 0)
+        {
+            instance.paints.record(System.nanoTime() - start);
+            instance.cellsPainted.add(cells);
+        }
+    }
+
+    /** High scores were read. */
+    public static void scoresRead(long start)
+    {
+        if (start != 0)
+        {
+            instance.scoreReads.record(System.nanoTime() - start);
+        }
+    }
+
+    /** A high score was written. */
+    public static void scoreWritten(long start)
+    {
+        if (start != 0)
+        {
+            instance.scoreWrites.record(System.nanoTime() - start);
+        }
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        KaboomMetrics.enabled = enabled;
+    }
+
+    public int getSampleEvery()
+    {
+        return sampleEvery;
+    }
+
+    public void setSampleEvery(int moves)
+    {
+        if (moves < 1)
+        {
+            throw new IllegalArgumentException("Moves have to be sampled at least one in every one.");
+        }
+        sampleEvery = moves;
+    }
+
+    /** Every timing, by the name it goes by in getLatencies and dump. */
+    private Map<String, LatencyHistogram> timings()
+    {
+        Map<String, LatencyHistogram> timings = new LinkedHashMap<String, LatencyHistogram>();
+        timings.put("move", this.moves);
+        timings.put("reveal", this.reveals);
+        timings.put("revealBoard", this.revealBoards);
+        timings.put("generate", this.generation);
+        timings.put("paint", this.paints);
+        timings.put("scoreRead", this.scoreReads);
+        timings.put("scoreWrite", this.scoreWrites);
+        return timings;
+    }
+
+    public Map<String, Long> getCounts()
+    {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        counts.put("sampleEvery", (long)sampleEvery);
+        counts.put("flags", this.flags.sum());
+        counts.put("cellsRevealed", this.cellsRevealed.sum());
+        counts.put("cellsPainted", this.cellsPainted.sum());
+        for (Map.Entry<String, LatencyHistogram> timing : timings().entrySet())
+        {
+            counts.put(timing.getKey(), timing.getValue().getCount());
+        }
+        return counts;
+    }
+
+    public Map<String, Long> getLatencies()
+    {
+        Map<String, Long> latencies = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, LatencyHistogram> timing : timings().entrySet())
+        {
+            LatencyHistogram histogram = timing.getValue();
+            latencies.put(timing.getKey() + ".p50", histogram.getPercentile(50));
+            latencies.put(timing.getKey() + ".p99", histogram.getPercentile(99));
+            latencies.put(timing.getKey() + ".p99.9", histogram.getPercentile(99.9));
+            latencies.put(timing.getKey() + ".max", histogram.getMax());
+        }
+        return latencies;
+    }
+
+    /** One line per timing, then the counts, e.g.
+     * <pre>
+     * move         n=120 mean=2.1us p50=1.2us p99=40.1us p99.9=40.1us max=40.1us
+     * ...
+     * cells/click  mean=11.0 p50=1 p99=212 max=212
+     * flags=14 cellsRevealed=1320 cellsPainted=52000 sampleEvery=1
+     * </pre>
+     * The first three lines, and cellsRevealed, only cover sampled moves.
+     */
+    public String dump()
+    {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> timing : timings().entrySet())
+        {
+            text.append(String.format("%-12s %s%n", timing.getKey(), timing.getValue()));
+        }
+        text.append(String.format("%-12s mean=%.1f p50=%d p99=%d max=%d%n", "cells/click",
+                                  this.cellsPerClick.getMean(), this.cellsPerClick.getPercentile(50),
+                                  this.cellsPerClick.getPercentile(99), this.cellsPerClick.getMax()));
+        text.append(String.format("flags=%d cellsRevealed=%d cellsPainted=%d sampleEvery=%d%n",
+                                  this.flags.sum(), this.cellsRevealed.sum(), this.cellsPainted.sum(), sampleEvery));
+        return text.toString();
+    }
+
+    public void reset()
+    {
+        for (LatencyHistogram histogram : timings().values())
+        {
+            histogram.reset();
+        }
+        this.cellsPerClick.reset();
+        this.flags.reset();
+        this.cellsRevealed.reset();
+        this.cellsPainted.reset();
+    }
+}
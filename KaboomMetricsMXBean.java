@@ -0,0 +1,29 @@
+import java.util.Map;
+
+/**
+ * What KaboomMetrics shows over JMX (see KaboomMetrics.register), e.g. in
+ * JConsole under Kaboom/Metrics.
+ */
+public interface KaboomMetricsMXBean
+{
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /** Engines time one move in this many. */
+    int getSampleEvery();
+
+    void setSampleEvery(int moves);
+
+    /** Flags, spots revealed and painted, and how many of each thing was timed. */
+    Map<String, Long> getCounts();
+
+    /** p50, p99, p99.9 and max of each timing, in nanoseconds, e.g. "move.p99". */
+    Map<String, Long> getLatencies();
+
+    /** Everything, as text. */
+    String dump();
+
+    /** Forget everything counted so far. */
+    void reset();
+}
@@ -0,0 +1,1026 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * KaboomSolver works out what a player can know about the board from what
+ * they can see, and where the safest place to click is.
+ *
+ * It only looks at what's visible: which spots are revealed and the numbers
+ * on them.  Flags are treated like any other hidden spot, since a player's
+ * flags can be wrong, and the right ones don't tell us anything the numbers
+ * don't.  Solving goes in three steps, cheapest first:
+ * <ol>
+ * <li>Single-point deductions: a number with all its bombs accounted for
+ *     makes the rest of its neighbours safe, and a number with exactly as
+ *     many hidden neighbours as bombs left makes them all bombs.</li>
+ * <li>Pair deductions: if one number has d more bombs left than another,
+ *     and exactly d hidden neighbours that aren't the other's, those are
+ *     all bombs, and the other's own neighbours are all safe.</li>
+ * <li>Whatever's still undecided along the edge of the revealed area is
+ *     split into independent pieces (spots that share no numbers), and
+ *     every way of placing bombs in each piece is counted, the pieces in
+ *     parallel.  The counts, combined with the number of ways of placing the
+ *     rest of the bombs in the hidden spots away from the edge, give every
+ *     hidden spot's exact chance of being a bomb.</li>
+ * </ol>
+ * Pieces too big to count (more than kMaxComponentCells spots, or too many
+ * steps to enumerate) fall back on a local guess: the worst odds from any
+ * number next to the spot.
+ *
+ * A solver keeps its scratch space between calls, so keep one around.  Not
+ * thread-safe.
+ */
+public final class KaboomSolver
+{
+    // What we know about each spot.
+    private static final byte kRevealed = 0;
+    private static final byte kUnknown = 1;
+    private static final byte kSafe = 2;
+    private static final byte kBomb = 3;
+
+    /** Pieces of the edge with more spots than this don't get counted exactly. */
+    public static final int kMaxComponentCells = 48;
+    // Nor do pieces that take more than this many steps to count.
+    private static final long kMaxSearchSteps = 1L << 22;
+
+    private static final int[] kRowOffsets = { -1, -1, -1, 0, 0, 1, 1, 1 };
+    private static final int[] kColumnOffsets = { -1, 0, 1, -1, 1, -1, 0, 1 };
+
+    // Shared by every solver, and only started if somebody solves in parallel.
+    private static ForkJoinPool pool = null;
+
+    private boolean parallel = true;
+
+    private int width = 0;
+    private byte[] state = new byte[0];
+    private double[] probability = new double[0];
+
+    // Numbers next to hidden spots.  Each has up to 8 hidden neighbours,
+    // stored 8 to a constraint in constraintVariables.
+    private int constraintCount = 0;
+    private int[] constraintRemaining = new int[16];
+    private int[] constraintUnknown = new int[16];
+    private int[] constraintVariables = new int[16 * 8];
+    private byte[] constraintSize = new byte[16];
+
+    // Hidden spots next to numbers, with up to 8 numbers each.
+    private int[] variableOf = new int[0];
+    private int variableCount = 0;
+    private int[] variableCell = new int[16];
+    private int[] variableConstraints = new int[16 * 8];
+    private byte[] variableConstraintCount = new byte[16];
+
+    private int[] worklist = new int[16];
+    private int[] safeCells = new int[16];
+    private int safeCount = 0;
+    private int bombCount = 0;
+    private int bestMove = -1;
+    private double interiorProbability = Double.NaN;
+
+    /** Whether to count the pieces of the edge on every core (the default),
+     * or all in the calling thread.  Turn it off when something else is
+     * already keeping the cores busy, like BatchSimulator.
+     */
+    public void setParallel(boolean parallel)
+    {
+        this.parallel = parallel;
+    }
+
+    /** Work out everything we can about the game as it stands. */
+    public void solve(KaboomEngine engine)
+    {
+        int cells = engine.getWidth() * engine.getHeight();
+        this.width = engine.getWidth();
+        if (this.state.length != cells)
+        {
+            this.state = new byte[cells];
+            this.probability = new double[cells];
+            this.variableOf = new int[cells];
+        }
+        this.constraintCount = 0;
+        this.variableCount = 0;
+        this.safeCount = 0;
+        this.bombCount = 0;
+        this.bestMove = -1;
+        this.interiorProbability = Double.NaN;
+        Arrays.fill(this.variableOf, -1);
+
+        int unknownCells = readBoard(engine);
+        deduce();
+
+        // Everything decided so far is certain.
+        for (int index = 0; index < cells; index++)
+        {
+            if (this.state[index] == kSafe)
+            {
+                this.probability[index] = 0.0;
+                addSafeCell(index);
+            }
+            else if (this.state[index] == kBomb)
+            {
+                this.probability[index] = 1.0;
+                this.bombCount++;
+            }
+            else if (this.state[index] == kRevealed)
+            {
+                this.probability[index] = Double.NaN;
+            }
+        }
+
+        estimate(unknownCells - this.safeCount - this.bombCount, engine.getNumBombs() - this.bombCount);
+        pickBestMove();
+    }
+
+    /** The chance there's a bomb at a spot.
+     * @return 0.0 for spots that are certainly safe, 1.0 for certain bombs,
+     *         or NaN for spots that are already revealed
+     */
+    public double getBombProbability(int row, int column)
+    {
+        return this.probability[row * this.width + column];
+    }
+
+    /** Can the player be sure this spot is safe? */
+    public boolean isKnownSafe(int row, int column)
+    {
+        return this.probability[row * this.width + column] == 0.0;
+    }
+
+    /** Can the player be sure this spot is a bomb? */
+    public boolean isKnownBomb(int row, int column)
+    {
+        return this.probability[row * this.width + column] == 1.0;
+    }
+
+    /** How many hidden spots are certainly safe: every one with no chance
+     * of a bomb, whether the rules showed it or counting the ways the bombs
+     * could go did.
+     */
+    public int getSafeCount()
+    {
+        return this.safeCount;
+    }
+
+    /** One of the certainly safe spots, as <code>row * width + column</code>. */
+    public int getSafeCell(int i)
+    {
+        return this.safeCells[i];
+    }
+
+    /** The best spot to click next, as <code>row * width + column</code>:
+     * a safe one if there is one, otherwise the one least likely to be a bomb.
+     * @return the spot, or -1 if there's nothing left to click
+     */
+    public int getBestMove()
+    {
+        return this.bestMove;
+    }
+
+    /** Is the best move certainly safe, or just the best bet? */
+    public boolean isBestMoveSafe()
+    {
+        return this.bestMove >= 0 && this.probability[this.bestMove] == 0.0;
+    }
+
+    /**
+     * Note which spots are revealed, and set up a constraint for every
+     * number with hidden neighbours.
+     * @return how many spots are hidden
+     */
+    private int readBoard(KaboomEngine engine)
+    {
+        int width = engine.getWidth();
+        int height = engine.getHeight();
+        int unknownCells = 0;
+        for (int row = 0; row < height; row++)
+        {
+            for (int column = 0; column < width; column++)
+            {
+                Piece status = engine.getStatus(row, column);
+                boolean hidden = status == Piece.hidden || status == Piece.flagged;
+                this.state[row * width + column] = hidden ? kUnknown : kRevealed;
+                if (hidden)
+                {
+                    unknownCells++;
+                }
+            }
+        }
+
+        for (int row = 0; row < height; row++)
+        {
+            for (int column = 0; column < width; column++)
+            {
+                // Bombs only show up once the game's over.
+                if (engine.getStatus(row, column) != Piece.empty)
+                {
+                    continue;
+                }
+                int bombs = engine.calculateSurroundingBombs(row, column);
+                if (bombs == 0)
+                {
+                    continue;
+                }
+
+                int constraint = -1;
+                for (int neighbour = 0; neighbour < 8; neighbour++)
+                {
+                    int r = row + kRowOffsets[neighbour];
+                    int c = column + kColumnOffsets[neighbour];
+                    if (r < 0 || r >= height || c < 0 || c >= width || this.state[r * width + c] != kUnknown)
+                    {
+                        continue;
+                    }
+                    if (constraint < 0)
+                    {
+                        constraint = addConstraint(bombs);
+                    }
+                    link(constraint, variableFor(r * width + c));
+                }
+            }
+        }
+        return unknownCells;
+    }
+
+    private int addConstraint(int bombs)
+    {
+        if (this.constraintCount == this.constraintRemaining.length)
+        {
+            int size = this.constraintCount * 2;
+            this.constraintRemaining = Arrays.copyOf(this.constraintRemaining, size);
+            this.constraintUnknown = Arrays.copyOf(this.constraintUnknown, size);
+            this.constraintVariables = Arrays.copyOf(this.constraintVariables, size * 8);
+            this.constraintSize = Arrays.copyOf(this.constraintSize, size);
+        }
+        int constraint = this.constraintCount++;
+        this.constraintRemaining[constraint] = bombs;
+        this.constraintUnknown[constraint] = 0;
+        this.constraintSize[constraint] = 0;
+        return constraint;
+    }
+
+    private int variableFor(int cell)
+    {
+        if (this.variableOf[cell] >= 0)
+        {
+            return this.variableOf[cell];
+        }
+        if (this.variableCount == this.variableCell.length)
+        {
+            int size = this.variableCount * 2;
+            this.variableCell = Arrays.copyOf(this.variableCell, size);
+            this.variableConstraints = Arrays.copyOf(this.variableConstraints, size * 8);
+            this.variableConstraintCount = Arrays.copyOf(this.variableConstraintCount, size);
+        }
+        int variable = this.variableCount++;
+        this.variableCell[variable] = cell;
+        this.variableConstraintCount[variable] = 0;
+        this.variableOf[cell] = variable;
+        return variable;
+    }
+
+    private void link(int constraint, int variable)
+    {
+        this.constraintVariables[constraint * 8 + this.constraintSize[constraint]++] = variable;
+        this.constraintUnknown[constraint]++;
+        this.variableConstraints[variable * 8 + this.variableConstraintCount[variable]++] = constraint;
+    }
+
+    private boolean isUndecided(int variable)
+    {
+        return this.state[this.variableCell[variable]] == kUnknown;
+    }
+
+    /** Steps 1 and 2: deduce all we can, one number and pairs of numbers at a time. */
+    private void deduce()
+    {
+        int pending = 0;
+        for (int constraint = 0; constraint < this.constraintCount; constraint++)
+        {
+            pending = push(pending, constraint);
+        }
+
+        do
+        {
+            while (pending > 0)
+            {
+                int constraint = this.worklist[--pending];
+                int unknown = this.constraintUnknown[constraint];
+                int remaining = this.constraintRemaining[constraint];
+                if (unknown == 0 || (remaining != 0 && remaining != unknown))
+                {
+                    continue;
+                }
+                // Either all safe or all bombs.
+                for (int i = 0; i < this.constraintSize[constraint]; i++)
+                {
+                    int variable = this.constraintVariables[constraint * 8 + i];
+                    if (isUndecided(variable))
+                    {
+                        pending = decide(pending, variable, remaining != 0);
+                    }
+                }
+            }
+            pending = deduceFromPairs(pending);
+        } while (pending > 0);
+    }
+
+    /** Mark a spot as safe or a bomb, and queue up the numbers next to it. */
+    private int decide(int pending, int variable, boolean bomb)
+    {
+        this.state[this.variableCell[variable]] = bomb ? kBomb : kSafe;
+        for (int i = 0; i < this.variableConstraintCount[variable]; i++)
+        {
+            int constraint = this.variableConstraints[variable * 8 + i];
+            this.constraintUnknown[constraint]--;
+            if (bomb)
+            {
+                this.constraintRemaining[constraint]--;
+            }
+            pending = push(pending, constraint);
+        }
+        return pending;
+    }
+
+    private int push(int pending, int constraint)
+    {
+        if (pending == this.worklist.length)
+        {
+            this.worklist = Arrays.copyOf(this.worklist, pending * 2);
+        }
+        this.worklist[pending] = constraint;
+        return pending + 1;
+    }
+
+    /**
+     * Compare every pair of numbers that share a hidden neighbour.  If A
+     * has <code>d</code> more bombs left than B, and exactly <code>d</code>
+     * undecided spots that aren't next to B, those are all bombs and B's
+     * spots that aren't next to A are all safe.  (When one number's spots
+     * are all next to the other too, that's the subset case.)
+     * @return how many constraints got queued by what we decided
+     */
+    private int deduceFromPairs(int pending)
+    {
+        for (int variable = 0; variable < this.variableCount; variable++)
+        {
+            if (!isUndecided(variable))
+            {
+                continue;
+            }
+            int links = this.variableConstraintCount[variable];
+            for (int i = 0; i < links; i++)
+            {
+                int a = this.variableConstraints[variable * 8 + i];
+                for (int j = i + 1; j < links && isUndecided(variable); j++)
+                {
+                    int b = this.variableConstraints[variable * 8 + j];
+                    int onlyA = countOutside(a, b);
+                    int onlyB = countOutside(b, a);
+                    int difference = this.constraintRemaining[a] - this.constraintRemaining[b];
+                    if (onlyA + onlyB == 0 || difference != onlyA && -difference != onlyB)
+                    {
+                        continue;
+                    }
+                    boolean aBombs = difference == onlyA;
+                    pending = decideOutside(pending, a, b, aBombs);
+                    pending = decideOutside(pending, b, a, !aBombs);
+                }
+            }
+        }
+        return pending;
+    }
+
+    /** How many of one number's undecided spots aren't next to another. */
+    private int countOutside(int constraint, int other)
+    {
+        int count = 0;
+        for (int i = 0; i < this.constraintSize[constraint]; i++)
+        {
+            int variable = this.constraintVariables[constraint * 8 + i];
+            if (isUndecided(variable) && !contains(other, variable))
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int decideOutside(int pending, int constraint, int other, boolean bomb)
+    {
+        for (int i = 0; i < this.constraintSize[constraint]; i++)
+        {
+            int variable = this.constraintVariables[constraint * 8 + i];
+            if (isUndecided(variable) && !contains(other, variable))
+            {
+                pending = decide(pending, variable, bomb);
+            }
+        }
+        return pending;
+    }
+
+    private boolean contains(int constraint, int variable)
+    {
+        for (int i = 0; i < this.constraintSize[constraint]; i++)
+        {
+            if (this.constraintVariables[constraint * 8 + i] == variable)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Step 3: the chance of a bomb at every undecided hidden spot.
+     * @param undecided how many hidden spots aren't known to be safe or bombs
+     * @param bombsLeft how many bombs are in them
+     */
+    private void estimate(int undecided, int bombsLeft)
+    {
+        final List<Component> components = findComponents();
+        if (this.parallel && components.size() > 1)
+        {
+            getPool().invoke(new RecursiveAction()
+            {
+                protected void compute()
+                {
+                    ForkJoinTask.invokeAll(components);
+                }
+            });
+        }
+        else
+        {
+            for (Component component : components)
+            {
+                component.invoke();
+            }
+        }
+
+        // Pieces we couldn't count just get their best guess subtracted.
+        List<Component> exact = new ArrayList<Component>();
+        int allEdgeCells = 0;
+        double guessedBombs = 0.0;
+        for (Component component : components)
+        {
+            allEdgeCells += component.variables.length;
+            if (component.weights != null)
+            {
+                exact.add(component);
+            }
+            else
+            {
+                for (int i = 0; i < component.variables.length; i++)
+                {
+                    this.probability[this.variableCell[component.variables[i]]] = component.guesses[i];
+                    guessedBombs += component.guesses[i];
+                }
+            }
+        }
+        int interior = undecided - allEdgeCells;
+        int bombs = Math.max(0, bombsLeft - (int)Math.round(guessedBombs));
+
+        if (exact.isEmpty())
+        {
+            this.interiorProbability = interior == 0 ? Double.NaN : Math.min(1.0, (double)bombs / interior);
+            return;
+        }
+
+        // The counts get multiplied by lambda^bombs, lambda being the odds
+        // of a bomb in a hidden spot, and divided by it again at the end.
+        // That changes nothing in the answer, but it centres every
+        // combination on the totals that matter, so the hopeless ones off
+        // either end can be trimmed away.  On a big board that's the
+        // difference between multiplying polynomials with tens of thousands
+        // of terms and a few hundred.
+        int edgeCells = 0;
+        for (Component component : exact)
+        {
+            edgeCells += component.variables.length;
+        }
+        double density = (double)bombs / (interior + edgeCells);
+        double logLambda = density > 0.0 && density < 1.0 ? Math.log(density / (1.0 - density)) : 0.0;
+
+        // Combine the pieces pairwise in a tree, so that every piece ends up
+        // with the ways the rest of the board can go for each bomb count it
+        // could have.
+        Combination root = combine(exact, 0, exact.size(), logLambda);
+        double[] logInteriorWays = logInteriorWays(interior, bombs, root.low + root.product.length - 1);
+        double[] rootOutside = new double[root.product.length];
+        double best = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < rootOutside.length; i++)
+        {
+            rootOutside[i] = logInteriorWays[root.low + i] - (root.low + i) * logLambda;
+            best = Math.max(best, rootOutside[i]);
+        }
+        double total = 0.0;
+        double interiorBombs = 0.0;
+        for (int i = 0; i < rootOutside.length; i++)
+        {
+            rootOutside[i] = rootOutside[i] == Double.NEGATIVE_INFINITY ? 0.0 : Math.exp(rootOutside[i] - best);
+            double ways = root.product[i] * rootOutside[i];
+            total += ways;
+            interiorBombs += ways * (bombs - root.low - i);
+        }
+        if (total == 0.0)
+        {
+            // The numbers contradict the bomb count; we shouldn't get here.
+            total = 1.0;
+        }
+        root.distribute(rootOutside);
+        for (Component component : exact)
+        {
+            component.resolve(this.probability, this.variableCell, total);
+        }
+        this.interiorProbability = interior == 0 ? Double.NaN : Math.min(1.0, interiorBombs / total / interior);
+    }
+
+    /**
+     * How many ways there are to put the rest of the bombs in the hidden
+     * spots away from the edge, for each number of bombs on the edge:
+     * log C(interior, bombs - edgeBombs), give or take a constant.
+     */
+    private static double[] logInteriorWays(int interior, int bombs, int maxEdgeBombs)
+    {
+        double[] logWays = new double[maxEdgeBombs + 1];
+        // Work along from the first count that fits, using
+        // C(n, k - 1) / C(n, k) = k / (n - k + 1).
+        double log = 0.0;
+        for (int edgeBombs = 0; edgeBombs <= maxEdgeBombs; edgeBombs++)
+        {
+            int inside = bombs - edgeBombs;
+            if (inside < 0 || inside > interior)
+            {
+                logWays[edgeBombs] = Double.NEGATIVE_INFINITY;
+                continue;
+            }
+            logWays[edgeBombs] = log;
+            if (inside > 0)
+            {
+                log += Math.log(inside) - Math.log(interior - inside + 1);
+            }
+        }
+        return logWays;
+    }
+
+    private Combination combine(List<Component> components, int from, int to, double logLambda)
+    {
+        if (to - from == 1)
+        {
+            return new Combination(components.get(from), logLambda);
+        }
+        int middle = (from + to) / 2;
+        return new Combination(combine(components, from, middle, logLambda), combine(components, middle, to, logLambda));
+    }
+
+    /** A bunch of pieces' counts, combined. */
+    private static final class Combination
+    {
+        // Terms this much smaller than the biggest can't matter.
+        private static final double kNegligible = 1e-30;
+
+        final Combination left;
+        final Combination right;
+        final Component component;
+        // How many ways (relatively) there are for these pieces to hold
+        // each number of bombs, starting from <code>low</code> bombs.
+        int low;
+        double[] product;
+
+        Combination(Component component, double logLambda)
+        {
+            this.left = null;
+            this.right = null;
+            this.component = component;
+            component.tilt(logLambda);
+            this.low = 0;
+            this.product = component.tilted;
+            trim();
+        }
+
+        Combination(Combination left, Combination right)
+        {
+            this.left = left;
+            this.right = right;
+            this.component = null;
+            this.low = left.low + right.low;
+            this.product = new double[left.product.length + right.product.length - 1];
+            for (int a = 0; a < left.product.length; a++)
+            {
+                for (int b = 0; b < right.product.length; b++)
+                {
+                    this.product[a + b] += left.product[a] * right.product[b];
+                }
+            }
+            trim();
+        }
+
+        /** Drop the negligible terms off either end. */
+        private void trim()
+        {
+            double biggest = 0.0;
+            for (double ways : this.product)
+            {
+                biggest = Math.max(biggest, ways);
+            }
+            int first = 0;
+            int last = this.product.length - 1;
+            while (first < last && this.product[first] <= biggest * kNegligible)
+            {
+                first++;
+            }
+            while (last > first && this.product[last] <= biggest * kNegligible)
+            {
+                last--;
+            }
+            if (first > 0 || last < this.product.length - 1)
+            {
+                this.product = Arrays.copyOfRange(this.product, first, last + 1);
+                this.low += first;
+            }
+        }
+
+        /**
+         * Hand down the ways the rest of the board can go.
+         * @param outside for each number of bombs in these pieces (from
+         *        <code>low</code>), the ways everything else can go
+         */
+        void distribute(double[] outside)
+        {
+            if (this.component != null)
+            {
+                this.component.outside = outside;
+                this.component.outsideLow = this.low;
+                return;
+            }
+            this.left.distribute(passDown(outside, this.right, this.left));
+            this.right.distribute(passDown(outside, this.left, this.right));
+        }
+
+        /** What's outside one half is what's outside both, plus the other half. */
+        private double[] passDown(double[] outside, Combination sibling, Combination child)
+        {
+            double[] result = new double[child.product.length];
+            for (int i = 0; i < result.length; i++)
+            {
+                double ways = 0.0;
+                int offset = child.low + i + sibling.low - this.low;
+                for (int s = Math.max(0, -offset); s < sibling.product.length && offset + s < outside.length; s++)
+                {
+                    ways += sibling.product[s] * outside[offset + s];
+                }
+                result[i] = ways;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Split the undecided spots along the edge into pieces that don't
+     * share any numbers, using union-find.
+     */
+    private List<Component> findComponents()
+    {
+        int[] parent = new int[this.variableCount];
+        for (int variable = 0; variable < this.variableCount; variable++)
+        {
+            parent[variable] = variable;
+        }
+        for (int constraint = 0; constraint < this.constraintCount; constraint++)
+        {
+            int first = -1;
+            for (int i = 0; i < this.constraintSize[constraint]; i++)
+            {
+                int variable = this.constraintVariables[constraint * 8 + i];
+                if (!isUndecided(variable))
+                {
+                    continue;
+                }
+                if (first < 0)
+                {
+                    first = variable;
+                }
+                else
+                {
+                    parent[find(parent, variable)] = find(parent, first);
+                }
+            }
+        }
+
+        // Gather the spots in each piece, in breadth-first order so that
+        // counting can check each number as soon as it's filled in.
+        int[] componentOf = new int[this.variableCount];
+        Arrays.fill(componentOf, -1);
+        List<Component> components = new ArrayList<Component>();
+        int[] queue = new int[this.variableCount];
+        boolean[] queued = new boolean[this.variableCount];
+        for (int start = 0; start < this.variableCount; start++)
+        {
+            if (!isUndecided(start) || queued[start])
+            {
+                continue;
+            }
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            queued[start] = true;
+            while (head < tail)
+            {
+                int variable = queue[head++];
+                for (int i = 0; i < this.variableConstraintCount[variable]; i++)
+                {
+                    int constraint = this.variableConstraints[variable * 8 + i];
+                    for (int j = 0; j < this.constraintSize[constraint]; j++)
+                    {
+                        int other = this.constraintVariables[constraint * 8 + j];
+                        if (!queued[other] && isUndecided(other))
+                        {
+                            queued[other] = true;
+                            queue[tail++] = other;
+                        }
+                    }
+                }
+            }
+            components.add(new Component(Arrays.copyOf(queue, tail)));
+        }
+        return components;
+    }
+
+    private static int find(int[] parent, int variable)
+    {
+        while (parent[variable] != variable)
+        {
+            parent[variable] = parent[parent[variable]];
+            variable = parent[variable];
+        }
+        return variable;
+    }
+
+    /**
+     * One piece of the edge: counts every way of placing bombs in it that
+     * fits its numbers, by the number of bombs used.  Pieces share nothing,
+     * so they can be counted at the same time.
+     */
+    private final class Component extends RecursiveAction
+    {
+        final int[] variables;
+        // For each number of bombs, the (relative) number of ways; null if
+        // the piece was too big to count.
+        double[] weights;
+        // For each spot and each number of bombs, the ways that have a bomb there.
+        double[][] bombWays;
+        // The best guesses, if the piece was too big to count.
+        double[] guesses;
+        // The weights times lambda^bombs, and what each was multiplied by.
+        double[] tilted;
+        double[] tilt;
+        // For each number of bombs here (from outsideLow), the ways the rest
+        // of the board can go.
+        double[] outside;
+        int outsideLow;
+
+        // Search state.
+        private int[] need;
+        private int[] open;
+        private boolean[] assigned;
+        private long steps;
+
+        Component(int[] variables)
+        {
+            this.variables = variables;
+        }
+
+        protected void compute()
+        {
+            if (this.variables.length > kMaxComponentCells || !count())
+            {
+                guess();
+            }
+        }
+
+        /** @return false if it took too long */
+        private boolean count()
+        {
+            int n = this.variables.length;
+            // Search-local copies of each number's bombs left and hidden
+            // neighbours, indexed by the constraint's position in this piece.
+            List<Integer> constraints = new ArrayList<Integer>();
+            HashMap<Integer, Integer> local = new HashMap<Integer, Integer>();
+            for (int i = 0; i < n; i++)
+            {
+                int variable = this.variables[i];
+                for (int j = 0; j < variableConstraintCount[variable]; j++)
+                {
+                    int constraint = variableConstraints[variable * 8 + j];
+                    if (!local.containsKey(constraint))
+                    {
+                        local.put(constraint, constraints.size());
+                        constraints.add(constraint);
+                    }
+                }
+            }
+            this.need = new int[constraints.size()];
+            this.open = new int[constraints.size()];
+            for (int c = 0; c < constraints.size(); c++)
+            {
+                this.need[c] = constraintRemaining[constraints.get(c)];
+                this.open[c] = constraintUnknown[constraints.get(c)];
+            }
+            // Each spot's numbers, as local indices.
+            int[][] spotConstraints = new int[n][];
+            for (int i = 0; i < n; i++)
+            {
+                int variable = this.variables[i];
+                spotConstraints[i] = new int[variableConstraintCount[variable]];
+                for (int j = 0; j < spotConstraints[i].length; j++)
+                {
+                    spotConstraints[i][j] = local.get(variableConstraints[variable * 8 + j]);
+                }
+            }
+
+            this.weights = new double[n + 1];
+            this.bombWays = new double[n][n + 1];
+            this.assigned = new boolean[n];
+            this.steps = 0;
+            if (!search(spotConstraints, 0, 0))
+            {
+                this.weights = null;
+                this.bombWays = null;
+                return false;
+            }
+
+            // Scale so the weights add up to 1, to keep the numbers sane.
+            double total = 0.0;
+            for (double ways : this.weights)
+            {
+                total += ways;
+            }
+            if (total == 0.0)
+            {
+                total = 1.0;
+            }
+            for (int k = 0; k <= n; k++)
+            {
+                this.weights[k] /= total;
+                for (int i = 0; i < n; i++)
+                {
+                    this.bombWays[i][k] /= total;
+                }
+            }
+            return true;
+        }
+
+        /** Try both ways for spot <code>i</code>, and everything after it. */
+        private boolean search(int[][] spotConstraints, int i, int bombs)
+        {
+            if (++this.steps > kMaxSearchSteps)
+            {
+                return false;
+            }
+            if (i == this.variables.length)
+            {
+                this.weights[bombs]++;
+                for (int j = 0; j < i; j++)
+                {
+                    if (this.assigned[j])
+                    {
+                        this.bombWays[j][bombs]++;
+                    }
+                }
+                return true;
+            }
+
+            for (int bomb = 0; bomb <= 1; bomb++)
+            {
+                boolean fits = true;
+                for (int c : spotConstraints[i])
+                {
+                    this.need[c] -= bomb;
+                    this.open[c]--;
+                    if (this.need[c] < 0 || this.need[c] > this.open[c])
+                    {
+                        fits = false;
+                    }
+                }
+                this.assigned[i] = bomb == 1;
+                boolean finished = !fits || search(spotConstraints, i + 1, bombs + bomb);
+                for (int c : spotConstraints[i])
+                {
+                    this.need[c] += bomb;
+                    this.open[c]++;
+                }
+                if (!finished)
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Too big to count: use the worst odds from any neighbouring number. */
+        private void guess()
+        {
+            this.guesses = new double[this.variables.length];
+            for (int i = 0; i < this.variables.length; i++)
+            {
+                int variable = this.variables[i];
+                double worst = 0.0;
+                for (int j = 0; j < variableConstraintCount[variable]; j++)
+                {
+                    int constraint = variableConstraints[variable * 8 + j];
+                    worst = Math.max(worst, (double)constraintRemaining[constraint] / constraintUnknown[constraint]);
+                }
+                this.guesses[i] = worst;
+            }
+        }
+
+        /** Multiply the weight for k bombs by lambda^k, scaled to keep it sane. */
+        void tilt(double logLambda)
+        {
+            this.tilt = new double[this.weights.length];
+            this.tilted = new double[this.weights.length];
+            double best = Double.NEGATIVE_INFINITY;
+            for (int k = 0; k < this.weights.length; k++)
+            {
+                if (this.weights[k] > 0.0)
+                {
+                    best = Math.max(best, Math.log(this.weights[k]) + k * logLambda);
+                }
+            }
+            for (int k = 0; k < this.weights.length; k++)
+            {
+                this.tilt[k] = Math.exp(k * logLambda - best);
+                this.tilted[k] = this.weights[k] * this.tilt[k];
+            }
+        }
+
+        /** Turn the counts into chances, now we know how the rest of the board can go. */
+        void resolve(double[] probability, int[] variableCell, double total)
+        {
+            for (int i = 0; i < this.variables.length; i++)
+            {
+                double ways = 0.0;
+                for (int k = 0; k < this.outside.length; k++)
+                {
+                    int bombs = this.outsideLow + k;
+                    ways += this.bombWays[i][bombs] * this.tilt[bombs] * this.outside[k];
+                }
+                probability[variableCell[this.variables[i]]] = Math.min(1.0, ways / total);
+            }
+        }
+    }
+
+    private void addSafeCell(int index)
+    {
+        if (this.safeCount == this.safeCells.length)
+        {
+            this.safeCells = Arrays.copyOf(this.safeCells, this.safeCount * 2);
+        }
+        this.safeCells[this.safeCount++] = index;
+    }
+
+    /** A safe spot if there is one, otherwise the least likely to be a bomb.
+     * Spots the counting found can't be bombs are safe too, so they join
+     * the safe spots here.
+     */
+    private void pickBestMove()
+    {
+        double best = 2.0;
+        for (int index = 0; index < this.state.length; index++)
+        {
+            if (this.state[index] != kUnknown)
+            {
+                continue;
+            }
+            // Spots off the edge all have the same odds.
+            double chance = this.variableOf[index] >= 0 ? this.probability[index] : this.interiorProbability;
+            this.probability[index] = chance;
+            if (chance == 0.0)
+            {
+                addSafeCell(index);
+            }
+            if (chance < best)
+            {
+                best = chance;
+                this.bestMove = index;
+            }
+        }
+        if (this.safeCount > 0)
+        {
+            this.bestMove = this.safeCells[0];
+        }
+    }
+
+    static synchronized ForkJoinPool getPool()
+    {
+        if (pool == null)
+        {
+            pool = new ForkJoinPool();
+        }
+        return pool;
+    }
+}
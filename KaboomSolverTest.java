@@ -0,0 +1,175 @@
+import junit.framework.TestCase;
+import java.util.Random;
+
+/**
+ * Tests for KaboomSolver: its odds should be the same as counting every
+ * way the bombs could go, one by one.
+ */
+public class KaboomSolverTest extends TestCase
+{
+    // Every spot with no chance of a bomb should be on the safe list, even
+    // the ones only counting the ways the bombs could go shows are safe
+    // (like the spots away from the edge once every bomb is accounted for).
+    public void testSafeCellsIncludeCountedOnes()
+    {
+        Random random = new Random(11);
+        KaboomSolver solver = new KaboomSolver();
+        for (int game = 0; game < 2000; game++)
+        {
+            int width = 4 + random.nextInt(4);
+            int height = 4 + random.nextInt(4);
+            KaboomEngine engine = new KaboomEngine(width, height, 2 + random.nextInt(width * height / 4));
+            engine.setGameNumber(game);
+            engine.restartGame();
+            KaboomEngine.ClickResult result = KaboomEngine.ClickResult.played;
+            while (result == KaboomEngine.ClickResult.played)
+            {
+                solver.solve(engine);
+                boolean[] listed = new boolean[width * height];
+                for (int i = 0; i < solver.getSafeCount(); i++)
+                {
+                    listed[solver.getSafeCell(i)] = true;
+                }
+                for (int index = 0; index < width * height; index++)
+                {
+                    assertEquals("Game " + game + ", spot " + index, solver.isKnownSafe(index / width, index % width),
+                                 listed[index]);
+                }
+                int move = solver.getBestMove();
+                result = engine.clickTile(move / width, move % width);
+            }
+        }
+    }
+
+    /**
+     * Every way the bombs could be laid out under the hidden spots, given
+     * the numbers showing: for each hidden spot, how many layouts have a
+     * bomb there, with the total in the last slot.
+     */
+    private static long[] countLayouts(KaboomEngine engine)
+    {
+        int width = engine.getWidth();
+        int cells = width * engine.getHeight();
+        int[] hidden = new int[cells];
+        int hiddenCount = 0;
+        for (int index = 0; index < cells; index++)
+        {
+            if (engine.getStatus(index / width, index % width) == Piece.hidden)
+            {
+                hidden[hiddenCount++] = index;
+            }
+        }
+        long[] counts = new long[cells + 1];
+        layOut(engine, hidden, hiddenCount, 0, engine.getNumBombs(), new boolean[cells], counts);
+        return counts;
+    }
+
+    private static void layOut(KaboomEngine engine, int[] hidden, int hiddenCount, int next, int bombsLeft,
+                               boolean[] bombs, long[] counts)
+    {
+        if (bombsLeft == 0)
+        {
+            if (fitsNumbers(engine, bombs))
+            {
+                for (int index = 0; index < bombs.length; index++)
+                {
+                    counts[index] += bombs[index] ? 1 : 0;
+                }
+                counts[bombs.length]++;
+            }
+            return;
+        }
+        for (int i = next; i <= hiddenCount - bombsLeft; i++)
+        {
+            bombs[hidden[i]] = true;
+            layOut(engine, hidden, hiddenCount, i + 1, bombsLeft - 1, bombs, counts);
+            bombs[hidden[i]] = false;
+        }
+    }
+
+    private static boolean fitsNumbers(KaboomEngine engine, boolean[] bombs)
+    {
+        int width = engine.getWidth();
+        int height = engine.getHeight();
+        for (int index = 0; index < bombs.length; index++)
+        {
+            int row = index / width;
+            int column = index % width;
+            if (engine.getStatus(row, column) != Piece.empty)
+            {
+                continue;
+            }
+            int count = 0;
+            for (int r = Math.max(0, row - 1); r <= Math.min(height - 1, row + 1); r++)
+            {
+                for (int c = Math.max(0, column - 1); c <= Math.min(width - 1, column + 1); c++)
+                {
+                    count += bombs[r * width + c] ? 1 : 0;
+                }
+            }
+            if (count != engine.calculateSurroundingBombs(row, column))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void compareWithCounting(int width, int height, int bombs, int games, long seed)
+    {
+        Random random = new Random(seed);
+        KaboomSolver solver = new KaboomSolver();
+        KaboomEngine engine = new KaboomEngine(width, height, bombs);
+        for (int game = 1; game <= games; game++)
+        {
+            engine.setGameNumber(game);
+            engine.restartGame();
+            KaboomEngine.ClickResult result = KaboomEngine.ClickResult.played;
+            while (result == KaboomEngine.ClickResult.played)
+            {
+                solver.solve(engine);
+                long[] counts = countLayouts(engine);
+                long total = counts[width * height];
+                assertTrue(total > 0);
+                for (int index = 0; index < width * height; index++)
+                {
+                    int row = index / width;
+                    int column = index % width;
+                    String where = "game " + game + " after " + engine.getMoves() + " moves, at " + row + ", " + column;
+                    if (engine.getStatus(row, column) != Piece.hidden)
+                    {
+                        assertTrue(where, Double.isNaN(solver.getBombProbability(row, column)));
+                        continue;
+                    }
+                    double expected = (double)counts[index] / total;
+                    assertEquals(where, expected, solver.getBombProbability(row, column), 1e-9);
+                    assertEquals(where, counts[index] == 0, solver.isKnownSafe(row, column));
+                    assertEquals(where, counts[index] == total, solver.isKnownBomb(row, column));
+                }
+                // Play on, sometimes with the best move and sometimes at random.
+                int move = solver.getBestMove();
+                if (random.nextInt(3) == 0)
+                {
+                    move = random.nextInt(width * height);
+                }
+                result = engine.clickTile(move / width, move % width);
+            }
+        }
+    }
+
+    public void testMatchesCounting()
+    {
+        compareWithCounting(5, 4, 4, 300, 1);
+        compareWithCounting(4, 4, 2, 300, 2);
+        compareWithCounting(6, 3, 5, 300, 3);
+        compareWithCounting(5, 5, 5, 100, 4);
+    }
+
+    // With no bombs left to place off the edge, or bombs in every spot, the
+    // count alone settles things.
+    public void testMatchesCountingAtTheExtremes()
+    {
+        compareWithCounting(5, 4, 2, 200, 5);
+        compareWithCounting(5, 4, 15, 200, 6);
+    }
+}
@@ -0,0 +1,121 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram counts how long things took, in nanoseconds, the way
+ * HdrHistogram does: values are bucketed by their highest bit and the next
+ * five bits below it, so every bucket is within about 3% of the values in
+ * it, from a nanosecond up to hours, in under 2K counters.
+ *
+ * Recording is a couple of shifts and one atomic increment, with no locks,
+ * so any number of threads can record at once.  Reading while others are
+ * recording gives a count that's at worst a few values behind.
+ */
+public final class LatencyHistogram
+{
+    // Each power of two is split into this many buckets.
+    private static final int kSubBucketBits = 5;
+    private static final int kSubBuckets = 1 << kSubBucketBits;
+    private static final int kBuckets = (64 - kSubBucketBits + 1) * kSubBuckets;
+
+    private final AtomicLongArray counts = new AtomicLongArray(kBuckets);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /** Count one value.  Negative values count as zero. */
+    public void record(long nanos)
+    {
+        long value = Math.max(0L, nanos);
+        this.counts.incrementAndGet(bucketOf(value));
+        this.total.incrementAndGet();
+        this.sum.addAndGet(value);
+        long seen;
+        while (value > (seen = this.max.get()) && !this.max.compareAndSet(seen, value))
+        {
+        }
+    }
+
+    private static int bucketOf(long value)
+    {
+        if (value < kSubBuckets)
+        {
+            return (int)value;
+        }
+        // Which power of two, and where in it.
+        int shift = 63 - Long.numberOfLeadingZeros(value) - kSubBucketBits;
+        return (shift + 1) * kSubBuckets + (int)(value >>> shift) - kSubBuckets;
+    }
+
+    /** The biggest value that lands in a bucket. */
+    private static long highestIn(int bucket)
+    {
+        if (bucket < kSubBuckets)
+        {
+            return bucket;
+        }
+        int shift = bucket / kSubBuckets - 1;
+        long lowest = (long)(bucket % kSubBuckets + kSubBuckets) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    public long getCount()
+    {
+        return this.total.get();
+    }
+
+    public long getMax()
+    {
+        return this.max.get();
+    }
+
+    public double getMean()
+    {
+        long count = this.total.get();
+        return count == 0 ? 0.0 : (double)this.sum.get() / count;
+    }
+
+    /** The value that <code>percentile</code> percent of values are at or
+     * under (to within a bucket), e.g. 99.0 for p99, or 0 if nothing has
+     * been recorded.
+     */
+    public long getPercentile(double percentile)
+    {
+        long count = this.total.get();
+        if (count == 0)
+        {
+            return 0;
+        }
+        long wanted = Math.max(1L, (long)Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int bucket = 0; bucket < kBuckets; bucket++)
+        {
+            seen += this.counts.get(bucket);
+            if (seen >= wanted)
+            {
+                return Math.min(highestIn(bucket), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    /** Forget everything recorded so far. */
+    public void reset()
+    {
+        for (int bucket = 0; bucket < kBuckets; bucket++)
+        {
+            this.counts.set(bucket, 0L);
+        }
+        this.total.set(0L);
+        this.sum.set(0L);
+        this.max.set(0L);
+    }
+
+    /** Count, mean, p50, p99, p99.9 and max, in microseconds. */
+    public String toString()
+    {
+        return String.format("n=%d mean=%.1fus p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                             getCount(), getMean() / 1e3, getPercentile(50) / 1e3, getPercentile(99) / 1e3,
+                             getPercentile(99.9) / 1e3, getMax() / 1e3);
+    }
+}
@@ -0,0 +1,235 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Leaderboard keeps a set of scores in order and answers "who's in the top
+ * N", "where does this player rank" and "what's between here and there"
+ * without looking at the rest of them.
+ *
+ * It's a treap (a binary search tree kept balanced by giving every node a
+ * pseudo-random priority) where each node knows the size of its subtree,
+ * so finding a score's position is a walk down from the root: O(log n).
+ * Priorities come from the score's place in the store rather than a random
+ * number generator, so the same scores always make the same tree.
+ *
+ * Scores are only ever added.  Not thread-safe.
+ */
+public final class Leaderboard
+{
+    private static final class Node
+    {
+        final ScoreRecord record;
+        final long priority;
+        Node left;
+        Node right;
+        int size = 1;
+
+        Node(ScoreRecord record)
+        {
+            this.record = record;
+            // The last step of SplittableRandom's mixer: any small change
+            // in the sequence number scrambles every bit of the priority.
+            long z = record.sequence * 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            this.priority = z ^ (z >>> 31);
+        }
+    }
+
+    /** Oldest first, for looking up scores by when they were saved. */
+    public static final Comparator<ScoreRecord> kByTimestamp = new Comparator<ScoreRecord>()
+    {
+        public int compare(ScoreRecord a, ScoreRecord b)
+        {
+            if (a.timestamp != b.timestamp)
+            {
+                return a.timestamp < b.timestamp ? -1 : 1;
+            }
+            return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+        }
+    };
+
+    private final Comparator<ScoreRecord> order;
+    private Node root = null;
+    // Each player's first score in this order: their best, on a normal board.
+    private final Map<String, ScoreRecord> playerBest = new HashMap<String, ScoreRecord>();
+
+    /** A leaderboard sorted fastest first. */
+    public Leaderboard()
+    {
+        this(null);
+    }
+
+    /** A leaderboard sorted some other way.
+     * @param order how to sort the scores, or null for fastest first
+     */
+    public Leaderboard(Comparator<ScoreRecord> order)
+    {
+        this.order = order;
+    }
+
+    public int size()
+    {
+        return size(this.root);
+    }
+
+    /** Add a score.  O(log n). */
+    public void add(ScoreRecord record)
+    {
+        this.root = insert(this.root, new Node(record));
+        ScoreRecord best = this.playerBest.get(record.name);
+        if (best == null || compare(record, best) < 0)
+        {
+            this.playerBest.put(record.name, record);
+        }
+    }
+
+    /** The first few scores, in order.  O(log n + count). */
+    public List<ScoreRecord> first(int count)
+    {
+        List<ScoreRecord> scores = new ArrayList<ScoreRecord>(Math.max(0, Math.min(count, size())));
+        addFirst(this.root, scores, count);
+        return scores;
+    }
+
+    /** Where a player's best score ranks.  O(log n).
+     * @return 1 for first place, and so on, or 0 if they're not on the board
+     */
+    public int rank(String playerName)
+    {
+        ScoreRecord best = this.playerBest.get(playerName);
+        return best == null ? 0 : countBefore(best) + 1;
+    }
+
+    /** The player's best score, or null if they're not on the board. */
+    public ScoreRecord getBest(String playerName)
+    {
+        return this.playerBest.get(playerName);
+    }
+
+    /** How many scores sort before this one.  O(log n). */
+    public int countBefore(ScoreRecord probe)
+    {
+        int count = 0;
+        Node node = this.root;
+        while (node != null)
+        {
+            if (compare(node.record, probe) < 0)
+            {
+                count += size(node.left) + 1;
+                node = node.right;
+            }
+            else
+            {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    /** Every score from <code>from</code> up to (but not including)
+     * <code>to</code>, in order.  O(log n + the number returned).
+     */
+    public List<ScoreRecord> range(ScoreRecord from, ScoreRecord to)
+    {
+        List<ScoreRecord> scores = new ArrayList<ScoreRecord>();
+        addRange(this.root, from, to, scores);
+        return scores;
+    }
+
+    private int compare(ScoreRecord a, ScoreRecord b)
+    {
+        return this.order == null ? a.compareTo(b) : this.order.compare(a, b);
+    }
+
+    private static int size(Node node)
+    {
+        return node == null ? 0 : node.size;
+    }
+
+    private Node insert(Node node, Node added)
+    {
+        if (node == null)
+        {
+            return added;
+        }
+        if (compare(added.record, node.record) < 0)
+        {
+            node.left = insert(node.left, added);
+            node.size++;
+            if (node.left.priority > node.priority)
+            {
+                node = rotateRight(node);
+            }
+        }
+        else
+        {
+            node.right = insert(node.right, added);
+            node.size++;
+            if (node.right.priority > node.priority)
+            {
+                node = rotateLeft(node);
+            }
+        }
+        return node;
+    }
+
+    private static Node rotateRight(Node node)
+    {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        left.size = node.size;
+        node.size = size(node.left) + size(node.right) + 1;
+        return left;
+    }
+
+    private static Node rotateLeft(Node node)
+    {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        right.size = node.size;
+        node.size = size(node.left) + size(node.right) + 1;
+        return right;
+    }
+
+    private static void addFirst(Node node, List<ScoreRecord> scores, int count)
+    {
+        if (node == null || scores.size() >= count)
+        {
+            return;
+        }
+        addFirst(node.left, scores, count);
+        if (scores.size() < count)
+        {
+            scores.add(node.record);
+            addFirst(node.right, scores, count);
+        }
+    }
+
+    private void addRange(Node node, ScoreRecord from, ScoreRecord to, List<ScoreRecord> scores)
+    {
+        if (node == null)
+        {
+            return;
+        }
+        boolean afterFrom = compare(node.record, from) >= 0;
+        boolean beforeTo = compare(node.record, to) < 0;
+        if (afterFrom)
+        {
+            addRange(node.left, from, to, scores);
+        }
+        if (afterFrom && beforeTo)
+        {
+            scores.add(node.record);
+        }
+        if (beforeTo)
+        {
+            addRange(node.right, from, to, scores);
+        }
+    }
+}
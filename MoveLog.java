@@ -0,0 +1,216 @@
+import java.util.Arrays;
+
+/**
+ * MoveLog is a compact record of every move in a game: what kind of move it
+ * was, which spot, and when, packed into a growing byte array.
+ *
+ * Each move is two variable-length numbers (seven bits a byte, the high bit
+ * meaning "more to come"):
+ * <ol>
+ * <li>how far the spot is from the last move's spot (as
+ *     <code>row * width + column</code>, zig-zagged so small steps either
+ *     way stay small), shifted left two bits to make room for the kind of
+ *     move;</li>
+ * <li>how many milliseconds since the last move.</li>
+ * </ol>
+ * Players mostly click near where they just clicked, and a click every
+ * second or so, so a typical move takes three or four bytes.
+ *
+ * Not thread-safe.
+ */
+public final class MoveLog
+{
+    /** A left click. */
+    public static final int kClick = 0;
+    /** A right click, flagging or unflagging a spot. */
+    public static final int kFlag = 1;
+    /** Revealing the whole board. */
+    public static final int kCheat = 2;
+
+    private byte[] bytes = new byte[64];
+    private int length = 0;
+    private int moves = 0;
+    private int lastIndex = 0;
+    private long lastMillis = 0;
+
+    /** Forget every move. */
+    public void clear()
+    {
+        this.length = 0;
+        this.moves = 0;
+        this.lastIndex = 0;
+        this.lastMillis = 0;
+    }
+
+    /** Record a move.
+     * @param action kClick, kFlag or kCheat
+     * @param index the spot, as <code>row * width + column</code> (0 for kCheat)
+     * @param millis when, in milliseconds since the game started
+     */
+    public void add(int action, int index, long millis)
+    {
+        // Five bytes for each number is as long as they get.
+        if (this.length + 10 > this.bytes.length)
+        {
+            this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+        }
+        int step = index - this.lastIndex;
+        putVarint(((long)((step << 1) ^ (step >> 31)) & 0xFFFFFFFFL) << 2 | action);
+        // Clocks can go backwards a little; call that no time at all.
+        putVarint(Math.max(0, millis - this.lastMillis));
+        this.lastIndex = index;
+        this.lastMillis = Math.max(this.lastMillis, millis);
+        this.moves++;
+    }
+
+    private void putVarint(long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            this.bytes[this.length++] = (byte)(value | 0x80);
+            value >>>= 7;
+        }
+        this.bytes[this.length++] = (byte)value;
+    }
+
+    /** How many moves have been recorded. */
+    public int size()
+    {
+        return this.moves;
+    }
+
+    /** How many bytes the moves take. */
+    public int length()
+    {
+        return this.length;
+    }
+
+    /** When the last move was made, in milliseconds since the game started. */
+    public long getLastMillis()
+    {
+        return this.lastMillis;
+    }
+
+    /** A copy of the encoded moves. */
+    public byte[] toByteArray()
+    {
+        return Arrays.copyOf(this.bytes, this.length);
+    }
+
+    /** Copy the encoded moves into an array.
+     * @return where in <code>into</code> they end
+     */
+    public int copyTo(byte[] into, int offset)
+    {
+        System.arraycopy(this.bytes, 0, into, offset, this.length);
+        return offset + this.length;
+    }
+
+    /** Write the encoded moves into a buffer. */
+    public void copyTo(java.nio.ByteBuffer buffer)
+    {
+        buffer.put(this.bytes, 0, this.length);
+    }
+
+    /** Replace the log with encoded moves read from a buffer (see
+     * <code>copyTo</code>), so more can be added on the end.
+     * @throws IllegalArgumentException if they're garbled
+     */
+    public void load(java.nio.ByteBuffer buffer, int length)
+    {
+        byte[] loaded = new byte[Math.max(64, length + 10)];
+        buffer.get(loaded, 0, length);
+        Reader reader = new Reader();
+        reader.reset(loaded, 0, length);
+        int moves = 0;
+        while (reader.next())
+        {
+            moves++;
+        }
+        this.bytes = loaded;
+        this.length = length;
+        this.moves = moves;
+        this.lastIndex = reader.getIndex();
+        this.lastMillis = reader.getMillis();
+    }
+
+    /**
+     * Reads moves back out of encoded bytes, one at a time.  One reader can
+     * be pointed at any number of logs, so reading allocates nothing.
+     */
+    public static final class Reader
+    {
+        private byte[] bytes;
+        private int position;
+        private int end;
+        private int action;
+        private int index;
+        private long millis;
+
+        /** Start reading a log from the beginning. */
+        public void reset(byte[] bytes, int offset, int length)
+        {
+            this.bytes = bytes;
+            this.position = offset;
+            this.end = offset + length;
+            this.action = 0;
+            this.index = 0;
+            this.millis = 0;
+        }
+
+        /** Move on to the next move.
+         * @return false if there are no more
+         * @throws IllegalArgumentException if the log is cut short or garbled
+         */
+        public boolean next()
+        {
+            if (this.position >= this.end)
+            {
+                return false;
+            }
+            long first = getVarint();
+            this.action = (int)(first & 3);
+            int zigZag = (int)(first >>> 2);
+            this.index += (zigZag >>> 1) ^ -(zigZag & 1);
+            this.millis += getVarint();
+            return true;
+        }
+
+        private long getVarint()
+        {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7)
+            {
+                if (this.position >= this.end)
+                {
+                    throw new IllegalArgumentException("The move log is cut short.");
+                }
+                byte b = this.bytes[this.position++];
+                value |= (long)(b & 0x7F) << shift;
+                if (b >= 0)
+                {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("The move log is garbled.");
+        }
+
+        /** kClick, kFlag or kCheat. */
+        public int getAction()
+        {
+            return this.action;
+        }
+
+        /** The spot, as <code>row * width + column</code>. */
+        public int getIndex()
+        {
+            return this.index;
+        }
+
+        /** When, in milliseconds since the game started. */
+        public long getMillis()
+        {
+            return this.millis;
+        }
+    }
+}
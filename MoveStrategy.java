@@ -0,0 +1,20 @@
+/**
+ * MoveStrategy decides where to click next, for playing games without a
+ * person at the mouse (see BatchSimulator).
+ *
+ * A strategy should only go by what a player could see: the status of each
+ * spot, and the number on each revealed one.  Peeking at
+ * <code>isBomb</code> is cheating.  Strategies keep whatever state they like
+ * between moves, so each thread gets its own.
+ */
+public interface MoveStrategy
+{
+    /** Get ready for a new game.  The engine has just been restarted. */
+    void startGame(KaboomEngine engine);
+
+    /** Pick the next spot to click.
+     * @return the spot's index (<code>row * width + column</code>), which
+     *         should be hidden, or -1 to give up on this game
+     */
+    int nextMove(KaboomEngine engine);
+}
@@ -0,0 +1,900 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * NoGuessGenerator lays out boards that can be cleared without ever having
+ * to guess, starting from an opening in the middle of the board.
+ *
+ * It deals random layouts that leave the middle spot and its neighbours
+ * clear, and plays each one out the way a careful player would: it opens
+ * the start, then keeps revealing spots that the numbers prove are safe.
+ * The first layout that gets cleared that way is the board.  The player
+ * uses three kinds of reasoning, cheapest first:
+ * <ol>
+ * <li>One number at a time: all its bombs found means the rest of its
+ *     neighbours are safe, and as many hidden neighbours as bombs left
+ *     means they're all bombs.</li>
+ * <li>Two nearby numbers at a time: if the difference in their bombs left
+ *     accounts for every spot next to one but not the other, those spots are
+ *     all bombs and the other side's are all safe.</li>
+ * <li>The bomb count: no bombs left means every hidden spot is safe, and as
+ *     many bombs as hidden spots means they're all bombs.</li>
+ * </ol>
+ * That's not everything a player could work out, so a few solvable boards
+ * get thrown away, but anything it does clear certainly needs no guessing.
+ * It's also quick: a hopeless layout usually stalls within a few moves.
+ *
+ * Each layout is dealt from its own seed (the game number and the layout's
+ * place in line), so a game number always gives the same board, whether
+ * the layouts are tried in one thread or spread over every core.  Whole
+ * ranges of games can be made ahead of time and kept in a Library.
+ *
+ * Usage: java NoGuessGenerator width height bombs firstGame lastGame file
+ * makes a library of games firstGame - lastGame and writes it to the file.
+ */
+public final class NoGuessGenerator
+{
+    /** Give up on a game after trying this many layouts, unless told otherwise. */
+    public static final int kMaxLayouts = 1 << 20;
+    // Layouts tried per task when spreading one game over every core.
+    private static final int kLayoutsPerTask = 32;
+    private static final long kSeedSalt = 0x3C6EF372FE94F82BL;
+
+    private static final int[] kRowOffsets = { -1, -1, -1, 0, 0, 1, 1, 1 };
+    private static final int[] kColumnOffsets = { -1, 0, 1, -1, 1, -1, 0, 1 };
+
+    // Shared by every generator, and only started if somebody needs it.
+    private static ForkJoinPool pool = null;
+
+    private final int width;
+    private final int height;
+    private final int bombs;
+    private final int start;
+    // Every spot a bomb may go: everything but the start and its neighbours.
+    private final int[] allowed;
+    // For the calling thread; parallel tasks make their own.
+    private final Player player;
+
+    private boolean parallel = true;
+    private Library library = null;
+    private int maxLayouts = kMaxLayouts;
+    private long layoutsTried = 0;
+
+    /**
+     * @param width number of columns
+     * @param height number of rows
+     * @param bombs number of bombs, leaving room for the opening
+     */
+    public NoGuessGenerator(int width, int height, int bombs)
+    {
+        if (width <= 0 || height <= 0 || width > KaboomEngine.kMaxDimension || height > KaboomEngine.kMaxDimension)
+        {
+            throw new IllegalArgumentException("Board dimensions must be between 1 and " + KaboomEngine.kMaxDimension + ".");
+        }
+        this.width = width;
+        this.height = height;
+        this.start = (height / 2) * width + width / 2;
+
+        int cells = width * height;
+        int startRow = height / 2;
+        int startColumn = width / 2;
+        int[] allowed = new int[cells];
+        int count = 0;
+        for (int index = 0; index < cells; index++)
+        {
+            if (Math.abs(index / width - startRow) > 1 || Math.abs(index % width - startColumn) > 1)
+            {
+                allowed[count++] = index;
+            }
+        }
+        if (bombs < 0 || bombs > count)
+        {
+            throw new IllegalArgumentException("Can't fit " + bombs + " bombs on a " + width + "x" + height
+                                               + " board and still leave an opening.");
+        }
+        this.bombs = bombs;
+        this.allowed = Arrays.copyOf(allowed, count);
+        this.player = new Player();
+    }
+
+    public int getWidth()
+    {
+        return this.width;
+    }
+
+    public int getHeight()
+    {
+        return this.height;
+    }
+
+    public int getNumBombs()
+    {
+        return this.bombs;
+    }
+
+    /** The spot every board is solvable from, as <code>row * width + column</code>. */
+    public int getStartIndex()
+    {
+        return this.start;
+    }
+
+    /** Whether to try layouts on every core (the default), or all in the
+     * calling thread.  Either way gives the same boards.
+     */
+    public void setParallel(boolean parallel)
+    {
+        this.parallel = parallel;
+    }
+
+    /** Look games up here before laying them out, or null to always lay them out. */
+    public void setLibrary(Library library)
+    {
+        if (library != null && (library.width != this.width || library.height != this.height
+                                || library.bombs != this.bombs))
+        {
+            throw new IllegalArgumentException("That library is for a different board.");
+        }
+        this.library = library;
+    }
+
+    /** Give up on a game in <code>generate</code> after trying this many
+     * layouts, rather than kMaxLayouts.  Games whose boards come later in
+     * line than that fall back on plain boards, so a smaller budget deals
+     * different boards for them.
+     */
+    public void setMaxLayouts(int maxLayouts)
+    {
+        if (maxLayouts < 1)
+        {
+            throw new IllegalArgumentException("At least one layout has to be tried.");
+        }
+        this.maxLayouts = maxLayouts;
+    }
+
+    public int getMaxLayouts()
+    {
+        return this.maxLayouts;
+    }
+
+    /** How many layouts have been tried, altogether. */
+    public long getLayoutsTried()
+    {
+        return this.layoutsTried;
+    }
+
+    /**
+     * Find the board for a game.
+     * @param gameNumber which game
+     * @param bombs where to put the board, as a bitset of
+     *        <code>row * width + column</code>
+     * @return false if no board turned up in getMaxLayouts() tries, in which case
+     *         <code>bombs</code> is left alone
+     */
+    public boolean generate(int gameNumber, long[] bombs)
+    {
+        if (this.library != null && this.library.lookup(gameNumber, bombs))
+        {
+            return true;
+        }
+        long layout;
+        if (this.parallel)
+        {
+            layout = findInParallel(gameNumber);
+        }
+        else
+        {
+            layout = find(this.player, gameNumber, 0, this.maxLayouts);
+            this.layoutsTried += layout < 0 ? this.maxLayouts : layout + 1;
+        }
+        if (layout < 0)
+        {
+            return false;
+        }
+        this.player.deal(gameNumber, layout);
+        this.player.pack(bombs);
+        return true;
+    }
+
+    /**
+     * Make boards for a whole range of games, on every core.  Games with no
+     * board in kMaxLayouts tries are left out.
+     */
+    public Library generateAll(final int firstGame, final int lastGame)
+    {
+        if (lastGame < firstGame)
+        {
+            throw new IllegalArgumentException("The last game can't come before the first.");
+        }
+        final Library library = new Library(this.width, this.height, this.bombs, firstGame, lastGame);
+        getPool().invoke(new Games(library, firstGame, lastGame));
+        return library;
+    }
+
+    /** Some games for a library, split in two until there aren't many. */
+    private class Games extends RecursiveAction
+    {
+        private final Library library;
+        private final int firstGame;
+        private final int lastGame;
+
+        Games(Library library, int firstGame, int lastGame)
+        {
+            this.library = library;
+            this.firstGame = firstGame;
+            this.lastGame = lastGame;
+        }
+
+        protected void compute()
+        {
+            if (this.lastGame - this.firstGame >= 4)
+            {
+                int middle = this.firstGame + (this.lastGame - this.firstGame) / 2;
+                invokeAll(new Games(this.library, this.firstGame, middle), new Games(this.library, middle + 1, this.lastGame));
+                return;
+            }
+            Player player = new Player();
+            for (int game = this.firstGame; game <= this.lastGame; game++)
+            {
+                long layout = find(player, game, 0, kMaxLayouts);
+                if (layout >= 0)
+                {
+                    player.deal(game, layout);
+                    player.pack(this.library.boardFor(game));
+                    this.library.found[game - this.library.firstGame] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Try layouts in order until one can be cleared.
+     * @return the first one that can, or -1 if none up to <code>last</code> can
+     */
+    private long find(Player player, int gameNumber, long first, long last)
+    {
+        for (long layout = first; layout < last; layout++)
+        {
+            player.deal(gameNumber, layout);
+            if (player.play())
+            {
+                return layout;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Try layouts on every core, a round of them at a time.  The board is
+     * the lowest-numbered layout that can be cleared, the same as trying
+     * them one after another would find; tasks stop once someone has found
+     * one earlier than where they're up to.
+     */
+    private long findInParallel(final int gameNumber)
+    {
+        final ForkJoinPool pool = getPool();
+        final int tasks = pool.getParallelism() * 4;
+        final AtomicLong found = new AtomicLong(Long.MAX_VALUE);
+        final AtomicLong tried = new AtomicLong();
+        final int maxLayouts = this.maxLayouts;
+        for (long round = 0; round < maxLayouts; round += (long)tasks * kLayoutsPerTask)
+        {
+            final long first = round;
+            pool.invoke(new RecursiveAction()
+            {
+                protected void compute()
+                {
+                    RecursiveAction[] batches = new RecursiveAction[tasks];
+                    for (int task = 0; task < tasks; task++)
+                    {
+                        final long from = first + (long)task * kLayoutsPerTask;
+                        batches[task] = new RecursiveAction()
+                        {
+                            protected void compute()
+                            {
+                                Player player = new Player();
+                                long last = Math.min(from + kLayoutsPerTask, maxLayouts);
+                                for (long layout = from; layout < last && layout < found.get(); layout++)
+                                {
+                                    tried.incrementAndGet();
+                                    player.deal(gameNumber, layout);
+                                    if (player.play())
+                                    {
+                                        lowerTo(found, layout);
+                                        return;
+                                    }
+                                }
+                            }
+                        };
+                    }
+                    invokeAll(batches);
+                }
+            });
+            if (found.get() != Long.MAX_VALUE)
+            {
+                break;
+            }
+        }
+        this.layoutsTried += tried.get();
+        return found.get() == Long.MAX_VALUE ? -1 : found.get();
+    }
+
+    private static void lowerTo(AtomicLong value, long lower)
+    {
+        long current = value.get();
+        while (lower < current && !value.compareAndSet(current, lower))
+        {
+            current = value.get();
+        }
+    }
+
+    private static synchronized ForkJoinPool getPool()
+    {
+        if (pool == null)
+        {
+            pool = new ForkJoinPool();
+        }
+        return pool;
+    }
+
+    /**
+     * Deals layouts and plays them out.  Each thread needs its own, since it
+     * keeps the whole board as scratch space.
+     */
+    private final class Player
+    {
+        // What the player knows about each spot.
+        private static final byte kHidden = 0;
+        private static final byte kRevealed = 1;
+        private static final byte kFlagged = 2;
+
+        private final int[] allowed = NoGuessGenerator.this.allowed.clone();
+        private final int[] swaps = new int[NoGuessGenerator.this.bombs];
+        private final boolean[] bomb;
+        private final byte[] number;
+        private final byte[] state;
+        // For revealed spots: hidden neighbours, and bombs among them not yet flagged.
+        private final byte[] hiddenAround;
+        private final byte[] bombsLeft;
+        // Revealed spots whose neighbours changed, and spots to open up.
+        private int[] pending = new int[64];
+        private int pendingCount = 0;
+        private int[] opening = new int[64];
+        private int openingCount = 0;
+        private int hiddenSafe;
+        private int flagged;
+
+        Player()
+        {
+            int cells = NoGuessGenerator.this.width * NoGuessGenerator.this.height;
+            this.bomb = new boolean[cells];
+            this.number = new byte[cells];
+            this.state = new byte[cells];
+            this.hiddenAround = new byte[cells];
+            this.bombsLeft = new byte[cells];
+        }
+
+        /**
+         * Lay out the bombs for one layout of a game: a partial shuffle of
+         * the allowed spots, undone afterwards so every layout starts from
+         * the same order.
+         */
+        void deal(int gameNumber, long layout)
+        {
+            int width = NoGuessGenerator.this.width;
+            int height = NoGuessGenerator.this.height;
+            int bombs = NoGuessGenerator.this.bombs;
+            Arrays.fill(this.bomb, false);
+            Arrays.fill(this.number, (byte)0);
+
+            SplittableRandom random = new SplittableRandom((((long)gameNumber << 32) + layout) ^ kSeedSalt);
+            for (int i = 0; i < bombs; i++)
+            {
+                int pick = i + random.nextInt(this.allowed.length - i);
+                this.swaps[i] = pick;
+                int index = this.allowed[pick];
+                this.allowed[pick] = this.allowed[i];
+                this.allowed[i] = index;
+                this.bomb[index] = true;
+
+                int row = index / width;
+                int column = index % width;
+                for (int neighbour = 0; neighbour < 8; neighbour++)
+                {
+                    int r = row + kRowOffsets[neighbour];
+                    int c = column + kColumnOffsets[neighbour];
+                    if (r >= 0 && r < height && c >= 0 && c < width)
+                    {
+                        this.number[r * width + c]++;
+                    }
+                }
+            }
+            for (int i = bombs - 1; i >= 0; i--)
+            {
+                int pick = this.swaps[i];
+                int index = this.allowed[pick];
+                this.allowed[pick] = this.allowed[i];
+                this.allowed[i] = index;
+            }
+        }
+
+        /** Write the layout out as a bitset. */
+        void pack(long[] bombs)
+        {
+            Arrays.fill(bombs, 0L);
+            for (int index = 0; index < this.bomb.length; index++)
+            {
+                if (this.bomb[index])
+                {
+                    bombs[index >>> 6] |= 1L << index;
+                }
+            }
+        }
+
+        /** Play the layout out from the start.
+         * @return whether it got cleared without guessing
+         */
+        boolean play()
+        {
+            Arrays.fill(this.state, kHidden);
+            this.hiddenSafe = this.bomb.length - NoGuessGenerator.this.bombs;
+            this.flagged = 0;
+            this.pendingCount = 0;
+            reveal(NoGuessGenerator.this.start);
+
+            while (this.hiddenSafe > 0)
+            {
+                while (this.pendingCount > 0)
+                {
+                    int index = this.pending[--this.pendingCount];
+                    int hidden = this.hiddenAround[index];
+                    int left = this.bombsLeft[index];
+                    if (hidden == 0 || (left != 0 && left != hidden))
+                    {
+                        continue;
+                    }
+                    // All safe, or all bombs.
+                    forEachHidden(index, left != 0);
+                    if (this.hiddenSafe == 0)
+                    {
+                        return true;
+                    }
+                }
+                if (!deduceFromPairs() && !deduceFromCount())
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Reveal a safe spot, opening up everything around it if it's a zero. */
+        private void reveal(int index)
+        {
+            this.openingCount = 0;
+            open(index);
+            while (this.openingCount > 0)
+            {
+                int zero = this.opening[--this.openingCount];
+                int width = NoGuessGenerator.this.width;
+                int height = NoGuessGenerator.this.height;
+                int row = zero / width;
+                int column = zero % width;
+                for (int neighbour = 0; neighbour < 8; neighbour++)
+                {
+                    int r = row + kRowOffsets[neighbour];
+                    int c = column + kColumnOffsets[neighbour];
+                    if (r >= 0 && r < height && c >= 0 && c < width && this.state[r * width + c] == kHidden)
+                    {
+                        open(r * width + c);
+                    }
+                }
+            }
+        }
+
+        private void open(int index)
+        {
+            this.state[index] = kRevealed;
+            this.hiddenSafe--;
+            int width = NoGuessGenerator.this.width;
+            int height = NoGuessGenerator.this.height;
+            int row = index / width;
+            int column = index % width;
+            int hidden = 0;
+            int flags = 0;
+            for (int neighbour = 0; neighbour < 8; neighbour++)
+            {
+                int r = row + kRowOffsets[neighbour];
+                int c = column + kColumnOffsets[neighbour];
+                if (r < 0 || r >= height || c < 0 || c >= width)
+                {
+                    continue;
+                }
+                int other = r * width + c;
+                if (this.state[other] == kHidden)
+                {
+                    hidden++;
+                }
+                else if (this.state[other] == kFlagged)
+                {
+                    flags++;
+                }
+                else
+                {
+                    // One fewer hidden spot next to that number.
+                    this.hiddenAround[other]--;
+                    push(other);
+                }
+            }
+            this.hiddenAround[index] = (byte)hidden;
+            this.bombsLeft[index] = (byte)(this.number[index] - flags);
+            if (this.number[index] == 0)
+            {
+                if (this.openingCount == this.opening.length)
+                {
+                    this.opening = Arrays.copyOf(this.opening, this.opening.length * 2);
+                }
+                this.opening[this.openingCount++] = index;
+            }
+            else
+            {
+                push(index);
+            }
+        }
+
+        private void flag(int index)
+        {
+            this.state[index] = kFlagged;
+            this.flagged++;
+            int width = NoGuessGenerator.this.width;
+            int height = NoGuessGenerator.this.height;
+            int row = index / width;
+            int column = index % width;
+            for (int neighbour = 0; neighbour < 8; neighbour++)
+            {
+                int r = row + kRowOffsets[neighbour];
+                int c = column + kColumnOffsets[neighbour];
+                int other = r * width + c;
+                if (r >= 0 && r < height && c >= 0 && c < width && this.state[other] == kRevealed)
+                {
+                    this.hiddenAround[other]--;
+                    this.bombsLeft[other]--;
+                    push(other);
+                }
+            }
+        }
+
+        private void push(int index)
+        {
+            if (this.pendingCount == this.pending.length)
+            {
+                this.pending = Arrays.copyOf(this.pending, this.pending.length * 2);
+            }
+            this.pending[this.pendingCount++] = index;
+        }
+
+        /** Flag or reveal every hidden neighbour of a number. */
+        private void forEachHidden(int index, boolean bombs)
+        {
+            int width = NoGuessGenerator.this.width;
+            int height = NoGuessGenerator.this.height;
+            int row = index / width;
+            int column = index % width;
+            for (int neighbour = 0; neighbour < 8; neighbour++)
+            {
+                int r = row + kRowOffsets[neighbour];
+                int c = column + kColumnOffsets[neighbour];
+                int other = r * width + c;
+                if (r < 0 || r >= height || c < 0 || c >= width || this.state[other] != kHidden)
+                {
+                    continue;
+                }
+                if (bombs)
+                {
+                    flag(other);
+                }
+                else
+                {
+                    reveal(other);
+                }
+            }
+        }
+
+        /**
+         * Compare every pair of numbers up to two spots apart.  If A has
+         * <code>d</code> more bombs left than B, and exactly <code>d</code>
+         * hidden spots that aren't next to B, they're all bombs, and B's
+         * spots that aren't next to A are all safe.
+         * @return whether anything got decided
+         */
+        private boolean deduceFromPairs()
+        {
+            int width = NoGuessGenerator.this.width;
+            int height = NoGuessGenerator.this.height;
+            boolean progress = false;
+            for (int a = 0; a < this.state.length; a++)
+            {
+                if (this.state[a] != kRevealed || this.hiddenAround[a] == 0)
+                {
+                    continue;
+                }
+                int aRow = a / width;
+                int aColumn = a % width;
+                for (int r = Math.max(0, aRow - 2); r <= Math.min(height - 1, aRow + 2); r++)
+                {
+                    for (int c = Math.max(0, aColumn - 2); c <= Math.min(width - 1, aColumn + 2); c++)
+                    {
+                        int b = r * width + c;
+                        if (b == a || this.state[b] != kRevealed || this.hiddenAround[b] == 0
+                            || this.state[a] != kRevealed || this.hiddenAround[a] == 0)
+                        {
+                            continue;
+                        }
+                        if (comparePair(a, b))
+                        {
+                            progress = true;
+                        }
+                    }
+                }
+            }
+            return progress;
+        }
+
+        private boolean comparePair(int a, int b)
+        {
+            int width = NoGuessGenerator.this.width;
+            int aRow = a / width;
+            int aColumn = a % width;
+            int bRow = b / width;
+            int bColumn = b % width;
+            // A's hidden neighbours that aren't B's, and the other way round.
+            int onlyA = 0;
+            int onlyB = 0;
+            for (int pass = 0; pass < 2; pass++)
+            {
+                int row = pass == 0 ? aRow : bRow;
+                int column = pass == 0 ? aColumn : bColumn;
+                int otherRow = pass == 0 ? bRow : aRow;
+                int otherColumn = pass == 0 ? bColumn : aColumn;
+                int count = 0;
+                for (int neighbour = 0; neighbour < 8; neighbour++)
+                {
+                    int r = row + kRowOffsets[neighbour];
+                    int c = column + kColumnOffsets[neighbour];
+                    if (r < 0 || r >= NoGuessGenerator.this.height || c < 0 || c >= width
+                        || this.state[r * width + c] != kHidden)
+                    {
+                        continue;
+                    }
+                    if (Math.abs(r - otherRow) > 1 || Math.abs(c - otherColumn) > 1)
+                    {
+                        count++;
+                    }
+                }
+                if (pass == 0)
+                {
+                    onlyA = count;
+                }
+                else
+                {
+                    onlyB = count;
+                }
+            }
+            int difference = this.bombsLeft[a] - this.bombsLeft[b];
+            if (onlyA + onlyB == 0 || difference != onlyA && -difference != onlyB)
+            {
+                return false;
+            }
+            // A's extra spots are all bombs and B's all safe, or the other way round.
+            boolean aBombs = difference == onlyA;
+            decideOutside(a, b, aBombs);
+            decideOutside(b, a, !aBombs);
+            return true;
+        }
+
+        /** Flag or reveal the hidden neighbours of one spot that aren't next to another. */
+        private void decideOutside(int index, int other, boolean bombs)
+        {
+            int width = NoGuessGenerator.this.width;
+            int height = NoGuessGenerator.this.height;
+            int row = index / width;
+            int column = index % width;
+            int otherRow = other / width;
+            int otherColumn = other % width;
+            for (int neighbour = 0; neighbour < 8; neighbour++)
+            {
+                int r = row + kRowOffsets[neighbour];
+                int c = column + kColumnOffsets[neighbour];
+                int spot = r * width + c;
+                if (r < 0 || r >= height || c < 0 || c >= width || this.state[spot] != kHidden
+                    || (Math.abs(r - otherRow) <= 1 && Math.abs(c - otherColumn) <= 1))
+                {
+                    continue;
+                }
+                if (bombs)
+                {
+                    flag(spot);
+                }
+                else
+                {
+                    reveal(spot);
+                }
+            }
+        }
+
+        /**
+         * All else failing, count bombs: if they've all been found, the rest
+         * are safe, and if there are just enough hidden spots, they're bombs.
+         * @return whether anything got decided
+         */
+        private boolean deduceFromCount()
+        {
+            int left = NoGuessGenerator.this.bombs - this.flagged;
+            int hidden = this.hiddenSafe + left;
+            if (left != 0 && left != hidden)
+            {
+                return false;
+            }
+            for (int index = 0; index < this.state.length; index++)
+            {
+                if (this.state[index] != kHidden)
+                {
+                    continue;
+                }
+                if (left == 0)
+                {
+                    reveal(index);
+                }
+                else
+                {
+                    flag(index);
+                }
+            }
+            return true;
+        }
+    }
+
+    /** Boards made ahead of time for a range of games. */
+    public static final class Library
+    {
+        private static final int kMagic = 0x4B4E474C;  // "KNGL"
+
+        final int width;
+        final int height;
+        final int bombs;
+        final int firstGame;
+        final int lastGame;
+        // A bitset per game, and whether a board was found for it.
+        private final long[][] boards;
+        private final boolean[] found;
+
+        Library(int width, int height, int bombs, int firstGame, int lastGame)
+        {
+            this.width = width;
+            this.height = height;
+            this.bombs = bombs;
+            this.firstGame = firstGame;
+            this.lastGame = lastGame;
+            this.boards = new long[lastGame - firstGame + 1][(width * height + 63) >>> 6];
+            this.found = new boolean[lastGame - firstGame + 1];
+        }
+
+        long[] boardFor(int gameNumber)
+        {
+            return this.boards[gameNumber - this.firstGame];
+        }
+
+        /** How many of the games have boards. */
+        public int size()
+        {
+            int count = 0;
+            for (boolean board : this.found)
+            {
+                if (board)
+                {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /** Copy a game's board out, if the library has it. */
+        public boolean lookup(int gameNumber, long[] bombs)
+        {
+            if (gameNumber < this.firstGame || gameNumber > this.lastGame || !this.found[gameNumber - this.firstGame])
+            {
+                return false;
+            }
+            long[] board = boardFor(gameNumber);
+            System.arraycopy(board, 0, bombs, 0, board.length);
+            return true;
+        }
+
+        public void write(File file) throws IOException
+        {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            try
+            {
+                out.writeInt(kMagic);
+                out.writeInt(this.width);
+                out.writeInt(this.height);
+                out.writeInt(this.bombs);
+                out.writeInt(this.firstGame);
+                out.writeInt(this.lastGame);
+                for (int game = 0; game < this.boards.length; game++)
+                {
+                    out.writeBoolean(this.found[game]);
+                    for (long word : this.boards[game])
+                    {
+                        out.writeLong(word);
+                    }
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+
+        public static Library read(File file) throws IOException
+        {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try
+            {
+                if (in.readInt() != kMagic)
+                {
+                    throw new IOException(file + " isn't a board library.");
+                }
+                int width = in.readInt();
+                int height = in.readInt();
+                int bombs = in.readInt();
+                int firstGame = in.readInt();
+                int lastGame = in.readInt();
+                Library library = new Library(width, height, bombs, firstGame, lastGame);
+                for (int game = 0; game < library.boards.length; game++)
+                {
+                    library.found[game] = in.readBoolean();
+                    for (int word = 0; word < library.boards[game].length; word++)
+                    {
+                        library.boards[game][word] = in.readLong();
+                    }
+                }
+                return library;
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 6)
+        {
+            System.err.println("Usage: java NoGuessGenerator width height bombs firstGame lastGame file");
+            System.exit(1);
+        }
+        NoGuessGenerator generator = new NoGuessGenerator(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                                                          Integer.parseInt(args[2]));
+        int firstGame = Integer.parseInt(args[3]);
+        int lastGame = Integer.parseInt(args[4]);
+        long start = System.nanoTime();
+        Library library = generator.generateAll(firstGame, lastGame);
+        long nanos = System.nanoTime() - start;
+        library.write(new File(args[5]));
+        System.out.println(String.format("%d of %d games in %.0f ms (%.1f ms/game), written to %s",
+                                         library.size(), lastGame - firstGame + 1, nanos / 1e6,
+                                         nanos / 1e6 / (lastGame - firstGame + 1), args[5]));
+    }
+}
@@ -0,0 +1,131 @@
+import junit.framework.TestCase;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tests for NoGuessGenerator: its boards should be won from the start spot
+ * without a single guess, and the same game should always get the same board.
+ */
+public class NoGuessGeneratorTest extends TestCase
+{
+    private static final File kLibrary = new File("Mines/NoGuessGeneratorTest.library");
+
+    private static int countBombs(long[] bombs)
+    {
+        int count = 0;
+        for (long word : bombs)
+        {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /** Play a game with the solver, which should never have to guess. */
+    private static void checkSolvable(int width, int height, int bombs, int games)
+    {
+        KaboomSolver solver = new KaboomSolver();
+        KaboomEngine engine = new KaboomEngine(width, height, bombs);
+        NoGuessGenerator generator = new NoGuessGenerator(width, height, bombs);
+        engine.setNoGuess(generator);
+        for (int game = 1; game <= games; game++)
+        {
+            engine.setGameNumber(game);
+            engine.restartGame();
+            int start = generator.getStartIndex();
+            assertEquals("game " + game, Piece.empty, engine.getStatus(start / width, start % width));
+            KaboomEngine.ClickResult result = engine.isBoardWon() ? KaboomEngine.ClickResult.won
+                : KaboomEngine.ClickResult.played;
+            while (result == KaboomEngine.ClickResult.played)
+            {
+                solver.solve(engine);
+                assertTrue("game " + game + " needs a guess after " + engine.getMoves() + " moves.",
+                           solver.isBestMoveSafe());
+                int move = solver.getBestMove();
+                result = engine.clickTile(move / width, move % width);
+            }
+            assertEquals("game " + game, KaboomEngine.ClickResult.won, result);
+        }
+    }
+
+    public void testSolvableWithoutGuessing()
+    {
+        checkSolvable(9, 9, 10, 50);
+        checkSolvable(16, 16, 40, 20);
+        checkSolvable(30, 16, 99, 10);
+    }
+
+    // The opening can't have a bomb in it, and the bombs have to add up.
+    public void testOpeningIsClear()
+    {
+        NoGuessGenerator generator = new NoGuessGenerator(16, 16, 40);
+        int start = generator.getStartIndex();
+        long[] bombs = new long[4];
+        for (int game = 1; game <= 20; game++)
+        {
+            Arrays.fill(bombs, 0);
+            assertTrue(generator.generate(game, bombs));
+            assertEquals(40, countBombs(bombs));
+            for (int row = start / 16 - 1; row <= start / 16 + 1; row++)
+            {
+                for (int column = start % 16 - 1; column <= start % 16 + 1; column++)
+                {
+                    int index = row * 16 + column;
+                    assertEquals(0, bombs[index >>> 6] & (1L << index));
+                }
+            }
+        }
+    }
+
+    // One thread or many, and now or from a library made earlier, a game
+    // always gets the same board.
+    public void testSameGameSameBoard() throws IOException
+    {
+        NoGuessGenerator parallel = new NoGuessGenerator(30, 16, 99);
+        NoGuessGenerator sequential = new NoGuessGenerator(30, 16, 99);
+        sequential.setParallel(false);
+        NoGuessGenerator.Library library = parallel.generateAll(1, 20);
+        assertEquals(20, library.size());
+        library.write(kLibrary);
+        NoGuessGenerator fromLibrary = new NoGuessGenerator(30, 16, 99);
+        fromLibrary.setLibrary(NoGuessGenerator.Library.read(kLibrary));
+        for (int game = 1; game <= 20; game++)
+        {
+            long[] expected = new long[8];
+            assertTrue(parallel.generate(game, expected));
+            long[] bombs = new long[8];
+            assertTrue(sequential.generate(game, bombs));
+            assertTrue("game " + game, Arrays.equals(expected, bombs));
+            Arrays.fill(bombs, 0);
+            assertTrue(fromLibrary.generate(game, bombs));
+            assertTrue("game " + game, Arrays.equals(expected, bombs));
+        }
+        assertEquals(0, fromLibrary.getLayoutsTried());
+        kLibrary.delete();
+    }
+
+    public void testLibraryForAnotherBoard()
+    {
+        NoGuessGenerator.Library library = new NoGuessGenerator(9, 9, 10).generateAll(1, 2);
+        try
+        {
+            new NoGuessGenerator(9, 9, 11).setLibrary(library);
+            fail("A library for another board was taken.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    // Out of layouts, the board is left alone rather than half dealt.
+    public void testGivesUp()
+    {
+        NoGuessGenerator generator = new NoGuessGenerator(10, 10, 85);
+        generator.setParallel(false);
+        generator.setMaxLayouts(10);
+        long[] bombs = new long[2];
+        assertFalse(generator.generate(1, bombs));
+        assertEquals(0, countBombs(bombs));
+        assertEquals(10, generator.getLayoutsTried());
+    }
+}
@@ -0,0 +1,56 @@
+import java.util.SplittableRandom;
+
+/**
+ * RandomMoveStrategy clicks hidden spots at random, which is about the
+ * worst a player can do.  Handy as a baseline, and for checking that the
+ * rest of the simulator works.
+ *
+ * The order is seeded from the game number, so a game always plays out the
+ * same way.
+ */
+public class RandomMoveStrategy implements MoveStrategy
+{
+    private static final long kSeedSalt = 0x6A09E667F3BCC909L;
+
+    // Every spot on the board, shuffled a step at a time as we go.
+    private int[] order = new int[0];
+    private int next = 0;
+    private SplittableRandom random;
+
+    public void startGame(KaboomEngine engine)
+    {
+        int cells = engine.getWidth() * engine.getHeight();
+        if (this.order.length != cells)
+        {
+            this.order = new int[cells];
+        }
+        for (int index = 0; index < cells; index++)
+        {
+            this.order[index] = index;
+        }
+        this.next = 0;
+        // Not the game number itself: the engine seeds its bombs with that,
+        // and the same stream of numbers would click right on them.
+        this.random = new SplittableRandom(engine.getGameNumber() ^ kSeedSalt);
+    }
+
+    public int nextMove(KaboomEngine engine)
+    {
+        int width = engine.getWidth();
+        while (this.next < this.order.length)
+        {
+            // One step of a Fisher-Yates shuffle.
+            int pick = this.next + this.random.nextInt(this.order.length - this.next);
+            int index = this.order[pick];
+            this.order[pick] = this.order[this.next];
+            this.order[this.next++] = index;
+
+            // Spots opened up by earlier clicks get skipped.
+            if (engine.getStatus(index / width, index % width) == Piece.hidden)
+            {
+                return index;
+            }
+        }
+        return -1;
+    }
+}
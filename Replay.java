@@ -0,0 +1,295 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replay plays recorded games back, move by move, to see how they really
+ * ended.
+ *
+ * A recording is the game (number, board size, and whether it was a
+ * no-guess board) followed by its MoveLog:
+ * <pre>
+ * version (byte), flags (byte), game number, width, height, bombs (ints),
+ * moves (the rest; see MoveLog)
+ * </pre>
+ * Boards are dealt from the game number, so that's all it takes to put any
+ * game back exactly as it was, at the end or after any number of moves.
+ *
+ * One Replay can play any number of recordings.  It keeps an engine for
+ * each size of board and reads moves straight out of the bytes, so playing
+ * a game back allocates nothing (once it's seen that size of board), and
+ * takes a few microseconds for a classic board.  That makes it cheap to
+ * check every score ever saved (see ScoreVerifier).  Not thread-safe.
+ *
+ * Recordings come from a file anyone could have written, so boards over
+ * kMaxCells spots are invalid, and engines for boards over kMaxCachedCells
+ * are built for one replay and then dropped rather than kept.  No-guess
+ * boards have to be laid out again to replay them, which could take a
+ * million layouts; Replay gives up after kNoGuessWork spots' worth of
+ * layouts (a couple of thousand for an expert board) and calls the recording
+ * invalid, so a garbled one costs a fraction of a second, not minutes.
+ */
+public final class Replay
+{
+    /** The most spots a recorded board can have. */
+    public static final int kMaxCells = 1000 * 1000;
+    /** The most spots a board can have and still have its engine kept for the next replay. */
+    public static final int kMaxCachedCells = 256 * 256;
+    /** How many layouts to try for a no-guess board, times the spots on it. */
+    public static final int kNoGuessWork = 1 << 20;
+
+    /** How a replayed game ended. */
+    public enum Outcome
+    {
+        won,
+        lost,
+        /** The moves ran out with the game still going. */
+        unfinished,
+        /** The recording makes no sense: garbled, off the board, or moves
+         * after the game was over. */
+        invalid
+    }
+
+    /** What a recording says the game was, before any of it is played. */
+    public static final class Header
+    {
+        public final boolean noGuess;
+        public final int gameNumber;
+        public final int width;
+        public final int height;
+        public final int bombs;
+
+        Header(boolean noGuess, int gameNumber, int width, int height, int bombs)
+        {
+            this.noGuess = noGuess;
+            this.gameNumber = gameNumber;
+            this.width = width;
+            this.height = height;
+            this.bombs = bombs;
+        }
+
+        /** Is this the game the score says it was on? */
+        public boolean matches(ScoreRecord score)
+        {
+            return this.gameNumber == score.gameNumber && this.width == score.width && this.height == score.height
+                && this.bombs == score.bombs;
+        }
+    }
+
+    private static final byte kVersion = 1;
+    private static final int kNoGuess = 1;
+    private static final int kHeaderSize = 2 + 4 * 4;
+    // Engines kept for different sizes of board.
+    private static final int kMaxEngines = 16;
+
+    private final Map<Long, KaboomEngine> engines = new HashMap<Long, KaboomEngine>();
+    private final Map<Long, KaboomEngine> noGuessEngines = new HashMap<Long, KaboomEngine>();
+    private final MoveLog.Reader reader = new MoveLog.Reader();
+
+    private KaboomEngine engine = null;
+    private Header header = null;
+    private int moves = 0;
+    private long lastMillis = 0;
+    private boolean cheated = false;
+
+    /** Record a game as it stands (usually just won). */
+    public static byte[] record(KaboomEngine engine)
+    {
+        MoveLog log = engine.getMoveLog();
+        byte[] recording = new byte[kHeaderSize + log.length()];
+        recording[0] = kVersion;
+        recording[1] = (byte)(engine.getNoGuess() != null ? kNoGuess : 0);
+        putInt(recording, 2, engine.getGameNumber());
+        putInt(recording, 6, engine.getWidth());
+        putInt(recording, 10, engine.getHeight());
+        putInt(recording, 14, engine.getNumBombs());
+        log.copyTo(recording, kHeaderSize);
+        return recording;
+    }
+
+    /** Read just the header of a recording.
+     * @return null if it's too short, or from some other version
+     */
+    public static Header readHeader(byte[] recording, int offset, int length)
+    {
+        if (length < kHeaderSize || recording[offset] != kVersion)
+        {
+            return null;
+        }
+        return new Header((recording[offset + 1] & kNoGuess) != 0, getInt(recording, offset + 2),
+                          getInt(recording, offset + 6), getInt(recording, offset + 10), getInt(recording, offset + 14));
+    }
+
+    /** Play a whole recording. */
+    public Outcome play(byte[] recording)
+    {
+        return play(recording, 0, recording.length, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Play a recording back, up to a point.  Afterwards, the game is left
+     * as it was at that point in <code>getEngine()</code>.
+     * @param maxMoves stop after this many moves
+     */
+    public Outcome play(byte[] recording, int offset, int length, int maxMoves)
+    {
+        this.engine = null;
+        this.moves = 0;
+        this.lastMillis = 0;
+        this.cheated = false;
+        this.header = readHeader(recording, offset, length);
+        if (this.header == null)
+        {
+            return Outcome.invalid;
+        }
+        boolean noGuess = this.header.noGuess;
+        int width = this.header.width;
+        int height = this.header.height;
+        int bombs = this.header.bombs;
+        if (width <= 0 || height <= 0 || width > KaboomEngine.kMaxDimension || height > KaboomEngine.kMaxDimension
+            || width * height > kMaxCells)
+        {
+            return Outcome.invalid;
+        }
+        try
+        {
+            this.engine = engineFor(width, height, bombs, noGuess);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return Outcome.invalid;
+        }
+        this.engine.setGameNumber(this.header.gameNumber);
+        this.engine.restartGame();
+        // A no-guess game starts with its opening revealed; if it's still
+        // hidden, the generator ran out of layouts to try.
+        if (noGuess)
+        {
+            int start = this.engine.getNoGuess().getStartIndex();
+            if (this.engine.getStatus(start / width, start % width) == Piece.hidden)
+            {
+                return Outcome.invalid;
+            }
+        }
+
+        int cells = width * height;
+        this.reader.reset(recording, offset + kHeaderSize, length - kHeaderSize);
+        KaboomEngine.ClickResult result = KaboomEngine.ClickResult.played;
+        try
+        {
+            while (this.moves < maxMoves && this.reader.next())
+            {
+                int index = this.reader.getIndex();
+                if (result != KaboomEngine.ClickResult.played || index < 0 || index >= cells)
+                {
+                    return Outcome.invalid;
+                }
+                this.moves++;
+                this.lastMillis = this.reader.getMillis();
+                switch (this.reader.getAction())
+                {
+                    case MoveLog.kClick:
+                        result = this.engine.clickTile(index / width, index % width);
+                        break;
+                    case MoveLog.kFlag:
+                        this.engine.rightClickTile(index / width, index % width);
+                        break;
+                    case MoveLog.kCheat:
+                        this.engine.cheat();
+                        this.cheated = true;
+                        break;
+                    default:
+                        return Outcome.invalid;
+                }
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            return Outcome.invalid;
+        }
+
+        if (result == KaboomEngine.ClickResult.won)
+        {
+            return Outcome.won;
+        }
+        return result == KaboomEngine.ClickResult.lost ? Outcome.lost : Outcome.unfinished;
+    }
+
+    private KaboomEngine engineFor(int width, int height, int bombs, boolean noGuess)
+    {
+        Map<Long, KaboomEngine> engines = noGuess ? this.noGuessEngines : this.engines;
+        // Every dimension is under 2^14, and there are no more bombs than spots.
+        Long key = Long.valueOf(((long)width << 50) | ((long)height << 36) | (bombs & 0xFFFFFFFFL));
+        KaboomEngine engine = engines.get(key);
+        if (engine == null)
+        {
+            // A file full of odd sizes shouldn't fill up the heap.
+            if (engines.size() >= kMaxEngines)
+            {
+                engines.clear();
+            }
+            engine = new KaboomEngine(width, height, bombs);
+            engine.setRecording(false);
+            if (noGuess)
+            {
+                NoGuessGenerator generator = new NoGuessGenerator(width, height, bombs);
+                generator.setParallel(false);
+                generator.setMaxLayouts(Math.max(1, kNoGuessWork / (width * height)));
+                engine.setNoGuess(generator);
+            }
+            if (width * height <= kMaxCachedCells)
+            {
+                engines.put(key, engine);
+            }
+        }
+        return engine;
+    }
+
+    /** The game as the last replay left it, or null if it was too garbled to start. */
+    public KaboomEngine getEngine()
+    {
+        return this.engine;
+    }
+
+    /** What the last recording played said the game was, or null if it was too garbled to say. */
+    public Header getHeader()
+    {
+        return this.header;
+    }
+
+    public int getGameNumber()
+    {
+        return this.header != null ? this.header.gameNumber : 0;
+    }
+
+    /** How many moves the last replay played. */
+    public int getMoves()
+    {
+        return this.moves;
+    }
+
+    /** When the last move played was made, in milliseconds since the game started. */
+    public long getLastMillis()
+    {
+        return this.lastMillis;
+    }
+
+    /** Whether the player cheated somewhere along the way. */
+    public boolean wasCheated()
+    {
+        return this.cheated;
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value)
+    {
+        bytes[offset] = (byte)(value >>> 24);
+        bytes[offset + 1] = (byte)(value >>> 16);
+        bytes[offset + 2] = (byte)(value >>> 8);
+        bytes[offset + 3] = (byte)value;
+    }
+
+    private static int getInt(byte[] bytes, int offset)
+    {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+            | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,213 @@
+import junit.framework.TestCase;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Tests for Replay: playing a recording back should always end up exactly
+ * where the game it was recorded from did.
+ */
+public class ReplayTest extends TestCase
+{
+    // A made-up no-guess game on a board that's hopeless to lay out gives up
+    // quickly, rather than trying a million layouts.
+    public void testHopelessNoGuess()
+    {
+        byte[] recording = Replay.record(new KaboomEngine(20, 20, 200));
+        recording[1] = 1;
+        ByteBuffer.wrap(recording).putInt(2, 1).putInt(14, 200);
+        long start = System.nanoTime();
+        assertEquals(Replay.Outcome.invalid, new Replay().play(recording));
+        assertTrue("Took " + (System.nanoTime() - start) / 1000000 + " ms.", System.nanoTime() - start < 5000000000L);
+    }
+
+    private static void assertSameGame(KaboomEngine expected, KaboomEngine actual, String after)
+    {
+        assertEquals(after, expected.getGameNumber(), actual.getGameNumber());
+        assertEquals(after, expected.getMoves(), actual.getMoves());
+        assertEquals(after, expected.getFlagsPlaced(), actual.getFlagsPlaced());
+        assertEquals(after, expected.isBoardWon(), actual.isBoardWon());
+        for (int row = 0; row < expected.getHeight(); row++)
+        {
+            for (int column = 0; column < expected.getWidth(); column++)
+            {
+                assertEquals(after + " at " + row + ", " + column, expected.getStatus(row, column),
+                             actual.getStatus(row, column));
+            }
+        }
+    }
+
+    /** Random clicks, flags and the odd cheat, until the game's over or
+     * <code>maxMoves</code> have been made.
+     * @return how the game ended, as Replay would say it
+     */
+    private static Replay.Outcome playRandomly(KaboomEngine engine, Random random, int maxMoves)
+    {
+        for (int move = 0; move < maxMoves; move++)
+        {
+            int row = random.nextInt(engine.getHeight());
+            int column = random.nextInt(engine.getWidth());
+            int kind = random.nextInt(40);
+            if (kind < 10)
+            {
+                engine.rightClickTile(row, column);
+            }
+            else if (kind < 11)
+            {
+                engine.cheat();
+            }
+            else
+            {
+                KaboomEngine.ClickResult result = engine.clickTile(row, column);
+                if (result != KaboomEngine.ClickResult.played)
+                {
+                    return result == KaboomEngine.ClickResult.won ? Replay.Outcome.won : Replay.Outcome.lost;
+                }
+            }
+        }
+        return Replay.Outcome.unfinished;
+    }
+
+    private static void checkRoundTrip(int width, int height, int bombs, int games, long seed)
+    {
+        Random random = new Random(seed);
+        Replay replay = new Replay();
+        for (int game = 1; game <= games; game++)
+        {
+            KaboomEngine engine = new KaboomEngine(width, height, bombs);
+            engine.setGameNumber(game * 7919);
+            engine.restartGame();
+            Replay.Outcome outcome = playRandomly(engine, random, random.nextInt(2 * width * height));
+            byte[] recording = Replay.record(engine);
+            String after = "game " + engine.getGameNumber();
+            assertEquals(after, outcome, replay.play(recording));
+            assertEquals(after, engine.getMoveLog().size(), replay.getMoves());
+            assertSameGame(engine, replay.getEngine(), after);
+            Replay.Header header = replay.getHeader();
+            assertFalse(header.noGuess);
+            assertEquals(engine.getGameNumber(), header.gameNumber);
+            assertEquals(width, header.width);
+            assertEquals(height, header.height);
+            assertEquals(bombs, header.bombs);
+        }
+    }
+
+    public void testRoundTrip()
+    {
+        checkRoundTrip(10, 10, 9, 200, 1);
+        checkRoundTrip(16, 16, 40, 100, 2);
+        checkRoundTrip(30, 16, 99, 100, 3);
+        checkRoundTrip(3, 3, 0, 20, 4);
+    }
+
+    // Stopping partway should leave the game as it was at that point, which
+    // is the game played again up to there.
+    public void testPartialReplay()
+    {
+        Random random = new Random(5);
+        KaboomEngine engine = new KaboomEngine(16, 16, 10);
+        engine.setGameNumber(42);
+        engine.restartGame();
+        playRandomly(engine, random, 200);
+        assertTrue(engine.getMoveLog().size() > 20);
+        byte[] recording = Replay.record(engine);
+        Replay replay = new Replay();
+        KaboomEngine again = new KaboomEngine(16, 16, 10);
+        again.setGameNumber(42);
+        again.restartGame();
+        MoveLog.Reader moves = new MoveLog.Reader();
+        byte[] log = engine.getMoveLog().toByteArray();
+        moves.reset(log, 0, log.length);
+        for (int played = 0; played <= engine.getMoveLog().size(); played++)
+        {
+            replay.play(recording, 0, recording.length, played);
+            assertEquals(played, replay.getMoves());
+            assertSameGame(again, replay.getEngine(), "after " + played + " moves");
+            if (moves.next())
+            {
+                int index = moves.getIndex();
+                switch (moves.getAction())
+                {
+                    case MoveLog.kClick:
+                        again.clickTile(index / 16, index % 16);
+                        break;
+                    case MoveLog.kFlag:
+                        again.rightClickTile(index / 16, index % 16);
+                        break;
+                    default:
+                        again.cheat();
+                        break;
+                }
+            }
+        }
+    }
+
+    // Clicking on once the game's over is something no real game records.
+    public void testMovesAfterTheEnd()
+    {
+        KaboomEngine engine = new KaboomEngine(10, 10, 9);
+        engine.setGameNumber(3);
+        engine.restartGame();
+        int bomb = 0;
+        while (!engine.isBomb(bomb / 10, bomb % 10))
+        {
+            bomb++;
+        }
+        engine.clickTile(bomb / 10, bomb % 10);
+        Replay replay = new Replay();
+        assertEquals(Replay.Outcome.lost, replay.play(Replay.record(engine)));
+        assertFalse(replay.wasCheated());
+        engine.clickTile(0, 0);
+        assertEquals(Replay.Outcome.invalid, replay.play(Replay.record(engine)));
+    }
+
+    public void testGarbledRecordings()
+    {
+        Replay replay = new Replay();
+        KaboomEngine engine = new KaboomEngine(10, 10, 9);
+        engine.restartGame();
+        engine.clickTile(5, 5);
+        byte[] recording = Replay.record(engine);
+        assertEquals(Replay.Outcome.invalid, replay.play(recording, 0, 10, Integer.MAX_VALUE));
+        assertNull(replay.getHeader());
+
+        byte[] otherVersion = recording.clone();
+        otherVersion[0]++;
+        assertEquals(Replay.Outcome.invalid, replay.play(otherVersion));
+
+        byte[] huge = recording.clone();
+        ByteBuffer.wrap(huge).putInt(6, 5000).putInt(10, 5000);
+        assertEquals(Replay.Outcome.invalid, replay.play(huge));
+        assertNull(replay.getEngine());
+
+        byte[] tooManyBombs = recording.clone();
+        ByteBuffer.wrap(tooManyBombs).putInt(14, 101);
+        assertEquals(Replay.Outcome.invalid, replay.play(tooManyBombs));
+    }
+
+    // A no-guess game has to be laid out again the same way to replay it.
+    public void testNoGuessRoundTrip()
+    {
+        KaboomSolver solver = new KaboomSolver();
+        Replay replay = new Replay();
+        for (int game = 1; game <= 5; game++)
+        {
+            KaboomEngine engine = new KaboomEngine(16, 16, 40);
+            engine.setNoGuess(new NoGuessGenerator(16, 16, 40));
+            engine.setGameNumber(game);
+            engine.restartGame();
+            KaboomEngine.ClickResult result = KaboomEngine.ClickResult.played;
+            while (result == KaboomEngine.ClickResult.played)
+            {
+                solver.solve(engine);
+                assertTrue(solver.isBestMoveSafe());
+                int move = solver.getBestMove();
+                result = engine.clickTile(move / 16, move % 16);
+            }
+            assertEquals(KaboomEngine.ClickResult.won, result);
+            assertEquals(Replay.Outcome.won, replay.play(Replay.record(engine)));
+            assertTrue(replay.getHeader().noGuess);
+            assertFalse(replay.wasCheated());
+            assertSameGame(engine, replay.getEngine(), "game " + game);
+        }
+    }
+}
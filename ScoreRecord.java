@@ -0,0 +1,190 @@
+/**
+ * ScoreRecord is one entry in the high score list: how long it took, who
+ * did it, and which game it was on.
+ *
+ * Times are kept as a number of seconds, so "10:00" sorts after "9:59", but
+ * we remember whether the time was written as plain seconds ("75") or as
+ * minutes and seconds ("1:15") so it can be shown the way it was entered.
+ *
+ * Scores that only ever made it into HighScores.txt don't say which game
+ * they were on or when they were saved; those fields are 0.
+ */
+public final class ScoreRecord implements Comparable<ScoreRecord>
+{
+    /** Names longer than this get truncated. */
+    public static final int kMaxNameLength = 20;
+
+    /** The time was given as a plain number of seconds. */
+    public static final byte kSeconds = 0;
+    /** The time was given as m:ss. */
+    public static final byte kMinutesSeconds = 1;
+
+    public final int seconds;
+    public final byte format;
+    public final String name;
+    /** Where this record sits in the store; breaks ties between equal scores. */
+    public final long sequence;
+    /** Which numbered game it was, or 0 if we don't know. */
+    public final int gameNumber;
+    /** The size of the board, or 0 if we don't know. */
+    public final int width;
+    public final int height;
+    public final int bombs;
+    /** How many clicks it took. */
+    public final int moves;
+    /** When the score was saved, in milliseconds since 1970, or 0 if we don't know. */
+    public final long timestamp;
+
+    public ScoreRecord(int seconds, byte format, String name, long sequence)
+    {
+        this(seconds, format, name, sequence, 0, 0, 0, 0, 0, 0L);
+    }
+
+    public ScoreRecord(int seconds, byte format, String name, long sequence,
+                       int gameNumber, int width, int height, int bombs, int moves, long timestamp)
+    {
+        this.seconds = seconds;
+        this.format = format;
+        this.name = normalizeName(name);
+        this.sequence = sequence;
+        this.gameNumber = gameNumber;
+        this.width = width;
+        this.height = height;
+        this.bombs = bombs;
+        this.moves = moves;
+        this.timestamp = timestamp;
+    }
+
+    /** The same score, at a different place in the store. */
+    public ScoreRecord withSequence(long sequence)
+    {
+        return new ScoreRecord(this.seconds, this.format, this.name, sequence,
+                               this.gameNumber, this.width, this.height, this.bombs, this.moves, this.timestamp);
+    }
+
+    /** The same score, on a particular game.
+     * @param timestamp when it was saved, in milliseconds since 1970
+     */
+    public ScoreRecord withGame(int gameNumber, int width, int height, int bombs, int moves, long timestamp)
+    {
+        return new ScoreRecord(this.seconds, this.format, this.name, this.sequence,
+                               gameNumber, width, height, bombs, moves, timestamp);
+    }
+
+    /** A name the way it's stored: never null, and truncated to 20 characters. */
+    public static String normalizeName(String name)
+    {
+        if (name == null)
+        {
+            return "";
+        }
+        // Truncate names to 20 characters.
+        if (name.length() > kMaxNameLength)
+        {
+            return name.substring(0, kMaxNameLength);
+        }
+        return name;
+    }
+
+    /** Build a record from a time like "75" or "1:15".
+     * @throws IllegalArgumentException if the time isn't in either form
+     */
+    public static ScoreRecord parse(String time, String name, long sequence)
+    {
+        int seconds = parseTime(time);
+        if (seconds < 0)
+        {
+            throw new IllegalArgumentException("Scores must be a number of seconds or m:ss, not \"" + time + "\".");
+        }
+        return new ScoreRecord(seconds, time.indexOf(':') >= 0 ? kMinutesSeconds : kSeconds, name, sequence);
+    }
+
+    /** Turn "75" or "1:15" into 75.
+     * @return the number of seconds, or -1 if the time doesn't make sense
+     */
+    public static int parseTime(CharSequence time)
+    {
+        int seconds = 0;
+        int minutes = -1;
+        int digits = 0;
+        for (int i = 0; i < time.length(); i++)
+        {
+            char c = time.charAt(i);
+            if (c >= '0' && c <= '9')
+            {
+                seconds = seconds * 10 + (c - '0');
+                digits++;
+                // Anything this long is nonsense (and would overflow).
+                if (digits > 9)
+                {
+                    return -1;
+                }
+            }
+            else if (c == ':' && minutes < 0 && digits > 0)
+            {
+                minutes = seconds;
+                seconds = 0;
+                digits = 0;
+            }
+            else
+            {
+                return -1;
+            }
+        }
+
+        if (digits == 0)
+        {
+            return -1;
+        }
+        if (minutes >= 0)
+        {
+            if (seconds >= 60 || minutes > (Integer.MAX_VALUE - seconds) / 60)
+            {
+                return -1;
+            }
+            return minutes * 60 + seconds;
+        }
+        return seconds;
+    }
+
+    /** The time, written the way it was entered. */
+    public String formatTime()
+    {
+        if (this.format == kMinutesSeconds)
+        {
+            return this.seconds / 60 + ":" + String.format("%02d", this.seconds % 60);
+        }
+        return Integer.toString(this.seconds);
+    }
+
+    /** The record the way it appears in HighScores.txt, e.g. "1:15  Joe". */
+    public String toString()
+    {
+        return formatTime() + "  " + this.name;
+    }
+
+    /** Fastest first; equal times go alphabetically, then oldest first. */
+    public int compareTo(ScoreRecord other)
+    {
+        if (this.seconds != other.seconds)
+        {
+            return this.seconds < other.seconds ? -1 : 1;
+        }
+        int byName = this.name.compareTo(other.name);
+        if (byName != 0)
+        {
+            return byName;
+        }
+        return this.sequence < other.sequence ? -1 : (this.sequence == other.sequence ? 0 : 1);
+    }
+
+    public boolean equals(Object other)
+    {
+        return other instanceof ScoreRecord && compareTo((ScoreRecord)other) == 0;
+    }
+
+    public int hashCode()
+    {
+        return this.seconds * 31 + this.name.hashCode() + (int)this.sequence;
+    }
+}
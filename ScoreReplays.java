@@ -0,0 +1,227 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * ScoreReplays is the file of recorded games (see Replay) that goes with
+ * HighScores.txt, so that every score can be checked later by playing it
+ * back (see ScoreVerifier).
+ *
+ * ScoreStore appends to it in the same group commit as the scores, one
+ * entry per score that came with a recording:
+ * <pre>
+ * line offset (long), line length (int), line (UTF-8),
+ * recording length (int), recording
+ * </pre>
+ * The line offset is where the score's line starts in HighScores.txt, and
+ * the line is a copy of it (without the line separator), so an entry only
+ * vouches for the exact line it was saved with.  Offsets go up from one
+ * entry to the next, except when HighScores.txt has been cleared and
+ * started over; only the entries since the last time that happened count.
+ */
+public final class ScoreReplays
+{
+    /** No score line is anywhere near this long (a time, two spaces and a
+     * 20-character name); a longer one means the file is garbled. */
+    public static final int kMaxLineLength = 1024;
+
+    /** How many bytes an entry takes. */
+    static int entrySize(byte[] line, byte[] recording)
+    {
+        return 8 + 4 + line.length + 4 + recording.length;
+    }
+
+    /** Add an entry to a buffer on its way to the file. */
+    static void putEntry(ByteBuffer buffer, long lineOffset, byte[] line, byte[] recording)
+    {
+        buffer.putLong(lineOffset);
+        buffer.putInt(line.length);
+        buffer.put(line);
+        buffer.putInt(recording.length);
+        buffer.put(recording);
+    }
+
+    /**
+     * Reads entries one at a time, into buffers that it keeps, starting
+     * with the latest run (the entries since HighScores.txt last started
+     * over).  An entry cut short at the end of the file (by a crash in the
+     * middle of a save) is ignored, and so is one that claims to be longer
+     * than the rest of the file, so a garbled length can't make it read
+     * (or allocate) more than the file holds.
+     */
+    public static final class Reader
+    {
+        private final DataInputStream in;
+        private final long fileLength;
+        private long position;
+        private long lineOffset = -1;
+        private byte[] line = new byte[64];
+        private int lineLength = 0;
+        private byte[] recording = new byte[256];
+        private int recordingLength = 0;
+
+        public Reader(File file) throws IOException
+        {
+            long start = findLatestRun(file);
+            this.fileLength = file.length();
+            this.position = start;
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            long skipped = 0;
+            while (skipped < start)
+            {
+                skipped += this.in.skip(start - skipped);
+            }
+        }
+
+        /** Where in the file the last run of rising offsets starts. */
+        private static long findLatestRun(File file) throws IOException
+        {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            try
+            {
+                long position = 0;
+                long latest = 0;
+                long lastOffset = -1;
+                while (true)
+                {
+                    long offset;
+                    try
+                    {
+                        offset = in.readLong();
+                        int lineLength = checkLineLength(in.readInt());
+                        skipFully(in, lineLength);
+                        int recordingLength = in.readInt();
+                        skipFully(in, recordingLength);
+                        if (offset <= lastOffset)
+                        {
+                            latest = position;
+                        }
+                        lastOffset = offset;
+                        position += 8 + 4 + lineLength + 4 + recordingLength;
+                    }
+                    catch (EOFException e)
+                    {
+                        return latest;
+                    }
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+
+        private static int checkLineLength(int length) throws IOException
+        {
+            if (length > kMaxLineLength)
+            {
+                throw new IOException("The replay file is garbled.");
+            }
+            return length;
+        }
+
+        private static void skipFully(DataInputStream in, int count) throws IOException
+        {
+            if (count < 0)
+            {
+                throw new IOException("The replay file is garbled.");
+            }
+            int skipped = 0;
+            while (skipped < count)
+            {
+                int step = in.skipBytes(count - skipped);
+                if (step <= 0)
+                {
+                    throw new EOFException();
+                }
+                skipped += step;
+            }
+        }
+
+        /** Read the next entry.
+         * @return false at the end of the file
+         */
+        public boolean next() throws IOException
+        {
+            try
+            {
+                this.lineOffset = this.in.readLong();
+                this.lineLength = checkLineLength(this.in.readInt());
+                this.position += 8 + 4;
+                this.line = readInto(this.line, this.lineLength);
+                this.recordingLength = this.in.readInt();
+                this.position += 4;
+                this.recording = readInto(this.recording, this.recordingLength);
+                return true;
+            }
+            catch (EOFException e)
+            {
+                this.lineOffset = -1;
+                return false;
+            }
+        }
+
+        private byte[] readInto(byte[] buffer, int length) throws IOException
+        {
+            if (length < 0)
+            {
+                throw new IOException("The replay file is garbled.");
+            }
+            if (length > this.fileLength - this.position)
+            {
+                throw new EOFException();
+            }
+            if (length > buffer.length)
+            {
+                buffer = Arrays.copyOf(buffer, Math.max(length, buffer.length * 2));
+            }
+            this.in.readFully(buffer, 0, length);
+            this.position += length;
+            return buffer;
+        }
+
+        /** Where the entry's line starts in HighScores.txt. */
+        public long getLineOffset()
+        {
+            return this.lineOffset;
+        }
+
+        /** Is this the line the entry was saved with? */
+        public boolean lineMatches(byte[] bytes, int offset, int length)
+        {
+            if (length != this.lineLength)
+            {
+                return false;
+            }
+            for (int i = 0; i < length; i++)
+            {
+                if (bytes[offset + i] != this.line[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** The recording; only the first <code>getRecordingLength()</code> bytes count. */
+        public byte[] getRecording()
+        {
+            return this.recording;
+        }
+
+        public int getRecordingLength()
+        {
+            return this.recordingLength;
+        }
+
+        public void close() throws IOException
+        {
+            this.in.close();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * ScoreScanner picks the best (or worst) few scores straight out of a
+ * HighScores.txt file, without building anything from it first.
+ *
+ * The file is memory-mapped a window at a time and parsed in place, and
+ * only the scores that could make the cut are kept (in a heap no bigger
+ * than the number asked for), so a gigabyte of scores takes no more
+ * memory than ten of them.  Most lines are thrown out after reading just
+ * the time, without ever turning the name into a String.
+ *
+ * Times are compared as numbers, the same way ScoreStore does it, and
+ * lines that aren't "time  name" are skipped.  Only complete lines count;
+ * anything after the last newline is taken to be a score that's still
+ * being written.
+ */
+public final class ScoreScanner
+{
+    // How much of the file to map at once.  Any line longer than this is
+    // junk and gets skipped.
+    private static final int kWindowSize = 64 << 20;
+    private static final Charset kCharset = Charset.forName("UTF-8");
+
+    private ScoreScanner()
+    {
+    }
+
+    /** The best (or worst) scores in a file, fastest (or slowest) first.
+     * @param scoresFile a file in the HighScores.txt format
+     * @param ascending true for the fastest times, false for the slowest
+     * @param count how many to return
+     * @return the scores, or an empty list if the file doesn't exist
+     */
+    public static List<ScoreRecord> topScores(File scoresFile, boolean ascending, int count) throws IOException
+    {
+        if (count <= 0)
+        {
+            return new ArrayList<ScoreRecord>();
+        }
+        // The head of the heap is whichever kept score goes first when a
+        // better one turns up: the slowest if we're keeping the fastest.
+        Comparator<ScoreRecord> order = ascending ? Collections.<ScoreRecord>reverseOrder() : null;
+        PriorityQueue<ScoreRecord> kept = new PriorityQueue<ScoreRecord>(count + 1, order);
+
+        long start = KaboomMetrics.now();
+        RandomAccessFile file;
+        try
+        {
+            file = new RandomAccessFile(scoresFile, "r");
+        }
+        catch (FileNotFoundException e)
+        {
+            // If the file hasn't been created, we have no scores.
+            return new ArrayList<ScoreRecord>();
+        }
+
+        try
+        {
+            FileChannel channel = file.getChannel();
+            long length = channel.size();
+            long position = 0;
+            long sequence = 0;
+            ByteSlice time = new ByteSlice();
+            byte[] name = new byte[256];
+            boolean skippingLongLine = false;
+            while (position < length)
+            {
+                int windowSize = (int)Math.min(kWindowSize, length - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                time.buffer = window;
+
+                int lineStart = 0;
+                for (int i = 0; i < windowSize; i++)
+                {
+                    if (window.get(i) != '\n')
+                    {
+                        continue;
+                    }
+                    if (skippingLongLine)
+                    {
+                        skippingLongLine = false;
+                        lineStart = i + 1;
+                        continue;
+                    }
+
+                    int lineEnd = i;
+                    if (lineEnd > lineStart && window.get(lineEnd - 1) == '\r')
+                    {
+                        lineEnd--;
+                    }
+                    int split = lineStart;
+                    while (split < lineEnd && !(window.get(split) == ' ' && split + 1 < lineEnd && window.get(split + 1) == ' '))
+                    {
+                        split++;
+                    }
+                    time.start = lineStart;
+                    time.length = split - lineStart;
+                    lineStart = i + 1;
+
+                    int seconds = ScoreRecord.parseTime(time);
+                    if (seconds < 0)
+                    {
+                        continue;
+                    }
+                    long thisSequence = sequence++;
+
+                    // Don't bother with the name unless the time could
+                    // make the list.
+                    if (kept.size() == count)
+                    {
+                        int cutoff = kept.peek().seconds;
+                        if (ascending ? seconds > cutoff : seconds < cutoff)
+                        {
+                            continue;
+                        }
+                    }
+
+                    int nameStart = Math.min(split + 2, lineEnd);
+                    int nameLength = lineEnd - nameStart;
+                    if (nameLength > name.length)
+                    {
+                        name = new byte[nameLength];
+                    }
+                    for (int j = 0; j < nameLength; j++)
+                    {
+                        name[j] = window.get(nameStart + j);
+                    }
+                    byte format = time.indexOf(':') >= 0 ? ScoreRecord.kMinutesSeconds : ScoreRecord.kSeconds;
+                    kept.add(new ScoreRecord(seconds, format, new String(name, 0, nameLength, kCharset), thisSequence));
+                    if (kept.size() > count)
+                    {
+                        kept.poll();
+                    }
+                }
+
+                if (lineStart == 0 && windowSize == kWindowSize)
+                {
+                    // Not a single newline in the whole window.
+                    skippingLongLine = true;
+                    lineStart = windowSize;
+                }
+                if (position + windowSize == length)
+                {
+                    break;
+                }
+                position += lineStart;
+            }
+        }
+        finally
+        {
+            file.close();
+            KaboomMetrics.scoresRead(start);
+        }
+
+        List<ScoreRecord> scores = new ArrayList<ScoreRecord>(kept);
+        Collections.sort(scores);
+        if (!ascending)
+        {
+            Collections.reverse(scores);
+        }
+        return scores;
+    }
+
+    /** Some ASCII bytes of a buffer, read as characters, so ScoreRecord can
+     * parse a time without us copying it anywhere first.
+     */
+    private static final class ByteSlice implements CharSequence
+    {
+        MappedByteBuffer buffer;
+        int start;
+        int length;
+
+        public int length()
+        {
+            return this.length;
+        }
+
+        public char charAt(int index)
+        {
+            return (char)(this.buffer.get(this.start + index) & 0xFF);
+        }
+
+        public CharSequence subSequence(int from, int to)
+        {
+            return toString().subSequence(from, to);
+        }
+
+        int indexOf(char c)
+        {
+            for (int i = 0; i < this.length; i++)
+            {
+                if (charAt(i) == c)
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public String toString()
+        {
+            StringBuilder text = new StringBuilder(this.length);
+            for (int i = 0; i < this.length; i++)
+            {
+                text.append(charAt(i));
+            }
+            return text.toString();
+        }
+    }
+}
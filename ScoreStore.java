@@ -0,0 +1,963 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * ScoreStore keeps every score ever saved in a compact binary file, along
+ * with an index of the best and worst few, so the top ten can be read
+ * without looking at the rest of the history.
+ *
+ * The file starts with a fixed-size header holding the index (record
+ * numbers of the current top and bottom scores), followed by fixed-size
+ * records, one per score:
+ * <pre>
+ * header:  magic, version, legacy offset, record count,
+ *          best count, worst count, best[kTopScores], worst[kTopScores]
+ * record:  seconds (int), format (byte), name length (byte), name (20 chars),
+ *          game number, width, height, bombs, moves (ints), timestamp (long)
+ * </pre>
+ * A store from an older version is rebuilt from HighScores.txt.
+ *
+ * For the leaderboards (by game, by board size, by date, and players'
+ * ranks) every record gets indexed in memory, but only once somebody first
+ * asks for one; they're kept up to date from then on.  See Leaderboard.
+ *
+ * The old HighScores.txt is still the score log of record: other tools
+ * append to it, and deleting it clears the scores.  The store remembers how
+ * much of it has been imported, picks up anything appended since, and starts
+ * over if it shrinks.
+ *
+ * Any number of threads (and processes sharing the directory) can save
+ * scores at once.  Scores are queued, and whichever thread gets to the
+ * files first writes everything that's queued up in one go: one append and
+ * one fsync for the whole group, under a file lock so other processes
+ * don't interleave with it.  <code>add</code> doesn't return until its
+ * score is on disk.
+ *
+ * Scores can come with a recording of the game (see Replay); those go in
+ * the replay file (see ScoreReplays) in the same commit, after the scores.
+ * A recording has to be of the game its score says it was on.
+ */
+public final class ScoreStore
+{
+    /** How many scores the index keeps at each end. */
+    public static final int kTopScores = 10;
+
+    private static final int kMagic = 0x4B425353; // "KBSS"
+    private static final int kVersion = 2;
+    private static final int kHeaderSize = 4 + 4 + 8 + 8 + 4 + 4 + 2 * 8 * kTopScores;
+    private static final int kRecordSize = 4 + 1 + 1 + 2 * ScoreRecord.kMaxNameLength + 5 * 4 + 8;
+    private static final Charset kCharset = Charset.forName("UTF-8");
+    private static final String kLineSeparator = System.getProperty("line.separator");
+
+    // Only one thread in the JVM touches the files at a time (the file lock
+    // keeps other processes out, but can't be taken twice by one JVM).
+    // Everything below is guarded by it, except the queue.
+    private static final Object kFileLock = new Object();
+
+    private final File storeFile;
+    private final File legacyFile;
+    private final File lockFile;
+    private final File replayFile;
+    // Scores waiting for the next group commit; guarded by itself.
+    private final List<PendingScore> pending = new ArrayList<PendingScore>();
+
+    private long legacyOffset = 0;
+    private long recordCount = 0;
+    // The fastest and slowest kTopScores scores, both sorted fastest first.
+    private final TreeSet<ScoreRecord> best = new TreeSet<ScoreRecord>();
+    private final TreeSet<ScoreRecord> worst = new TreeSet<ScoreRecord>();
+    private final ByteBuffer recordBuffer = ByteBuffer.allocate(kRecordSize);
+
+    // Every score, then every score by game, by board and by date; null
+    // until somebody asks.
+    private Leaderboard allScores = null;
+    private final Map<Integer, Leaderboard> byGame = new HashMap<Integer, Leaderboard>();
+    private final Map<String, Leaderboard> byBoard = new HashMap<String, Leaderboard>();
+    private Leaderboard byTimestamp = null;
+
+    /** Open (or get ready to create) a store.
+     * @param storeFile the binary file to keep scores in
+     * @param legacyFile the HighScores.txt to keep in step with
+     * @param replayFile where to keep recordings of the games
+     */
+    public ScoreStore(File storeFile, File legacyFile, File replayFile) throws IOException
+    {
+        this.storeFile = storeFile;
+        this.legacyFile = legacyFile;
+        this.replayFile = replayFile;
+        this.lockFile = new File(storeFile.getPath() + ".lock");
+        synchronized (kFileLock)
+        {
+            load();
+        }
+    }
+
+    /** A score waiting to be written. */
+    private static final class PendingScore
+    {
+        // The time the way it was given, for HighScores.txt.
+        final String time;
+        final ScoreRecord record;
+        // The game, played back by Replay; null if there isn't one.
+        final byte[] recording;
+        boolean committed = false;
+        IOException failure = null;
+
+        PendingScore(String time, ScoreRecord record, byte[] recording)
+        {
+            this.time = time;
+            this.record = record;
+            this.recording = recording;
+        }
+    }
+
+    /** Read the header and the indexed records, if there's a store yet. */
+    private void load() throws IOException
+    {
+        if (!this.storeFile.exists() || this.storeFile.length() < kHeaderSize)
+        {
+            return;
+        }
+
+        RandomAccessFile file = new RandomAccessFile(this.storeFile, "r");
+        try
+        {
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(kHeaderSize);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != kMagic || header.getInt() != kVersion)
+            {
+                // Not something we understand; rebuild it from the text file.
+                return;
+            }
+            this.legacyOffset = header.getLong();
+            this.recordCount = header.getLong();
+            int bestCount = header.getInt();
+            int worstCount = header.getInt();
+            for (int i = 0; i < kTopScores; i++)
+            {
+                long sequence = header.getLong();
+                if (i < bestCount)
+                {
+                    this.best.add(readRecord(channel, sequence));
+                }
+            }
+            for (int i = 0; i < kTopScores; i++)
+            {
+                long sequence = header.getLong();
+                if (i < worstCount)
+                {
+                    this.worst.add(readRecord(channel, sequence));
+                }
+            }
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+
+    /** The best (or worst) scores, fastest (or slowest) first.
+     * @param ascending true for the fastest times, false for the slowest
+     * @param count how many to return, at most kTopScores
+     */
+    public List<ScoreRecord> getTopScores(boolean ascending, int count) throws IOException
+    {
+        synchronized (kFileLock)
+        {
+            update(false);
+            List<ScoreRecord> scores = new ArrayList<ScoreRecord>(count);
+            Iterator<ScoreRecord> records = ascending ? this.best.iterator() : this.worst.descendingIterator();
+            while (scores.size() < count && records.hasNext())
+            {
+                scores.add(records.next());
+            }
+            return scores;
+        }
+    }
+
+    /** The fastest scores on any game, fastest first.  Unlike
+     * getTopScores, this isn't limited to kTopScores: it comes from the
+     * leaderboard of every score, which gets built the first time.
+     */
+    public List<ScoreRecord> getFastestScores(int count) throws IOException
+    {
+        synchronized (kFileLock)
+        {
+            update(true);
+            return this.allScores.first(count);
+        }
+    }
+
+    /** The fastest scores on one numbered game, fastest first. */
+    public List<ScoreRecord> getTopScoresForGame(int gameNumber, int count) throws IOException
+    {
+        synchronized (kFileLock)
+        {
+            update(true);
+            Leaderboard board = this.byGame.get(gameNumber);
+            return board == null ? new ArrayList<ScoreRecord>() : board.first(count);
+        }
+    }
+
+    /** The fastest scores on any game with this size of board, fastest first. */
+    public List<ScoreRecord> getTopScoresForBoard(int width, int height, int bombs, int count) throws IOException
+    {
+        synchronized (kFileLock)
+        {
+            update(true);
+            Leaderboard board = this.byBoard.get(boardKey(width, height, bombs));
+            return board == null ? new ArrayList<ScoreRecord>() : board.first(count);
+        }
+    }
+
+    /** Where a player's best score ranks among all the scores.
+     * @return 1 for first place, and so on, or 0 if they have no scores
+     */
+    public int getRank(String playerName) throws IOException
+    {
+        synchronized (kFileLock)
+        {
+            update(true);
+            return this.allScores.rank(ScoreRecord.normalizeName(playerName));
+        }
+    }
+
+    /** Where a player's best score on one numbered game ranks.
+     * @return 1 for first place, and so on, or 0 if they have no scores there
+     */
+    public int getRankForGame(int gameNumber, String playerName) throws IOException
+    {
+        synchronized (kFileLock)
+        {
+            update(true);
+            Leaderboard board = this.byGame.get(gameNumber);
+            return board == null ? 0 : board.rank(ScoreRecord.normalizeName(playerName));
+        }
+    }
+
+    /** Where a player's best score on this size of board ranks.
+     * @return 1 for first place, and so on, or 0 if they have no scores there
+     */
+    public int getRankForBoard(int width, int height, int bombs, String playerName) throws IOException
+    {
+        synchronized (kFileLock)
+        {
+            update(true);
+            Leaderboard board = this.byBoard.get(boardKey(width, height, bombs));
+            return board == null ? 0 : board.rank(ScoreRecord.normalizeName(playerName));
+        }
+    }
+
+    /** Every score saved in a stretch of time, oldest first.  Scores
+     * imported from HighScores.txt don't know when they were saved, and
+     * count as being from 1970.
+     * @param from the start, in milliseconds since 1970
+     * @param to the end (not included)
+     */
+    public List<ScoreRecord> getScoresBetween(long from, long to) throws IOException
+    {
+        synchronized (kFileLock)
+        {
+            update(true);
+            return this.byTimestamp.range(timestampProbe(from), timestampProbe(to));
+        }
+    }
+
+    /** Save a score, both to the legacy file and to the store.  Blocks
+     * until the score is safely on disk.
+     * @param time the time, in seconds or m:ss
+     * @param playerName who got it; truncated to 20 characters
+     * @throws IllegalArgumentException if the time isn't in either form
+     */
+    public void add(String time, String playerName) throws IOException
+    {
+        add(time, playerName, 0, 0, 0, 0, 0);
+    }
+
+    /** Save a score for a particular game.  Blocks until the score is
+     * safely on disk.
+     * @param time the time, in seconds or m:ss
+     * @param playerName who got it; truncated to 20 characters
+     * @param gameNumber which game it was, or 0 if it doesn't matter
+     * @param width the size of the board (0 if it doesn't matter)
+     * @param moves how many clicks it took
+     * @throws IllegalArgumentException if the time isn't in either form
+     */
+    public void add(String time, String playerName, int gameNumber, int width, int height, int bombs, int moves)
+        throws IOException
+    {
+        add(time, playerName, gameNumber, width, height, bombs, moves, null);
+    }
+
+    /** Save a score along with a recording of the game, so it can be
+     * checked later.  Blocks until both are safely on disk.
+     * @param recording the game, from <code>Replay.record</code>, or null
+     * @throws IllegalArgumentException if the recording isn't of that game
+     */
+    public void add(String time, String playerName, int gameNumber, int width, int height, int bombs, int moves,
+                    byte[] recording) throws IOException
+    {
+        long start = KaboomMetrics.now();
+        // Check the time now, so a bad one fails here rather than in the
+        // middle of somebody else's commit.
+        ScoreRecord checked = ScoreRecord.parse(time, playerName, -1)
+            .withGame(gameNumber, width, height, bombs, moves, System.currentTimeMillis());
+        if (recording != null)
+        {
+            Replay.Header header = Replay.readHeader(recording, 0, recording.length);
+            if (header == null || !header.matches(checked))
+            {
+                throw new IllegalArgumentException("The recording isn't of game " + gameNumber + " on a "
+                                                   + width + "x" + height + " board with " + bombs + " bombs.");
+            }
+        }
+        PendingScore score = new PendingScore(time, checked, recording);
+        synchronized (this.pending)
+        {
+            this.pending.add(score);
+        }
+
+        synchronized (kFileLock)
+        {
+            // While we waited, whoever had the files may have written our
+            // score along with theirs.
+            if (!score.committed)
+            {
+                commitPending();
+            }
+        }
+        KaboomMetrics.scoreWritten(start);
+        if (score.failure != null)
+        {
+            throw score.failure;
+        }
+    }
+
+    /** Write out everything that's queued: one append and one fsync for the
+     * lot, then the same records into the store.
+     */
+    private void commitPending()
+    {
+        List<PendingScore> group;
+        synchronized (this.pending)
+        {
+            group = new ArrayList<PendingScore>(this.pending);
+            this.pending.clear();
+        }
+
+        try
+        {
+            FileChannel lock = lockFiles();
+            try
+            {
+                // Anything else that was appended first has to come first.
+                refresh();
+
+                // Each line separately, so we know where each one starts
+                // for the replay file.
+                byte[][] lines = new byte[group.size()][];
+                int linesLength = 0;
+                int replaysLength = 0;
+                byte[] separator = kLineSeparator.getBytes(kCharset);
+                for (int i = 0; i < lines.length; i++)
+                {
+                    PendingScore score = group.get(i);
+                    lines[i] = (score.time + "  " + score.record.name).getBytes(kCharset);
+                    linesLength += lines[i].length + separator.length;
+                    if (score.recording != null)
+                    {
+                        replaysLength += ScoreReplays.entrySize(lines[i], score.recording);
+                    }
+                }
+                ByteBuffer text = ByteBuffer.allocate(linesLength);
+                ByteBuffer replays = ByteBuffer.allocate(replaysLength);
+                long lineOffset = this.legacyFile.length();
+                for (int i = 0; i < lines.length; i++)
+                {
+                    if (group.get(i).recording != null)
+                    {
+                        ScoreReplays.putEntry(replays, lineOffset, lines[i], group.get(i).recording);
+                    }
+                    text.put(lines[i]).put(separator);
+                    lineOffset += lines[i].length + separator.length;
+                }
+                text.flip();
+                replays.flip();
+                append(this.legacyFile, text);
+                if (replays.hasRemaining())
+                {
+                    append(this.replayFile, replays);
+                }
+
+                // The store can always be rebuilt from the text file, so it
+                // doesn't need syncing.
+                RandomAccessFile file = new RandomAccessFile(this.storeFile, "rw");
+                try
+                {
+                    FileChannel channel = file.getChannel();
+                    ByteBuffer records = ByteBuffer.allocate(kRecordSize * group.size());
+                    long firstSequence = this.recordCount;
+                    for (PendingScore score : group)
+                    {
+                        ScoreRecord record = score.record.withSequence(this.recordCount);
+                        putRecord(records, record);
+                        index(record);
+                    }
+                    records.flip();
+                    writeFully(channel, records, kHeaderSize + firstSequence * kRecordSize);
+                    this.legacyOffset = this.legacyFile.length();
+                    writeHeader(channel);
+                }
+                finally
+                {
+                    file.close();
+                }
+            }
+            finally
+            {
+                lock.close();
+            }
+        }
+        catch (IOException e)
+        {
+            fail(group, e);
+        }
+        catch (RuntimeException e)
+        {
+            fail(group, new IOException("Couldn't save the scores.", e));
+            throw e;
+        }
+        catch (Error e)
+        {
+            fail(group, new IOException("Couldn't save the scores.", e));
+            throw e;
+        }
+        finally
+        {
+            // Whatever happened, nobody in the group is left waiting on a
+            // commit that isn't coming.
+            for (PendingScore score : group)
+            {
+                score.committed = true;
+            }
+        }
+    }
+
+    private static void fail(List<PendingScore> group, IOException failure)
+    {
+        for (PendingScore score : group)
+        {
+            score.failure = failure;
+        }
+    }
+
+    /** Append to a file and sync it. */
+    private static void append(File file, ByteBuffer bytes) throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(file, true);
+        try
+        {
+            FileChannel channel = out.getChannel();
+            while (bytes.hasRemaining())
+            {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /** Bring everything up to date with the files.  Call with kFileLock held.
+     * @param leaderboards whether the leaderboards are needed too
+     */
+    private void update(boolean leaderboards) throws IOException
+    {
+        // Every query comes through here, so this is where reads are timed.
+        long start = KaboomMetrics.now();
+        FileChannel lock = lockFiles();
+        try
+        {
+            refresh();
+            if (leaderboards && this.allScores == null)
+            {
+                buildLeaderboards();
+            }
+        }
+        finally
+        {
+            lock.close();
+            KaboomMetrics.scoresRead(start);
+        }
+    }
+
+    /** Index every record in the store, reading it from start to end. */
+    private void buildLeaderboards() throws IOException
+    {
+        this.allScores = new Leaderboard();
+        this.byTimestamp = new Leaderboard(Leaderboard.kByTimestamp);
+        if (this.recordCount == 0)
+        {
+            return;
+        }
+
+        RandomAccessFile file = new RandomAccessFile(this.storeFile, "r");
+        try
+        {
+            FileChannel channel = file.getChannel();
+            ByteBuffer batch = ByteBuffer.allocate(kRecordSize * 1024);
+            for (long sequence = 0; sequence < this.recordCount; )
+            {
+                batch.clear();
+                batch.limit((int)Math.min(batch.capacity(), (this.recordCount - sequence) * kRecordSize));
+                readFully(channel, batch, kHeaderSize + sequence * kRecordSize);
+                batch.flip();
+                while (batch.hasRemaining())
+                {
+                    addToLeaderboards(getRecord(batch, sequence++));
+                }
+            }
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+
+    private void addToLeaderboards(ScoreRecord record)
+    {
+        this.allScores.add(record);
+        this.byTimestamp.add(record);
+        // Scores from HighScores.txt don't know what game they were on.
+        if (record.gameNumber != 0)
+        {
+            Leaderboard game = this.byGame.get(record.gameNumber);
+            if (game == null)
+            {
+                game = new Leaderboard();
+                this.byGame.put(record.gameNumber, game);
+            }
+            game.add(record);
+        }
+        if (record.width != 0)
+        {
+            String key = boardKey(record.width, record.height, record.bombs);
+            Leaderboard board = this.byBoard.get(key);
+            if (board == null)
+            {
+                board = new Leaderboard();
+                this.byBoard.put(key, board);
+            }
+            board.add(record);
+        }
+    }
+
+    private static String boardKey(int width, int height, int bombs)
+    {
+        return width + "x" + height + "/" + bombs;
+    }
+
+    /** Something that sorts before every score saved at a given time. */
+    private static ScoreRecord timestampProbe(long timestamp)
+    {
+        return new ScoreRecord(0, ScoreRecord.kSeconds, "", Long.MIN_VALUE, 0, 0, 0, 0, 0, timestamp);
+    }
+
+    /** Take the lock that keeps other processes out of the files.
+     * @return the channel holding the lock; close it to let go
+     */
+    private FileChannel lockFiles() throws IOException
+    {
+        FileChannel channel = new RandomAccessFile(this.lockFile, "rw").getChannel();
+        try
+        {
+            channel.lock();
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /** Catch up with anything another process has written since we last
+     * looked: reread the index if the store has moved on without us, then
+     * import whatever's new in the legacy file.
+     */
+    private void refresh() throws IOException
+    {
+        if (readLegacyOffset() != this.legacyOffset)
+        {
+            forget();
+            load();
+        }
+        catchUp();
+    }
+
+    /** How much of the legacy file the store on disk has imported. */
+    private long readLegacyOffset() throws IOException
+    {
+        if (!this.storeFile.exists() || this.storeFile.length() < kHeaderSize)
+        {
+            return 0;
+        }
+        RandomAccessFile file = new RandomAccessFile(this.storeFile, "r");
+        try
+        {
+            ByteBuffer header = ByteBuffer.allocate(16);
+            readFully(file.getChannel(), header, 0);
+            header.flip();
+            if (header.getInt() != kMagic || header.getInt() != kVersion)
+            {
+                return 0;
+            }
+            return header.getLong();
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+
+    /** Import whatever has been appended to the legacy file, or start over
+     * if it has been truncated or deleted.
+     */
+    private void catchUp() throws IOException
+    {
+        catchUp(this.legacyFile.length());
+    }
+
+    private void catchUp(long legacyLength) throws IOException
+    {
+        if (legacyLength == this.legacyOffset)
+        {
+            return;
+        }
+        if (legacyLength < this.legacyOffset)
+        {
+            clear();
+            if (legacyLength == 0)
+            {
+                return;
+            }
+        }
+
+        RandomAccessFile file = new RandomAccessFile(this.storeFile, "rw");
+        try
+        {
+            FileChannel channel = file.getChannel();
+            this.legacyOffset = importLegacy(channel, this.legacyOffset, legacyLength);
+            writeHeader(channel);
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+
+    /** Forget everything. */
+    private void clear()
+    {
+        this.storeFile.delete();
+        forget();
+    }
+
+    /** Forget what we know, but leave the files alone. */
+    private void forget()
+    {
+        this.allScores = null;
+        this.byTimestamp = null;
+        this.byGame.clear();
+        this.byBoard.clear();
+        this.legacyOffset = 0;
+        this.recordCount = 0;
+        this.best.clear();
+        this.worst.clear();
+    }
+
+    /**
+     * Append a record for each complete line of the legacy file between two
+     * offsets.  Lines that aren't "time  name" are skipped.
+     * @return the offset just past the last complete line
+     */
+    private long importLegacy(FileChannel channel, long from, long to) throws IOException
+    {
+        InputStream in = new BufferedInputStream(new FileInputStream(this.legacyFile), 1 << 16);
+        try
+        {
+            long skipped = 0;
+            while (skipped < from)
+            {
+                skipped += in.skip(from - skipped);
+            }
+
+            // Records are written out in big batches rather than one by one.
+            ByteBuffer batch = ByteBuffer.allocate(kRecordSize * 1024);
+            long batchStart = this.recordCount;
+            byte[] line = new byte[256];
+            int lineLength = 0;
+            long offset = from;
+            long imported = from;
+            byte[] chunk = new byte[1 << 16];
+            int chunkLength = 0;
+            int chunkPosition = 0;
+            while (offset < to)
+            {
+                if (chunkPosition == chunkLength)
+                {
+                    chunkLength = in.read(chunk, 0, (int)Math.min(chunk.length, to - offset));
+                    chunkPosition = 0;
+                    if (chunkLength < 0)
+                    {
+                        break;
+                    }
+                }
+                byte b = chunk[chunkPosition++];
+                offset++;
+                if (b != '\n')
+                {
+                    if (lineLength == line.length)
+                    {
+                        line = java.util.Arrays.copyOf(line, line.length * 2);
+                    }
+                    line[lineLength++] = b;
+                    continue;
+                }
+
+                ScoreRecord record = parseLine(new String(line, 0, lineLength, "UTF-8"));
+                if (record != null)
+                {
+                    putRecord(batch, record);
+                    index(record);
+                    if (!batch.hasRemaining())
+                    {
+                        batch.flip();
+                        writeFully(channel, batch, kHeaderSize + batchStart * kRecordSize);
+                        batch.clear();
+                        batchStart = this.recordCount;
+                    }
+                }
+                lineLength = 0;
+                imported = offset;
+            }
+            batch.flip();
+            writeFully(channel, batch, kHeaderSize + batchStart * kRecordSize);
+            return imported;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /** Turn "time  name" into a record, or null if it isn't one. */
+    private ScoreRecord parseLine(String line)
+    {
+        if (line.endsWith("\r"))
+        {
+            line = line.substring(0, line.length() - 1);
+        }
+        int split = line.indexOf("  ");
+        String time = split < 0 ? line : line.substring(0, split);
+        String name = split < 0 ? "" : line.substring(split + 2);
+        if (ScoreRecord.parseTime(time) < 0)
+        {
+            return null;
+        }
+        return ScoreRecord.parse(time, name, this.recordCount);
+    }
+
+    private static void putRecord(ByteBuffer buffer, ScoreRecord record)
+    {
+        buffer.putInt(record.seconds);
+        buffer.put(record.format);
+        buffer.put((byte)record.name.length());
+        for (int i = 0; i < ScoreRecord.kMaxNameLength; i++)
+        {
+            buffer.putChar(i < record.name.length() ? record.name.charAt(i) : '\0');
+        }
+        buffer.putInt(record.gameNumber);
+        buffer.putInt(record.width);
+        buffer.putInt(record.height);
+        buffer.putInt(record.bombs);
+        buffer.putInt(record.moves);
+        buffer.putLong(record.timestamp);
+    }
+
+    private static ScoreRecord getRecord(ByteBuffer buffer, long sequence)
+    {
+        int seconds = buffer.getInt();
+        byte format = buffer.get();
+        int nameLength = buffer.get();
+        char[] name = new char[ScoreRecord.kMaxNameLength];
+        for (int i = 0; i < ScoreRecord.kMaxNameLength; i++)
+        {
+            name[i] = buffer.getChar();
+        }
+        return new ScoreRecord(seconds, format, new String(name, 0, nameLength), sequence,
+                               buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                               buffer.getLong());
+    }
+
+    /** Count a new record and fit it into the index. */
+    private void index(ScoreRecord record)
+    {
+        this.recordCount = record.sequence + 1;
+        if (this.allScores != null)
+        {
+            addToLeaderboards(record);
+        }
+
+        // Each of these is O(log kTopScores), and most records don't even
+        // get past the first comparison.
+        if (this.best.size() < kTopScores || record.compareTo(this.best.last()) < 0)
+        {
+            this.best.add(record);
+            if (this.best.size() > kTopScores)
+            {
+                this.best.pollLast();
+            }
+        }
+        if (this.worst.size() < kTopScores || record.compareTo(this.worst.first()) > 0)
+        {
+            this.worst.add(record);
+            if (this.worst.size() > kTopScores)
+            {
+                this.worst.pollFirst();
+            }
+        }
+    }
+
+    private ScoreRecord readRecord(FileChannel channel, long sequence) throws IOException
+    {
+        this.recordBuffer.clear();
+        readFully(channel, this.recordBuffer, kHeaderSize + sequence * kRecordSize);
+        this.recordBuffer.flip();
+        return getRecord(this.recordBuffer, sequence);
+    }
+
+    private void writeHeader(FileChannel channel) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(kHeaderSize);
+        header.putInt(kMagic);
+        header.putInt(kVersion);
+        header.putLong(this.legacyOffset);
+        header.putLong(this.recordCount);
+        header.putInt(this.best.size());
+        header.putInt(this.worst.size());
+        putSequences(header, this.best);
+        putSequences(header, this.worst);
+        header.flip();
+        writeFully(channel, header, 0);
+    }
+
+    private static void putSequences(ByteBuffer header, TreeSet<ScoreRecord> records)
+    {
+        int written = 0;
+        for (ScoreRecord record : records)
+        {
+            header.putLong(record.sequence);
+            written++;
+        }
+        for (; written < kTopScores; written++)
+        {
+            header.putLong(-1L);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+            {
+                throw new IOException("Score store is truncated.");
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Reads the records in a store front to back, one for each score line
+     * in HighScores.txt, so they can be checked against it in step (see
+     * ScoreVerifier).  A store that's missing, or from another version, has
+     * no records.
+     */
+    public static final class Reader
+    {
+        private final RandomAccessFile file;
+        private final ByteBuffer batch = ByteBuffer.allocate(kRecordSize * 1024);
+        private long count = 0;
+        private long next = 0;
+
+        public Reader(File storeFile) throws IOException
+        {
+            this.file = storeFile.exists() ? new RandomAccessFile(storeFile, "r") : null;
+            if (this.file != null && this.file.length() >= kHeaderSize)
+            {
+                ByteBuffer header = ByteBuffer.allocate(kHeaderSize);
+                readFully(this.file.getChannel(), header, 0);
+                header.flip();
+                if (header.getInt() == kMagic && header.getInt() == kVersion)
+                {
+                    header.getLong();
+                    this.count = header.getLong();
+                }
+            }
+            this.batch.limit(0);
+        }
+
+        /** The next record, or null if there are no more. */
+        public ScoreRecord next() throws IOException
+        {
+            if (this.next >= this.count)
+            {
+                return null;
+            }
+            if (!this.batch.hasRemaining())
+            {
+                this.batch.clear();
+                this.batch.limit((int)Math.min(this.batch.capacity(), (this.count - this.next) * kRecordSize));
+                readFully(this.file.getChannel(), this.batch, kHeaderSize + this.next * kRecordSize);
+                this.batch.flip();
+            }
+            return getRecord(this.batch, this.next++);
+        }
+
+        public void close() throws IOException
+        {
+            if (this.file != null)
+            {
+                this.file.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ScoreVerifier checks the scores in HighScores.txt against the recorded
+ * games in HighScores.replays, to catch scores that were typed in or edited
+ * rather than played.
+ *
+ * A score passes if its recording is for exactly that line, is of the game
+ * HighScores.dat says the score was on (game number, board and bombs), and
+ * playing it back (see Replay) wins that game without cheating, in the
+ * number of moves the score says, with moves made no later than the time
+ * claimed (give or take the clock running a little behind).  Scores with
+ * no recording at all (saved before games were recorded, or by tools that
+ * don't record them) are counted but can't be checked either way.
+ *
+ * All three files are read once, front to back, in step, so it runs in
+ * constant memory however many scores there are.
+ *
+ * Usage: java ScoreVerifier [-strict] [directory]
+ * Exits with status 1 if any score fails, or with -strict, if any score has
+ * no recording.
+ */
+public final class ScoreVerifier
+{
+    // Only this many problems get described; the rest are just counted.
+    private static final int kMaxProblems = 100;
+    private static final int kClockSlack = 2;
+
+    /** How the check went. */
+    public static final class Report
+    {
+        public long verified = 0;
+        public long failed = 0;
+        public long unrecorded = 0;
+        /** What was wrong with the first few that failed. */
+        public final List<String> problems = new ArrayList<String>();
+        public long nanos = 0;
+
+        void fail(long lineNumber, String line, String problem)
+        {
+            this.failed++;
+            if (this.problems.size() < kMaxProblems)
+            {
+                this.problems.add("line " + lineNumber + " (\"" + line + "\"): " + problem);
+            }
+        }
+
+        public String toString()
+        {
+            StringBuilder report = new StringBuilder();
+            for (String problem : this.problems)
+            {
+                report.append(problem).append(String.format("%n"));
+            }
+            if (this.failed > this.problems.size())
+            {
+                report.append(String.format("... and %d more%n", this.failed - this.problems.size()));
+            }
+            long checked = this.verified + this.failed;
+            report.append(String.format("%d verified, %d failed, %d with no recording, in %.0f ms (%.0f scores/sec)%n",
+                                        this.verified, this.failed, this.unrecorded, this.nanos / 1e6,
+                                        checked / Math.max(1e-9, this.nanos / 1e9)));
+            return report.toString();
+        }
+    }
+
+    private final Replay replay = new Replay();
+
+    /** Check every score in a HighScores.txt against its recordings.
+     * @param storeFile the HighScores.dat that says which game each score was on
+     */
+    public Report verify(File scoresFile, File storeFile, File replayFile) throws IOException
+    {
+        long start = System.nanoTime();
+        Report report = new Report();
+        ScoreReplays.Reader recordings = replayFile.exists() ? new ScoreReplays.Reader(replayFile) : null;
+        boolean moreRecordings = recordings != null && recordings.next();
+        ScoreStore.Reader records = new ScoreStore.Reader(storeFile);
+        InputStream in = new FileInputStream(scoresFile);
+        try
+        {
+            byte[] line = new byte[256];
+            int lineLength = 0;
+            long lineStart = 0;
+            long offset = 0;
+            long lineNumber = 0;
+            byte[] chunk = new byte[1 << 16];
+            int chunkLength = 0;
+            int chunkPosition = 0;
+            while (true)
+            {
+                if (chunkPosition == chunkLength)
+                {
+                    chunkLength = in.read(chunk);
+                    chunkPosition = 0;
+                    if (chunkLength < 0)
+                    {
+                        break;
+                    }
+                }
+                byte b = chunk[chunkPosition++];
+                offset++;
+                if (b != '\n')
+                {
+                    if (lineLength == line.length)
+                    {
+                        line = Arrays.copyOf(line, line.length * 2);
+                    }
+                    line[lineLength++] = b;
+                    continue;
+                }
+                lineNumber++;
+                if (lineLength > 0 && line[lineLength - 1] == '\r')
+                {
+                    lineLength--;
+                }
+
+                while (moreRecordings && recordings.getLineOffset() < lineStart)
+                {
+                    moreRecordings = recordings.next();
+                }
+                String text = new String(line, 0, lineLength, "UTF-8");
+                int split = text.indexOf("  ");
+                int seconds = ScoreRecord.parseTime(split < 0 ? text : text.substring(0, split));
+                // Lines that aren't scores don't count (see ScoreStore).
+                if (seconds >= 0)
+                {
+                    // The store has a record for every score line, in order.
+                    ScoreRecord record = records.next();
+                    if (moreRecordings && recordings.getLineOffset() == lineStart)
+                    {
+                        check(report, lineNumber, text, seconds, line, lineLength, recordings, record);
+                    }
+                    else
+                    {
+                        report.unrecorded++;
+                    }
+                }
+                lineLength = 0;
+                lineStart = offset;
+            }
+        }
+        finally
+        {
+            in.close();
+            records.close();
+            if (recordings != null)
+            {
+                recordings.close();
+            }
+        }
+        report.nanos = System.nanoTime() - start;
+        return report;
+    }
+
+    private void check(Report report, long lineNumber, String text, int seconds, byte[] line, int lineLength,
+                       ScoreReplays.Reader recordings, ScoreRecord record)
+    {
+        if (!recordings.lineMatches(line, 0, lineLength))
+        {
+            report.fail(lineNumber, text, "isn't the line that was recorded");
+            return;
+        }
+        if (record == null || record.seconds != seconds || record.width == 0)
+        {
+            report.fail(lineNumber, text, "HighScores.dat doesn't say which game it was on");
+            return;
+        }
+        Replay.Header header = Replay.readHeader(recordings.getRecording(), 0, recordings.getRecordingLength());
+        if (header != null && !header.matches(record))
+        {
+            report.fail(lineNumber, text, "the recording is of game " + header.gameNumber + " on a " + header.width
+                        + "x" + header.height + " board with " + header.bombs + " bombs, not game "
+                        + record.gameNumber + " on a " + record.width + "x" + record.height + " board with "
+                        + record.bombs + " bombs");
+            return;
+        }
+        Replay.Outcome outcome = this.replay.play(recordings.getRecording(), 0, recordings.getRecordingLength(),
+                                                  Integer.MAX_VALUE);
+        if (outcome != Replay.Outcome.won)
+        {
+            report.fail(lineNumber, text, "the recording " + (outcome == Replay.Outcome.invalid ? "is invalid"
+                                                              : "was " + outcome));
+            return;
+        }
+        if (this.replay.wasCheated())
+        {
+            report.fail(lineNumber, text, "the player cheated");
+            return;
+        }
+        if (this.replay.getEngine().getMoves() != record.moves)
+        {
+            report.fail(lineNumber, text, "the recording took " + this.replay.getEngine().getMoves() + " moves, not "
+                        + record.moves);
+            return;
+        }
+        // The clock shows whole seconds, and a busy GUI can run it a little
+        // late, so allow it a couple of seconds.
+        if (this.replay.getLastMillis() >= (seconds + kClockSlack) * 1000L)
+        {
+            report.fail(lineNumber, text, "the moves took " + this.replay.getLastMillis() / 1000 + " seconds");
+            return;
+        }
+        report.verified++;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        int next = 0;
+        boolean strict = args.length > next && args[next].equals("-strict");
+        if (strict)
+        {
+            next++;
+        }
+        String directory = args.length > next ? args[next] : ".";
+        Report report = new ScoreVerifier().verify(new File(directory, HighScores.kScoresFile),
+                                                   new File(directory, HighScores.kStoreFile),
+                                                   new File(directory, HighScores.kReplayFile));
+        System.out.print(report);
+        if (report.failed > 0 || (strict && report.unrecorded > 0))
+        {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import junit.framework.TestCase;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * Tests for ScoreVerifier.  Expects a Mines directory to write scores into.
+ */
+public class ScoreVerifierTest extends TestCase
+{
+    private final File scoresFile = new File("Mines/Verify.txt");
+    private final File storeFile = new File("Mines/Verify.dat");
+    private final File replayFile = new File("Mines/Verify.replays");
+
+    public void setUp()
+    {
+        this.scoresFile.delete();
+        this.storeFile.delete();
+        this.replayFile.delete();
+    }
+
+    private ScoreVerifier.Report verify() throws IOException
+    {
+        return new ScoreVerifier().verify(this.scoresFile, this.storeFile, this.replayFile);
+    }
+
+    public void testVerified() throws IOException
+    {
+        ScoreStore store = new ScoreStore(this.storeFile, this.scoresFile, this.replayFile);
+        store.add("0:01", "Ruth", 42, 3, 3, 0, 1, HighScoresTest.wonGame(42));
+        store.add("32", "Joe");
+        ScoreVerifier.Report report = verify();
+        assertEquals(1, report.verified);
+        assertEquals(0, report.failed);
+        assertEquals(1, report.unrecorded);
+    }
+
+    // Swapping in a recording of a trivial board doesn't vouch for a score
+    // on a real one.
+    public void testMismatchedRecording() throws IOException
+    {
+        ScoreStore store = new ScoreStore(this.storeFile, this.scoresFile, this.replayFile);
+        store.add("0:01", "cheater", 42, 10, 10, 9, 10);
+        KaboomEngine engine = new KaboomEngine(1, 1, 0);
+        engine.setGameNumber(42);
+        engine.restartGame();
+        engine.clickTile(0, 0);
+        writeReplay(0, "0:01  cheater", Replay.record(engine));
+        ScoreVerifier.Report report = verify();
+        assertEquals(0, report.verified);
+        assertEquals(1, report.failed);
+    }
+
+    // The right game, but not in the number of moves the score claims.
+    public void testWrongMoves() throws IOException
+    {
+        ScoreStore store = new ScoreStore(this.storeFile, this.scoresFile, this.replayFile);
+        store.add("0:01", "Ruth", 42, 3, 3, 0, 5);
+        writeReplay(0, "0:01  Ruth", HighScoresTest.wonGame(42));
+        ScoreVerifier.Report report = verify();
+        assertEquals(0, report.verified);
+        assertEquals(1, report.failed);
+    }
+
+    // A garbled recording length in the replay file doesn't get allocated.
+    public void testGarbledRecordingLength() throws IOException
+    {
+        ScoreStore store = new ScoreStore(this.storeFile, this.scoresFile, this.replayFile);
+        store.add("0:01", "Ruth", 42, 3, 3, 0, 1, HighScoresTest.wonGame(42));
+        RandomAccessFile file = new RandomAccessFile(this.replayFile, "rw");
+        try
+        {
+            file.seek(8 + 4 + "0:01  Ruth".length());
+            file.writeInt(Integer.MAX_VALUE - 8);
+        }
+        finally
+        {
+            file.close();
+        }
+        ScoreVerifier.Report report = verify();
+        assertEquals(0, report.verified);
+        assertEquals(1, report.unrecorded);
+    }
+
+    // So does a line length no score line could have.
+    public void testGarbledLineLength() throws IOException
+    {
+        ScoreStore store = new ScoreStore(this.storeFile, this.scoresFile, this.replayFile);
+        store.add("0:01", "Ruth", 42, 3, 3, 0, 1, HighScoresTest.wonGame(42));
+        RandomAccessFile file = new RandomAccessFile(this.replayFile, "rw");
+        try
+        {
+            file.seek(8);
+            file.writeInt(Integer.MAX_VALUE - 8);
+        }
+        finally
+        {
+            file.close();
+        }
+        try
+        {
+            verify();
+            fail("A garbled line length was read.");
+        }
+        catch (IOException e)
+        {
+            // Expected.
+        }
+    }
+
+    private void writeReplay(long lineOffset, String line, byte[] recording) throws IOException
+    {
+        byte[] bytes = line.getBytes("UTF-8");
+        ByteBuffer entry = ByteBuffer.allocate(ScoreReplays.entrySize(bytes, recording));
+        ScoreReplays.putEntry(entry, lineOffset, bytes, recording);
+        FileOutputStream out = new FileOutputStream(this.replayFile);
+        try
+        {
+            out.write(entry.array());
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
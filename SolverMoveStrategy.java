@@ -0,0 +1,60 @@
+/**
+ * SolverMoveStrategy plays the way a careful player would: it clicks every
+ * spot KaboomSolver can prove is safe, and only when there are none left
+ * does it guess, picking the spot least likely to be a bomb.
+ *
+ * Solving the board is the slow part, so the safe spots from one solve all
+ * get clicked before solving again.  The simulator already runs a game per
+ * thread, so the solver doesn't split its own work up.
+ */
+public class SolverMoveStrategy implements MoveStrategy
+{
+    private final KaboomSolver solver = new KaboomSolver();
+    // The safe spots from the last solve we haven't clicked yet.
+    private int[] safe = new int[0];
+    private int safeCount = 0;
+    private int next = 0;
+
+    public SolverMoveStrategy()
+    {
+        this.solver.setParallel(false);
+    }
+
+    public void startGame(KaboomEngine engine)
+    {
+        this.safeCount = 0;
+        this.next = 0;
+    }
+
+    public int nextMove(KaboomEngine engine)
+    {
+        int width = engine.getWidth();
+        // Clicking one safe spot can open up others on the list.
+        while (this.next < this.safeCount)
+        {
+            int index = this.safe[this.next++];
+            if (engine.getStatus(index / width, index % width) == Piece.hidden)
+            {
+                return index;
+            }
+        }
+
+        this.solver.solve(engine);
+        int move = this.solver.getBestMove();
+        if (!this.solver.isBestMoveSafe())
+        {
+            return move;
+        }
+        this.safeCount = this.solver.getSafeCount();
+        if (this.safe.length < this.safeCount)
+        {
+            this.safe = new int[this.safeCount];
+        }
+        for (int i = 0; i < this.safeCount; i++)
+        {
+            this.safe[i] = this.solver.getSafeCell(i);
+        }
+        this.next = 0;
+        return move;
+    }
+}
@@ -0,0 +1,67 @@
+/** What a single spot on the board looks like to the renderer.
+ * There are only a handful of different looks, so there's one shared Tile
+ * (and RenderDescriptor) for each; get them from <code>valueOf</code>.
+ */
+class Tile implements Renderable
+{
+    private static final Tile[][] kTiles = new Tile[Piece.values().length][9];
+    static
+    {
+        for (Piece status : Piece.values())
+        {
+            for (int numSurroundingBombs = 0; numSurroundingBombs <= 8; numSurroundingBombs++)
+            {
+                kTiles[status.ordinal()][numSurroundingBombs] = new Tile(status, numSurroundingBombs);
+            }
+        }
+    }
+    
+    public final Piece status;
+    public final int numSurroundingBombs;
+    private final RenderDescriptor renderDescriptor;
+    
+    private Tile(Piece status, int numSurroundingBombs)
+    {
+        this.status = status;
+        this.numSurroundingBombs = numSurroundingBombs;
+        this.renderDescriptor = describe();
+    }
+    
+    /** The shared tile for a spot with this status and this many bombs around it. */
+    public static Tile valueOf(Piece status, int numSurroundingBombs)
+    {
+        return kTiles[status.ordinal()][numSurroundingBombs];
+    }
+    
+    public RenderDescriptor getRenderDescriptor()
+    {
+        return this.renderDescriptor;
+    }
+    
+    private RenderDescriptor describe()
+    {
+        RenderDescriptor renderDescriptor = new RenderDescriptor();
+        if (this.status == Piece.empty && numSurroundingBombs == 0)
+        {
+            renderDescriptor.text = "";
+        }
+        else if (numSurroundingBombs == 0)
+        {
+            renderDescriptor.isImage = true;
+            renderDescriptor.text = this.status.toString();
+        }
+        else
+        {
+            renderDescriptor.isImage = false;
+            renderDescriptor.isInverse = true; // White so we can see it.
+            renderDescriptor.isStrong = true; // Be bold, be brave.
+            renderDescriptor.text = Integer.toString(this.numSurroundingBombs);
+        }
+        return renderDescriptor;
+    }
+
+    public String toString()
+    {
+        return this.renderDescriptor.text;
+    }
+}
@@ -0,0 +1,8 @@
+#!/bin/sh
+# Build everything and run the benchmarks, keeping the results as JSON
+# named after the commit (bench-1a2b3c4.json), for comparing releases.
+# Usage: ./bench.sh [benchmark ...]
+mkdir -p bench
+javac -d bench -cp libs/KaboomUtils.jar $(ls *.java | grep -v Test) &&
+java -Xmx3g -Djava.awt.headless=true -cp bench:libs/KaboomUtils.jar:. KaboomBenchmark \
+    -json bench-$(git rev-parse --short HEAD).json "$@"
@@ -1,7 +1,7 @@
 #!/bin/sh
 rm -f MinesHighScores.txt
-javac HighScores.java &&
-#javac HighScoresTest.java -cp /usr/share/java/junit.jar:. &&
-#java -cp /usr/share/java/junit.jar:. org.junit.runner.JUnitCore HighScoresTest
-java -cp /usr/share/java/junit.jar:libs/KaboomUtils.jar:. org.junit.runner.JUnitCore HighScoresTest
-
+mkdir -p Mines
+javac -cp libs/KaboomUtils.jar -sourcepath . HighScores.java ScoreStore.java ScoreScanner.java ScoreRecord.java Leaderboard.java ScoreReplays.java &&
+javac -cp libs/KaboomUtils.jar -sourcepath . BoardStream.java &&
+javac HighScoresTest.java BoardStreamTest.java ScoreVerifierTest.java ReplayTest.java BitBoardTest.java KaboomEngineTest.java KaboomSolverTest.java NoGuessGeneratorTest.java EndlessBoardTest.java -cp /usr/share/java/junit.jar:.:libs/KaboomUtils.jar &&
+java -cp /usr/share/java/junit.jar:.:libs/KaboomUtils.jar org.junit.runner.JUnitCore HighScoresTest BoardStreamTest ScoreVerifierTest ReplayTest BitBoardTest KaboomEngineTest KaboomSolverTest NoGuessGeneratorTest EndlessBoardTest